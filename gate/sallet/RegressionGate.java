@@ -0,0 +1,177 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import sallet.command.CommandGroupChecks;
+import sallet.command.CommandScheduler;
+import sallet.command.PeriodicWorkerPoolChecks;
+import sallet.command.SchedulerChecks;
+import sallet.event.ButtonBankChecks;
+import sallet.signal.SignalCacheChecks;
+
+/**
+ * Runs the behavior checks of the library and fails if any of them does. Run by {@code gradle
+ * regressionGate}, which {@code gradle check} depends on.
+ *
+ * <p>Most checks drive a component with seeded random inputs and compare everything it does
+ * against a small reference model of the same behavior, written the obvious way without any of the
+ * component's optimizations. Every check covers a bug that was fixed, so a check that starts
+ * failing means an old bug is back.
+ *
+ * <p>The checks share one JVM and so the {@link sallet.command.CommandScheduler} singleton; every
+ * check leaves the scheduler with nothing scheduled or registered.
+ */
+public final class RegressionGate {
+  /** A check that throws if the behavior it covers has regressed */
+  @FunctionalInterface
+  public interface Check {
+    /**
+     * Runs the check.
+     *
+     * @throws Exception If the check fails
+     */
+    void run() throws Exception;
+  }
+
+  // How long a single check may run before it is considered hung
+  private static final long TIMEOUT_MILLIS = 60_000;
+
+  private final Map<String, Check> CHECKS = new LinkedHashMap<>();
+
+  private RegressionGate() {}
+
+  /**
+   * Adds a check.
+   *
+   * @param name The name of the check, unique among all checks
+   * @param check The check
+   */
+  public void add(String name, Check check) {
+    if (CHECKS.putIfAbsent(name, check) != null) {
+      throw new IllegalArgumentException("Two checks are named " + name);
+    }
+  }
+
+  /**
+   * Fails the running check unless a condition holds.
+   *
+   * @param condition The condition
+   * @param message What went wrong if it does not hold
+   */
+  public static void expect(boolean condition, String message) {
+    if (!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  /**
+   * Fails the running check unless two values are equal.
+   *
+   * @param expected The expected value
+   * @param actual The actual value
+   * @param what What the values are, for the failure message
+   */
+  public static void expectEqual(Object expected, Object actual, String what) {
+    if (!Objects.equals(expected, actual)) {
+      throw new AssertionError(what + ": expected " + expected + " but was " + actual);
+    }
+  }
+
+  /**
+   * Fails the running check unless two sequences are equal, naming the first entry they differ at
+   * rather than printing both in full.
+   *
+   * @param expected The expected sequence
+   * @param actual The actual sequence
+   * @param what What the sequences are, for the failure message
+   */
+  public static void expectSameSequence(List<?> expected, List<?> actual, String what) {
+    int length = Math.min(expected.size(), actual.size());
+    int first = 0;
+    while (first < length && Objects.equals(expected.get(first), actual.get(first))) {
+      first++;
+    }
+    if (first == expected.size() && first == actual.size()) {
+      return;
+    }
+    int from = Math.max(first - 4, 0);
+    throw new AssertionError(
+        String.format(
+            "%s differ at entry %d of %d: expected ...%s but was ...%s",
+            what,
+            first,
+            expected.size(),
+            expected.subList(from, Math.min(first + 4, expected.size())),
+            actual.subList(from, Math.min(first + 4, actual.size()))));
+  }
+
+  /**
+   * @param args Unused
+   */
+  public static void main(String[] args) {
+    // The checks are about behavior, so a slow cycle on a busy build machine is not worth a report
+    CommandScheduler.getInstance().setPeriod(60.0);
+
+    RegressionGate gate = new RegressionGate();
+    SchedulerChecks.register(gate);
+    PeriodicWorkerPoolChecks.register(gate);
+    SignalCacheChecks.register(gate);
+    ButtonBankChecks.register(gate);
+    CommandGroupChecks.register(gate);
+
+    List<String> failures = new ArrayList<>();
+    for (Map.Entry<String, Check> entry : gate.CHECKS.entrySet()) {
+      String name = entry.getKey();
+      Throwable[] failure = new Throwable[1];
+      // Each check runs on its own thread, so one that hangs fails the gate instead of stalling it
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  entry.getValue().run();
+                } catch (Throwable t) {
+                  failure[0] = t;
+                }
+              },
+              "sallet-check");
+      thread.setDaemon(true);
+      long start = System.nanoTime();
+      thread.start();
+      try {
+        thread.join(TIMEOUT_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      if (thread.isAlive()) {
+        // The hung check may hold the scheduler mid-cycle, so nothing after it can be trusted
+        System.out.println(name + ": FAILED, still running after " + TIMEOUT_MILLIS + " ms");
+        failures.add(name);
+        break;
+      } else if (failure[0] != null) {
+        System.out.println(name + ": FAILED");
+        failure[0].printStackTrace(System.out);
+        failures.add(name);
+      } else {
+        System.out.printf("%s: ok in %.1f ms%n", name, (System.nanoTime() - start) / 1e6);
+      }
+    }
+
+    if (!failures.isEmpty()) {
+      System.out.println();
+      System.out.println("Regression checks failed:");
+      for (String failure : failures) {
+        System.out.println("  " + failure);
+      }
+      System.exit(1);
+    }
+  }
+}
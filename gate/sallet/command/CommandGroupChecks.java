@@ -0,0 +1,386 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import static sallet.RegressionGate.expectEqual;
+import static sallet.RegressionGate.expectSameSequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import sallet.RegressionGate;
+
+/**
+ * Checks of the flattened {@link CommandGroup}s against a reference made of groups that call into
+ * their members, level by level, the way groups are written without flattening.
+ */
+public final class CommandGroupChecks {
+  private static final int SEEDS = 3000;
+  private static final int MAX_DEPTH = 5;
+  private static final int CYCLES = 40;
+
+  private CommandGroupChecks() {}
+
+  /**
+   * Adds the command group checks.
+   *
+   * @param gate The gate to add them to
+   */
+  public static void register(RegressionGate gate) {
+    gate.add("commandGroup.matchesNested", CommandGroupChecks::matchesNested);
+    gate.add(
+        "commandGroup.finishingAsStartedMatchesNested", CommandGroupChecks::finishingAsStarted);
+  }
+
+  /** A composition, built into both a flattened group and its reference. */
+  private record Spec(byte kind, int lifetime, Spec... members) {
+    static Spec leaf(int lifetime) {
+      return new Spec(CommandGroup.LEAF, lifetime);
+    }
+
+    static Spec group(byte kind, Spec... members) {
+      return new Spec(kind, 0, members);
+    }
+
+    @Override
+    public String toString() {
+      return switch (kind) {
+        case CommandGroup.LEAF -> "leaf(" + lifetime + ")";
+        case CommandGroup.SEQUENCE -> "sequence" + Arrays.toString(members);
+        case CommandGroup.PARALLEL -> "parallel" + Arrays.toString(members);
+        case CommandGroup.RACE -> "race" + Arrays.toString(members);
+        default -> "deadline" + Arrays.toString(members);
+      };
+    }
+  }
+
+  /** A command that traces its calls and finishes after a number of executes, or -1 for never. */
+  private static final class Leaf extends Command {
+    private final int ID;
+    private final int LIFETIME;
+    private final List<String> TRACE;
+    private int executeCount;
+
+    Leaf(int id, int lifetime, List<String> trace) {
+      ID = id;
+      LIFETIME = lifetime;
+      TRACE = trace;
+    }
+
+    @Override
+    public void initialize() {
+      executeCount = 0;
+      TRACE.add("initialize " + ID);
+    }
+
+    @Override
+    public void execute() {
+      executeCount++;
+      TRACE.add("execute " + ID);
+    }
+
+    @Override
+    public boolean isFinished() {
+      return LIFETIME >= 0 && executeCount >= LIFETIME;
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+      TRACE.add("end " + ID + (interrupted ? " interrupted" : ""));
+    }
+  }
+
+  /** The reference of a composition: a command whose groups run their own members. */
+  private abstract static class Nested {
+    abstract void initialize();
+
+    abstract void execute();
+
+    abstract boolean isFinished();
+
+    abstract void end(boolean interrupted);
+  }
+
+  private static final class NestedLeaf extends Nested {
+    private final Leaf LEAF;
+
+    NestedLeaf(Leaf leaf) {
+      LEAF = leaf;
+    }
+
+    @Override
+    void initialize() {
+      LEAF.initialize();
+    }
+
+    @Override
+    void execute() {
+      LEAF.execute();
+    }
+
+    @Override
+    boolean isFinished() {
+      return LEAF.isFinished();
+    }
+
+    @Override
+    void end(boolean interrupted) {
+      LEAF.end(interrupted);
+    }
+  }
+
+  private static final class NestedSequence extends Nested {
+    private final Nested[] MEMBERS;
+    private int current;
+
+    NestedSequence(Nested[] members) {
+      MEMBERS = members;
+    }
+
+    @Override
+    void initialize() {
+      current = 0;
+      if (MEMBERS.length > 0) {
+        MEMBERS[0].initialize();
+      }
+    }
+
+    @Override
+    void execute() {
+      if (current >= MEMBERS.length) {
+        return;
+      }
+      MEMBERS[current].execute();
+      if (MEMBERS[current].isFinished()) {
+        MEMBERS[current].end(false);
+        current++;
+        if (current < MEMBERS.length) {
+          MEMBERS[current].initialize();
+        }
+      }
+    }
+
+    @Override
+    boolean isFinished() {
+      return current >= MEMBERS.length;
+    }
+
+    @Override
+    void end(boolean interrupted) {
+      if (interrupted && current < MEMBERS.length) {
+        MEMBERS[current].end(true);
+      }
+      current = MEMBERS.length;
+    }
+  }
+
+  /** A parallel, race, or deadline group, the deadline being the first member. */
+  private static final class NestedParallel extends Nested {
+    private final byte KIND;
+    private final Nested[] MEMBERS;
+    private final boolean[] RUNNING;
+    private boolean finished;
+
+    NestedParallel(byte kind, Nested[] members) {
+      KIND = kind;
+      MEMBERS = members;
+      RUNNING = new boolean[members.length];
+    }
+
+    @Override
+    void initialize() {
+      finished = MEMBERS.length == 0;
+      for (int i = 0; i < MEMBERS.length; i++) {
+        MEMBERS[i].initialize();
+        RUNNING[i] = true;
+      }
+    }
+
+    @Override
+    void execute() {
+      boolean anyFinished = false;
+      for (int i = 0; i < MEMBERS.length; i++) {
+        if (RUNNING[i]) {
+          MEMBERS[i].execute();
+          if (MEMBERS[i].isFinished()) {
+            MEMBERS[i].end(false);
+            RUNNING[i] = false;
+            anyFinished = true;
+          }
+        }
+      }
+      switch (KIND) {
+        case CommandGroup.PARALLEL -> {
+          finished = true;
+          for (boolean running : RUNNING) {
+            finished &= !running;
+          }
+        }
+        case CommandGroup.RACE -> finished |= anyFinished;
+        default -> finished |= !RUNNING[0];
+      }
+      if (finished) {
+        end(true);
+      }
+    }
+
+    @Override
+    boolean isFinished() {
+      return finished;
+    }
+
+    @Override
+    void end(boolean interrupted) {
+      for (int i = 0; i < MEMBERS.length; i++) {
+        if (RUNNING[i]) {
+          MEMBERS[i].end(true);
+          RUNNING[i] = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * Random compositions up to five levels deep, some with empty groups, some cancelled partway.
+   */
+  private static void matchesNested() {
+    for (int seed = 0; seed < SEEDS; seed++) {
+      Random random = new Random(seed);
+      Spec spec = randomSpec(random, MAX_DEPTH, new int[1]);
+      int cancelAt = random.nextInt(3) == 0 ? random.nextInt(20) : -1;
+      compare(spec, cancelAt, "seed " + seed);
+    }
+  }
+
+  /**
+   * Compositions in which a nested group finishes in the same pass it starts in: empty groups, an
+   * empty deadline or race member, and a race ending inside a parallel group.
+   */
+  private static void finishingAsStarted() {
+    byte seq = CommandGroup.SEQUENCE;
+    byte par = CommandGroup.PARALLEL;
+    byte race = CommandGroup.RACE;
+    byte deadline = CommandGroup.DEADLINE;
+    Spec[] specs = {
+      Spec.group(seq, Spec.group(par, Spec.group(seq)), Spec.leaf(1)),
+      Spec.group(seq, Spec.group(par, Spec.group(seq), Spec.group(seq)), Spec.leaf(1)),
+      Spec.group(deadline, Spec.group(seq), Spec.leaf(-1)),
+      Spec.group(race, Spec.group(par), Spec.leaf(-1)),
+      Spec.group(
+          seq,
+          Spec.group(
+              par, Spec.group(deadline, Spec.group(seq), Spec.leaf(-1)), Spec.group(seq)),
+          Spec.leaf(1)),
+      Spec.group(
+          seq, Spec.leaf(1), Spec.group(par, Spec.group(seq), Spec.group(seq)), Spec.leaf(1)),
+      Spec.group(par, Spec.leaf(2), Spec.group(race, Spec.leaf(1), Spec.leaf(-1))),
+      Spec.group(seq),
+    };
+    for (int i = 0; i < specs.length; i++) {
+      compare(specs[i], -1, "composition " + i);
+    }
+  }
+
+  private static Spec randomSpec(Random random, int depth, int[] leafCount) {
+    if (depth == 0 || random.nextInt(4) == 0) {
+      leafCount[0]++;
+      return Spec.leaf(random.nextInt(8) == 0 ? -1 : 1 + random.nextInt(6));
+    }
+    byte kind = (byte) (CommandGroup.SEQUENCE + random.nextInt(4));
+    // A deadline group needs its deadline, any other group can be empty
+    int minimum = kind == CommandGroup.DEADLINE ? 1 : 0;
+    int count = random.nextInt(8) == 0 ? minimum : 1 + random.nextInt(3);
+    Spec[] members = new Spec[count];
+    for (int i = 0; i < count; i++) {
+      members[i] = randomSpec(random, depth - 1, leafCount);
+    }
+    return Spec.group(kind, members);
+  }
+
+  /**
+   * Schedules the flattened group and runs the reference the same way, each cycle calling execute
+   * and then isFinished, and compares the calls into commands cycle by cycle.
+   *
+   * @param spec The composition
+   * @param cancelAt The cycle to cancel the composition in, or -1 to let it run
+   * @param what Which composition, for failure messages
+   */
+  private static void compare(Spec spec, int cancelAt, String what) {
+    List<String> trace = new ArrayList<>();
+    List<String> expected = new ArrayList<>();
+    Command flattened = build(spec, trace, new int[1]);
+    Nested nested = buildNested(spec, expected, new int[1]);
+
+    CommandScheduler scheduler = CommandScheduler.getInstance();
+    try {
+      scheduler.schedule(flattened);
+      for (int cycle = 0; cycle < CYCLES && flattened.isScheduled(); cycle++) {
+        trace.add("cycle " + cycle);
+        if (cycle == cancelAt) {
+          flattened.cancel();
+        } else {
+          scheduler.run();
+        }
+      }
+      boolean runningAfterCycles = flattened.isScheduled();
+      flattened.cancel();
+
+      nested.initialize();
+      boolean ended = false;
+      for (int cycle = 0; cycle < CYCLES && !ended; cycle++) {
+        expected.add("cycle " + cycle);
+        if (cycle == cancelAt) {
+          nested.end(true);
+          ended = true;
+        } else {
+          nested.execute();
+          if (nested.isFinished()) {
+            nested.end(false);
+            ended = true;
+          }
+        }
+      }
+      if (!ended) {
+        nested.end(true);
+      }
+
+      expectSameSequence(expected, trace, "Calls into the commands of " + what + " " + spec);
+      expectEqual(!ended, runningAfterCycles, "Whether " + what + " was still running");
+    } finally {
+      SchedulerChecks.reset(scheduler);
+    }
+  }
+
+  private static Command build(Spec spec, List<String> trace, int[] nextId) {
+    if (spec.kind() == CommandGroup.LEAF) {
+      return new Leaf(nextId[0]++, spec.lifetime(), trace);
+    }
+    Command[] members = new Command[spec.members().length];
+    for (int i = 0; i < members.length; i++) {
+      members[i] = build(spec.members()[i], trace, nextId);
+    }
+    return switch (spec.kind()) {
+      case CommandGroup.SEQUENCE -> new SequentialCommandGroup(members);
+      case CommandGroup.PARALLEL -> new ParallelCommandGroup(members);
+      case CommandGroup.RACE -> new ParallelRaceGroup(members);
+      default -> new ParallelDeadlineGroup(
+          members[0], Arrays.copyOfRange(members, 1, members.length));
+    };
+  }
+
+  private static Nested buildNested(Spec spec, List<String> trace, int[] nextId) {
+    if (spec.kind() == CommandGroup.LEAF) {
+      return new NestedLeaf(new Leaf(nextId[0]++, spec.lifetime(), trace));
+    }
+    Nested[] members = new Nested[spec.members().length];
+    for (int i = 0; i < members.length; i++) {
+      members[i] = buildNested(spec.members()[i], trace, nextId);
+    }
+    return spec.kind() == CommandGroup.SEQUENCE
+        ? new NestedSequence(members)
+        : new NestedParallel(spec.kind(), members);
+  }
+}
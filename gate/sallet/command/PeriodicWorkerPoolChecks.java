@@ -0,0 +1,170 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import static sallet.RegressionGate.expect;
+import static sallet.RegressionGate.expectEqual;
+
+import java.util.Random;
+
+import sallet.RegressionGate;
+
+/**
+ * Checks of the {@link PeriodicWorkerPool} generations and of how the scheduler reports periodic
+ * methods that throw while the pool is enabled.
+ */
+public final class PeriodicWorkerPoolChecks {
+  private static final int WORKERS = 4;
+
+  private PeriodicWorkerPoolChecks() {}
+
+  /**
+   * Adds the worker pool checks.
+   *
+   * @param gate The gate to add them to
+   */
+  public static void register(RegressionGate gate) {
+    gate.add("workerPool.firstGenerationOfNewPool", PeriodicWorkerPoolChecks::firstGeneration);
+    gate.add("workerPool.everyTaskOncePerGeneration", PeriodicWorkerPoolChecks::everyTaskOnce);
+    gate.add("workerPool.failuresReported", PeriodicWorkerPoolChecks::failuresReported);
+  }
+
+  private static final class CountingSubsystem extends Subsystem {
+    private final String NAME;
+    int periodicCount;
+    boolean throwing;
+
+    CountingSubsystem(String name) {
+      NAME = name;
+    }
+
+    @Override
+    public String getName() {
+      return NAME;
+    }
+
+    @Override
+    public void periodic() {
+      periodicCount++;
+      if (throwing) {
+        throw new IllegalStateException("Expected failure of " + getName());
+      }
+    }
+  }
+
+  /**
+   * A generation started right after the pool is created completes, even when the loop thread gets
+   * there before the workers have started. If it does not, the check hangs and the gate fails it.
+   */
+  private static void firstGeneration() {
+    CountingSubsystem[] subsystems = subsystems(8);
+    for (int trial = 0; trial < 500; trial++) {
+      PeriodicWorkerPool pool = new PeriodicWorkerPool(WORKERS);
+      try {
+        for (CountingSubsystem subsystem : subsystems) {
+          subsystem.periodicCount = 0;
+          pool.add(subsystem);
+        }
+        pool.start();
+        pool.finish();
+        for (CountingSubsystem subsystem : subsystems) {
+          expectEqual(1, subsystem.periodicCount, "Periodic calls in trial " + trial);
+        }
+      } finally {
+        pool.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Over many generations with a changing number of tasks, every task runs exactly once per
+   * generation and the pool never reports a failure that did not happen.
+   */
+  private static void everyTaskOnce() {
+    CountingSubsystem[] subsystems = subsystems(24);
+    PeriodicWorkerPool pool = new PeriodicWorkerPool(WORKERS);
+    Random random = new Random(0);
+    try {
+      for (int generation = 0; generation < 5000; generation++) {
+        int count = random.nextInt(subsystems.length + 1);
+        pool.clear();
+        for (int i = 0; i < count; i++) {
+          subsystems[i].periodicCount = 0;
+          pool.add(subsystems[i]);
+        }
+        pool.start();
+        pool.finish();
+        for (int i = 0; i < count; i++) {
+          expectEqual(
+              1,
+              subsystems[i].periodicCount,
+              "Periodic calls of task " + i + " in generation " + generation);
+          expect(pool.takeFailure(i) == null, "Failure reported in generation " + generation);
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Worker failures are thrown from run() once every periodic method has finished, and are kept
+   * as suppressed exceptions when a periodic method on the loop thread throws as well.
+   */
+  private static void failuresReported() {
+    CommandScheduler scheduler = CommandScheduler.getInstance();
+    CountingSubsystem worker = new CountingSubsystem("Worker");
+    CountingSubsystem serial = new CountingSubsystem("Serial");
+    worker.setThreadSafe(true);
+    worker.throwing = true;
+    scheduler.enableParallelPeriodic(WORKERS);
+    try {
+      RuntimeException thrown = runExpectingFailure(scheduler);
+      expectEqual(
+          "Expected failure of " + worker.getName(),
+          thrown.getCause() == null ? null : thrown.getCause().getMessage(),
+          "Cause of the worker failure thrown from run()");
+      expectEqual(1, serial.periodicCount, "Serial periodic calls alongside a worker failure");
+
+      serial.throwing = true;
+      thrown = runExpectingFailure(scheduler);
+      expectEqual(
+          "Expected failure of " + serial.getName(),
+          thrown.getMessage(),
+          "Failure thrown when a serial and a worker periodic both throw");
+      expectEqual(1, thrown.getSuppressed().length, "Worker failures suppressed on it");
+      expectEqual(
+          "Expected failure of " + worker.getName(),
+          thrown.getSuppressed()[0].getCause().getMessage(),
+          "Cause of the suppressed worker failure");
+
+      // Both failures were taken, so a cycle without failures reports nothing
+      worker.throwing = false;
+      serial.throwing = false;
+      scheduler.run();
+    } finally {
+      scheduler.disableParallelPeriodic();
+      scheduler.unregisterSubsystem(worker, serial);
+    }
+  }
+
+  private static RuntimeException runExpectingFailure(CommandScheduler scheduler) {
+    try {
+      scheduler.run();
+    } catch (RuntimeException e) {
+      return e;
+    }
+    throw new AssertionError("run() did not throw the periodic failure");
+  }
+
+  private static CountingSubsystem[] subsystems(int count) {
+    CountingSubsystem[] subsystems = new CountingSubsystem[count];
+    for (int i = 0; i < count; i++) {
+      subsystems[i] = new CountingSubsystem("Task " + i);
+    }
+    // Only the pool runs them, not the scheduler
+    CommandScheduler.getInstance().unregisterSubsystem(subsystems);
+    return subsystems;
+  }
+}
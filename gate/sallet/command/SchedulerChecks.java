@@ -0,0 +1,427 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import static sallet.RegressionGate.expect;
+import static sallet.RegressionGate.expectEqual;
+import static sallet.RegressionGate.expectSameSequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import sallet.RegressionGate;
+
+/**
+ * Checks of the {@link CommandScheduler}: the order commands run and end in, requirement
+ * conflicts, and the scheduler state after a command throws.
+ */
+public final class SchedulerChecks {
+  private static final int SUBSYSTEMS = 5;
+  private static final int DEFAULT_COMMANDS = 3;
+  private static final int COMMANDS = 12;
+  private static final int SEEDS = 200;
+  private static final int STEPS = 300;
+
+  private SchedulerChecks() {}
+
+  /**
+   * Adds the scheduler checks.
+   *
+   * @param gate The gate to add them to
+   */
+  public static void register(RegressionGate gate) {
+    gate.add("scheduler.matchesReference", () -> matchesReference(false, false));
+    gate.add("scheduler.matchesReferenceWhenCommandsThrow", () -> matchesReference(true, false));
+    gate.add("scheduler.byPriorityMatchesReference", () -> matchesReference(true, true));
+    gate.add("scheduler.recoversFromThrowingCommand", SchedulerChecks::recoversFromThrowingCommand);
+  }
+
+  /** What a command does, shared by the real command and its reference model. */
+  private static final class Script {
+    // Indices of the required subsystems, ascending
+    final int[] REQUIREMENTS;
+    final boolean INTERRUPTIBLE;
+    // Number of executes before the command finishes, or -1 to never finish
+    final int LIFETIME;
+    // Per execute, the command to schedule, the command to cancel, or -1, and whether to throw
+    final int[] SCHEDULES;
+    final int[] CANCELS;
+    final boolean[] THROWS;
+
+    Script(
+        int[] requirements, boolean interruptible, int lifetime, Random random, boolean throwing) {
+      REQUIREMENTS = requirements;
+      INTERRUPTIBLE = interruptible;
+      LIFETIME = lifetime;
+      SCHEDULES = new int[16];
+      CANCELS = new int[16];
+      THROWS = new boolean[16];
+      for (int i = 0; i < SCHEDULES.length; i++) {
+        SCHEDULES[i] = random.nextInt(100) < 15 ? random.nextInt(COMMANDS + DEFAULT_COMMANDS) : -1;
+        CANCELS[i] = random.nextInt(100) < 10 ? random.nextInt(COMMANDS + DEFAULT_COMMANDS) : -1;
+        THROWS[i] = throwing && random.nextInt(100) < 3;
+      }
+    }
+
+    static Script random(Random random, boolean throwing) {
+      int[] requirements =
+          random.ints(random.nextInt(3), 0, SUBSYSTEMS).sorted().distinct().toArray();
+      int lifetime = random.nextInt(4) == 0 ? -1 : 1 + random.nextInt(6);
+      return new Script(requirements, random.nextInt(5) != 0, lifetime, random, throwing);
+    }
+
+    static Script defaultCommand(int subsystem) {
+      return new Script(new int[] {subsystem}, true, -1, new Random(0), false);
+    }
+
+    boolean isFinished(int executeCount) {
+      return LIFETIME >= 0 && executeCount >= LIFETIME;
+    }
+  }
+
+  /** A command following a script, recording every call into a trace. */
+  private static final class ScriptedCommand extends Command {
+    private final int INDEX;
+    private final Script SCRIPT;
+    private final List<String> TRACE;
+    private final ScriptedCommand[] ALL;
+    private int executeCount;
+
+    ScriptedCommand(int index, Script script, List<String> trace, ScriptedCommand[] all) {
+      INDEX = index;
+      SCRIPT = script;
+      TRACE = trace;
+      ALL = all;
+    }
+
+    @Override
+    public void initialize() {
+      executeCount = 0;
+      TRACE.add("initialize " + INDEX);
+    }
+
+    @Override
+    public void execute() {
+      int count = executeCount++;
+      TRACE.add("execute " + INDEX);
+      if (count < SCRIPT.SCHEDULES.length) {
+        if (SCRIPT.SCHEDULES[count] >= 0) {
+          ALL[SCRIPT.SCHEDULES[count]].schedule();
+        }
+        if (SCRIPT.CANCELS[count] >= 0) {
+          ALL[SCRIPT.CANCELS[count]].cancel();
+        }
+        if (SCRIPT.THROWS[count]) {
+          throw new IllegalStateException("Scripted failure of " + INDEX);
+        }
+      }
+    }
+
+    @Override
+    public boolean isFinished() {
+      return SCRIPT.isFinished(executeCount);
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+      TRACE.add("end " + INDEX + (interrupted ? " interrupted" : ""));
+    }
+
+    @Override
+    public InterruptionBehavior getInterruptionBehavior() {
+      return SCRIPT.INTERRUPTIBLE
+          ? InterruptionBehavior.kCancelSelf
+          : InterruptionBehavior.kCancelIncoming;
+    }
+
+    @Override
+    public String getName() {
+      return "Command " + INDEX;
+    }
+  }
+
+  /**
+   * The scheduler's documented behavior over lists and per-subsystem owners: commands run in the
+   * order they were scheduled, and schedules and cancels made while commands run are applied after
+   * the last one has run, followed by default commands.
+   */
+  private static final class ReferenceScheduler {
+    private final Script[] SCRIPTS;
+    private final int[] DEFAULTS;
+    private final List<String> TRACE = new ArrayList<>();
+
+    private final List<Integer> scheduled = new ArrayList<>();
+    private final int[] executeCounts;
+    private final int[] requiring = new int[SUBSYSTEMS];
+    private boolean inRunLoop;
+    private final List<Integer> toSchedule = new ArrayList<>();
+    private final List<Integer> toCancel = new ArrayList<>();
+
+    ReferenceScheduler(Script[] scripts, int[] defaults) {
+      SCRIPTS = scripts;
+      DEFAULTS = defaults;
+      executeCounts = new int[scripts.length];
+      Arrays.fill(requiring, -1);
+    }
+
+    boolean isScheduled(int command) {
+      return scheduled.contains(command);
+    }
+
+    void schedule(int command) {
+      if (inRunLoop) {
+        if (!toSchedule.contains(command)) {
+          toSchedule.add(command);
+        }
+        return;
+      }
+      if (isScheduled(command)) {
+        return;
+      }
+      int[] requirements = SCRIPTS[command].REQUIREMENTS;
+      for (int subsystem : requirements) {
+        if (requiring[subsystem] >= 0 && !SCRIPTS[requiring[subsystem]].INTERRUPTIBLE) {
+          return;
+        }
+      }
+      for (int subsystem : requirements) {
+        if (requiring[subsystem] >= 0) {
+          cancel(requiring[subsystem]);
+        }
+      }
+      scheduled.add(command);
+      for (int subsystem : requirements) {
+        requiring[subsystem] = command;
+      }
+      executeCounts[command] = 0;
+      TRACE.add("initialize " + command);
+    }
+
+    void cancel(int command) {
+      if (inRunLoop) {
+        toCancel.add(command);
+        return;
+      }
+      if (!isScheduled(command)) {
+        return;
+      }
+      TRACE.add("end " + command + " interrupted");
+      remove(command);
+    }
+
+    /** Runs a cycle, returning whether a command threw. */
+    boolean run() {
+      inRunLoop = true;
+      boolean threw = false;
+      for (int command : new ArrayList<>(scheduled)) {
+        Script script = SCRIPTS[command];
+        int count = executeCounts[command]++;
+        TRACE.add("execute " + command);
+        if (count < script.SCHEDULES.length) {
+          if (script.SCHEDULES[count] >= 0) {
+            schedule(script.SCHEDULES[count]);
+          }
+          if (script.CANCELS[count] >= 0) {
+            cancel(script.CANCELS[count]);
+          }
+          if (script.THROWS[count]) {
+            threw = true;
+            break;
+          }
+        }
+        if (script.isFinished(executeCounts[command])) {
+          TRACE.add("end " + command);
+          remove(command);
+        }
+      }
+      inRunLoop = false;
+      if (threw) {
+        // The rest of the cycle never runs, and whatever was queued waits for the next one
+        return true;
+      }
+
+      for (int command : toSchedule) {
+        schedule(command);
+      }
+      toSchedule.clear();
+      for (int command : toCancel) {
+        cancel(command);
+      }
+      toCancel.clear();
+      for (int subsystem = 0; subsystem < DEFAULTS.length; subsystem++) {
+        if (requiring[subsystem] < 0) {
+          schedule(DEFAULTS[subsystem]);
+        }
+      }
+      return false;
+    }
+
+    private void remove(int command) {
+      scheduled.remove(Integer.valueOf(command));
+      for (int subsystem : SCRIPTS[command].REQUIREMENTS) {
+        requiring[subsystem] = -1;
+      }
+    }
+  }
+
+  /**
+   * Drives the scheduler and the reference with the same random scripts, schedules, cancels and
+   * cycles, and checks that they call into commands in the same order and agree on what is
+   * scheduled and which command holds each subsystem after every step.
+   */
+  private static void matchesReference(boolean throwing, boolean byPriority) {
+    CommandScheduler scheduler = CommandScheduler.getInstance();
+    if (byPriority) {
+      // A deadline no cycle reaches, so the priority path runs every command like the ordered one
+      scheduler.enableDeadlineScheduling(10.0);
+    }
+    try {
+      for (int seed = 0; seed < SEEDS; seed++) {
+        matchesReference(scheduler, new Random(seed), throwing, seed);
+      }
+    } finally {
+      scheduler.disableDeadlineScheduling();
+    }
+  }
+
+  private static void matchesReference(
+      CommandScheduler scheduler, Random random, boolean throwing, int seed) {
+    Subsystem[] subsystems = new Subsystem[SUBSYSTEMS];
+    for (int i = 0; i < SUBSYSTEMS; i++) {
+      subsystems[i] = new Subsystem() {};
+    }
+    int total = COMMANDS + DEFAULT_COMMANDS;
+    Script[] scripts = new Script[total];
+    int[] defaults = new int[DEFAULT_COMMANDS];
+    for (int i = 0; i < COMMANDS; i++) {
+      scripts[i] = Script.random(random, throwing);
+    }
+    for (int i = 0; i < DEFAULT_COMMANDS; i++) {
+      scripts[COMMANDS + i] = Script.defaultCommand(i);
+      defaults[i] = COMMANDS + i;
+    }
+
+    List<String> trace = new ArrayList<>();
+    ScriptedCommand[] commands = new ScriptedCommand[total];
+    for (int i = 0; i < total; i++) {
+      commands[i] = new ScriptedCommand(i, scripts[i], trace, commands);
+      for (int subsystem : scripts[i].REQUIREMENTS) {
+        commands[i].addRequirements(subsystems[subsystem]);
+      }
+    }
+    for (int i = 0; i < DEFAULT_COMMANDS; i++) {
+      scheduler.setDefaultCommand(subsystems[i], commands[defaults[i]]);
+    }
+    ReferenceScheduler reference = new ReferenceScheduler(scripts, defaults);
+
+    try {
+      for (int step = 0; step < STEPS; step++) {
+        int action = random.nextInt(4);
+        int command = random.nextInt(total);
+        String where = "seed " + seed + " step " + step;
+        if (action < 2) {
+          boolean threw = false;
+          try {
+            scheduler.run();
+          } catch (IllegalStateException e) {
+            threw = true;
+          }
+          expectEqual(reference.run(), threw, "Whether the cycle threw at " + where);
+        } else if (action == 2) {
+          commands[command].schedule();
+          reference.schedule(command);
+        } else {
+          commands[command].cancel();
+          reference.cancel(command);
+        }
+
+        expectSameSequence(reference.TRACE, trace, "Calls into commands up to " + where);
+        for (int i = 0; i < total; i++) {
+          expectEqual(
+              reference.isScheduled(i),
+              commands[i].isScheduled(),
+              "Whether command " + i + " is scheduled at " + where);
+        }
+        for (int i = 0; i < SUBSYSTEMS; i++) {
+          Command holder = scheduler.requiring(subsystems[i]);
+          int expected = reference.requiring[i];
+          expect(
+              expected < 0 ? holder == null : holder == commands[expected],
+              "Subsystem " + i + " held by " + holder + " instead of " + expected + " at " + where);
+        }
+      }
+    } finally {
+      reset(scheduler, subsystems);
+    }
+  }
+
+  /**
+   * A command throwing from execute leaves every other command scheduled exactly once, and the
+   * scheduler schedules and cancels directly again afterwards.
+   */
+  private static void recoversFromThrowingCommand() {
+    CommandScheduler scheduler = CommandScheduler.getInstance();
+    int[] executes = new int[1];
+    Command finishing =
+        new Command() {
+          @Override
+          public boolean isFinished() {
+            return true;
+          }
+        };
+    Command throwing =
+        new Command() {
+          private boolean thrown;
+
+          @Override
+          public void execute() {
+            if (!thrown) {
+              thrown = true;
+              throw new IllegalStateException("Expected failure");
+            }
+          }
+        };
+    Command counting =
+        new Command() {
+          @Override
+          public void execute() {
+            executes[0]++;
+          }
+        };
+    try {
+      scheduler.schedule(finishing, counting, throwing);
+      boolean threw = false;
+      try {
+        scheduler.run();
+      } catch (IllegalStateException e) {
+        threw = true;
+      }
+      expect(threw, "The throwing command did not throw out of run()");
+      expect(!finishing.isScheduled(), "A command that finished before the throw is scheduled");
+
+      executes[0] = 0;
+      scheduler.run();
+      expectEqual(1, executes[0], "Executes of a command in the cycle after the throw");
+
+      Command later = new Command() {};
+      scheduler.schedule(later);
+      expect(later.isScheduled(), "schedule() after the throw was queued instead of applied");
+      scheduler.cancel(later);
+      expect(!later.isScheduled(), "cancel() after the throw was queued instead of applied");
+    } finally {
+      reset(scheduler);
+    }
+  }
+
+  /** Leaves the scheduler with nothing scheduled or queued, and the subsystems un-registered. */
+  static void reset(CommandScheduler scheduler, Subsystem... subsystems) {
+    scheduler.unregisterSubsystem(subsystems);
+    scheduler.cancelAll();
+    // A cycle that threw leaves its schedules and cancels queued, apply them and cancel again
+    scheduler.run();
+    scheduler.cancelAll();
+  }
+}
@@ -0,0 +1,127 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.event;
+
+import static sallet.RegressionGate.expectEqual;
+
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+import sallet.RegressionGate;
+import sallet.math.filters.Debouncer;
+import sallet.math.universal.MathSharedStore;
+import sallet.math.universal.SimulatedClock;
+
+/**
+ * Checks of the {@link ButtonBank} edges and debouncing against the same buttons built the plain
+ * way, as per-button {@link BooleanEvent}s with {@link BooleanEvent#rising()}, {@link
+ * BooleanEvent#falling()} and {@link BooleanEvent#debounce(double, Debouncer.DebounceType)}.
+ */
+public final class ButtonBankChecks {
+  // More than one word, with a partial last word
+  private static final int BUTTONS = 70;
+  private static final int SEEDS = 20;
+  private static final int POLLS = 2000;
+  private static final double[] DEBOUNCE_SECONDS = {0.0, 0.05, 0.1};
+
+  private ButtonBankChecks() {}
+
+  /**
+   * Adds the button bank checks.
+   *
+   * @param gate The gate to add them to
+   */
+  public static void register(RegressionGate gate) {
+    gate.add("buttonBank.matchesPerEventEdges", ButtonBankChecks::matchesPerEventEdges);
+  }
+
+  private static void matchesPerEventEdges() {
+    SimulatedClock clock = new SimulatedClock();
+    MathSharedStore.bindClock(clock);
+    try {
+      for (int seed = 0; seed < SEEDS; seed++) {
+        try {
+          matchesPerEventEdges(seed, clock);
+        } catch (AssertionError e) {
+          throw new AssertionError("Seed " + seed + ": " + e.getMessage(), e);
+        }
+      }
+    } finally {
+      MathSharedStore.bindClock(null);
+    }
+  }
+
+  /**
+   * Toggles the buttons at random over polls of random length, some shorter and some longer than
+   * the debounce periods, and compares every view of the bank to its per-event counterpart after
+   * every poll. Half the views are only created partway through, after the bank has been running.
+   */
+  private static void matchesPerEventEdges(int seed, SimulatedClock clock) {
+    Random random = new Random(seed);
+    boolean[] hardware = new boolean[BUTTONS];
+    BooleanSupplier[] signals = new BooleanSupplier[BUTTONS];
+    for (int i = 0; i < BUTTONS; i++) {
+      int button = i;
+      signals[i] = () -> hardware[button];
+    }
+
+    EventLoop loop = new EventLoop();
+    ButtonBank bank = new ButtonBank(loop, signals);
+    BooleanEvent[][] reference = new BooleanEvent[3][BUTTONS];
+    for (int i = 0; i < BUTTONS; i++) {
+      double seconds = DEBOUNCE_SECONDS[random.nextInt(DEBOUNCE_SECONDS.length)];
+      bank.setDebounce(i, seconds);
+      BooleanEvent raw = new BooleanEvent(loop, signals[i]);
+      BooleanEvent pressed =
+          seconds > 0.0 ? raw.debounce(seconds, Debouncer.DebounceType.BOTH) : raw;
+      reference[0][i] = pressed;
+      reference[1][i] = pressed.rising();
+      reference[2][i] = pressed.falling();
+    }
+    BooleanEvent[][] views = new BooleanEvent[3][BUTTONS];
+    createViews(bank, views, 0, BUTTONS / 2);
+
+    for (int poll = 0; poll < POLLS; poll++) {
+      if (poll == POLLS / 4) {
+        createViews(bank, views, BUTTONS / 2, BUTTONS);
+      }
+      clock.advanceNanos(1_000_000L * (1 + random.nextInt(60)));
+      for (int i = 0; i < BUTTONS; i++) {
+        if (random.nextInt(6) == 0) {
+          hardware[i] = !hardware[i];
+        }
+      }
+      MathSharedStore.latchTimestamp();
+      try {
+        loop.poll();
+      } finally {
+        MathSharedStore.releaseTimestamp();
+      }
+
+      for (int i = 0; i < BUTTONS; i++) {
+        String where = " of button " + i + " in poll " + poll;
+        boolean pressed = reference[0][i].getAsBoolean();
+        boolean rising = reference[1][i].getAsBoolean();
+        boolean falling = reference[2][i].getAsBoolean();
+        expectEqual(pressed, bank.isPressed(i), "isPressed" + where);
+        expectEqual(rising, bank.isRising(i), "isRising" + where);
+        expectEqual(falling, bank.isFalling(i), "isFalling" + where);
+        if (views[0][i] != null) {
+          expectEqual(pressed, views[0][i].getAsBoolean(), "Pressed view" + where);
+          expectEqual(rising, views[1][i].getAsBoolean(), "Rising view" + where);
+          expectEqual(falling, views[2][i].getAsBoolean(), "Falling view" + where);
+        }
+      }
+    }
+  }
+
+  // Also composes each view, so the bank has to mark the events built on it as well
+  private static void createViews(ButtonBank bank, BooleanEvent[][] views, int from, int to) {
+    for (int i = from; i < to; i++) {
+      views[0][i] = bank.pressed(i).and(() -> true);
+      views[1][i] = bank.rising(i).or(() -> false);
+      views[2][i] = bank.falling(i).negate().negate();
+    }
+  }
+}
@@ -0,0 +1,246 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.signal;
+
+import static sallet.RegressionGate.expect;
+import static sallet.RegressionGate.expectEqual;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+import sallet.RegressionGate;
+import sallet.command.CommandScheduler;
+
+/**
+ * Checks of {@link SignalCache} invalidation: when signals and bulk reads go to their sources, and
+ * what they return, against a model that tracks freshness with a flag per signal and per group.
+ */
+public final class SignalCacheChecks {
+  private static final int SIGNALS = 12;
+  private static final int GROUPS = 3;
+  private static final int SEEDS = 100;
+  private static final int STEPS = 2000;
+
+  private SignalCacheChecks() {}
+
+  /**
+   * Adds the signal cache checks.
+   *
+   * @param gate The gate to add them to
+   */
+  public static void register(RegressionGate gate) {
+    gate.add("signalCache.matchesReference", SignalCacheChecks::matchesReference);
+    gate.add("signalCache.invalidatedBySchedulerRun", SignalCacheChecks::invalidatedByScheduler);
+  }
+
+  /** The hardware behind the signals, and the values each bulk read last left for its group. */
+  private static final class Device {
+    final long[] VALUES = new long[SIGNALS];
+    final long[] BUFFER = new long[SIGNALS];
+    final boolean[] SOURCE_THROWS = new boolean[SIGNALS];
+    final boolean[] BULK_READ_THROWS = new boolean[GROUPS];
+
+    void bulkRead(int group) {
+      if (BULK_READ_THROWS[group]) {
+        throw new IllegalStateException("Expected failure of bulk read " + group);
+      }
+      for (int signal = 0; signal < SIGNALS; signal++) {
+        if (groupOf(signal) == group) {
+          BUFFER[signal] = VALUES[signal];
+        }
+      }
+    }
+
+    long read(int signal) {
+      if (SOURCE_THROWS[signal]) {
+        throw new IllegalStateException("Expected failure of signal " + signal);
+      }
+      return groupOf(signal) < 0 ? VALUES[signal] : BUFFER[signal];
+    }
+  }
+
+  /** What the cache should do, written with a freshness flag per signal and per group. */
+  private static final class Reference {
+    final Device DEVICE;
+    final boolean[] FRESH = new boolean[SIGNALS];
+    final long[] STORED = new long[SIGNALS];
+    final long[] READ_COUNTS = new long[SIGNALS];
+    final boolean[] GROUP_FRESH = new boolean[GROUPS];
+    final long[] GROUP_READ_COUNTS = new long[GROUPS];
+
+    Reference(Device device) {
+      DEVICE = device;
+    }
+
+    void invalidateAll() {
+      Arrays.fill(FRESH, false);
+      Arrays.fill(GROUP_FRESH, false);
+    }
+
+    void invalidate(int signal) {
+      FRESH[signal] = false;
+      if (groupOf(signal) >= 0) {
+        GROUP_FRESH[groupOf(signal)] = false;
+      }
+    }
+
+    long read(int signal) {
+      int group = groupOf(signal);
+      if (group >= 0 && !GROUP_FRESH[group]) {
+        // Counted even when it throws, the read did run
+        GROUP_READ_COUNTS[group]++;
+        DEVICE.bulkRead(group);
+        GROUP_FRESH[group] = true;
+        // Every signal of the group takes its value from the new read
+        for (int other = 0; other < SIGNALS; other++) {
+          if (groupOf(other) == group) {
+            FRESH[other] = false;
+          }
+        }
+      }
+      if (!FRESH[signal]) {
+        STORED[signal] = DEVICE.read(signal);
+        FRESH[signal] = true;
+        READ_COUNTS[signal]++;
+      }
+      return STORED[signal];
+    }
+  }
+
+  // The bulk read a signal shares, or -1. Every fourth signal reads on its own
+  private static int groupOf(int signal) {
+    return signal % (GROUPS + 1) - 1;
+  }
+
+  private static void matchesReference() {
+    for (int seed = 0; seed < SEEDS; seed++) {
+      try {
+        matchesReference(seed);
+      } catch (AssertionError e) {
+        throw new AssertionError("Seed " + seed + ": " + e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Interleaves reads, cache and signal invalidations, device changes, and failing sources and bulk
+   * reads, and compares every value returned, every failure, and every read count to the model.
+   */
+  private static void matchesReference(int seed) {
+    Random random = new Random(seed);
+    Device device = new Device();
+    Device referenceDevice = new Device();
+    Reference reference = new Reference(referenceDevice);
+
+    SignalCache cache = new SignalCache();
+    SignalCache.BulkRead[] bulkReads = new SignalCache.BulkRead[GROUPS];
+    for (int group = 0; group < GROUPS; group++) {
+      int g = group;
+      bulkReads[group] = cache.bulkRead(() -> device.bulkRead(g));
+    }
+    CachedSignal[] signals = new CachedSignal[SIGNALS];
+    LongSupplier[] reads = new LongSupplier[SIGNALS];
+    for (int signal = 0; signal < SIGNALS; signal++) {
+      int s = signal;
+      SignalCache.BulkRead bulkRead = groupOf(signal) < 0 ? null : bulkReads[groupOf(signal)];
+      // All three signal types, each read back as a long the model can compare
+      switch (signal % 3) {
+        case 0 -> {
+          CachedLongSignal cached =
+              bulkRead == null
+                  ? cache.cacheLong(() -> device.read(s))
+                  : cache.cacheLong(bulkRead, () -> device.read(s));
+          signals[signal] = cached;
+          reads[signal] = cached;
+        }
+        case 1 -> {
+          CachedDoubleSignal cached =
+              bulkRead == null
+                  ? cache.cacheDouble(() -> device.read(s))
+                  : cache.cacheDouble(bulkRead, () -> device.read(s));
+          signals[signal] = cached;
+          reads[signal] = () -> (long) cached.getAsDouble();
+        }
+        default -> {
+          CachedBooleanSignal cached =
+              bulkRead == null
+                  ? cache.cacheBoolean(() -> device.read(s) != 0)
+                  : cache.cacheBoolean(bulkRead, () -> device.read(s) != 0);
+          signals[signal] = cached;
+          reads[signal] = () -> cached.getAsBoolean() ? 1 : 0;
+        }
+      }
+    }
+
+    for (int step = 0; step < STEPS; step++) {
+      int signal = random.nextInt(SIGNALS);
+      int roll = random.nextInt(100);
+      String where = "step " + step + ", signal " + signal;
+      if (roll < 10) {
+        cache.invalidate();
+        reference.invalidateAll();
+      } else if (roll < 18) {
+        signals[signal].invalidate();
+        reference.invalidate(signal);
+      } else if (roll < 38) {
+        // Boolean signals only return 0 or 1, so their device values stay within those
+        long value = random.nextInt(signal % 3 == 2 ? 2 : 1000);
+        device.VALUES[signal] = value;
+        referenceDevice.VALUES[signal] = value;
+      } else if (roll < 42) {
+        boolean throwing = random.nextInt(3) == 0;
+        device.SOURCE_THROWS[signal] = throwing;
+        referenceDevice.SOURCE_THROWS[signal] = throwing;
+      } else if (roll < 45) {
+        int group = random.nextInt(GROUPS);
+        boolean throwing = random.nextInt(3) == 0;
+        device.BULK_READ_THROWS[group] = throwing;
+        referenceDevice.BULK_READ_THROWS[group] = throwing;
+      } else {
+        String expected = readOrFailure(() -> reference.read(signal));
+        String actual = readOrFailure(reads[signal]);
+        expectEqual(expected, actual, "Read at " + where);
+      }
+
+      for (int s = 0; s < SIGNALS; s++) {
+        expectEqual(
+            reference.READ_COUNTS[s],
+            signals[s].getReadCount(),
+            "Source reads of signal " + s + " after " + where);
+      }
+      for (int group = 0; group < GROUPS; group++) {
+        expectEqual(
+            reference.GROUP_READ_COUNTS[group],
+            bulkReads[group].getReadCount(),
+            "Runs of bulk read " + group + " after " + where);
+      }
+    }
+  }
+
+  private static String readOrFailure(LongSupplier read) {
+    try {
+      return Long.toString(read.getAsLong());
+    } catch (IllegalStateException e) {
+      return e.getMessage();
+    }
+  }
+
+  /** Every scheduler cycle invalidates the default cache exactly once. */
+  private static void invalidatedByScheduler() {
+    CommandScheduler scheduler = CommandScheduler.getInstance();
+    SignalCache cache = SignalCache.getDefault();
+    long[] sourceReads = {0};
+    CachedLongSignal signal = cache.cacheLong(() -> ++sourceReads[0]);
+
+    for (int cycle = 1; cycle <= 10; cycle++) {
+      long generation = cache.getGeneration();
+      scheduler.run();
+      expectEqual(generation + 1, cache.getGeneration(), "Generation after cycle " + cycle);
+      long value = signal.getAsLong();
+      expect(signal.getAsLong() == value, "Signal read twice in cycle " + cycle);
+      expectEqual((long) cycle, sourceReads[0], "Source reads after cycle " + cycle);
+    }
+  }
+}
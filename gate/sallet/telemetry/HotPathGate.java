@@ -0,0 +1,263 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.telemetry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import sallet.command.Command;
+import sallet.command.CommandScheduler;
+import sallet.command.Subsystem;
+import sallet.event.BooleanEvent;
+import sallet.event.EventLoop;
+import sallet.math.filters.Debouncer;
+
+/**
+ * Runs representative workloads of the library's hot paths under a {@link HotPathProbe} and fails
+ * when one allocates more per cycle or has a higher p99 latency than its budget. Run by {@code
+ * gradle hotPathGate}, which {@code gradle check} depends on.
+ *
+ * <p>The budgets live in {@code gate/hot-path-budgets.properties}, one {@code
+ * <workload>.meanBytesPerCycle} and {@code <workload>.p99Nanos} per workload, so raising one is a
+ * reviewed change. A workload without budgets fails, so new workloads cannot slip in unchecked.
+ */
+public final class HotPathGate {
+  /** A workload measured one cycle at a time */
+  private interface Workload {
+    String name();
+
+    void cycle();
+
+    default void close() {}
+  }
+
+  private HotPathGate() {}
+
+  /**
+   * @param args The path of the budgets file
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      throw new IllegalArgumentException("Usage: HotPathGate <budgets file>");
+    }
+    Properties budgets = new Properties();
+    try (InputStream in = Files.newInputStream(Path.of(args[0]))) {
+      budgets.load(in);
+    }
+    int warmupCycles = Integer.parseInt(budgets.getProperty("warmupCycles", "20000"));
+    int measuredCycles = Integer.parseInt(budgets.getProperty("measuredCycles", "20000"));
+
+    if (!HotPathProbe.isAllocationMeasured()) {
+      System.out.println("This JVM does not report per-thread allocation, only latency is gated");
+    }
+
+    // Built one at a time, since the scheduler workloads share the scheduler instance
+    List<Supplier<Workload>> workloads =
+        List.of(
+            () -> eventLoop(400),
+            () -> scheduler("scheduler.run", 40, 8),
+            () -> scheduler("scheduler.run.50x12", 50, 12),
+            () -> debouncers(64));
+    List<String> failures = new ArrayList<>();
+    for (Supplier<Workload> factory : workloads) {
+      Workload workload = factory.get();
+      HotPathProbe probe = new HotPathProbe(workload.name(), measuredCycles);
+      try {
+        // Let the JIT compile the workload before measuring it
+        for (int i = 0; i < warmupCycles; i++) {
+          workload.cycle();
+        }
+        for (int i = 0; i < measuredCycles; i++) {
+          probe.begin();
+          workload.cycle();
+          probe.end();
+        }
+      } finally {
+        workload.close();
+      }
+      System.out.println(probe.formatReport());
+      check(probe, budgets, failures);
+    }
+
+    if (!failures.isEmpty()) {
+      System.out.println();
+      System.out.println("Hot path budgets exceeded:");
+      for (String failure : failures) {
+        System.out.println("  " + failure);
+      }
+      System.exit(1);
+    }
+  }
+
+  private static void check(HotPathProbe probe, Properties budgets, List<String> failures) {
+    String name = probe.getName();
+    String bytesBudget = budgets.getProperty(name + ".meanBytesPerCycle");
+    String nanosBudget = budgets.getProperty(name + ".p99Nanos");
+    if (bytesBudget == null || nanosBudget == null) {
+      failures.add(name + " has no meanBytesPerCycle and p99Nanos budgets");
+      return;
+    }
+    if (probe.getMeanBytes() > Double.parseDouble(bytesBudget)) {
+      failures.add(
+          String.format(
+              "%s allocated %.1f B per cycle, budget %s B", name, probe.getMeanBytes(), bytesBudget));
+    }
+    long p99 = probe.getPercentileNanos(99);
+    if (p99 > Long.parseLong(nanosBudget)) {
+      failures.add(String.format("%s p99 was %d ns, budget %s ns", name, p99, nanosBudget));
+    }
+  }
+
+  /**
+   * A button loop with the given number of bound actions, a quarter each on plain, rising-edge,
+   * debounced and combined events over inputs that change every few cycles.
+   */
+  private static Workload eventLoop(int bindings) {
+    EventLoop loop = new EventLoop();
+    int sources = bindings / 4;
+    boolean[] inputs = new boolean[sources];
+    long[] counter = new long[1];
+    Runnable action = () -> counter[0]++;
+    for (int i = 0; i < sources; i++) {
+      int index = i;
+      BooleanEvent event = new BooleanEvent(loop, () -> inputs[index]);
+      event.ifHigh(action);
+      event.rising().ifHigh(action);
+      event.debounce(0.02).ifHigh(action);
+      event.and(() -> inputs[(index + 1) % sources]).ifHigh(action);
+    }
+    return new Workload() {
+      private int cycle;
+
+      @Override
+      public String name() {
+        return "eventLoop.poll";
+      }
+
+      @Override
+      public void cycle() {
+        // Flip a few inputs every cycle, as a driver would
+        cycle++;
+        inputs[cycle % sources] = !inputs[cycle % sources];
+        inputs[(cycle * 7) % sources] = !inputs[(cycle * 7) % sources];
+        loop.poll();
+      }
+    };
+  }
+
+  private static final class GateSubsystem extends Subsystem {
+    long periodicCount;
+
+    @Override
+    public void periodic() {
+      periodicCount++;
+    }
+  }
+
+  /** A command that finishes after a number of cycles, so the scheduler also sees churn. */
+  private static final class GateCommand extends Command {
+    private final int LIFETIME;
+    private int executeCount;
+
+    GateCommand(int lifetime) {
+      LIFETIME = lifetime;
+    }
+
+    @Override
+    public void initialize() {
+      executeCount = 0;
+    }
+
+    @Override
+    public void execute() {
+      executeCount++;
+    }
+
+    @Override
+    public boolean isFinished() {
+      return LIFETIME > 0 && executeCount >= LIFETIME;
+    }
+  }
+
+  /**
+   * A scheduler cycle with the given number of commands, one default command per subsystem and
+   * the rest free-running, a quarter of which finish and are scheduled again every 50 cycles.
+   */
+  private static Workload scheduler(String name, int commands, int subsystems) {
+    CommandScheduler scheduler = CommandScheduler.getInstance();
+    GateSubsystem[] registered = new GateSubsystem[subsystems];
+    List<GateCommand> free = new ArrayList<>();
+    for (int i = 0; i < subsystems; i++) {
+      registered[i] = new GateSubsystem();
+      GateCommand command = new GateCommand(0);
+      command.addRequirements(registered[i]);
+      registered[i].setDefaultCommand(command);
+    }
+    for (int i = subsystems; i < commands; i++) {
+      GateCommand command = new GateCommand(i % 4 == 0 ? 50 : 0);
+      command.schedule();
+      free.add(command);
+    }
+    GateCommand[] churning =
+        free.stream().filter(command -> command.LIFETIME > 0).toArray(GateCommand[]::new);
+    scheduler.run();
+
+    return new Workload() {
+      @Override
+      public String name() {
+        return name;
+      }
+
+      @Override
+      public void cycle() {
+        for (GateCommand command : churning) {
+          if (!command.isScheduled()) {
+            command.schedule();
+          }
+        }
+        scheduler.run();
+      }
+
+      @Override
+      public void close() {
+        scheduler.cancelAll();
+        scheduler.unregisterSubsystem(registered);
+      }
+    };
+  }
+
+  /** The given number of debouncers of every type, each fed an input that bounces. */
+  private static Workload debouncers(int count) {
+    Debouncer[] debouncers = new Debouncer[count];
+    Debouncer.DebounceType[] types = Debouncer.DebounceType.values();
+    for (int i = 0; i < count; i++) {
+      debouncers[i] = new Debouncer(0.001 * (1 + i % 5), types[i % types.length]);
+    }
+    return new Workload() {
+      private int tick;
+      private int settled;
+
+      @Override
+      public String name() {
+        return "debouncer.calculate";
+      }
+
+      @Override
+      public void cycle() {
+        tick++;
+        for (int i = 0; i < debouncers.length; i++) {
+          if (debouncers[i].calculate(((tick + i) & 0x10) != 0)) {
+            settled++;
+          }
+        }
+      }
+    };
+  }
+}
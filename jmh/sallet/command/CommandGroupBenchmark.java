@@ -0,0 +1,141 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building and of running one cycle of a composition nested N levels deep. Each level is a
+ * parallel group of a command and the next level, alternating between {@link ParallelCommandGroup}
+ * and {@link ParallelDeadlineGroup} so the levels are not merged, and every command executes every
+ * cycle. The flattened groups are compared against the same composition built from plain nested
+ * commands that call into their members, and building with and without composition site capture.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandGroupBenchmark {
+  @Param({"1", "5", "20"})
+  public int depth;
+
+  private CommandScheduler scheduler;
+  private Command flattened;
+  private Command nested;
+
+  private static final class CountingCommand extends Command {
+    long executeCount;
+
+    @Override
+    public void execute() {
+      executeCount++;
+    }
+  }
+
+  /** A parallel composition that calls into its members, as groups did before flattening */
+  private static final class NestedParallel extends Command {
+    private final Command[] MEMBERS;
+
+    NestedParallel(Command... members) {
+      MEMBERS = members;
+    }
+
+    @Override
+    public void initialize() {
+      for (Command member : MEMBERS) {
+        member.initialize();
+      }
+    }
+
+    @Override
+    public void execute() {
+      for (Command member : MEMBERS) {
+        member.execute();
+      }
+    }
+
+    @Override
+    public boolean isFinished() {
+      for (Command member : MEMBERS) {
+        if (!member.isFinished()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  @Setup
+  public void setup() {
+    scheduler = CommandScheduler.getInstance();
+    flattened = build(depth);
+    flattened.initialize();
+    nested = buildNested(depth);
+    nested.initialize();
+  }
+
+  @TearDown
+  public void tearDown() {
+    scheduler.setCompositionSiteCapture(false);
+  }
+
+  private static Command build(int levels) {
+    Command command = new CountingCommand();
+    for (int i = 0; i < levels; i++) {
+      command =
+          i % 2 == 0
+              ? new ParallelCommandGroup(new CountingCommand(), command)
+              : new ParallelDeadlineGroup(command, new CountingCommand());
+    }
+    return command;
+  }
+
+  private static Command buildNested(int levels) {
+    Command command = new CountingCommand();
+    for (int i = 0; i < levels; i++) {
+      command = new NestedParallel(new CountingCommand(), command);
+    }
+    return command;
+  }
+
+  @Benchmark
+  public Command build() {
+    return build(depth);
+  }
+
+  @Benchmark
+  public Command buildCapturingSites() {
+    scheduler.setCompositionSiteCapture(true);
+    Command command = build(depth);
+    scheduler.setCompositionSiteCapture(false);
+    return command;
+  }
+
+  @Benchmark
+  public boolean cycleFlattened() {
+    flattened.execute();
+    return flattened.isFinished();
+  }
+
+  @Benchmark
+  public boolean cycleNested() {
+    nested.execute();
+    return nested.isFinished();
+  }
+}
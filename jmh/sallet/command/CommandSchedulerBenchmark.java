@@ -0,0 +1,94 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one steady-state {@link CommandScheduler#run()} cycle with N scheduled commands and M
+ * registered subsystems. The first M commands are the subsystems' default commands, the rest
+ * require nothing and never finish.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandSchedulerBenchmark {
+  @Param({"10", "50"})
+  public int commands;
+
+  @Param({"4", "12"})
+  public int subsystems;
+
+  private CommandScheduler scheduler;
+  private Subsystem[] registered;
+
+  private static final class CountingSubsystem extends Subsystem {
+    long periodicCount;
+
+    @Override
+    public void periodic() {
+      periodicCount++;
+    }
+  }
+
+  private static final class CountingCommand extends Command {
+    long executeCount;
+
+    @Override
+    public void execute() {
+      executeCount++;
+    }
+  }
+
+  @Setup
+  public void setup() {
+    scheduler = CommandScheduler.getInstance();
+    scheduler.getWatchdog().setEnabled(false);
+
+    registered = new Subsystem[subsystems];
+    for (int i = 0; i < subsystems; i++) {
+      registered[i] = new CountingSubsystem();
+    }
+    for (int i = 0; i < commands; i++) {
+      Command command = new CountingCommand();
+      if (i < subsystems) {
+        command.addRequirements(registered[i]);
+        registered[i].setDefaultCommand(command);
+      } else {
+        command.schedule();
+      }
+    }
+    // Let the default commands get scheduled before measuring
+    scheduler.run();
+  }
+
+  @TearDown
+  public void tearDown() {
+    scheduler.cancelAll();
+    scheduler.unregisterSubsystem(registered);
+    scheduler.getWatchdog().setEnabled(true);
+  }
+
+  @Benchmark
+  public CommandScheduler run() {
+    scheduler.run();
+    return scheduler;
+  }
+}
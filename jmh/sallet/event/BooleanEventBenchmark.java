@@ -0,0 +1,72 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.event;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sallet.math.universal.MathSharedStore;
+
+/**
+ * Cost of polling a deep {@link BooleanEvent} composition chain. Every level of the chain applies
+ * one of and/or/negate/rising/debounce in turn, and the source signal toggles every poll so edges
+ * propagate through the chain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BooleanEventBenchmark {
+  @Param({"5", "20", "100"})
+  public int depth;
+
+  private EventLoop loop;
+  private BooleanEvent tail;
+  private boolean source;
+
+  @Setup
+  public void setup() {
+    MathSharedStore.bindTimestampSupplier(() -> System.nanoTime() / 1e9);
+
+    loop = new EventLoop();
+    BooleanEvent other = new BooleanEvent(loop, () -> true);
+    BooleanEvent event = new BooleanEvent(loop, () -> source);
+    for (int i = 0; i < depth; i++) {
+      switch (i % 5) {
+        case 0 -> event = event.and(other);
+        case 1 -> event = event.or(event.negate());
+        case 2 -> event = event.negate();
+        case 3 -> event = event.rising();
+        default -> event = event.debounce(0.0);
+      }
+    }
+    tail = event;
+  }
+
+  @TearDown
+  public void tearDown() {
+    MathSharedStore.bindTimestampSupplier(null);
+  }
+
+  @Benchmark
+  public boolean poll() {
+    source = !source;
+    loop.poll();
+    return tail.getAsBoolean();
+  }
+}
@@ -0,0 +1,100 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sallet.math.universal.MathSharedStore;
+
+/**
+ * Cost of polling the pressed, rising and falling events of many buttons, as views of a {@link
+ * ButtonBank} versus as individual {@link BooleanEvent}s. One button toggles every poll, the others
+ * are held.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ButtonBankBenchmark {
+  @Param({"16", "64", "128"})
+  public int buttons;
+
+  @Param({"false", "true"})
+  public boolean debounced;
+
+  private boolean[] states;
+  private int toggled;
+
+  private EventLoop bankLoop;
+  private EventLoop eventLoop;
+
+  @Setup
+  public void setup() {
+    MathSharedStore.bindTimestampSupplier(() -> System.nanoTime() / 1e9);
+    states = new boolean[buttons];
+
+    BooleanSupplier[] signals = new BooleanSupplier[buttons];
+    for (int i = 0; i < buttons; i++) {
+      int button = i;
+      signals[i] = () -> states[button];
+    }
+
+    bankLoop = new EventLoop();
+    ButtonBank bank = new ButtonBank(bankLoop, signals);
+    if (debounced) {
+      bank.setDebounce(0.001);
+    }
+    eventLoop = new EventLoop();
+    for (int i = 0; i < buttons; i++) {
+      bank.pressed(i);
+      bank.rising(i);
+      bank.falling(i);
+
+      BooleanEvent pressed = new BooleanEvent(eventLoop, signals[i]);
+      if (debounced) {
+        pressed = pressed.debounce(0.001);
+      }
+      pressed.rising();
+      pressed.falling();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    MathSharedStore.bindTimestampSupplier(null);
+  }
+
+  @Benchmark
+  public void bank() {
+    toggle();
+    bankLoop.poll();
+  }
+
+  @Benchmark
+  public void events() {
+    toggle();
+    eventLoop.poll();
+  }
+
+  private void toggle() {
+    states[toggled] = !states[toggled];
+    toggled = (toggled + 1) % buttons;
+  }
+}
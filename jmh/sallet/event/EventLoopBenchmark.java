@@ -0,0 +1,47 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.event;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of a single {@link EventLoop#poll()} as the number of bound actions grows. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventLoopBenchmark {
+  @Param({"10", "100", "1000"})
+  public int bindings;
+
+  private EventLoop loop;
+  private long counter;
+
+  @Setup
+  public void setup() {
+    loop = new EventLoop();
+    for (int i = 0; i < bindings; i++) {
+      loop.bind(() -> counter++);
+    }
+  }
+
+  @Benchmark
+  public long poll() {
+    loop.poll();
+    return counter;
+  }
+}
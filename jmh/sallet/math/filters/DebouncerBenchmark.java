@@ -0,0 +1,53 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.filters;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sallet.math.universal.MathSharedStore;
+
+/** Throughput of {@link Debouncer#calculate(boolean)} for each debounce type. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DebouncerBenchmark {
+  @Param({"RISING", "FALLING", "BOTH"})
+  public Debouncer.DebounceType type;
+
+  private Debouncer debouncer;
+  private int tick;
+
+  @Setup
+  public void setup() {
+    MathSharedStore.bindTimestampSupplier(() -> System.nanoTime() / 1e9);
+    debouncer = new Debouncer(0.001, type);
+  }
+
+  @TearDown
+  public void tearDown() {
+    MathSharedStore.bindTimestampSupplier(null);
+  }
+
+  @Benchmark
+  public boolean calculate() {
+    // Hold each input for a while so both the settled and the bouncing paths are exercised
+    return debouncer.calculate((++tick & 0x40) != 0);
+  }
+}
@@ -0,0 +1,89 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.filters;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost per sample of the double filters with a window of N samples, and of filtering 32 channels
+ * through a {@link LinearFilterBank} in one call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+  private static final int CHANNELS = 32;
+
+  @Param({"5", "25"})
+  public int window;
+
+  private LinearFilter movingAverage;
+  private LinearFilter singlePole;
+  private MedianFilter median;
+  private SlewRateLimiter slewRateLimiter;
+  private LinearFilterBank bank;
+  private final double[] inputs = new double[CHANNELS];
+  private final double[] outputs = new double[CHANNELS];
+  private double sample;
+
+  @Setup
+  public void setup() {
+    movingAverage = LinearFilter.movingAverage(window);
+    singlePole = LinearFilter.singlePoleIIR(0.1, 0.02);
+    median = new MedianFilter(window);
+    slewRateLimiter = new SlewRateLimiter(1.0);
+    bank = LinearFilterBank.movingAverage(CHANNELS, window);
+  }
+
+  private double nextSample() {
+    // Cheap pseudo-random walk so the median window keeps reordering
+    sample = sample * 0.9 + ((Double.doubleToRawLongBits(sample) * 0x9E3779B97F4A7C15L) >>> 40);
+    return sample;
+  }
+
+  @Benchmark
+  public double movingAverage() {
+    return movingAverage.calculate(nextSample());
+  }
+
+  @Benchmark
+  public double singlePoleIIR() {
+    return singlePole.calculate(nextSample());
+  }
+
+  @Benchmark
+  public double median() {
+    return median.calculate(nextSample());
+  }
+
+  @Benchmark
+  public double slewRateLimiter() {
+    return slewRateLimiter.calculate(nextSample());
+  }
+
+  @Benchmark
+  public double[] bank() {
+    double next = nextSample();
+    for (int c = 0; c < CHANNELS; c++) {
+      inputs[c] = next + c;
+    }
+    bank.calculate(inputs, outputs);
+    return outputs;
+  }
+}
@@ -0,0 +1,101 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.interpolation;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of recording a pose at 200 Hz and looking it up at a few past times, as a vision frame
+ * would, with a {@link TimeInterpolatableChannelBuffer} and with a {@code TreeMap} of boxed times
+ * to pose arrays trimmed to the same window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeInterpolatableBufferBenchmark {
+  private static final double PERIOD_SECONDS = 0.005;
+  private static final long PERIOD_NANOS = 5_000_000L;
+
+  @Param({"0.5", "2.0"})
+  public double historySeconds;
+
+  @Param({"4"})
+  public int lookups;
+
+  private TimeInterpolatableChannelBuffer buffer;
+  private TreeMap<Double, double[]> tree;
+  private final double[] pose = new double[3];
+  private long nowNanos;
+
+  @Setup
+  public void setup() {
+    buffer = TimeInterpolatableChannelBuffer.pose(historySeconds, 1.0 / PERIOD_SECONDS);
+    tree = new TreeMap<>();
+    // Fill the window so every run measures the steady state
+    for (int i = 0; i < historySeconds / PERIOD_SECONDS + 10; i++) {
+      nowNanos += PERIOD_NANOS;
+      record();
+      recordTree();
+    }
+  }
+
+  private void record() {
+    buffer.addSampleNanos(nowNanos, nowNanos * 1e-9, 0.5, Math.sin(nowNanos * 1e-9));
+  }
+
+  private void recordTree() {
+    double now = nowNanos * 1e-9;
+    tree.put(now, new double[] {now, 0.5, Math.sin(now)});
+    tree.headMap(now - historySeconds).clear();
+  }
+
+  /** Latency of the i-th lookup of a frame, spread over 50 to 150 ms. */
+  private long latencyNanos(int i) {
+    return 50_000_000L + (100_000_000L * i) / lookups + 1_234_567L;
+  }
+
+  @Benchmark
+  public double[] buffer() {
+    nowNanos += PERIOD_NANOS;
+    record();
+    for (int i = 0; i < lookups; i++) {
+      buffer.getSampleNanos(nowNanos - latencyNanos(i), pose);
+    }
+    return pose;
+  }
+
+  @Benchmark
+  public double[] treeMap() {
+    nowNanos += PERIOD_NANOS;
+    recordTree();
+    for (int i = 0; i < lookups; i++) {
+      double time = (nowNanos - latencyNanos(i)) * 1e-9;
+      Map.Entry<Double, double[]> floor = tree.floorEntry(time);
+      Map.Entry<Double, double[]> ceiling = tree.ceilingEntry(time);
+      double t = (time - floor.getKey()) / (ceiling.getKey() - floor.getKey());
+      for (int c = 0; c < 3; c++) {
+        double start = floor.getValue()[c];
+        pose[c] = start + (ceiling.getValue()[c] - start) * t;
+      }
+    }
+    return pose;
+  }
+}
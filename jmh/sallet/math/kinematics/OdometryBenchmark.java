@@ -0,0 +1,118 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.kinematics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sallet.math.geometry.MutablePose2d;
+import sallet.math.geometry.MutableRotation2d;
+import sallet.math.geometry.Pose2d;
+import sallet.math.geometry.Rotation2d;
+import sallet.math.geometry.Transform2d;
+import sallet.math.geometry.Translation2d;
+import sallet.math.geometry.Twist2d;
+
+/**
+ * Cost of one odometry update as it runs in a drive subsystem's periodic method, in place and
+ * through the immutable value API, which allocates a new rotation, twist and pose every cycle. The
+ * allocation rate reported by the GC profiler is the point: the in-place updates should show 0
+ * B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OdometryBenchmark {
+  private static final double TRACK_WIDTH = 0.6;
+
+  private final MutableRotation2d gyro = new MutableRotation2d();
+  private DifferentialDriveOdometry differential;
+  private MecanumDriveOdometry mecanum;
+  private MecanumDriveKinematics mecanumKinematics;
+  private final MutablePose2d field = new MutablePose2d();
+  private final Transform2d cameraOffset = new Transform2d(0.3, 0.1, Rotation2d.fromDegrees(15));
+
+  // State of the immutable baseline
+  private Pose2d immutablePose = Pose2d.kZero;
+  private Rotation2d previousAngle = Rotation2d.kZero;
+  private double previousLeft;
+  private double previousRight;
+
+  private int cycle;
+
+  @Setup
+  public void setup() {
+    differential = new DifferentialDriveOdometry(Rotation2d.kZero, 0.0, 0.0);
+    mecanumKinematics =
+        new MecanumDriveKinematics(
+            new Translation2d(0.3, 0.25),
+            new Translation2d(0.3, -0.25),
+            new Translation2d(-0.3, 0.25),
+            new Translation2d(-0.3, -0.25));
+    mecanum =
+        new MecanumDriveOdometry(
+            mecanumKinematics, Rotation2d.kZero, new MecanumDriveWheelPositions());
+  }
+
+  /** Advances the simulated sensors along a gentle curve. */
+  private double advance() {
+    cycle++;
+    gyro.set(cycle * 1e-3);
+    return cycle * 0.02;
+  }
+
+  @Benchmark
+  public Pose2d differentialInPlace() {
+    double distance = advance();
+    return differential.update(gyro, distance, distance * 1.01);
+  }
+
+  @Benchmark
+  public Pose2d mecanumInPlace() {
+    double distance = advance();
+    return mecanum.update(gyro, distance, distance * 1.01, distance, distance * 1.01);
+  }
+
+  @Benchmark
+  public Pose2d differentialImmutable() {
+    double distance = advance();
+    double left = distance;
+    double right = distance * 1.01;
+    Rotation2d angle = new Rotation2d(gyro.getRadians());
+    Twist2d twist =
+        new Twist2d(
+            (left - previousLeft + right - previousRight) / 2.0,
+            0.0,
+            angle.minus(previousAngle).getRadians());
+    previousLeft = left;
+    previousRight = right;
+    previousAngle = angle;
+    Pose2d next = immutablePose.exp(twist);
+    immutablePose = new Pose2d(next.getTranslation(), angle);
+    return immutablePose;
+  }
+
+  @Benchmark
+  public Pose2d cameraPoseInto() {
+    return differential.getPose().transformByInto(cameraOffset, field);
+  }
+
+  @Benchmark
+  public Pose2d cameraPose() {
+    return differential.getPose().transformBy(cameraOffset);
+  }
+}
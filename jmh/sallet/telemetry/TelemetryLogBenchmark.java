@@ -0,0 +1,65 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.telemetry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loop thread cost of {@link TelemetryLog#sample()} with N registered double signals, while the
+ * writer thread drains the ring to a temporary file. This runs far faster than any real loop, so
+ * the writer falls behind and records get dropped; dropping costs the loop thread about as much as
+ * recording.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TelemetryLogBenchmark {
+  @Param({"1", "16"})
+  public int signals;
+
+  private Path file;
+  private TelemetryLog log;
+  private double value;
+
+  @Setup
+  public void setup() throws IOException {
+    file = Files.createTempFile("telemetry", ".slog");
+    log = new TelemetryLog(file);
+    for (int i = 0; i < signals; i++) {
+      log.addDoubleSignal("signal" + i, () -> value);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    log.close();
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  public TelemetryLog sample() {
+    value += 1.0;
+    log.sample();
+    return log;
+  }
+}
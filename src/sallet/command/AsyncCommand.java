@@ -0,0 +1,213 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A command whose work runs off the loop thread, for blocking work such as loading a trajectory
+ * file, waiting on a vision result or writing a config, which would otherwise stall every
+ * subsystem for as long as it takes.
+ *
+ * <p>When the command is scheduled, {@link #compute(BooleanSupplier)} is handed to an executor: a
+ * virtual thread per command when the runtime has them, otherwise a small bounded pool of daemon
+ * threads. The scheduler keeps calling {@link #execute()} on the loop thread meanwhile and polls
+ * for completion without ever blocking. The result is delivered to {@link #onSuccess(Object)} and a
+ * thrown exception to {@link #onFailure(Throwable)}, both on the loop thread as the command ends.
+ * Neither is delivered by throwing from {@link #end(boolean)}, which would leave the command
+ * scheduled and holding its requirements.
+ *
+ * <p>If the command is interrupted, by {@link #cancel()} or by a command needing one of its
+ * requirements, the work is asked to stop: the supplier passed to {@link #compute(BooleanSupplier)}
+ * starts returning true and its thread is interrupted, which wakes blocking I/O and sleeps. The work
+ * is expected to give up promptly, and whatever it returns is dropped.
+ *
+ * @param <T> The type of the result of the work
+ */
+public abstract class AsyncCommand<T> extends Command {
+  private static final Executor VIRTUAL_THREADS = virtualThreadExecutor();
+
+  private final Executor EXECUTOR;
+
+  // The work started by the last initialize(), null before the first
+  private Execution execution;
+
+  /** Creates a command that runs its work on the {@link #getDefaultExecutor() default executor}. */
+  protected AsyncCommand() {
+    this(getDefaultExecutor());
+  }
+
+  /**
+   * Creates a command that runs its work on the given executor.
+   *
+   * @param executor The executor to run the work on
+   */
+  protected AsyncCommand(Executor executor) {
+    EXECUTOR = requireNonNullParam(executor, "executor", "AsyncCommand");
+  }
+
+  /**
+   * @return The executor used by commands that are not given one: a virtual thread per task when
+   *     the runtime supports them, otherwise a pool of daemon threads, one per processor and at least
+   *     two, that is only created when first used
+   */
+  public static Executor getDefaultExecutor() {
+    return VIRTUAL_THREADS != null ? VIRTUAL_THREADS : BoundedPool.EXECUTOR;
+  }
+
+  /**
+   * @return Whether the default executor runs each task on a virtual thread
+   */
+  public static boolean usesVirtualThreads() {
+    return VIRTUAL_THREADS != null;
+  }
+
+  /**
+   * The work of the command, run off the loop thread. Must not touch the scheduler or anything else
+   * owned by the loop thread; hand results back through the return value instead.
+   *
+   * @param cancelled Returns true once the command has been interrupted, long-running work should
+   *     check it and give up
+   * @return The result of the work, passed to {@link #onSuccess(Object)}
+   * @throws Exception If the work fails, passed to {@link #onFailure(Throwable)}
+   */
+  protected abstract T compute(BooleanSupplier cancelled) throws Exception;
+
+  /**
+   * Called on the loop thread when the work has returned and the command ends normally.
+   *
+   * @param result The value returned by the work
+   */
+  protected void onSuccess(T result) {}
+
+  /**
+   * Called on the loop thread when the work has thrown and the command ends. By default the failure
+   * is thrown out of {@link CommandScheduler#run()} once the cycle has finished, after the command
+   * has been removed and has released its requirements, with checked exceptions wrapped in a
+   * {@link RuntimeException}. Overrides must not throw, since that would leave the command running.
+   *
+   * @param failure What the work threw
+   */
+  protected void onFailure(Throwable failure) {
+    if (failure instanceof RuntimeException || failure instanceof Error) {
+      CommandScheduler.getInstance().rethrowAfterCycle(failure);
+    } else {
+      CommandScheduler.getInstance()
+          .rethrowAfterCycle(
+              new RuntimeException(getName() + " failed on its worker thread", failure));
+    }
+  }
+
+  /**
+   * Called on the loop thread when the command is interrupted. The work has been asked to stop but
+   * may still be running.
+   */
+  protected void onCancel() {}
+
+  /**
+   * @return Whether the work started by the last scheduling of this command has completed
+   */
+  public final boolean isDone() {
+    return execution != null && execution.TASK.isDone();
+  }
+
+  @Override
+  public final void initialize() {
+    execution = new Execution();
+    EXECUTOR.execute(execution.TASK);
+  }
+
+  @Override
+  public final boolean isFinished() {
+    return execution.TASK.isDone();
+  }
+
+  @Override
+  public final void end(boolean interrupted) {
+    FutureTask<T> task = execution.TASK;
+    if (interrupted) {
+      task.cancel(true);
+      onCancel();
+      return;
+    }
+
+    T result;
+    try {
+      // Only called once the task is done, so this does not block
+      result = task.get();
+    } catch (ExecutionException e) {
+      onFailure(e.getCause());
+      return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    onSuccess(result);
+  }
+
+  /** One run of the work, cancelled through its task */
+  private final class Execution implements Callable<T>, BooleanSupplier {
+    private final FutureTask<T> TASK = new FutureTask<>(this);
+
+    @Override
+    public T call() throws Exception {
+      return compute(this);
+    }
+
+    @Override
+    public boolean getAsBoolean() {
+      return TASK.isCancelled();
+    }
+  }
+
+  /**
+   * @return An executor that starts a virtual thread per task, or null if the runtime has none
+   */
+  private static Executor virtualThreadExecutor() {
+    // Looked up reflectively so the library still runs on runtimes without virtual threads
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /** Holds the fallback pool, so its threads are only created when it is first used */
+  private static final class BoundedPool {
+    private static final Executor EXECUTOR = create();
+
+    private static Executor create() {
+      int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+      AtomicInteger threadCount = new AtomicInteger();
+      ThreadPoolExecutor pool =
+          new ThreadPoolExecutor(
+              threads,
+              threads,
+              30,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(),
+              task -> {
+                Thread thread = new Thread(task, "sallet-async-" + threadCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+              });
+      // Idle threads exit, so a robot that stops using async commands does not keep them around
+      pool.allowCoreThreadTimeOut(true);
+      return pool;
+    }
+  }
+}
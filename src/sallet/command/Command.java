@@ -3,17 +3,40 @@
 
 package sallet.command;
 
-import java.util.HashSet;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /** 
  * A command is a complete action that can be performed by the robot
  * 
- * All commands are run synchronously, without multi-threading
+ * All commands are run synchronously on the thread calling {@link CommandScheduler#run()}. Only
+ * the periodic methods of thread-safe subsystems may run on other threads, see {@link
+ * CommandScheduler#enableParallelPeriodic(int)}
  */
 public abstract class Command {
-  // What subsystems this command makes use of
-  private final Set<Subsystem> REQUIREMENTS = new HashSet<>();
+  // What subsystems this command makes use of, as a list for iteration and as a bitmask over the
+  // subsystem IDs so the scheduler can check for conflicts with a single AND per word
+  private Subsystem[] requirementList = new Subsystem[4];
+  private int requirementCount;
+  long[] requirementMask = new long[1];
+
+  // Read-only view over the requirement list
+  private final Set<Subsystem> REQUIREMENTS = new RequirementSet();
+
+  // Scheduler bookkeeping, kept on the command so the scheduler never has to hash it
+  boolean scheduled;
+  boolean ending;
+  // Number of cycles the scheduler has put off executing this command, see Priority
+  long deferredCount;
+  // Whether this command is part of a composition, and where it was composed if site capture is on
+  boolean composed;
+  Exception compositionSite;
+  // ID naming this command in telemetry logs, read and written only by
+  // sallet.telemetry.TelemetryIds. -1 until the first log records it
+  private int telemetryId = -1;
 
   /** Initial routine of the command - called once at start */
   public void initialize() {}
@@ -35,6 +58,13 @@ public abstract class Command {
     return false;
   }
 
+  /**
+   * @return The name of this command
+   */
+  public String getName() {
+    return this.getClass().getSimpleName();
+  }
+
   /**
    * @return The required subsystems for this command
    */
@@ -50,13 +80,42 @@ public abstract class Command {
    */
   public final void addRequirements(Subsystem... requiredSubsystems) {
     for (Subsystem subsystem : requiredSubsystems) {
-      REQUIREMENTS.add(subsystem);
+      addRequirement(subsystem);
+    }
+  }
+
+  /**
+   * Adds every requirement of another command, used by compositions.
+   *
+   * @param command The command whose requirements to add
+   */
+  final void addRequirementsOf(Command command) {
+    for (int i = 0; i < command.requirementCount; i++) {
+      addRequirement(command.requirementList[i]);
+    }
+  }
+
+  private void addRequirement(Subsystem subsystem) {
+    if (hasRequirement(subsystem)) {
+      return;
+    }
+
+    int id = CommandScheduler.getInstance().idOf(subsystem);
+    int word = id >>> 6;
+    if (word >= requirementMask.length) {
+      requirementMask = Arrays.copyOf(requirementMask, word + 1);
+    }
+    requirementMask[word] |= 1L << id;
+
+    if (requirementCount == requirementList.length) {
+      requirementList = Arrays.copyOf(requirementList, requirementCount * 2);
     }
+    requirementList[requirementCount++] = subsystem;
   }
 
   /** Schedules this command to be run */
   public void schedule() {
-    // CS implementation
+    CommandScheduler.getInstance().schedule(this);
   }
 
   /** 
@@ -64,7 +123,7 @@ public abstract class Command {
    * current end behavior
    */
   public void cancel() {
-    // CS implementation
+    CommandScheduler.getInstance().cancel(this);
   }
 
   /**
@@ -74,8 +133,63 @@ public abstract class Command {
    * @return If the command is scheduled to be run or is running
    */
   public boolean isScheduled() {
-    // CS implementation
-    return false;
+    return CommandScheduler.getInstance().isScheduled(this);
+  }
+
+  /**
+   * Decorates this command with a timeout, after which it is interrupted.
+   *
+   * @param seconds The timeout in seconds
+   * @return A race between this command and a {@link WaitCommand}
+   */
+  public ParallelRaceGroup withTimeout(double seconds) {
+    return new ParallelRaceGroup(this, new WaitCommand(seconds));
+  }
+
+  /**
+   * Decorates this command with commands to run after it, in sequence.
+   *
+   * @param next The commands to run next
+   * @return A sequence of this command and the given commands
+   */
+  public SequentialCommandGroup andThen(Command... next) {
+    SequentialCommandGroup group = new SequentialCommandGroup(this);
+    group.addCommands(next);
+    return group;
+  }
+
+  /**
+   * Decorates this command with commands to run at the same time, finishing once all have.
+   *
+   * @param parallel The commands to run alongside this one
+   * @return A parallel group of this command and the given commands
+   */
+  public ParallelCommandGroup alongWith(Command... parallel) {
+    ParallelCommandGroup group = new ParallelCommandGroup(this);
+    group.addCommands(parallel);
+    return group;
+  }
+
+  /**
+   * Decorates this command with commands to run at the same time, finishing once any one has.
+   *
+   * @param parallel The commands to race this one with
+   * @return A race group of this command and the given commands
+   */
+  public ParallelRaceGroup raceWith(Command... parallel) {
+    ParallelRaceGroup group = new ParallelRaceGroup(this);
+    group.addCommands(parallel);
+    return group;
+  }
+
+  /**
+   * Decorates this command with commands to run at the same time, finishing once this one has.
+   *
+   * @param parallel The commands to run until this one finishes
+   * @return A deadline group with this command as the deadline
+   */
+  public ParallelDeadlineGroup deadlineWith(Command... parallel) {
+    return new ParallelDeadlineGroup(this, parallel);
   }
 
   /**
@@ -85,7 +199,12 @@ public abstract class Command {
    * @return If the passed subsystem is required by this command
    */
   public boolean hasRequirement(Subsystem requirement) {
-    return getRequirements().contains(requirement);
+    int id = requirement.id;
+    if (id < 0) {
+      return false;
+    }
+    int word = id >>> 6;
+    return word < requirementMask.length && (requirementMask[word] & (1L << id)) != 0;
   }
 
   /**
@@ -113,4 +232,67 @@ public abstract class Command {
     /** This command continues, and the incoming command is not scheduled. */
     kCancelIncoming
   }
+
+  /**
+   * How important it is that the command executes every cycle. Only used once deadline scheduling
+   * is enabled with {@link CommandScheduler#enableDeadlineScheduling(double)}.
+   *
+   * @return The priority class of this command
+   */
+  public Priority getPriority() {
+    return Priority.kNormal;
+  }
+
+  /**
+   * An enum describing how important it is that a command executes every cycle. With deadline
+   * scheduling enabled, commands run class by class in this order, and once the cycle is past its
+   * deadline the scheduler defers the rest of every class but {@link #kCritical} to a later cycle.
+   */
+  public enum Priority {
+    /** Executes every cycle no matter how late, such as drivetrain or arm control. */
+    kCritical,
+    /** Deferred only after every critical command has run. */
+    kHigh,
+    /**
+     * Deferred before high priority commands.
+     *
+     * <p>This is the default priority.
+     */
+    kNormal,
+    /** Deferred first, such as LED animations or telemetry. */
+    kLow
+  }
+
+  /** Unmodifiable {@link Set} view of the requirement list, backed by the requirement bitmask */
+  private final class RequirementSet extends AbstractSet<Subsystem> {
+    @Override
+    public int size() {
+      return requirementCount;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return o instanceof Subsystem && hasRequirement((Subsystem) o);
+    }
+
+    @Override
+    public Iterator<Subsystem> iterator() {
+      return new Iterator<>() {
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+          return index < requirementCount;
+        }
+
+        @Override
+        public Subsystem next() {
+          if (index >= requirementCount) {
+            throw new NoSuchElementException();
+          }
+          return requirementList[index++];
+        }
+      };
+    }
+  }
 }
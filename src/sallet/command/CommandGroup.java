@@ -0,0 +1,384 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.util.Arrays;
+
+/**
+ * Base of the command groups. A group is a composition of commands that runs as a single command,
+ * requiring every subsystem its members require.
+ *
+ * <p>Rather than calling into its members, which call into their own members in turn, a group
+ * flattens the whole composition the first time it is scheduled into one tree of nodes laid out in
+ * preorder in a few parallel arrays: the kind and run state of each node, the command of each
+ * leaf, and the parent and subtree end of each node. Nested groups become subtrees of that tree,
+ * and sequences and parallel groups directly nested in a group of the same kind are merged into
+ * it, so a sequence of sequences is a single sequence. Building a group only records its members,
+ * so composing N levels costs O(N).
+ *
+ * <p>Each cycle the group makes one pass over its arrays, skipping every subtree that is not
+ * running, and only calls into the commands that are. Finishing commands are handled as events:
+ * a finished member of a sequence starts the next member right away, and a parallel group is
+ * checked once the pass has moved past it, which keeps the order of calls the same as if every
+ * group ran its members itself. Ending a subtree is a single linear scan over its range. The pass
+ * has a small fixed cost, so a shallow group costs a few nanoseconds more per cycle than one that
+ * calls into its members would; the saving only shows from about five levels deep.
+ *
+ * <p>Commands added to a group are {@link CommandScheduler#registerComposedCommands(Command...)
+ * marked as composed}, and a group that has been added to another no longer runs by itself.
+ */
+public abstract class CommandGroup extends Command {
+  private static final int INITIAL_CAPACITY = 4;
+
+  // Node kinds
+  static final byte LEAF = 0;
+  static final byte SEQUENCE = 1;
+  static final byte PARALLEL = 2;
+  static final byte RACE = 3;
+  static final byte DEADLINE = 4;
+
+  // Node states
+  private static final byte IDLE = 0;
+  private static final byte RUNNING = 1;
+  private static final byte FINISHED = 2;
+
+  private final byte KIND;
+  private Command[] members = new Command[INITIAL_CAPACITY];
+  private int memberCount;
+
+  private boolean cancelIncoming;
+  private Command.Priority priority = Command.Priority.kLow;
+
+  // The flattened composition in preorder, node 0 being this group, built on first initialize. The
+  // subtree of node n is the range [n, ends[n]), and its children are n + 1, ends[n + 1], ...
+  private byte[] kinds;
+  private Command[] leaves;
+  private int[] ends;
+  private int[] parents;
+  private int nodeCount;
+
+  private byte[] states;
+  // Pass in which each node was started, so it is not run again in that pass
+  private int[] startedPasses;
+  private int pass;
+  // Parallel groups waiting to be checked once the pass moves past them, and whether each node is
+  // among them. A group leaves the queue when it is checked, so a member finishing after that
+  // queues it again
+  private int[] checks;
+  private boolean[] queued;
+  private int checkCount;
+
+  /**
+   * Creates an empty group.
+   *
+   * @param kind The kind of group
+   */
+  CommandGroup(byte kind) {
+    KIND = kind;
+  }
+
+  /**
+   * Adds commands to the end of the group. Groups can only be added to while they are not
+   * scheduled and not part of another group.
+   *
+   * @param commands Commands to add
+   */
+  public final void addCommands(Command... commands) {
+    if (scheduled || composed) {
+      throw new IllegalStateException(
+          "Commands cannot be added to a composition while it is scheduled or composed");
+    }
+    for (Command command : commands) {
+      requireNonNullParam(command, "command", "addCommands");
+    }
+    if (KIND != SEQUENCE) {
+      // Parallel members run at the same time, so they cannot share a subsystem
+      long[] inUse = requirementMask.clone();
+      for (Command command : commands) {
+        long[] mask = command.requirementMask;
+        if (mask.length > inUse.length) {
+          inUse = Arrays.copyOf(inUse, mask.length);
+        }
+        for (int w = 0; w < mask.length; w++) {
+          if ((inUse[w] & mask[w]) != 0) {
+            throw new IllegalArgumentException(
+                "Multiple commands in a parallel composition cannot require the same subsystems");
+          }
+          inUse[w] |= mask[w];
+        }
+      }
+    }
+    CommandScheduler.getInstance().registerComposedCommands(commands);
+
+    if (memberCount + commands.length > members.length) {
+      members = Arrays.copyOf(members, Math.max(memberCount + commands.length, memberCount * 2));
+    }
+    for (Command command : commands) {
+      members[memberCount++] = command;
+      addRequirementsOf(command);
+      if (command.getInterruptionBehavior() == InterruptionBehavior.kCancelIncoming) {
+        cancelIncoming = true;
+      }
+      if (command.getPriority().ordinal() < priority.ordinal()) {
+        priority = command.getPriority();
+      }
+    }
+    // Flattened again on the next initialize
+    kinds = null;
+  }
+
+  /**
+   * @return The number of nodes in the flattened composition, counting this group and every nested
+   *     group that was not merged as well as the commands
+   */
+  public final int getNodeCount() {
+    return countNodes(this, -1);
+  }
+
+  @Override
+  public final void initialize() {
+    if (kinds == null) {
+      flatten();
+    }
+    Arrays.fill(states, IDLE);
+    Arrays.fill(queued, false);
+    checkCount = 0;
+    start(0);
+  }
+
+  @Override
+  public final void execute() {
+    if (states[0] != RUNNING) {
+      return;
+    }
+    int current = ++pass;
+
+    int node = 0;
+    while (node < nodeCount) {
+      while (checkCount > 0 && ends[checks[checkCount - 1]] <= node) {
+        check(dequeue());
+      }
+      if (states[node] != RUNNING || startedPasses[node] == current) {
+        // Nothing to run in this subtree this pass
+        node = ends[node];
+        continue;
+      }
+      if (kinds[node] == LEAF) {
+        Command command = leaves[node];
+        command.execute();
+        if (command.isFinished()) {
+          command.end(false);
+          finish(node);
+        }
+      } else if (node + 1 == ends[node]) {
+        // A group without members finishes in the first pass that reaches it, like a command that
+        // is finished after its first execute
+        finish(node);
+      }
+      node++;
+    }
+    while (checkCount > 0) {
+      check(dequeue());
+    }
+  }
+
+  @Override
+  public final boolean isFinished() {
+    return states[0] == FINISHED;
+  }
+
+  @Override
+  public final void end(boolean interrupted) {
+    // Anything still running when the group ends was cut short, even if the group itself finished
+    stop(0);
+  }
+
+  @Override
+  public InterruptionBehavior getInterruptionBehavior() {
+    return cancelIncoming ? InterruptionBehavior.kCancelIncoming : InterruptionBehavior.kCancelSelf;
+  }
+
+  @Override
+  public Command.Priority getPriority() {
+    return memberCount == 0 ? Command.Priority.kNormal : priority;
+  }
+
+  /** Lays the composition out in the node arrays. */
+  private void flatten() {
+    int count = countNodes(this, -1);
+    kinds = new byte[count];
+    leaves = new Command[count];
+    ends = new int[count];
+    parents = new int[count];
+    states = new byte[count];
+    startedPasses = new int[count];
+    queued = new boolean[count];
+    checks = new int[count];
+    nodeCount = 0;
+    emit(this, -1);
+  }
+
+  /**
+   * @param command A command or group
+   * @param parentKind The kind of the group it is a member of, -1 for none
+   * @return The number of nodes the command flattens to
+   */
+  private static int countNodes(Command command, int parentKind) {
+    if (!(command instanceof CommandGroup group)) {
+      return 1;
+    }
+    int count = merges(group, parentKind) ? 0 : 1;
+    for (int i = 0; i < group.memberCount; i++) {
+      count += countNodes(group.members[i], group.KIND);
+    }
+    return count;
+  }
+
+  /**
+   * @return Whether a group's members become members of its parent, which is equivalent when both
+   *     are sequences or both are parallel groups. An empty group is kept, as it still takes a pass
+   *     to finish, and so is a race, whose end interrupts its own members before the parent runs
+   *     the next one
+   */
+  private static boolean merges(CommandGroup group, int parentKind) {
+    return group.KIND == parentKind
+        && (parentKind == SEQUENCE || parentKind == PARALLEL)
+        && group.memberCount > 0;
+  }
+
+  /**
+   * Appends the nodes of a command and its members.
+   *
+   * @param command A command or group
+   * @param parent The node of the group it is a member of, -1 for this group
+   */
+  private void emit(Command command, int parent) {
+    if (command instanceof CommandGroup group) {
+      int node = parent;
+      if (parent < 0 || !merges(group, kinds[parent])) {
+        node = nodeCount++;
+        kinds[node] = group.KIND;
+        parents[node] = parent;
+      }
+      for (int i = 0; i < group.memberCount; i++) {
+        emit(group.members[i], node);
+      }
+      ends[node] = nodeCount;
+    } else {
+      int node = nodeCount++;
+      kinds[node] = LEAF;
+      leaves[node] = command;
+      parents[node] = parent;
+      ends[node] = nodeCount;
+    }
+  }
+
+  /**
+   * Starts a node: initializes a command, the first member of a sequence, or every member of a
+   * parallel group. Nodes started during a pass are not run until the next one, so nothing finishes
+   * as it starts, not even a group without members.
+   *
+   * @param node The node to start
+   */
+  private void start(int node) {
+    startedPasses[node] = pass;
+    states[node] = RUNNING;
+    int end = ends[node];
+    switch (kinds[node]) {
+      case LEAF -> leaves[node].initialize();
+      case SEQUENCE -> {
+        if (node + 1 < end) {
+          start(node + 1);
+        }
+      }
+      default -> {
+        for (int child = node + 1; child < end; child = ends[child]) {
+          start(child);
+        }
+      }
+    }
+  }
+
+  /**
+   * Marks a node finished and lets its group react: a sequence starts its next member or finishes
+   * in turn, any other group is queued to be checked once the pass has run all of its members.
+   *
+   * @param node The node that finished
+   */
+  private void finish(int node) {
+    states[node] = FINISHED;
+    int parent = parents[node];
+    if (parent < 0) {
+      return;
+    }
+    if (kinds[parent] == SEQUENCE) {
+      int next = ends[node];
+      if (next < ends[parent]) {
+        start(next);
+      } else {
+        finish(parent);
+      }
+    } else if (!queued[parent]) {
+      queued[parent] = true;
+      checks[checkCount++] = parent;
+    }
+  }
+
+  /**
+   * @return The parallel group at the top of the check queue, removed from it
+   */
+  private int dequeue() {
+    int node = checks[--checkCount];
+    queued[node] = false;
+    return node;
+  }
+
+  /**
+   * Checks whether a parallel group one of whose members finished this pass has finished.
+   *
+   * @param node The group
+   */
+  private void check(int node) {
+    if (states[node] != RUNNING) {
+      return;
+    }
+    int end = ends[node];
+    switch (kinds[node]) {
+      case PARALLEL -> {
+        for (int child = node + 1; child < end; child = ends[child]) {
+          if (states[child] != FINISHED) {
+            return;
+          }
+        }
+      }
+      case RACE -> stop(node);
+      default -> {
+        // The first member is the deadline
+        if (states[node + 1] != FINISHED) {
+          return;
+        }
+        stop(node);
+      }
+    }
+    finish(node);
+  }
+
+  /**
+   * Interrupts every command still running in a node's subtree and marks the subtree idle.
+   *
+   * @param node The node to stop
+   */
+  private void stop(int node) {
+    for (int i = node; i < ends[node]; i++) {
+      if (states[i] == RUNNING) {
+        states[i] = IDLE;
+        if (kinds[i] == LEAF) {
+          leaves[i].end(true);
+        }
+      }
+    }
+  }
+}
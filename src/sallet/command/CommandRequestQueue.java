@@ -0,0 +1,82 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free multi-producer, single-consumer queue of schedule and cancel requests, which other
+ * threads hand to the {@link CommandScheduler} and the loop thread applies once per cycle.
+ *
+ * <p>This is an intrusive linked queue in the style of Vyukov's MPSC queue: a producer swaps itself
+ * in as the tail with a single atomic exchange and then links the previous tail to its node, so
+ * producers never retry or wait on each other, and the consumer only follows {@code next} links and
+ * never touches the tail except to note where a drain should stop. A request whose producer has
+ * exchanged the tail but not linked it yet is simply picked up by the next drain, so the consumer
+ * never waits on a producer either. The only allocation is the producer's node.
+ */
+final class CommandRequestQueue {
+  /** A schedule or cancel request */
+  private static final class Node {
+    private Command command;
+    private final boolean CANCEL;
+    private volatile Node next;
+
+    private Node(Command command, boolean cancel) {
+      this.command = command;
+      CANCEL = cancel;
+    }
+  }
+
+  private final AtomicReference<Node> TAIL;
+  // The last consumed node, only touched by the consumer
+  private Node head;
+
+  CommandRequestQueue() {
+    Node stub = new Node(null, false);
+    head = stub;
+    TAIL = new AtomicReference<>(stub);
+  }
+
+  /**
+   * Adds a request, safe to call from any thread.
+   *
+   * @param command The command to schedule or cancel
+   * @param cancel Whether the command should be canceled rather than scheduled
+   */
+  void offer(Command command, boolean cancel) {
+    Node node = new Node(command, cancel);
+    Node previous = TAIL.getAndSet(node);
+    // The volatile write publishes the node to the consumer
+    previous.next = node;
+  }
+
+  /**
+   * Applies the requests queued before this call, in the order they were queued. Requests added
+   * while draining are left for the next drain. Must only be called by the consumer.
+   *
+   * @param scheduler The scheduler to apply the requests to
+   */
+  void drain(CommandScheduler scheduler) {
+    Node last = TAIL.get();
+    Node current = head;
+    while (current != last) {
+      Node next = current.next;
+      if (next == null) {
+        // Its producer has not linked it yet
+        return;
+      }
+      Command command = next.command;
+      next.command = null;
+      // Advance before applying, so a request that throws is not applied again
+      head = next;
+      current = next;
+      if (next.CANCEL) {
+        scheduler.cancel(command);
+      } else {
+        scheduler.schedule(command);
+      }
+    }
+  }
+}
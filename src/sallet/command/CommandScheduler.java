@@ -3,60 +3,1215 @@
 
 package sallet.command;
 
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
 import java.util.*;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 import sallet.event.EventLoop;
+import sallet.event.TimingWheel;
+import sallet.math.universal.MathSharedStore;
+import sallet.signal.SignalCache;
 
 /**
  * -------------------------------------------------------------------------------------------------
- * The CommandScheduler is responsible for running {@link Command}s. 
+ * The CommandScheduler is responsible for running {@link Command}s.
+ *
+ * <p>All of the tables the scheduler walks every cycle are plain arrays that are iterated by index,
+ * so a steady-state {@link #run()} (no commands starting or ending) does not allocate.
+ *
+ * <p>Every subsystem is given a dense integer ID when it registers. Commands keep their
+ * requirements as a bitmask over those IDs, so checking an incoming command against the
+ * requirements currently in use is a single AND per 64 subsystems, and finding the command holding
+ * a subsystem is an array lookup.
+ *
+ * <p>Everything runs on the thread calling {@link #run()}, except that the periodic methods of
+ * subsystems that opt in with {@link Subsystem#setThreadSafe(boolean)} can be spread over a worker
+ * pool with {@link #enableParallelPeriodic(int)}. Other threads must not call into the scheduler
+ * directly; they hand commands over with {@link #scheduleAsync(Command)} and {@link
+ * #cancelAsync(Command)}, which never lock and which the loop thread applies at the start of its
+ * next cycle.
  */
 public class CommandScheduler {
   /** The scheduler singleton instance */
-  private static CommandScheduler instance;
+  private static volatile CommandScheduler instance;
 
   /**
+   * Returns the scheduler, creating it on the first call. Safe to call from any thread, and only
+   * locks until the instance exists.
+   *
    * @return The instance of the CommandScheduler
    */
-  public static synchronized CommandScheduler getInstance() {
-    if (instance == null) {
-      instance = new CommandScheduler();
+  public static CommandScheduler getInstance() {
+    CommandScheduler scheduler = instance;
+    if (scheduler == null) {
+      synchronized (CommandScheduler.class) {
+        scheduler = instance;
+        if (scheduler == null) {
+          scheduler = new CommandScheduler();
+          instance = scheduler;
+        }
+      }
     }
-    return instance;
+    return scheduler;
   }
 
-  private static final Optional<Command> NO_INTERRUPTER = Optional.empty();
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Default loop period budget of the watchdog */
+  private static final double DEFAULT_PERIOD_SEC = 0.02;
 
-  @SuppressWarnings({ "unchecked", "rawtypes" })
-  private static final Map<Command, Exception> COMPOSED_COMMANDS = new WeakHashMap();
+  /** Priority classes in the order deadline scheduling runs them */
+  private static final Command.Priority[] PRIORITIES = Command.Priority.values();
 
-  /** Set of commands scheduled to be run */
-  private final Set<Command> SCHEDULED_COMMANDS = new LinkedHashSet<>();
+  /** Commands scheduled to be run, in the order they were scheduled */
+  private Command[] scheduledCommands = new Command[INITIAL_CAPACITY];
+  private int scheduledCount;
 
-  /** Map of subsystems and the commands that require them */
-  private final Map<Subsystem, Command> REQUIREMENTS = new LinkedHashMap<>();
+  /** The command currently requiring each subsystem, indexed by subsystem ID */
+  private Command[] requiringCommands = new Command[INITIAL_CAPACITY];
+  /** Bitmask of the subsystem IDs currently required by a scheduled command */
+  private long[] inUseMask = new long[1];
+  private int nextSubsystemId;
 
-  /** Map of subsystems and their default commands */
-  private final Map<Subsystem, Command> SUBSYSTEMS = new LinkedHashMap<>();
+  /** Registered subsystems and their default commands (null if not set) */
+  private Subsystem[] subsystems = new Subsystem[INITIAL_CAPACITY];
+  private Command[] defaultCommands = new Command[INITIAL_CAPACITY];
+  private int subsystemCount;
 
   private final EventLoop DEFAULT_BUTTON_LOOP = new EventLoop();
   // Set of currently registered buttons that will be polled every cycle
   private EventLoop activeButtonLoop = DEFAULT_BUTTON_LOOP;
 
   private boolean disabled;
+  // Number of enabled cycles run, used to pick which rate groups run their periodic methods
+  private long cycleCount;
+  // Runs the periodic methods of thread-safe subsystems in parallel, null when disabled
+  private PeriodicWorkerPool periodicPool;
+
+  // Time into the cycle after which low priority commands are deferred, 0 when disabled
+  private long commandDeadlineNanos;
+  private long cycleStartNanos;
+  // Per priority class, the first command deferred last cycle, where the next cycle starts
+  private final Command[] ROTATION_HEADS = new Command[PRIORITIES.length];
+  private long deferredCount;
+
+  // Whether composing a command records where it was composed, for error messages
+  private boolean compositionSiteCapture;
+
+  // Times every phase of a cycle and reports the cycles that run over the loop period
+  private final LoopWatchdog WATCHDOG = new LoopWatchdog(DEFAULT_PERIOD_SEC);
 
   // User supplied actions from commands
   private final List<Consumer<Command>> INIT_ACTIONS = new ArrayList<>();
   private final List<Consumer<Command>> EXECUTE_ACTIONS = new ArrayList<>();
-  private final List<BiConsumer<Command, Optional<Command>>> INTERRUPT_ACTIONS = new ArrayList<>();
+  private final List<BiConsumer<Command, Command>> INTERRUPT_ACTIONS = new ArrayList<>();
   private final List<Consumer<Command>> END_ACTIONS = new ArrayList<>();
+  private final List<Runnable> CYCLE_END_ACTIONS = new ArrayList<>();
 
   // Flag and queues for avoiding ConcurrentModificationException if commands are
   // scheduled/canceled during run
-  private final Set<Command> TO_SCHEDULE_COMMANDS = new LinkedHashSet<>();
-  private final List<Command> TO_CANCEL_COMMANDS = new ArrayList<>();
-  private final List<Optional<Command>> TO_CANCEL_INTERRUPTERS = new ArrayList<>();
-  private final Set<Command> ENDING_COMMANDS = new LinkedHashSet<>();
+  private boolean inRunLoop;
+  private Command[] toScheduleCommands = new Command[INITIAL_CAPACITY];
+  private int toScheduleCount;
+  private Command[] toCancelCommands = new Command[INITIAL_CAPACITY];
+  private Command[] toCancelInterruptors = new Command[INITIAL_CAPACITY];
+  private int toCancelCount;
+
+  // Schedule and cancel requests handed over by other threads
+  private final CommandRequestQueue ASYNC_REQUESTS = new CommandRequestQueue();
+
+  // Failure to throw out of run() once the current cycle has finished, see rethrowAfterCycle
+  private Throwable deferredFailure;
+
+  CommandScheduler() {}
+
+  /**
+   * Runs a single iteration of the scheduler. The execution occurs in the following order:
+   *
+   * <p>The {@link MathSharedStore} timestamp is latched for the cycle and the default {@link
+   * SignalCache} is invalidated. Nothing else runs while the scheduler is disabled.
+   *
+   * <p>Expired {@link TimingWheel} timeouts are run.
+   *
+   * <p>Commands handed over with {@link #scheduleAsync(Command)} and {@link #cancelAsync(Command)}
+   * are scheduled and canceled, in the order they were requested. Requests made while the scheduler
+   * is disabled are applied on the first cycle after it is enabled.
+   *
+   * <p>Subsystem periodic methods are called.
+   *
+   * <p>Button bindings are polled, and new commands are scheduled from them.
+   *
+   * <p>Currently-scheduled commands are executed, by priority class and with the lower classes
+   * deferred past the deadline if {@link #enableDeadlineScheduling(double) deadline scheduling} is
+   * enabled.
+   *
+   * <p>End conditions are checked on currently-scheduled commands, and commands that are finished
+   * have their end methods called and are removed.
+   *
+   * <p>Any subsystems not being used as requirements have their default methods started.
+   *
+   * <p>The actions added with {@link #onCycleEnd(Runnable)} are run.
+   */
+  public void run() {
+    cycleStartNanos = System.nanoTime();
+    // Every consumer of the clock sees the same timestamp for the whole cycle, and the live clock
+    // again once it is over
+    MathSharedStore.latchTimestamp();
+    try {
+      runCycle();
+    } finally {
+      MathSharedStore.releaseTimestamp();
+    }
+  }
+
+  private void runCycle() {
+    // Cached hardware reads are fetched again, at most once, during this cycle
+    SignalCache.getDefault().invalidate();
+
+    if (disabled) {
+      return;
+    }
+    // Timeouts and requests from other threads run inside the cycle, so the watchdog counts them
+    // and they wait while the scheduler is disabled
+    WATCHDOG.startCycle();
+    TimingWheel.getDefault().advanceTo(MathSharedStore.getTimestampNanos());
+    ASYNC_REQUESTS.drain(this);
+
+    // Run the periodic method of all registered subsystems whose rate group is due this cycle,
+    // handing the thread-safe ones to the worker pool if parallel periodic is enabled. The count is
+    // re-read every iteration so subsystems created from inside a periodic call are picked up safely
+    long cycle = cycleCount++;
+    PeriodicWorkerPool pool = periodicPool;
+    boolean parallel = false;
+    if (pool != null) {
+      pool.clear();
+      for (int i = 0; i < subsystemCount; i++) {
+        Subsystem subsystem = subsystems[i];
+        if (subsystem.threadSafe && cycle % subsystem.rateDivisor == subsystem.ratePhase) {
+          recordPeriodic(subsystem);
+          pool.add(subsystem);
+        }
+      }
+      parallel = pool.size() > 0;
+      if (parallel) {
+        pool.start();
+      }
+    }
+
+    try {
+      for (int i = 0; i < subsystemCount; i++) {
+        Subsystem subsystem = subsystems[i];
+        if ((pool != null && subsystem.threadSafe)
+            || cycle % subsystem.rateDivisor != subsystem.ratePhase) {
+          continue;
+        }
+        recordPeriodic(subsystem);
+
+        long start = WATCHDOG.start();
+        subsystem.periodic();
+        WATCHDOG.epoch(subsystem, LoopWatchdog.Phase.PERIODIC, start);
+      }
+    } catch (Throwable serialFailure) {
+      // Still wait for the workers, and report what they threw alongside the serial failure
+      if (parallel) {
+        RuntimeException parallelFailure = joinParallelPeriodics(pool);
+        if (parallelFailure != null) {
+          serialFailure.addSuppressed(parallelFailure);
+        }
+      }
+      throw serialFailure;
+    }
+    // Barrier before the command phase
+    if (parallel) {
+      RuntimeException parallelFailure = joinParallelPeriodics(pool);
+      if (parallelFailure != null) {
+        throw parallelFailure;
+      }
+    }
+
+    // Cache the active instance to avoid concurrency problems if setActiveButtonLoop() is called
+    // from inside the button bindings
+    EventLoop loopCache = activeButtonLoop;
+    // Poll buttons for new commands to add
+    long pollStart = WATCHDOG.start();
+    loopCache.poll();
+    WATCHDOG.epoch(loopCache, LoopWatchdog.Phase.BUTTON_POLL, pollStart);
+
+    inRunLoop = true;
+    try {
+      if (commandDeadlineNanos > 0) {
+        runCommandsByPriority();
+      } else {
+        runCommandsInOrder();
+      }
+    } finally {
+      // Otherwise a command that threw would leave every later schedule and cancel queued forever
+      inRunLoop = false;
+    }
+
+    // Schedule/cancel commands from queues populated during loop
+    for (int i = 0; i < toScheduleCount; i++) {
+      Command command = toScheduleCommands[i];
+      toScheduleCommands[i] = null;
+      schedule(command);
+    }
+    toScheduleCount = 0;
+
+    for (int i = 0; i < toCancelCount; i++) {
+      Command command = toCancelCommands[i];
+      Command interruptor = toCancelInterruptors[i];
+      toCancelCommands[i] = null;
+      toCancelInterruptors[i] = null;
+      cancel(command, interruptor);
+    }
+    toCancelCount = 0;
+
+    // Add default commands for un-required registered subsystems
+    for (int i = 0; i < subsystemCount; i++) {
+      Command defaultCommand = defaultCommands[i];
+      if (defaultCommand != null && requiring(subsystems[i]) == null) {
+        schedule(defaultCommand);
+      }
+    }
+
+    WATCHDOG.endCycle();
+
+    for (int i = 0; i < CYCLE_END_ACTIONS.size(); i++) {
+      CYCLE_END_ACTIONS.get(i).run();
+    }
+
+    Throwable failure = deferredFailure;
+    if (failure != null) {
+      deferredFailure = null;
+      if (failure instanceof Error error) {
+        throw error;
+      }
+      throw (RuntimeException) failure;
+    }
+  }
+
+  /**
+   * Throws a failure out of {@link #run()} once the current cycle has finished, rather than from
+   * the middle of it. Used for failures found while a command ends, so the command has been removed
+   * and has released its requirements by the time the failure reaches the caller. Further failures
+   * in the same cycle are added to the first as suppressed.
+   *
+   * @param failure An unchecked exception or an error
+   */
+  void rethrowAfterCycle(Throwable failure) {
+    if (deferredFailure == null) {
+      deferredFailure = failure;
+    } else if (deferredFailure != failure) {
+      deferredFailure.addSuppressed(failure);
+    }
+  }
+
+  /**
+   * Runs the scheduled commands in the order they were scheduled, compacting the table in place as
+   * finished commands are removed. The compaction is finished even if a command throws, so the
+   * table never holds a command twice or loses one.
+   */
+  private void runCommandsInOrder() {
+    int count = scheduledCount;
+    int kept = 0;
+    int i = 0;
+    try {
+      for (; i < count; i++) {
+        Command command = scheduledCommands[i];
+        if (!runCommand(command)) {
+          scheduledCommands[kept++] = command;
+        }
+      }
+    } finally {
+      // After a throw, i is the command that threw: keep it unless it was removed, and move the
+      // commands that never ran down behind the ones already kept
+      for (; i < count; i++) {
+        Command command = scheduledCommands[i];
+        if (command.scheduled) {
+          scheduledCommands[kept++] = command;
+        }
+      }
+      for (int j = kept; j < count; j++) {
+        scheduledCommands[j] = null;
+      }
+      scheduledCount = kept;
+    }
+  }
+
+  /**
+   * Executes a scheduled command and ends it if it has finished.
+   *
+   * @param command The command to run
+   * @return Whether the command finished and has to be removed from the scheduled table
+   */
+  private boolean runCommand(Command command) {
+    long start = WATCHDOG.start();
+    command.execute();
+    WATCHDOG.epoch(command, LoopWatchdog.Phase.EXECUTE, start);
+    for (int j = 0; j < EXECUTE_ACTIONS.size(); j++) {
+      EXECUTE_ACTIONS.get(j).accept(command);
+    }
+
+    start = WATCHDOG.start();
+    boolean finished = command.isFinished();
+    WATCHDOG.epoch(command, LoopWatchdog.Phase.IS_FINISHED, start);
+    if (!finished) {
+      return false;
+    }
+
+    command.ending = true;
+    try {
+      start = WATCHDOG.start();
+      command.end(false);
+      WATCHDOG.epoch(command, LoopWatchdog.Phase.END, start);
+      for (int j = 0; j < END_ACTIONS.size(); j++) {
+        END_ACTIONS.get(j).accept(command);
+      }
+    } finally {
+      command.ending = false;
+    }
+    command.scheduled = false;
+    releaseRequirements(command);
+    return true;
+  }
+
+  /**
+   * Runs the scheduled commands class by class in priority order, deferring commands below {@link
+   * Command.Priority#kCritical} once the cycle is past the command deadline. Each class starts where
+   * its deferrals began last cycle and always runs at least one command, so a command in a class of
+   * N commands runs at least once every N cycles however overloaded the loop is.
+   */
+  private void runCommandsByPriority() {
+    long deadline = cycleStartNanos + commandDeadlineNanos;
+    int count = scheduledCount;
+
+    try {
+      for (Command.Priority priority : PRIORITIES) {
+        int p = priority.ordinal();
+        int first = 0;
+        Command head = ROTATION_HEADS[p];
+        if (head != null) {
+          for (int i = 0; i < count; i++) {
+            if (scheduledCommands[i] == head) {
+              first = i;
+              break;
+            }
+          }
+          ROTATION_HEADS[p] = null;
+        }
+
+        boolean ranOne = false;
+        for (int k = 0; k < count; k++) {
+          int i = first + k < count ? first + k : first + k - count;
+          Command command = scheduledCommands[i];
+          // Finished commands are cleared from the table and compacted away below
+          if (command == null || command.getPriority() != priority) {
+            continue;
+          }
+          if (ranOne && priority != Command.Priority.kCritical && System.nanoTime() >= deadline) {
+            if (ROTATION_HEADS[p] == null) {
+              ROTATION_HEADS[p] = command;
+            }
+            command.deferredCount++;
+            deferredCount++;
+            continue;
+          }
+          ranOne = true;
+          if (runCommand(command)) {
+            scheduledCommands[i] = null;
+          }
+        }
+      }
+    } finally {
+      // Compacted even if a command threw, dropping the commands that finished before it
+      int kept = 0;
+      for (int i = 0; i < count; i++) {
+        Command command = scheduledCommands[i];
+        if (command != null) {
+          scheduledCommands[kept++] = command;
+        }
+      }
+      for (int i = kept; i < count; i++) {
+        scheduledCommands[i] = null;
+      }
+      scheduledCount = kept;
+    }
+  }
+
+  /**
+   * Schedules a command for execution. Does nothing if the command is already scheduled. If a
+   * command's requirements are not available, it will only be started if all the commands
+   * currently using those requirements have been scheduled as interruptible. If this is the case,
+   * they will be interrupted and the command will be scheduled.
+   *
+   * @param command The command to schedule
+   */
+  public void schedule(Command command) {
+    requireNonNullParam(command, "command", "schedule");
+    if (command.composed) {
+      throw new IllegalArgumentException(
+          "A command that is part of a composition cannot be independently scheduled",
+          command.compositionSite);
+    }
+
+    if (inRunLoop) {
+      for (int i = 0; i < toScheduleCount; i++) {
+        if (toScheduleCommands[i] == command) {
+          return;
+        }
+      }
+      if (toScheduleCount == toScheduleCommands.length) {
+        toScheduleCommands = Arrays.copyOf(toScheduleCommands, toScheduleCount * 2);
+      }
+      toScheduleCommands[toScheduleCount++] = command;
+      return;
+    }
+
+    // Do nothing if the scheduler is disabled or the command is already scheduled
+    if (disabled || command.scheduled) {
+      return;
+    }
+
+    long[] mask = command.requirementMask;
+    int words = Math.min(mask.length, inUseMask.length);
+
+    boolean conflicting = false;
+    for (int w = 0; w < words; w++) {
+      if ((mask[w] & inUseMask[w]) != 0) {
+        conflicting = true;
+        break;
+      }
+    }
+
+    if (conflicting) {
+      // Refuse to schedule if any requirement is held by a command that cannot be interrupted
+      for (int w = 0; w < words; w++) {
+        for (long bits = mask[w] & inUseMask[w]; bits != 0; bits &= bits - 1) {
+          Command requiring = requiringCommands[(w << 6) + Long.numberOfTrailingZeros(bits)];
+          if (requiring.getInterruptionBehavior() == Command.InterruptionBehavior.kCancelIncoming) {
+            return;
+          }
+        }
+      }
+
+      for (int w = 0; w < words; w++) {
+        for (long bits = mask[w] & inUseMask[w]; bits != 0; bits &= bits - 1) {
+          // Re-read the table, an earlier cancel may have released this requirement already
+          Command requiring = requiringCommands[(w << 6) + Long.numberOfTrailingZeros(bits)];
+          if (requiring != null) {
+            cancel(requiring, command);
+          }
+        }
+      }
+    }
+
+    initCommand(command);
+  }
+
+  /**
+   * Schedules multiple commands for execution. Does nothing for commands already scheduled.
+   *
+   * @param commands The commands to schedule
+   */
+  public void schedule(Command... commands) {
+    for (Command command : commands) {
+      schedule(command);
+    }
+  }
+
+  /**
+   * Asks the loop thread to schedule a command at the start of its next cycle, as if by {@link
+   * #schedule(Command)}. Safe to call from any thread, such as a vision or path-planning thread: the
+   * request is handed over through a lock-free queue, so neither the caller nor the loop thread
+   * ever waits on the other. Requests are applied in the order they were made, across every thread,
+   * and wait while the scheduler is disabled.
+   *
+   * @param command The command to schedule
+   */
+  public void scheduleAsync(Command command) {
+    ASYNC_REQUESTS.offer(requireNonNullParam(command, "command", "scheduleAsync"), false);
+  }
+
+  /**
+   * Asks the loop thread to cancel a command at the start of its next cycle, as if by {@link
+   * #cancel(Command)}. Safe to call from any thread, see {@link #scheduleAsync(Command)}.
+   *
+   * @param command The command to cancel
+   */
+  public void cancelAsync(Command command) {
+    ASYNC_REQUESTS.offer(requireNonNullParam(command, "command", "cancelAsync"), true);
+  }
+
+  /**
+   * Initializes a given command, adds its requirements to the list, and performs the init actions.
+   *
+   * @param command The command to initialize
+   */
+  private void initCommand(Command command) {
+    if (scheduledCount == scheduledCommands.length) {
+      scheduledCommands = Arrays.copyOf(scheduledCommands, scheduledCount * 2);
+    }
+    scheduledCommands[scheduledCount++] = command;
+    command.scheduled = true;
+
+    long[] mask = command.requirementMask;
+    if (mask.length > inUseMask.length) {
+      inUseMask = Arrays.copyOf(inUseMask, mask.length);
+    }
+    for (int w = 0; w < mask.length; w++) {
+      inUseMask[w] |= mask[w];
+      for (long bits = mask[w]; bits != 0; bits &= bits - 1) {
+        requiringCommands[(w << 6) + Long.numberOfTrailingZeros(bits)] = command;
+      }
+    }
+
+    long start = WATCHDOG.start();
+    command.initialize();
+    WATCHDOG.epoch(command, LoopWatchdog.Phase.INITIALIZE, start);
+    for (int i = 0; i < INIT_ACTIONS.size(); i++) {
+      INIT_ACTIONS.get(i).accept(command);
+    }
+  }
+
+  /**
+   * Clears the given command's requirements from the in-use mask and the requirement table.
+   *
+   * @param command The command releasing its requirements
+   */
+  private void releaseRequirements(Command command) {
+    long[] mask = command.requirementMask;
+    for (int w = 0; w < mask.length; w++) {
+      inUseMask[w] &= ~mask[w];
+      for (long bits = mask[w]; bits != 0; bits &= bits - 1) {
+        requiringCommands[(w << 6) + Long.numberOfTrailingZeros(bits)] = null;
+      }
+    }
+  }
+
+  /**
+   * Cancels a command. The scheduler will only call {@link Command#end(boolean)} method of the
+   * canceled command with {@code true}, indicating they were canceled (as opposed to finishing
+   * normally).
+   *
+   * <p>Commands will be canceled regardless of {@link Command.InterruptionBehavior interruption
+   * behavior}.
+   *
+   * @param command The command to cancel
+   */
+  public void cancel(Command command) {
+    cancel(command, null);
+  }
+
+  /**
+   * Cancels multiple commands. See {@link #cancel(Command)}.
+   *
+   * @param commands The commands to cancel
+   */
+  public void cancel(Command... commands) {
+    for (Command command : commands) {
+      cancel(command, null);
+    }
+  }
+
+  /**
+   * Cancels a command.
+   *
+   * @param command The command to cancel
+   * @param interruptor The interrupting command, or null if the command was canceled directly
+   */
+  private void cancel(Command command, Command interruptor) {
+    requireNonNullParam(command, "command", "cancel");
+
+    if (command.ending) {
+      return;
+    }
+    if (inRunLoop) {
+      if (toCancelCount == toCancelCommands.length) {
+        toCancelCommands = Arrays.copyOf(toCancelCommands, toCancelCount * 2);
+        toCancelInterruptors = Arrays.copyOf(toCancelInterruptors, toCancelCount * 2);
+      }
+      toCancelCommands[toCancelCount] = command;
+      toCancelInterruptors[toCancelCount] = interruptor;
+      toCancelCount++;
+      return;
+    }
+    if (!command.scheduled) {
+      return;
+    }
+
+    command.ending = true;
+    try {
+      long start = WATCHDOG.start();
+      command.end(true);
+      WATCHDOG.epoch(command, LoopWatchdog.Phase.END, start);
+      for (int i = 0; i < INTERRUPT_ACTIONS.size(); i++) {
+        INTERRUPT_ACTIONS.get(i).accept(command, interruptor);
+      }
+    } finally {
+      command.ending = false;
+    }
+
+    // Ordered removal keeps the remaining commands running in the order they were scheduled
+    for (int i = 0; i < scheduledCount; i++) {
+      if (scheduledCommands[i] == command) {
+        System.arraycopy(scheduledCommands, i + 1, scheduledCommands, i, scheduledCount - i - 1);
+        scheduledCommands[--scheduledCount] = null;
+        break;
+      }
+    }
+    command.scheduled = false;
+    releaseRequirements(command);
+  }
+
+  /** Cancels all commands that are currently scheduled. */
+  public void cancelAll() {
+    // Cancel from the back so the ordered removal does not have to shift anything
+    for (int i = scheduledCount - 1; i >= 0; i--) {
+      if (i < scheduledCount) {
+        cancel(scheduledCommands[i], null);
+      }
+    }
+  }
+
+  /**
+   * Whether the given commands are running. Note that this only works on commands that are directly
+   * scheduled by the scheduler; it will not work on commands inside compositions, as the scheduler
+   * does not see them.
+   *
+   * @param commands The commands to query
+   * @return Whether all of the commands are currently scheduled
+   */
+  public boolean isScheduled(Command... commands) {
+    for (Command command : commands) {
+      if (!isScheduled(command)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether the given command is running. See {@link #isScheduled(Command...)}.
+   *
+   * @param command The command to query
+   * @return Whether the command is currently scheduled
+   */
+  public boolean isScheduled(Command command) {
+    return command.scheduled;
+  }
+
+  /**
+   * Returns the command currently requiring a given subsystem.
+   *
+   * @param subsystem The subsystem to be inquired about
+   * @return The command currently requiring the subsystem, or null if no command is currently
+   *     scheduled
+   */
+  public Command requiring(Subsystem subsystem) {
+    int id = subsystem.id;
+    return id >= 0 ? requiringCommands[id] : null;
+  }
+
+  /**
+   * Returns the dense ID of a subsystem, handing out the next free ID if it does not have one yet.
+   * IDs are never reused, so a subsystem keeps its ID even if it is un-registered.
+   *
+   * @param subsystem The subsystem to look up
+   * @return The subsystem's ID
+   */
+  synchronized int idOf(Subsystem subsystem) {
+    requireNonNullParam(subsystem, "subsystem", "idOf");
+    if (subsystem.id < 0) {
+      subsystem.id = nextSubsystemId++;
+      if (subsystem.id >= requiringCommands.length) {
+        requiringCommands = Arrays.copyOf(requiringCommands, requiringCommands.length * 2);
+      }
+    }
+    return subsystem.id;
+  }
+
+  /**
+   * Registers subsystems with the scheduler. This must be called for the subsystem's periodic block
+   * to run when the scheduler is run. Subsystems register themselves on construction. Like the other
+   * registration methods, this must be called from the thread that runs the scheduler.
+   *
+   * @param subsystems The subsystems to register
+   */
+  public void registerSubsystem(Subsystem... subsystems) {
+    for (Subsystem subsystem : subsystems) {
+      requireNonNullParam(subsystem, "subsystem", "registerSubsystem");
+      idOf(subsystem);
+      if (indexOfSubsystem(subsystem) >= 0) {
+        continue;
+      }
+      if (subsystemCount == this.subsystems.length) {
+        this.subsystems = Arrays.copyOf(this.subsystems, subsystemCount * 2);
+        defaultCommands = Arrays.copyOf(defaultCommands, subsystemCount * 2);
+      }
+      this.subsystems[subsystemCount] = subsystem;
+      defaultCommands[subsystemCount] = null;
+      subsystemCount++;
+    }
+  }
+
+  /**
+   * Un-registers subsystems with the scheduler. The subsystem will no longer have its periodic
+   * block called, and will not have its default command scheduled.
+   *
+   * @param subsystems The subsystems to un-register
+   */
+  public void unregisterSubsystem(Subsystem... subsystems) {
+    for (Subsystem subsystem : subsystems) {
+      int index = indexOfSubsystem(subsystem);
+      if (index < 0) {
+        continue;
+      }
+      int tail = subsystemCount - index - 1;
+      System.arraycopy(this.subsystems, index + 1, this.subsystems, index, tail);
+      System.arraycopy(defaultCommands, index + 1, defaultCommands, index, tail);
+      subsystemCount--;
+      this.subsystems[subsystemCount] = null;
+      defaultCommands[subsystemCount] = null;
+    }
+  }
+
+  /**
+   * @param subsystem The subsystem to look up
+   * @return The index of the subsystem in the registered subsystem table, or -1 if not registered
+   */
+  private int indexOfSubsystem(Subsystem subsystem) {
+    for (int i = 0; i < subsystemCount; i++) {
+      if (subsystems[i] == subsystem) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Waits for the worker pool to finish this cycle's periodic methods, records their timings, and
+   * collects what they threw.
+   *
+   * @param pool The worker pool
+   * @return An exception naming the first subsystem that threw, with the others suppressed, or null
+   */
+  private RuntimeException joinParallelPeriodics(PeriodicWorkerPool pool) {
+    pool.finish();
+
+    RuntimeException failure = null;
+    for (int i = 0; i < pool.size(); i++) {
+      Subsystem subsystem = pool.getTask(i);
+      WATCHDOG.record(subsystem, LoopWatchdog.Phase.PERIODIC, pool.getTaskNanos(i));
+
+      Throwable thrown = pool.takeFailure(i);
+      if (thrown != null) {
+        RuntimeException reported =
+            new RuntimeException(
+                subsystem.getName() + ".periodic() threw on a periodic worker thread", thrown);
+        if (failure == null) {
+          failure = reported;
+        } else {
+          failure.addSuppressed(reported);
+        }
+      }
+    }
+    return failure;
+  }
+
+  /**
+   * Runs the periodic methods of subsystems marked {@link Subsystem#setThreadSafe(boolean)
+   * thread-safe} concurrently on a fixed pool of worker threads, alongside the periodic methods of
+   * the other subsystems on the loop thread. All periodic methods finish before buttons are polled
+   * and commands run, and commands are still only ever run on the loop thread. If a periodic method
+   * on a worker throws, {@link #run()} throws once every periodic method has finished, naming each
+   * subsystem that failed. If a periodic method on the loop thread also threw, that exception is
+   * thrown instead, with the workers' failures suppressed on it.
+   *
+   * <p>Calling this again replaces the pool.
+   *
+   * @param workerThreads The number of worker threads, the loop thread also helps run tasks
+   */
+  public void enableParallelPeriodic(int workerThreads) {
+    PeriodicWorkerPool pool = new PeriodicWorkerPool(workerThreads);
+    disableParallelPeriodic();
+    periodicPool = pool;
+  }
+
+  /** Stops the periodic worker threads, all periodic methods run on the loop thread again. */
+  public void disableParallelPeriodic() {
+    if (periodicPool != null) {
+      periodicPool.shutdown();
+      periodicPool = null;
+    }
+  }
+
+  /**
+   * Updates the realized periodic rate of a subsystem that is about to run.
+   *
+   * @param subsystem The subsystem
+   */
+  private static void recordPeriodic(Subsystem subsystem) {
+    long now = MathSharedStore.getTimestampNanos();
+    if (subsystem.periodicRuns > 0) {
+      long period = now - subsystem.lastPeriodicNanos;
+      // Exponential moving average so a single slow cycle does not swing the reported rate
+      subsystem.averagePeriodNanos =
+          subsystem.periodicRuns == 1
+              ? period
+              : subsystem.averagePeriodNanos + (period - subsystem.averagePeriodNanos) * 0.1;
+    }
+    subsystem.lastPeriodicNanos = now;
+    subsystem.periodicRuns++;
+  }
+
+  /**
+   * Puts a subsystem in a rate group, so that its periodic method only runs on every {@code
+   * divisor}-th cycle of the scheduler. Registers the subsystem if it is not already registered.
+   *
+   * <p>The subsystem is given the phase (which of the {@code divisor} cycles it runs on) that
+   * currently has the least periodic work scheduled, counting every other registered subsystem, so
+   * slow subsystems are spread across cycles instead of all landing in the same one. Commands and
+   * default commands are not affected and still run every cycle.
+   *
+   * @param subsystem The subsystem to put in the rate group
+   * @param divisor Run the periodic method once every this many cycles, 1 to run it every cycle
+   */
+  public void setRateGroup(Subsystem subsystem, int divisor) {
+    requireNonNullParam(subsystem, "subsystem", "setRateGroup");
+    if (divisor < 1) {
+      throw new IllegalArgumentException("Rate group divisor must be at least 1, got " + divisor);
+    }
+    registerSubsystem(subsystem);
+
+    // Load of each phase: the fraction of the cycles with that phase on which another subsystem
+    // also runs. Subsystem i runs on the cycles c where c % d_i == p_i, which overlaps with the
+    // cycles c % divisor == phase exactly when gcd(divisor, d_i) divides phase - p_i
+    double[] load = new double[divisor];
+    for (int i = 0; i < subsystemCount; i++) {
+      Subsystem other = subsystems[i];
+      if (other == subsystem) {
+        continue;
+      }
+      int gcd = gcd(divisor, other.rateDivisor);
+      double overlap = (double) gcd / other.rateDivisor;
+      for (int phase = 0; phase < divisor; phase++) {
+        if (Math.floorMod(phase - other.ratePhase, gcd) == 0) {
+          load[phase] += overlap;
+        }
+      }
+    }
+
+    int bestPhase = 0;
+    for (int phase = 1; phase < divisor; phase++) {
+      if (load[phase] < load[bestPhase]) {
+        bestPhase = phase;
+      }
+    }
+
+    subsystem.rateDivisor = divisor;
+    subsystem.ratePhase = bestPhase;
+  }
+
+  private static int gcd(int a, int b) {
+    while (b != 0) {
+      int t = a % b;
+      a = b;
+      b = t;
+    }
+    return a;
+  }
+
+  /**
+   * @param subsystem The subsystem to inquire about
+   * @return How many cycles apart the subsystem's periodic method runs
+   */
+  public int getRateGroup(Subsystem subsystem) {
+    return subsystem.rateDivisor;
+  }
+
+  /**
+   * @param subsystem The subsystem to inquire about
+   * @return Which of the cycles of its rate group the subsystem's periodic method runs on
+   */
+  public int getRatePhase(Subsystem subsystem) {
+    return subsystem.ratePhase;
+  }
+
+  /**
+   * Returns how often the subsystem's periodic method is actually being called, as measured with
+   * the {@link MathSharedStore} clock and smoothed over recent calls.
+   *
+   * @param subsystem The subsystem to inquire about
+   * @return The realized periodic rate in Hz, or 0 if periodic has not run at least twice
+   */
+  public double getRealizedRate(Subsystem subsystem) {
+    return subsystem.averagePeriodNanos > 0 ? 1e9 / subsystem.averagePeriodNanos : 0.0;
+  }
+
+  /**
+   * Sets the default command for a subsystem. Registers that subsystem if it is not already
+   * registered. Default commands will run whenever there is no other command currently scheduled
+   * that requires the subsystem. Default commands should be written to never end (i.e. their
+   * {@link Command#isFinished()} method should return false), as they would simply be re-scheduled
+   * if they do. Default commands must also require their subsystem.
+   *
+   * @param subsystem The subsystem whose default command will be set
+   * @param defaultCommand The default command to associate with the subsystem
+   */
+  public void setDefaultCommand(Subsystem subsystem, Command defaultCommand) {
+    requireNonNullParam(subsystem, "subsystem", "setDefaultCommand");
+    requireNonNullParam(defaultCommand, "defaultCommand", "setDefaultCommand");
+
+    if (!defaultCommand.hasRequirement(subsystem)) {
+      throw new IllegalArgumentException("Default commands must require their subsystem!");
+    }
+    requireNotComposed(defaultCommand);
+
+    registerSubsystem(subsystem);
+    defaultCommands[indexOfSubsystem(subsystem)] = defaultCommand;
+  }
+
+  /**
+   * Removes the default command for a subsystem. The current default command will run until
+   * another command is scheduled that requires the subsystem, at which point the current default
+   * command will not be re-scheduled.
+   *
+   * @param subsystem The subsystem whose default command will be removed
+   */
+  public void removeDefaultCommand(Subsystem subsystem) {
+    int index = indexOfSubsystem(subsystem);
+    if (index >= 0) {
+      defaultCommands[index] = null;
+    }
+  }
+
+  /**
+   * Gets the default command associated with this subsystem. Null if this subsystem has no default
+   * command associated with it.
+   *
+   * @param subsystem The subsystem to inquire about
+   * @return The default command associated with the subsystem
+   */
+  public Command getDefaultCommand(Subsystem subsystem) {
+    int index = indexOfSubsystem(subsystem);
+    return index >= 0 ? defaultCommands[index] : null;
+  }
+
+  /**
+   * Get the default button poll.
+   *
+   * @return a reference to the default {@link EventLoop} object polling buttons
+   */
+  public EventLoop getDefaultButtonLoop() {
+    return DEFAULT_BUTTON_LOOP;
+  }
+
+  /**
+   * Get the active button poll.
+   *
+   * @return a reference to the current {@link EventLoop} object polling buttons
+   */
+  public EventLoop getActiveButtonLoop() {
+    return activeButtonLoop;
+  }
+
+  /**
+   * Replace the button poll with another one.
+   *
+   * @param loop the new button polling loop object
+   */
+  public void setActiveButtonLoop(EventLoop loop) {
+    activeButtonLoop = requireNonNullParam(loop, "loop", "setActiveButtonLoop");
+  }
+
+  /**
+   * Get the loop watchdog, which times every phase of each cycle and reports cycles that run over
+   * the loop period budget.
+   *
+   * @return The scheduler's {@link LoopWatchdog}
+   */
+  public LoopWatchdog getWatchdog() {
+    return WATCHDOG;
+  }
+
+  /**
+   * Sets the loop period budget of the watchdog. Cycles that take longer are reported as overruns.
+   *
+   * @param periodSeconds The loop period in seconds
+   */
+  public void setPeriod(double periodSeconds) {
+    WATCHDOG.setBudget(periodSeconds);
+  }
+
+  /**
+   * Enables deadline scheduling: commands run class by class in {@link Command.Priority} order, and
+   * once the given time has passed since the start of the cycle, the remaining commands of every
+   * class below {@link Command.Priority#kCritical} are deferred to the next cycle instead of being
+   * executed. Deferred commands are not executed or checked for completion that cycle. Each class
+   * resumes where it was cut off and always runs at least one command per cycle, so no command
+   * starves. Within a class commands keep the order they were scheduled in.
+   *
+   * @param commandDeadlineSeconds Time into the cycle after which commands are deferred, for
+   *     example somewhat less than the loop period
+   */
+  public void enableDeadlineScheduling(double commandDeadlineSeconds) {
+    if (!(commandDeadlineSeconds > 0.0)) {
+      throw new IllegalArgumentException(
+          "Command deadline must be positive, got " + commandDeadlineSeconds);
+    }
+    commandDeadlineNanos = (long) (commandDeadlineSeconds * 1e9);
+  }
+
+  /** Disables deadline scheduling, every command executes every cycle in the order scheduled. */
+  public void disableDeadlineScheduling() {
+    commandDeadlineNanos = 0;
+    Arrays.fill(ROTATION_HEADS, null);
+  }
+
+  /**
+   * @param command The command to inquire about
+   * @return How many cycles deadline scheduling has deferred the command, over its lifetime
+   */
+  public long getDeferredCount(Command command) {
+    return command.deferredCount;
+  }
+
+  /**
+   * @return How many command executions deadline scheduling has deferred in total
+   */
+  public long getDeferredCount() {
+    return deferredCount;
+  }
+
+  /**
+   * Marks commands as part of a composition, so they can no longer be scheduled on their own or
+   * added to another composition. Called by the command groups when commands are added to them.
+   *
+   * @param commands The commands being composed
+   * @throws IllegalArgumentException If a command is already composed or currently scheduled
+   */
+  public void registerComposedCommands(Command... commands) {
+    for (Command command : commands) {
+      requireNonNullParam(command, "command", "registerComposedCommands");
+      requireNotComposed(command);
+      if (command.scheduled) {
+        throw new IllegalArgumentException(
+            "Commands that are currently scheduled cannot be added to a composition");
+      }
+    }
+    for (Command command : commands) {
+      command.composed = true;
+      if (compositionSiteCapture) {
+        command.compositionSite = new Exception("Originally composed at:");
+      }
+    }
+  }
+
+  /**
+   * Clears the composition mark of a command, so it can be scheduled or composed again. Only safe
+   * once the composition it was part of is no longer used.
+   *
+   * @param command The command to release
+   */
+  public void removeComposedCommand(Command command) {
+    command.composed = false;
+    command.compositionSite = null;
+  }
+
+  /**
+   * @param command The command to inquire about
+   * @return Whether the command is part of a composition
+   */
+  public boolean isComposed(Command command) {
+    return command.composed;
+  }
+
+  /**
+   * Throws if any of the commands is part of a composition. If composition site capture is on, the
+   * exception's cause shows where the command was composed.
+   *
+   * @param commands The commands to check
+   * @throws IllegalArgumentException If a command is part of a composition
+   */
+  public void requireNotComposed(Command... commands) {
+    for (Command command : commands) {
+      if (command.composed) {
+        throw new IllegalArgumentException(
+            "Commands that have been composed may not be added to another composition or "
+                + "scheduled individually!",
+            command.compositionSite);
+      }
+    }
+  }
+
+  /**
+   * Sets whether composing a command records the stack at that point, so that errors about a
+   * command being composed twice or scheduled on its own can say where it was first composed.
+   * Capturing the stack is expensive, so this is off by default and meant for debugging; with it
+   * off, composition only sets a flag on the command.
+   *
+   * @param enabled Whether to capture composition sites
+   */
+  public void setCompositionSiteCapture(boolean enabled) {
+    compositionSiteCapture = enabled;
+  }
+
+  /** Disables the command scheduler. */
+  public void disable() {
+    disabled = true;
+  }
+
+  /** Enables the command scheduler. */
+  public void enable() {
+    disabled = false;
+  }
+
+  /**
+   * Adds an action to perform on the initialization of any command by the scheduler.
+   *
+   * @param action The action to perform
+   */
+  public void onCommandInitialize(Consumer<Command> action) {
+    INIT_ACTIONS.add(requireNonNullParam(action, "action", "onCommandInitialize"));
+  }
+
+  /**
+   * Adds an action to perform on the execution of any command by the scheduler.
+   *
+   * @param action The action to perform
+   */
+  public void onCommandExecute(Consumer<Command> action) {
+    EXECUTE_ACTIONS.add(requireNonNullParam(action, "action", "onCommandExecute"));
+  }
+
+  /**
+   * Adds an action to perform on the interruption of any command by the scheduler. The action
+   * receives the interrupted command and the command that interrupted it, which is null when the
+   * command was canceled directly rather than by a requirement conflict.
+   *
+   * @param action The action to perform
+   */
+  public void onCommandInterrupt(BiConsumer<Command, Command> action) {
+    INTERRUPT_ACTIONS.add(requireNonNullParam(action, "action", "onCommandInterrupt"));
+  }
+
+  /**
+   * Adds an action to perform on the finishing of any command by the scheduler.
+   *
+   * @param action The action to perform
+   */
+  public void onCommandFinish(Consumer<Command> action) {
+    END_ACTIONS.add(requireNonNullParam(action, "action", "onCommandFinish"));
+  }
+
+  /**
+   * Adds an action to perform at the end of every cycle the scheduler runs while enabled.
+   *
+   * @param action The action to perform
+   */
+  public void onCycleEnd(Runnable action) {
+    CYCLE_END_ACTIONS.add(requireNonNullParam(action, "action", "onCycleEnd"));
+  }
 }
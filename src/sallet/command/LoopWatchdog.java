@@ -0,0 +1,318 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import sallet.event.EventLoop;
+
+/**
+ * A watchdog for the {@link CommandScheduler} loop. Every cycle it records how many nanoseconds
+ * each phase took - the button loop poll, each {@link Subsystem#periodic()}, and each command's
+ * initialize/execute/isFinished/end - and when the whole cycle runs over the loop period budget it
+ * reports every epoch of that cycle so the offending subsystem or command can be found.
+ *
+ * <p>Epochs are stored in preallocated parallel arrays and nothing is formatted unless a cycle
+ * actually overruns, so the watchdog is cheap enough to leave enabled during matches.
+ */
+public final class LoopWatchdog {
+  /** The part of a scheduler cycle an epoch measures */
+  public enum Phase {
+    /** {@link EventLoop#poll()} of the active button loop */
+    BUTTON_POLL("poll"),
+    /** {@link Subsystem#periodic()} */
+    PERIODIC("periodic"),
+    /** {@link Command#initialize()} */
+    INITIALIZE("initialize"),
+    /** {@link Command#execute()} */
+    EXECUTE("execute"),
+    /** {@link Command#isFinished()} */
+    IS_FINISHED("isFinished"),
+    /** {@link Command#end(boolean)} */
+    END("end");
+
+    private final String METHOD_NAME;
+
+    Phase(String methodName) {
+      METHOD_NAME = methodName;
+    }
+  }
+
+  /** Receives the timings of every cycle, for example to log them */
+  public interface CycleListener {
+    /**
+     * Called for each epoch of a cycle, in the order they ran, once the cycle has ended.
+     *
+     * @param owner The subsystem, command or event loop that ran
+     * @param phase What part of the cycle ran
+     * @param nanos How long it ran, in nanoseconds
+     */
+    void onEpoch(Object owner, Phase phase, long nanos);
+
+    /**
+     * Called once the epochs of a cycle have been passed to {@link #onEpoch}.
+     *
+     * @param cycleNanos How long the whole cycle took, in nanoseconds
+     * @param overrun Whether the cycle ran over the budget
+     */
+    void onCycle(long cycleNanos, boolean overrun);
+  }
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private long budgetNanos;
+  private boolean enabled = true;
+  private Consumer<String> overrunReporter = System.err::println;
+  private CycleListener cycleListener;
+
+  // Epochs of the current cycle, as parallel arrays
+  private Object[] epochOwners = new Object[INITIAL_CAPACITY];
+  private Phase[] epochPhases = new Phase[INITIAL_CAPACITY];
+  private long[] epochNanos = new long[INITIAL_CAPACITY];
+  private int epochCount;
+
+  private boolean inCycle;
+  private long cycleStartNanos;
+  private long lastCycleNanos;
+  private long maxCycleNanos;
+  private long cycleCount;
+  private long overrunCount;
+  private String lastOverrunReport = "";
+
+  /**
+   * Creates a new LoopWatchdog.
+   *
+   * @param budgetSeconds The loop period budget in seconds
+   */
+  LoopWatchdog(double budgetSeconds) {
+    setBudget(budgetSeconds);
+  }
+
+  /**
+   * Sets the loop period budget. Cycles that take longer than this are reported as overruns.
+   *
+   * @param budgetSeconds The loop period budget in seconds
+   */
+  public void setBudget(double budgetSeconds) {
+    if (!(budgetSeconds > 0.0)) {
+      throw new IllegalArgumentException(
+          "Loop period budget must be positive, got " + budgetSeconds);
+    }
+    budgetNanos = (long) (budgetSeconds * 1e9);
+  }
+
+  /**
+   * @return The loop period budget in seconds
+   */
+  public double getBudget() {
+    return budgetNanos / 1e9;
+  }
+
+  /**
+   * Enables or disables timing. While disabled the scheduler skips every clock read.
+   *
+   * @param enabled Whether cycles should be timed
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * @return Whether cycles are being timed
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Sets where overrun reports are sent. Defaults to {@link System#err}.
+   *
+   * @param reporter The consumer for the formatted report of each overrunning cycle
+   */
+  public void setOverrunReporter(Consumer<String> reporter) {
+    overrunReporter = requireNonNullParam(reporter, "reporter", "setOverrunReporter");
+  }
+
+  /**
+   * Sets the listener that receives the timings of every timed cycle, or null for none.
+   *
+   * @param listener The listener
+   */
+  public void setCycleListener(CycleListener listener) {
+    cycleListener = listener;
+  }
+
+  /**
+   * @return The duration of the last completed cycle in nanoseconds
+   */
+  public long getLastCycleNanos() {
+    return lastCycleNanos;
+  }
+
+  /**
+   * @return The longest cycle seen since the last {@link #resetStatistics()}, in nanoseconds
+   */
+  public long getMaxCycleNanos() {
+    return maxCycleNanos;
+  }
+
+  /**
+   * @return How many cycles have been timed since the last {@link #resetStatistics()}
+   */
+  public long getCycleCount() {
+    return cycleCount;
+  }
+
+  /**
+   * @return How many cycles overran the budget since the last {@link #resetStatistics()}
+   */
+  public long getOverrunCount() {
+    return overrunCount;
+  }
+
+  /**
+   * @return The report of the most recent overrunning cycle, or an empty string if none overran
+   */
+  public String getLastOverrunReport() {
+    return lastOverrunReport;
+  }
+
+  /** Resets the cycle, maximum and overrun counters. */
+  public void resetStatistics() {
+    maxCycleNanos = 0;
+    cycleCount = 0;
+    overrunCount = 0;
+    lastOverrunReport = "";
+  }
+
+  /** Marks the start of a scheduler cycle. */
+  void startCycle() {
+    inCycle = enabled;
+    if (inCycle) {
+      epochCount = 0;
+      cycleStartNanos = System.nanoTime();
+    }
+  }
+
+  /**
+   * Marks the start of an epoch.
+   *
+   * @return The current time to pass to {@link #epoch}, or 0 if this cycle is not being timed
+   */
+  long start() {
+    return inCycle ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records an epoch that began at the given time and ends now.
+   *
+   * @param owner The subsystem, command or event loop that ran
+   * @param phase What part of the cycle ran
+   * @param startNanos The value returned by {@link #start()} before the epoch began
+   */
+  void epoch(Object owner, Phase phase, long startNanos) {
+    if (!inCycle) {
+      return;
+    }
+    record(owner, phase, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Records an epoch that was timed elsewhere, such as on a worker thread.
+   *
+   * @param owner The subsystem, command or event loop that ran
+   * @param phase What part of the cycle ran
+   * @param elapsed How long it ran, in nanoseconds
+   */
+  void record(Object owner, Phase phase, long elapsed) {
+    if (!inCycle) {
+      return;
+    }
+
+    if (epochCount == epochNanos.length) {
+      epochOwners = Arrays.copyOf(epochOwners, epochCount * 2);
+      epochPhases = Arrays.copyOf(epochPhases, epochCount * 2);
+      epochNanos = Arrays.copyOf(epochNanos, epochCount * 2);
+    }
+    epochOwners[epochCount] = owner;
+    epochPhases[epochCount] = phase;
+    epochNanos[epochCount] = elapsed;
+    epochCount++;
+  }
+
+  /** Marks the end of a scheduler cycle, reporting it if it overran the budget. */
+  void endCycle() {
+    if (!inCycle) {
+      return;
+    }
+    inCycle = false;
+
+    lastCycleNanos = System.nanoTime() - cycleStartNanos;
+    cycleCount++;
+    if (lastCycleNanos > maxCycleNanos) {
+      maxCycleNanos = lastCycleNanos;
+    }
+
+    boolean overrun = lastCycleNanos > budgetNanos;
+    if (overrun) {
+      overrunCount++;
+      lastOverrunReport = buildReport();
+      overrunReporter.accept(lastOverrunReport);
+    }
+
+    CycleListener listener = cycleListener;
+    if (listener != null) {
+      for (int i = 0; i < epochCount; i++) {
+        listener.onEpoch(epochOwners[i], epochPhases[i], epochNanos[i]);
+      }
+      listener.onCycle(lastCycleNanos, overrun);
+    }
+
+    // Drop references so finished commands are not kept alive by the epoch table
+    Arrays.fill(epochOwners, 0, epochCount, null);
+  }
+
+  /**
+   * @return A report listing every epoch of the cycle that just overran
+   */
+  private String buildReport() {
+    StringBuilder report = new StringBuilder(64 + epochCount * 48);
+    report
+        .append("CommandScheduler loop overrun: ")
+        .append(formatMillis(lastCycleNanos))
+        .append(" exceeded the ")
+        .append(formatMillis(budgetNanos))
+        .append(" budget");
+    for (int i = 0; i < epochCount; i++) {
+      report
+          .append("\n\t")
+          .append(nameOf(epochOwners[i]))
+          .append('.')
+          .append(epochPhases[i].METHOD_NAME)
+          .append("(): ")
+          .append(formatMillis(epochNanos[i]));
+    }
+    return report.toString();
+  }
+
+  private static String nameOf(Object owner) {
+    String name;
+    if (owner instanceof Subsystem) {
+      name = ((Subsystem) owner).getName();
+    } else if (owner instanceof Command) {
+      name = ((Command) owner).getName();
+    } else {
+      name = owner.getClass().getSimpleName();
+    }
+    // Anonymous classes have no simple name
+    return name.isEmpty() ? owner.getClass().getName() : name;
+  }
+
+  private static String formatMillis(long nanos) {
+    return String.format("%.3f ms", nanos / 1e6);
+  }
+}
@@ -0,0 +1,23 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+/**
+ * A command composition that runs a set of commands at the same time. The group finishes once
+ * every command has finished. Members of a group cannot be scheduled on their own or added to
+ * another group; see {@link CommandGroup} for how nested groups are flattened.
+ *
+ * <p>Commands running in parallel cannot share a requirement.
+ */
+public class ParallelCommandGroup extends CommandGroup {
+  /**
+   * Creates a new ParallelCommandGroup.
+   *
+   * @param commands Commands to run in parallel
+   */
+  public ParallelCommandGroup(Command... commands) {
+    super(PARALLEL);
+    addCommands(commands);
+  }
+}
@@ -0,0 +1,28 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+/**
+ * A command composition that runs a set of commands at the same time, and finishes when one of
+ * them, the deadline, finishes, interrupting the others if they are still running. Members of a
+ * group cannot be scheduled on their own or added to another group; see {@link CommandGroup} for
+ * how nested groups are flattened.
+ *
+ * <p>Commands running in parallel cannot share a requirement.
+ */
+public class ParallelDeadlineGroup extends CommandGroup {
+  /**
+   * Creates a new ParallelDeadlineGroup.
+   *
+   * @param deadline The command that decides when the group finishes
+   * @param otherCommands Commands to run alongside the deadline
+   */
+  public ParallelDeadlineGroup(Command deadline, Command... otherCommands) {
+    super(DEADLINE);
+    addCommands(requireNonNullParam(deadline, "deadline", "ParallelDeadlineGroup"));
+    addCommands(otherCommands);
+  }
+}
@@ -0,0 +1,24 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+/**
+ * A command composition that runs a set of commands at the same time, and finishes as soon as
+ * any one of them finishes, interrupting the others. Members of a group cannot be scheduled on
+ * their own or added to another group; see {@link CommandGroup} for how nested groups are
+ * flattened.
+ *
+ * <p>Commands running in parallel cannot share a requirement.
+ */
+public class ParallelRaceGroup extends CommandGroup {
+  /**
+   * Creates a new ParallelRaceGroup.
+   *
+   * @param commands Commands to race
+   */
+  public ParallelRaceGroup(Command... commands) {
+    super(RACE);
+    addCommands(commands);
+  }
+}
@@ -0,0 +1,181 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed pool of worker threads that run the {@link Subsystem#periodic()} methods of thread-safe
+ * subsystems in parallel for the {@link CommandScheduler}.
+ *
+ * <p>Each cycle the loop thread fills the task table, {@link #start() starts} a generation, does its
+ * own serial work, and then {@link #finish() finishes} the generation by helping with the remaining
+ * tasks and waiting until every task is done and every worker has checked out. Waiting for the
+ * workers as well as the tasks means no worker can still be looking at the table when the next
+ * cycle refills it. Nothing is allocated per cycle: tasks are claimed from a shared counter, and
+ * threads are woken and parked with {@link LockSupport}.
+ */
+final class PeriodicWorkerPool {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final Thread[] WORKERS;
+  private final AtomicInteger NEXT_TASK = new AtomicInteger();
+  // Tasks not yet finished plus workers not yet checked out of the current generation
+  private final AtomicInteger REMAINING = new AtomicInteger();
+
+  private volatile int generation;
+  private volatile boolean shutdown;
+  private volatile Thread waiter;
+
+  private Subsystem[] tasks = new Subsystem[INITIAL_CAPACITY];
+  private long[] taskNanos = new long[INITIAL_CAPACITY];
+  private Throwable[] taskFailures = new Throwable[INITIAL_CAPACITY];
+  private int taskCount;
+
+  /**
+   * Creates and starts the pool.
+   *
+   * @param workerCount The number of worker threads, not counting the loop thread which also helps
+   */
+  PeriodicWorkerPool(int workerCount) {
+    if (workerCount < 1) {
+      throw new IllegalArgumentException("Worker count must be at least 1, got " + workerCount);
+    }
+
+    WORKERS = new Thread[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      Thread worker = new Thread(this::workerLoop, "sallet-periodic-" + i);
+      worker.setDaemon(true);
+      WORKERS[i] = worker;
+    }
+    for (Thread worker : WORKERS) {
+      worker.start();
+    }
+  }
+
+  /** Empties the task table, must not be called between {@link #start()} and {@link #finish()}. */
+  void clear() {
+    Arrays.fill(tasks, 0, taskCount, null);
+    taskCount = 0;
+  }
+
+  /**
+   * Adds a subsystem to run in the next generation.
+   *
+   * @param subsystem The subsystem whose periodic method should run
+   */
+  void add(Subsystem subsystem) {
+    if (taskCount == tasks.length) {
+      tasks = Arrays.copyOf(tasks, taskCount * 2);
+      taskNanos = Arrays.copyOf(taskNanos, taskCount * 2);
+      taskFailures = Arrays.copyOf(taskFailures, taskCount * 2);
+    }
+    tasks[taskCount++] = subsystem;
+  }
+
+  /**
+   * @return The number of tasks in the table
+   */
+  int size() {
+    return taskCount;
+  }
+
+  /**
+   * @param task The index of the task
+   * @return The subsystem of the task
+   */
+  Subsystem getTask(int task) {
+    return tasks[task];
+  }
+
+  /**
+   * @param task The index of the task
+   * @return How long the task's periodic method ran in the last generation, in nanoseconds
+   */
+  long getTaskNanos(int task) {
+    return taskNanos[task];
+  }
+
+  /**
+   * Returns and clears what the task's periodic method threw in the last generation.
+   *
+   * @param task The index of the task
+   * @return The exception or error thrown, or null if it completed normally
+   */
+  Throwable takeFailure(int task) {
+    Throwable failure = taskFailures[task];
+    taskFailures[task] = null;
+    return failure;
+  }
+
+  /** Hands the task table to the workers. Called from the loop thread. */
+  void start() {
+    waiter = Thread.currentThread();
+    NEXT_TASK.set(0);
+    REMAINING.set(taskCount + WORKERS.length);
+    // The volatile write publishes the task table to the workers
+    generation++;
+    for (Thread worker : WORKERS) {
+      LockSupport.unpark(worker);
+    }
+  }
+
+  /** Helps run the remaining tasks, then blocks until the generation is complete. */
+  void finish() {
+    runTasks();
+    while (REMAINING.get() > 0) {
+      LockSupport.park(this);
+    }
+  }
+
+  /** Stops the worker threads once they finish their current generation. */
+  void shutdown() {
+    shutdown = true;
+    for (Thread worker : WORKERS) {
+      LockSupport.unpark(worker);
+    }
+  }
+
+  private void workerLoop() {
+    // Not read from generation: the loop thread may already have started the first generation
+    // before this thread gets here, and then this worker would wait for the one after it
+    int seen = 0;
+    while (true) {
+      while (generation == seen && !shutdown) {
+        LockSupport.park(this);
+      }
+      if (shutdown) {
+        return;
+      }
+      // The loop thread waits for every worker to check out before starting another generation,
+      // so this is always exactly the next one
+      seen = generation;
+
+      runTasks();
+      countDown();
+    }
+  }
+
+  private void runTasks() {
+    int task;
+    while ((task = NEXT_TASK.getAndIncrement()) < taskCount) {
+      long start = System.nanoTime();
+      try {
+        tasks[task].periodic();
+      } catch (Throwable t) {
+        taskFailures[task] = t;
+      }
+      taskNanos[task] = System.nanoTime() - start;
+      countDown();
+    }
+  }
+
+  private void countDown() {
+    if (REMAINING.decrementAndGet() == 0) {
+      LockSupport.unpark(waiter);
+    }
+  }
+}
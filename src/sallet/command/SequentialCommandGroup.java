@@ -0,0 +1,22 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+/**
+ * A command composition that runs a list of commands in sequence, starting each command once the
+ * previous one has finished. The group finishes when the last command does. Members of a group
+ * cannot be scheduled on their own or added to another group; see {@link CommandGroup} for how
+ * nested groups are flattened.
+ */
+public class SequentialCommandGroup extends CommandGroup {
+  /**
+   * Creates a new SequentialCommandGroup.
+   *
+   * @param commands Commands to run in sequence
+   */
+  public SequentialCommandGroup(Command... commands) {
+    super(SEQUENCE);
+    addCommands(commands);
+  }
+}
@@ -13,8 +13,27 @@ package sallet.command;
  * {@link #periodic} method can be called.
  */
 public abstract class Subsystem {
+  // Dense ID handed out by the CommandScheduler on registration, used as this subsystem's bit in
+  // command requirement masks. Kept for the lifetime of the subsystem, -1 until assigned
+  int id = -1;
+
+  // Rate group bookkeeping, managed by the CommandScheduler: periodic() runs on the cycles where
+  // the cycle count modulo the divisor equals the phase
+  int rateDivisor = 1;
+  int ratePhase;
+  long periodicRuns;
+  long lastPeriodicNanos;
+  double averagePeriodNanos;
+
+  // Whether periodic() may run on a worker thread when parallel periodic is enabled
+  volatile boolean threadSafe;
+
+  // ID naming this subsystem in telemetry logs, read and written only by
+  // sallet.telemetry.TelemetryIds. -1 until the first log records it
+  private int telemetryId = -1;
+
   public Subsystem() {
-    // Add CommandScheduler implementation here
+    CommandScheduler.getInstance().registerSubsystem(this);
   }
 
   /**
@@ -22,6 +41,29 @@ public abstract class Subsystem {
    */
   public void periodic() {}
 
+  /**
+   * <p>Puts this subsystem in a rate group so that its {@link #periodic()} method only runs every
+   * {@code divisor}-th scheduler cycle. See {@link CommandScheduler#setRateGroup(Subsystem, int)}.
+   *
+   * @param divisor Run periodic() once every this many cycles, 1 to run it every cycle
+   */
+  public final void setRateGroup(int divisor) {
+    CommandScheduler.getInstance().setRateGroup(this, divisor);
+  }
+
+  /**
+   * <p>Marks whether this subsystem's {@link #periodic()} method is safe to run on a worker thread,
+   * concurrently with the periodic methods of other subsystems, when the scheduler has parallel
+   * periodic enabled (see {@link CommandScheduler#enableParallelPeriodic(int)}). A thread-safe
+   * periodic method must only touch this subsystem's own state - not other subsystems, commands, or
+   * the scheduler.
+   *
+   * @param threadSafe Whether periodic() may run on a worker thread
+   */
+  public final void setThreadSafe(boolean threadSafe) {
+    this.threadSafe = threadSafe;
+  }
+
   /**
    * @return The name of this subsystem
    */
@@ -33,31 +75,31 @@ public abstract class Subsystem {
    * <p>Sets the default {@link Command} of the subsystem. When another command is not using this 
    * subsystem, this command will automatically be scheduled to use this subsystem's resources 
    * until another command requires this subsystem.
+   *
+   * @param defaultCommand The default command to use, which must require this subsystem
    */
-  public final void setDefaultCommand() {
-    // Add CommandScheduler implementation here
+  public final void setDefaultCommand(Command defaultCommand) {
+    CommandScheduler.getInstance().setDefaultCommand(this, defaultCommand);
   }
 
   /**
    * <p>Removes the default command for this subsystem.
    */
   public final void removeDefaultCommand() {
-    // Add CommandScheduler implementation here
+    CommandScheduler.getInstance().removeDefaultCommand(this);
   }
 
   /**
    * @return The currently set default command for this subsystem
    */
   public final Command getDefaultCommand() {
-    // Add CommandScheduler implementation here
-    return null;
+    return CommandScheduler.getInstance().getDefaultCommand(this);
   }
 
   /**
    * @return The command currently using this subsystem
    */
   public final Command getCurrentCommand() {
-    // Add CommandScheduler implementation here
-    return null;
+    return CommandScheduler.getInstance().requiring(this);
   }
 }
@@ -0,0 +1,57 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.command;
+
+import sallet.event.TimingWheel;
+import sallet.math.universal.MathSharedStore;
+
+/**
+ * A command that does nothing but finish after a specified duration. Rather than comparing
+ * timestamps in {@link #isFinished()} every cycle, it registers a timeout with the default {@link
+ * TimingWheel}, so any number of pending waits costs the same per cycle.
+ */
+public class WaitCommand extends Command {
+  private final long DURATION_NANOS;
+  private final TimingWheel.Timeout TIMEOUT = new TimingWheel.Timeout(this::onTimeout);
+
+  private long deadlineNanos;
+  private boolean elapsed;
+
+  /**
+   * Creates a new WaitCommand. This command will do nothing, and end after the specified duration.
+   *
+   * @param seconds The time to wait, in seconds
+   */
+  public WaitCommand(double seconds) {
+    DURATION_NANOS = (long) (seconds * 1e9);
+  }
+
+  @Override
+  public void initialize() {
+    deadlineNanos = MathSharedStore.getTimestampNanos() + DURATION_NANOS;
+    elapsed = DURATION_NANOS <= 0;
+    if (!elapsed) {
+      TimingWheel.getDefault().scheduleAt(TIMEOUT, deadlineNanos);
+    }
+  }
+
+  private void onTimeout() {
+    // The wheel can fire within the last tick before the deadline
+    if (MathSharedStore.getTimestampNanos() >= deadlineNanos) {
+      elapsed = true;
+    } else {
+      TimingWheel.getDefault().scheduleAt(TIMEOUT, deadlineNanos);
+    }
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    TimingWheel.getDefault().cancel(TIMEOUT);
+  }
+
+  @Override
+  public boolean isFinished() {
+    return elapsed;
+  }
+}
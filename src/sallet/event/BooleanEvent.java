@@ -8,7 +8,7 @@ package sallet.event;
 
 import static sallet.util.error.ErrorMessages.requireNonNullParam;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Arrays;
 import java.util.function.BiFunction;
 import java.util.function.BooleanSupplier;
 
@@ -24,15 +24,55 @@ import sallet.math.filters.Debouncer;
  *
  * <p>To get a new BooleanEvent that triggers when this one changes see {@link #falling()} and
  * {@link #rising()}.
+ *
+ * <p>Every event is a node in the dependency graph of its loop. When the loop is polled, the graph
+ * is evaluated in topological order before any bound actions run, so a composed event always sees
+ * the state its inputs have in the same poll. Only source signals are sampled on every poll;
+ * composed events are recomputed only when one of their inputs changed, and debounced events
+ * additionally when their {@link TimingWheel} timeout expires.
+ *
+ * <p>Compositions are shared: calling the same composition method with the same arguments on the
+ * same event (for example {@code button.rising()} in two places, or {@code a.and(b)} and {@code
+ * b.and(a)}) returns the same event instead of adding a duplicate node to the loop.
  */
 public class BooleanEvent implements BooleanSupplier {
+  // Operators of a node in the event graph
+  private static final int SOURCE = 0;
+  private static final int NEGATE = 1;
+  private static final int AND = 2;
+  private static final int OR = 3;
+  private static final int RISING = 4;
+  private static final int FALLING = 5;
+  private static final int DEBOUNCE = 6;
+  // Views over one button of a ButtonBank, in the order of ButtonBank's view kinds
+  private static final int BUTTON = 7;
+  private static final int BUTTON_RISING = 8;
+  private static final int BUTTON_FALLING = 9;
+
   /** Poller loop. */
   protected final EventLoop LOOP;
 
+  // The source signal, or the operand of an and/or that is not an event of this loop
   private final BooleanSupplier SIGNAL;
 
-  /** The state of the condition in the current loop poll. Nightmare to manage. */
-  private final AtomicBoolean STATE = new AtomicBoolean(false);
+  private final EventGraph GRAPH;
+  private final int OPERATOR;
+  private final BooleanEvent INPUT;
+  private final BooleanEvent OPERAND;
+  private final ScheduledDebouncer DEBOUNCER;
+  // The bank and button of a button view, which the bank marks dirty when the button changes
+  private final ButtonBank BANK;
+  private final int BUTTON_INDEX;
+
+  // Position in the graph's topological order, -1 once removed from the graph
+  private int index;
+  // Indices of the events composed from this one
+  private int[] dependents = new int[0];
+
+  /** The state of the condition in the current loop poll. */
+  private boolean state;
+  // The input state edge detectors last saw
+  private boolean previous;
 
   /**
    * Creates a new event that is active when the condition is true.
@@ -41,10 +81,167 @@ public class BooleanEvent implements BooleanSupplier {
    * @param signal the digital signal represented by this object.
    */
   public BooleanEvent(EventLoop loop, BooleanSupplier signal) {
-    LOOP = requireNonNullParam(loop, "loop", "BooleanEvent");
-    SIGNAL = requireNonNullParam(signal, "signal", "BooleanEvent");
-    STATE.set(SIGNAL.getAsBoolean());
-    LOOP.bind(() -> STATE.set(SIGNAL.getAsBoolean()));
+    this(
+        requireNonNullParam(loop, "loop", "BooleanEvent"),
+        SOURCE,
+        null,
+        null,
+        requireNonNullParam(signal, "signal", "BooleanEvent"),
+        0.0,
+        null,
+        null,
+        -1);
+  }
+
+  /**
+   * Creates a view over one button of a bank.
+   *
+   * @param loop the loop that polls the bank.
+   * @param bank the bank.
+   * @param button the index of the button.
+   * @param kind 0 for the pressed state, 1 for the rising edge, 2 for the falling edge.
+   * @return the new view.
+   */
+  static BooleanEvent buttonView(EventLoop loop, ButtonBank bank, int button, int kind) {
+    return new BooleanEvent(loop, BUTTON + kind, null, null, null, 0.0, null, bank, button);
+  }
+
+  /**
+   * Creates a new node of the event graph and computes its initial state.
+   *
+   * @param loop the loop that polls this event.
+   * @param operator the operator applied to the inputs.
+   * @param input the event this one is composed from, or null for a source.
+   * @param operand the event operand of an and/or, or null.
+   * @param signal the source signal or non-event operand, or null.
+   * @param seconds the debounce period of a debounced event.
+   * @param type the debounce type of a debounced event, or null.
+   * @param bank the bank of a button view, or null.
+   * @param button the button of a button view, or -1.
+   */
+  private BooleanEvent(
+      EventLoop loop,
+      int operator,
+      BooleanEvent input,
+      BooleanEvent operand,
+      BooleanSupplier signal,
+      double seconds,
+      Debouncer.DebounceType type,
+      ButtonBank bank,
+      int button) {
+    LOOP = loop;
+    BANK = bank;
+    BUTTON_INDEX = button;
+    GRAPH = loop.graph();
+    OPERATOR = operator;
+    INPUT = input;
+    OPERAND = operand;
+    SIGNAL = signal;
+    // The debounce timer revisits this node when a pending change may have settled
+    DEBOUNCER =
+        operator == DEBOUNCE
+            ? new ScheduledDebouncer(
+                seconds,
+                type,
+                () -> {
+                  if (index >= 0) {
+                    GRAPH.markPending(index);
+                  }
+                })
+            : null;
+
+    if (input != null) {
+      previous = input.state;
+    }
+    state = compute();
+
+    // Anything read from outside the graph can change without an input changing, so those nodes
+    // are evaluated on every poll. Button views are dirtied by their bank instead
+    boolean inputsInGraph = isInGraph(input) && (operand == null || isInGraph(operand));
+    index = GRAPH.add(this, signal != null || !inputsInGraph);
+    if (input != null && isInGraph(input)) {
+      input.addDependent(index);
+    }
+    if (operand != null && isInGraph(operand)) {
+      operand.addDependent(index);
+    }
+  }
+
+  /**
+   * @param event the event to check, may be null.
+   * @return whether the event is a live node of this event's graph.
+   */
+  private boolean isInGraph(BooleanEvent event) {
+    return event == null || (event.GRAPH == GRAPH && event.index >= 0);
+  }
+
+  private void addDependent(int dependent) {
+    dependents = Arrays.copyOf(dependents, dependents.length + 1);
+    dependents[dependents.length - 1] = dependent;
+  }
+
+  /**
+   * @return the state of this node given the current state of its inputs.
+   */
+  private boolean compute() {
+    return switch (OPERATOR) {
+      case NEGATE -> !INPUT.state;
+      case AND -> INPUT.state && (OPERAND != null ? OPERAND.state : SIGNAL.getAsBoolean());
+      case OR -> INPUT.state || (OPERAND != null ? OPERAND.state : SIGNAL.getAsBoolean());
+      case RISING -> {
+        boolean present = INPUT.state;
+        boolean ret = !previous && present;
+        previous = present;
+        yield ret;
+      }
+      case FALLING -> {
+        boolean present = INPUT.state;
+        boolean ret = previous && !present;
+        previous = present;
+        yield ret;
+      }
+      case DEBOUNCE -> DEBOUNCER.calculate(INPUT.state, GRAPH.getLastPollNanos());
+      case BUTTON -> BANK.isPressed(BUTTON_INDEX);
+      case BUTTON_RISING -> BANK.isRising(BUTTON_INDEX);
+      case BUTTON_FALLING -> BANK.isFalling(BUTTON_INDEX);
+      default -> SIGNAL.getAsBoolean();
+    };
+  }
+
+  /**
+   * Recomputes this node during a graph evaluation and dirties its dependents if it changed.
+   *
+   * @param graph the graph being evaluated.
+   */
+  final void update(EventGraph graph) {
+    boolean next = compute();
+    if (next != state) {
+      state = next;
+      for (int dependent : dependents) {
+        graph.markDirty(dependent);
+      }
+    }
+
+    // An edge only lasts one poll, so a high edge detector has to be revisited to fall back low
+    if (state && (OPERATOR == RISING || OPERATOR == FALLING)) {
+      graph.markPending(index);
+    }
+  }
+
+  /**
+   * @return the position of this node in its graph, or -1 once removed from the graph.
+   */
+  final int graphIndex() {
+    return index;
+  }
+
+  /** Removes this node from its graph, freezing its state. */
+  final void detach() {
+    index = -1;
+    if (DEBOUNCER != null) {
+      DEBOUNCER.cancel();
+    }
+    dependents = new int[0];
   }
 
   /**
@@ -55,7 +252,7 @@ public class BooleanEvent implements BooleanSupplier {
    */
   @Override
   public final boolean getAsBoolean() {
-    return STATE.get();
+    return state;
   }
 
   /**
@@ -66,7 +263,7 @@ public class BooleanEvent implements BooleanSupplier {
   public final void ifHigh(Runnable action) {
     LOOP.bind(
         () -> {
-          if (STATE.get()) {
+          if (state) {
             action.run();
           }
         });
@@ -82,7 +279,7 @@ public class BooleanEvent implements BooleanSupplier {
    * @return an instance of the subclass.
    */
   public <T extends BooleanSupplier> T castTo(BiFunction<EventLoop, BooleanSupplier, T> ctor) {
-    return ctor.apply(LOOP, STATE::get);
+    return ctor.apply(LOOP, this::getAsBoolean);
   }
 
   /**
@@ -91,7 +288,7 @@ public class BooleanEvent implements BooleanSupplier {
    * @return the new event.
    */
   public BooleanEvent negate() {
-    return new BooleanEvent(LOOP, () -> !STATE.get());
+    return derive(NEGATE, null, null, 0.0, null);
   }
 
   /**
@@ -106,7 +303,7 @@ public class BooleanEvent implements BooleanSupplier {
    */
   public BooleanEvent and(BooleanSupplier other) {
     requireNonNullParam(other, "other", "and");
-    return new BooleanEvent(LOOP, () -> STATE.get() && other.getAsBoolean());
+    return compose(AND, other);
   }
 
   /**
@@ -121,7 +318,59 @@ public class BooleanEvent implements BooleanSupplier {
    */
   public BooleanEvent or(BooleanSupplier other) {
     requireNonNullParam(other, "other", "or");
-    return new BooleanEvent(LOOP, () -> STATE.get() || other.getAsBoolean());
+    return compose(OR, other);
+  }
+
+  /**
+   * Creates a binary composition, linking the operand into the graph if it is an event of the same
+   * loop and sampling it as an outside signal otherwise.
+   */
+  private BooleanEvent compose(int operator, BooleanSupplier other) {
+    if (other instanceof BooleanEvent && isInGraph((BooleanEvent) other)) {
+      return derive(operator, (BooleanEvent) other, null, 0.0, null);
+    }
+    return derive(operator, null, other, 0.0, null);
+  }
+
+  /**
+   * Returns the composed event with the given structure, creating it only if this loop does not
+   * already have one.
+   */
+  private BooleanEvent derive(
+      int operator,
+      BooleanEvent operand,
+      BooleanSupplier signal,
+      double seconds,
+      Debouncer.DebounceType type) {
+    // A frozen event is not part of the graph anymore, so there is nothing to share with
+    if (index < 0) {
+      return create(operator, operand, signal, seconds, type);
+    }
+
+    // and/or of two events are commutative, key them with the earlier node first
+    BooleanEvent first = this;
+    Object second = operand != null ? operand : signal;
+    if (operand != null && operand.index < index) {
+      first = operand;
+      second = this;
+    }
+
+    EventGraph.Key key = new EventGraph.Key(operator, first, second, seconds, type);
+    BooleanEvent shared = GRAPH.findShared(key);
+    if (shared == null) {
+      shared = create(operator, operand, signal, seconds, type);
+      GRAPH.share(key, shared);
+    }
+    return shared;
+  }
+
+  private BooleanEvent create(
+      int operator,
+      BooleanEvent operand,
+      BooleanSupplier signal,
+      double seconds,
+      Debouncer.DebounceType type) {
+    return new BooleanEvent(LOOP, operator, this, operand, signal, seconds, type, null, -1);
   }
 
   /**
@@ -130,19 +379,7 @@ public class BooleanEvent implements BooleanSupplier {
    * @return the new event.
    */
   public BooleanEvent rising() {
-    return new BooleanEvent(
-        LOOP,
-        new BooleanSupplier() {
-          private boolean m_previous = STATE.get();
-
-          @Override
-          public boolean getAsBoolean() {
-            boolean present = STATE.get();
-            boolean ret = !m_previous && present;
-            m_previous = present;
-            return ret;
-          }
-        });
+    return derive(RISING, null, null, 0.0, null);
   }
 
   /**
@@ -151,19 +388,7 @@ public class BooleanEvent implements BooleanSupplier {
    * @return the event.
    */
   public BooleanEvent falling() {
-    return new BooleanEvent(
-        LOOP,
-        new BooleanSupplier() {
-          private boolean m_previous = STATE.get();
-
-          @Override
-          public boolean getAsBoolean() {
-            boolean present = STATE.get();
-            boolean ret = m_previous && !present;
-            m_previous = present;
-            return ret;
-          }
-        });
+    return derive(FALLING, null, null, 0.0, null);
   }
 
   /**
@@ -186,15 +411,7 @@ public class BooleanEvent implements BooleanSupplier {
    * @return The debounced event.
    */
   public BooleanEvent debounce(double seconds, Debouncer.DebounceType type) {
-    return new BooleanEvent(
-        LOOP,
-        new BooleanSupplier() {
-          private final Debouncer m_debouncer = new Debouncer(seconds, type);
-
-          @Override
-          public boolean getAsBoolean() {
-            return m_debouncer.calculate(STATE.get());
-          }
-        });
+    requireNonNullParam(type, "type", "debounce");
+    return derive(DEBOUNCE, null, null, seconds, type);
   }
 }
\ No newline at end of file
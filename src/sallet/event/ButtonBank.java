@@ -0,0 +1,294 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.event;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import sallet.math.universal.MathSharedStore;
+
+/**
+ * A packed bank of buttons, such as every button of the gamepads, polled by an {@link EventLoop}.
+ *
+ * <p>Each poll the bank snapshots all of its buttons into {@code long} words, 64 buttons per word,
+ * and derives the debounced state and the rising and falling edges of every button at once with a
+ * few XOR/AND operations per word. The {@link BooleanEvent} views returned by {@link #pressed},
+ * {@link #rising} and {@link #falling} are not sampled on every poll like ordinary source events;
+ * the bank only marks the views of the bits that actually changed, so buttons that are not being
+ * touched cost nothing past the word operations. Views compose like any other event.
+ *
+ * <p>Debouncing is per button: a debounced button only changes state once its raw input has held
+ * the new value for the debounce period, on both edges. The timers are per bit and only looked at
+ * while a button's raw input disagrees with its debounced state.
+ */
+public final class ButtonBank {
+  /** Packs the current state of every button into words */
+  @FunctionalInterface
+  public interface Sampler {
+    /**
+     * Writes the raw state of the buttons, button i being bit {@code i % 64} of word {@code i /
+     * 64}. The words are cleared before every call.
+     *
+     * @param words The words to write the buttons into
+     */
+    void sample(long[] words);
+  }
+
+  // Kinds of view, in the order BooleanEvent#buttonView expects
+  private static final int PRESSED = 0;
+  private static final int RISING = 1;
+  private static final int FALLING = 2;
+  private static final int VIEW_KINDS = 3;
+
+  private final EventLoop LOOP;
+  private final Sampler SAMPLER;
+  private final int BUTTON_COUNT;
+
+  // One bit per button
+  private final long[] RAW;
+  private final long[] PREVIOUS_RAW;
+  private final long[] PRESSED_WORDS;
+  private final long[] RISING_WORDS;
+  private final long[] FALLING_WORDS;
+  // Buttons with a debounce period
+  private final long[] DEBOUNCED;
+  // Buttons with a view of each kind, indexed by kind and then word
+  private final long[][] VIEWED;
+
+  // Per button
+  private final long[] DEBOUNCE_NANOS;
+  private final long[] RAW_CHANGED_NANOS;
+  private final BooleanEvent[] VIEWS;
+
+  private long lastSampleNanos;
+
+  /**
+   * Creates a bank sampled by a packing function, which can read a whole device at once.
+   *
+   * @param loop The loop that polls the bank
+   * @param buttonCount The number of buttons
+   * @param sampler Writes the raw state of every button
+   */
+  public ButtonBank(EventLoop loop, int buttonCount, Sampler sampler) {
+    LOOP = requireNonNullParam(loop, "loop", "ButtonBank");
+    SAMPLER = requireNonNullParam(sampler, "sampler", "ButtonBank");
+    if (buttonCount < 1) {
+      throw new IllegalArgumentException("A button bank needs at least one button");
+    }
+    BUTTON_COUNT = buttonCount;
+
+    int words = (buttonCount + 63) >>> 6;
+    RAW = new long[words];
+    PREVIOUS_RAW = new long[words];
+    PRESSED_WORDS = new long[words];
+    RISING_WORDS = new long[words];
+    FALLING_WORDS = new long[words];
+    DEBOUNCED = new long[words];
+    VIEWED = new long[VIEW_KINDS][words];
+    DEBOUNCE_NANOS = new long[buttonCount];
+    RAW_CHANGED_NANOS = new long[buttonCount];
+    VIEWS = new BooleanEvent[VIEW_KINDS * buttonCount];
+
+    // Start from the current state, without edges
+    sampleRaw();
+    System.arraycopy(RAW, 0, PREVIOUS_RAW, 0, words);
+    System.arraycopy(RAW, 0, PRESSED_WORDS, 0, words);
+    lastSampleNanos = MathSharedStore.getTimestampNanos();
+    Arrays.fill(RAW_CHANGED_NANOS, lastSampleNanos);
+
+    loop.graph().addBank(this);
+  }
+
+  /**
+   * Creates a bank over individual button signals.
+   *
+   * @param loop The loop that polls the bank
+   * @param buttons The signal of each button, button i being the ith signal
+   */
+  public ButtonBank(EventLoop loop, BooleanSupplier... buttons) {
+    this(loop, requireNonNullParam(buttons, "buttons", "ButtonBank").length, packing(buttons));
+  }
+
+  private static Sampler packing(BooleanSupplier[] buttons) {
+    BooleanSupplier[] signals = buttons.clone();
+    for (int i = 0; i < signals.length; i++) {
+      requireNonNullParam(signals[i], "buttons[" + i + "]", "ButtonBank");
+    }
+    return words -> {
+      for (int i = 0; i < signals.length; i++) {
+        if (signals[i].getAsBoolean()) {
+          words[i >>> 6] |= 1L << i;
+        }
+      }
+    };
+  }
+
+  /**
+   * @return The number of buttons in the bank
+   */
+  public int getButtonCount() {
+    return BUTTON_COUNT;
+  }
+
+  /**
+   * Sets the debounce period of a button, applied to both edges. Zero disables debouncing.
+   *
+   * @param button The index of the button
+   * @param seconds The debounce period in seconds
+   */
+  public void setDebounce(int button, double seconds) {
+    checkButton(button);
+    if (!(seconds >= 0.0)) {
+      throw new IllegalArgumentException("Debounce period cannot be negative, got " + seconds);
+    }
+    DEBOUNCE_NANOS[button] = (long) (seconds * 1e9);
+    if (DEBOUNCE_NANOS[button] > 0) {
+      DEBOUNCED[button >>> 6] |= 1L << button;
+    } else {
+      DEBOUNCED[button >>> 6] &= ~(1L << button);
+    }
+  }
+
+  /**
+   * Sets the debounce period of every button, applied to both edges. Zero disables debouncing.
+   *
+   * @param seconds The debounce period in seconds
+   */
+  public void setDebounce(double seconds) {
+    for (int i = 0; i < BUTTON_COUNT; i++) {
+      setDebounce(i, seconds);
+    }
+  }
+
+  /**
+   * @param button The index of the button
+   * @return An event that is active while the button is (debounced) pressed
+   */
+  public BooleanEvent pressed(int button) {
+    return view(button, PRESSED);
+  }
+
+  /**
+   * @param button The index of the button
+   * @return An event that is active for the one poll in which the button became pressed
+   */
+  public BooleanEvent rising(int button) {
+    return view(button, RISING);
+  }
+
+  /**
+   * @param button The index of the button
+   * @return An event that is active for the one poll in which the button was released
+   */
+  public BooleanEvent falling(int button) {
+    return view(button, FALLING);
+  }
+
+  /**
+   * @param button The index of the button
+   * @return Whether the button is (debounced) pressed as of the last poll
+   */
+  public boolean isPressed(int button) {
+    return (PRESSED_WORDS[button >>> 6] & (1L << button)) != 0;
+  }
+
+  /**
+   * @param button The index of the button
+   * @return Whether the button became pressed in the last poll
+   */
+  public boolean isRising(int button) {
+    return (RISING_WORDS[button >>> 6] & (1L << button)) != 0;
+  }
+
+  /**
+   * @param button The index of the button
+   * @return Whether the button was released in the last poll
+   */
+  public boolean isFalling(int button) {
+    return (FALLING_WORDS[button >>> 6] & (1L << button)) != 0;
+  }
+
+  /**
+   * Samples every button and marks the views whose state changed. Called at the start of every
+   * evaluation of the loop's graph.
+   *
+   * @param graph The graph being evaluated
+   * @param nowNanos The timestamp of the poll
+   */
+  void sample(EventGraph graph, long nowNanos) {
+    sampleRaw();
+
+    for (int w = 0; w < RAW.length; w++) {
+      long raw = RAW[w];
+      long debounced = DEBOUNCED[w];
+
+      // Restart the timer of every debounced button whose raw input moved. Like Debouncer, the
+      // change is timed from the last poll that still saw the old value
+      for (long bits = (raw ^ PREVIOUS_RAW[w]) & debounced; bits != 0; bits &= bits - 1) {
+        RAW_CHANGED_NANOS[(w << 6) + Long.numberOfTrailingZeros(bits)] = lastSampleNanos;
+      }
+      PREVIOUS_RAW[w] = raw;
+
+      // Buttons without a debounce period follow their input, the others keep their state until
+      // their input has settled at the other value for long enough
+      long previous = PRESSED_WORDS[w];
+      long pressed = (raw & ~debounced) | (previous & debounced);
+      for (long bits = (raw ^ previous) & debounced; bits != 0; bits &= bits - 1) {
+        int button = (w << 6) + Long.numberOfTrailingZeros(bits);
+        if (nowNanos - RAW_CHANGED_NANOS[button] >= DEBOUNCE_NANOS[button]) {
+          pressed ^= bits & -bits;
+        }
+      }
+
+      long rising = pressed & ~previous;
+      long falling = previous & ~pressed;
+      markChanged(graph, w, PRESSED, (pressed ^ previous) & VIEWED[PRESSED][w]);
+      markChanged(graph, w, RISING, (rising ^ RISING_WORDS[w]) & VIEWED[RISING][w]);
+      markChanged(graph, w, FALLING, (falling ^ FALLING_WORDS[w]) & VIEWED[FALLING][w]);
+      PRESSED_WORDS[w] = pressed;
+      RISING_WORDS[w] = rising;
+      FALLING_WORDS[w] = falling;
+    }
+    lastSampleNanos = nowNanos;
+  }
+
+  private void sampleRaw() {
+    Arrays.fill(RAW, 0L);
+    SAMPLER.sample(RAW);
+    // Ignore anything written past the last button
+    int tail = BUTTON_COUNT & 63;
+    if (tail != 0) {
+      RAW[RAW.length - 1] &= (1L << tail) - 1;
+    }
+  }
+
+  private void markChanged(EventGraph graph, int word, int kind, long bits) {
+    for (; bits != 0; bits &= bits - 1) {
+      int index = VIEWS[kind * BUTTON_COUNT + (word << 6) + Long.numberOfTrailingZeros(bits)]
+          .graphIndex();
+      if (index >= 0) {
+        graph.markDirty(index);
+      }
+    }
+  }
+
+  private BooleanEvent view(int button, int kind) {
+    checkButton(button);
+    int slot = kind * BUTTON_COUNT + button;
+    if (VIEWS[slot] == null) {
+      VIEWS[slot] = BooleanEvent.buttonView(LOOP, this, button, kind);
+      VIEWED[kind][button >>> 6] |= 1L << button;
+    }
+    return VIEWS[slot];
+  }
+
+  private void checkButton(int button) {
+    if (button < 0 || button >= BUTTON_COUNT) {
+      throw new IndexOutOfBoundsException(
+          "Button " + button + " is out of range for a bank of " + BUTTON_COUNT);
+    }
+  }
+}
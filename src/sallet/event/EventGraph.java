@@ -0,0 +1,188 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.event;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import sallet.math.filters.Debouncer;
+import sallet.math.universal.MathSharedStore;
+
+/**
+ * The dependency graph of the {@link BooleanEvent}s polled by one {@link EventLoop}.
+ *
+ * <p>An event can only be composed from events that already exist, so the order nodes are added in
+ * is always a valid topological order. Each poll the graph walks its dirty set in that order: source
+ * signals and nodes that read signals from outside the graph are dirty every poll, and every other
+ * node only becomes dirty when one of its inputs changed during the same poll, so idle parts of the
+ * graph cost nothing.
+ *
+ * <p>Composed nodes are hash-consed: composing the same input with the same operator, operand and
+ * debounce parameters again returns the node that already exists instead of growing the graph.
+ */
+final class EventGraph {
+  /**
+   * The structure of a composed node. Events and non-event operands compare by identity.
+   *
+   * @param operator the operator applied to the inputs.
+   * @param input the event the node is composed from.
+   * @param operand the event or signal operand of an and/or, or null.
+   * @param seconds the debounce period of a debounced node, or 0.
+   * @param type the debounce type of a debounced node, or null.
+   */
+  record Key(
+      int operator,
+      BooleanEvent input,
+      Object operand,
+      double seconds,
+      Debouncer.DebounceType type) {}
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  // Composed nodes by structure
+  private final Map<Key, BooleanEvent> SHARED_NODES = new HashMap<>();
+
+  // Nodes in topological order, indexed by BooleanEvent#index
+  private BooleanEvent[] nodes = new BooleanEvent[INITIAL_CAPACITY];
+  private int nodeCount;
+
+  // Bitsets over node indices
+  // Nodes that are re-evaluated on every poll
+  private long[] alwaysDirty = new long[INITIAL_CAPACITY / 64];
+  // Nodes to re-evaluate during the current poll
+  private long[] dirty = new long[INITIAL_CAPACITY / 64];
+  // Nodes that asked to be re-evaluated on the next poll
+  private long[] pending = new long[INITIAL_CAPACITY / 64];
+
+  // Button banks sampled at the start of every evaluation
+  private ButtonBank[] banks = new ButtonBank[0];
+
+  // Timestamps of the current and previous evaluation
+  private long pollNanos = MathSharedStore.getTimestampNanos();
+  private long lastPollNanos = pollNanos;
+
+  /**
+   * Adds a node to the end of the topological order.
+   *
+   * @param node The node to add, whose inputs must already be in the graph
+   * @param evaluateEveryPoll Whether the node must be re-evaluated on every poll regardless of its
+   *     inputs
+   * @return The index of the node
+   */
+  int add(BooleanEvent node, boolean evaluateEveryPoll) {
+    if (nodeCount == nodes.length) {
+      nodes = Arrays.copyOf(nodes, nodeCount * 2);
+      alwaysDirty = Arrays.copyOf(alwaysDirty, nodes.length / 64);
+      dirty = Arrays.copyOf(dirty, nodes.length / 64);
+      pending = Arrays.copyOf(pending, nodes.length / 64);
+    }
+
+    int index = nodeCount++;
+    nodes[index] = node;
+    if (evaluateEveryPoll) {
+      alwaysDirty[index >>> 6] |= 1L << index;
+    }
+    return index;
+  }
+
+  /**
+   * Adds a button bank to sample at the start of every evaluation, before any node is updated.
+   *
+   * @param bank The bank
+   */
+  void addBank(ButtonBank bank) {
+    banks = Arrays.copyOf(banks, banks.length + 1);
+    banks[banks.length - 1] = bank;
+  }
+
+  /**
+   * @param key the structure of a composed node.
+   * @return the existing node with that structure, or null if there is none.
+   */
+  BooleanEvent findShared(Key key) {
+    return SHARED_NODES.get(key);
+  }
+
+  /**
+   * Records a composed node so later compositions with the same structure reuse it.
+   *
+   * @param key the structure of the node.
+   * @param node the node.
+   */
+  void share(Key key, BooleanEvent node) {
+    SHARED_NODES.put(key, node);
+  }
+
+  /**
+   * Marks a node to be re-evaluated later in the current poll. Only valid for nodes after the one
+   * currently being evaluated, which holds for the dependents of any node.
+   *
+   * @param index The index of the node
+   */
+  void markDirty(int index) {
+    dirty[index >>> 6] |= 1L << index;
+  }
+
+  /**
+   * Marks a node to be re-evaluated on the next poll.
+   *
+   * @param index The index of the node
+   */
+  void markPending(int index) {
+    pending[index >>> 6] |= 1L << index;
+  }
+
+  /**
+   * @return When the graph was evaluated before the current (or most recent) evaluation.
+   */
+  long getLastPollNanos() {
+    return lastPollNanos;
+  }
+
+  /** Re-evaluates every dirty node, in topological order. */
+  void evaluate() {
+    lastPollNanos = pollNanos;
+    pollNanos = MathSharedStore.getTimestampNanos();
+    // Expired debounce timeouts mark their nodes pending for this evaluation
+    TimingWheel.getDefault().advanceTo(pollNanos);
+
+    // Banks mark the views of the buttons that changed dirty
+    for (ButtonBank bank : banks) {
+      bank.sample(this, pollNanos);
+    }
+
+    long[] dirty = this.dirty;
+    for (int w = 0; w < dirty.length; w++) {
+      dirty[w] |= alwaysDirty[w] | pending[w];
+      pending[w] = 0;
+    }
+
+    // Dependents always sit after the node that dirtied them, so taking the lowest set bit each
+    // time visits nodes in order even as new bits are set while walking
+    for (int w = 0; w < dirty.length; w++) {
+      long bits;
+      while ((bits = dirty[w]) != 0) {
+        dirty[w] = bits & (bits - 1);
+        nodes[(w << 6) + Long.numberOfTrailingZeros(bits)].update(this);
+      }
+    }
+  }
+
+  /**
+   * Removes every node from the graph. Removed events keep the state they had and stop updating.
+   */
+  void clear() {
+    for (int i = 0; i < nodeCount; i++) {
+      nodes[i].detach();
+      nodes[i] = null;
+    }
+    nodeCount = 0;
+    banks = new ButtonBank[0];
+    SHARED_NODES.clear();
+    Arrays.fill(alwaysDirty, 0);
+    Arrays.fill(dirty, 0);
+    Arrays.fill(pending, 0);
+  }
+}
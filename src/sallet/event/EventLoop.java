@@ -7,47 +7,95 @@
 package sallet.event;
 
 import java.util.Collection;
-import java.util.ConcurrentModificationException;
 import java.util.LinkedHashSet;
 
 /**
  * A declarative way to bind a set of actions to a loop and execute them when the loop is polled.
+ *
+ * <p>Polling walks a compact array snapshot of the bindings that is only rebuilt when the bindings
+ * change. Because of this, actions may bind, unbind or clear while the loop is polling - the change
+ * is applied at the next poll boundary and the current poll finishes with the bindings it started
+ * with.
  */
 public final class EventLoop {
+  private static final Runnable[] NO_BINDINGS = new Runnable[0];
+
   private final Collection<Runnable> BINDINGS = new LinkedHashSet<>();
-  private boolean isRunning;
+  // Snapshot of BINDINGS walked by poll(), rebuilt lazily after the bindings change
+  private Runnable[] dispatchTable = NO_BINDINGS;
+  private boolean bindingsChanged;
+  // Dependency graph of the BooleanEvents polled by this loop, created with the first event
+  private EventGraph graph;
+  // ID naming this loop in telemetry logs, read and written only by
+  // sallet.telemetry.TelemetryIds. -1 until the first log records it
+  private int telemetryId = -1;
 
   /** Default constructor. */
   public EventLoop() {}
 
   /**
-   * Bind a new action to run when the loop is polled.
+   * Bind a new action to run when the loop is polled. If called while the loop is polling, the
+   * action first runs on the next poll.
    *
    * @param action the action to run.
    */
   public void bind(Runnable action) {
-    if (isRunning) {
-      throw new ConcurrentModificationException("Cannot bind EventLoop while it is running");
+    if (BINDINGS.add(action)) {
+      bindingsChanged = true;
+    }
+  }
+
+  /**
+   * Remove a previously bound action. If called while the loop is polling, the action still runs
+   * for the rest of the current poll.
+   *
+   * @param action the action to remove.
+   */
+  public void unbind(Runnable action) {
+    if (BINDINGS.remove(action)) {
+      bindingsChanged = true;
     }
-    BINDINGS.add(action);
   }
 
-  /** Poll all bindings. */
-  @SuppressWarnings("PMD.UnusedAssignment")
+  /**
+   * @return the event graph of this loop, created on first use.
+   */
+  EventGraph graph() {
+    if (graph == null) {
+      graph = new EventGraph();
+    }
+    return graph;
+  }
+
+  /** Update every {@link BooleanEvent} of this loop, then poll all bindings. */
   public void poll() {
-    try {
-      isRunning = true;
-      BINDINGS.forEach(Runnable::run);
-    } finally {
-      isRunning = false;
+    if (graph != null) {
+      graph.evaluate();
+    }
+
+    if (bindingsChanged) {
+      bindingsChanged = false;
+      // Always a fresh array, a nested poll() must not rewrite the table an outer poll is walking
+      dispatchTable = BINDINGS.toArray(NO_BINDINGS);
+    }
+
+    Runnable[] table = dispatchTable;
+    for (int i = 0; i < table.length; i++) {
+      table[i].run();
     }
   }
 
-  /** Clear all bindings. */
+  /**
+   * Clear all bindings. Events polled by this loop keep their current state and stop updating. If
+   * called while the loop is polling, the current poll still runs the remaining bindings.
+   */
   public void clear() {
-    if (isRunning) {
-      throw new ConcurrentModificationException("Cannot clear EventLoop while it is running");
+    if (!BINDINGS.isEmpty()) {
+      BINDINGS.clear();
+      bindingsChanged = true;
+    }
+    if (graph != null) {
+      graph.clear();
     }
-    BINDINGS.clear();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,93 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.event;
+
+import sallet.math.filters.Debouncer;
+import sallet.math.universal.MathSharedStore;
+
+/**
+ * The debouncer behind {@link BooleanEvent#debounce(double, Debouncer.DebounceType)}. It follows
+ * the same rules as {@link Debouncer}, but instead of being polled every cycle to compare
+ * timestamps it is only recalculated when its input changes, and registers a {@link TimingWheel}
+ * timeout for the moment a pending change would settle.
+ *
+ * <p>A polled {@link Debouncer} restarts its timer on every poll where the input equals the
+ * baseline. When the input leaves the baseline, this one therefore takes the previous poll of the
+ * loop as the start of the debounce period.
+ */
+final class ScheduledDebouncer {
+  private final long DEBOUNCE_TIME_NANOS;
+  private final Debouncer.DebounceType DEBOUNCE_TYPE;
+  private final TimingWheel.Timeout TIMEOUT;
+
+  private boolean baseline;
+  // Whether the input has been away from the baseline since the last calculation
+  private boolean changing;
+  private long resetNanos;
+
+  /**
+   * Creates a new ScheduledDebouncer.
+   *
+   * @param debounceTime The number of seconds the value must change from baseline for the filtered
+   *     value to change.
+   * @param type Which type of state change the debouncing will be performed on.
+   * @param onSettle Called from the timing wheel when a pending change may have settled, the owner
+   *     should recalculate.
+   */
+  ScheduledDebouncer(double debounceTime, Debouncer.DebounceType type, Runnable onSettle) {
+    DEBOUNCE_TIME_NANOS = (long) (debounceTime * 1e9);
+    DEBOUNCE_TYPE = type;
+    TIMEOUT = new TimingWheel.Timeout(onSettle);
+
+    resetNanos = MathSharedStore.getTimestampNanos();
+    baseline =
+        switch (DEBOUNCE_TYPE) {
+          case BOTH, RISING -> false;
+          case FALLING -> true;
+        };
+  }
+
+  /**
+   * Applies the debouncer to a change of the input, or to its timeout expiring.
+   *
+   * @param input The current value of the input stream.
+   * @param lastPollNanos When the loop was polled before the current poll.
+   * @return The debounced value of the input stream.
+   */
+  boolean calculate(boolean input, long lastPollNanos) {
+    long now = MathSharedStore.getTimestampNanos();
+
+    if (input == baseline) {
+      TimingWheel.getDefault().cancel(TIMEOUT);
+      changing = false;
+      resetNanos = now;
+      return baseline;
+    }
+
+    if (!changing) {
+      changing = true;
+      resetNanos = Math.max(resetNanos, lastPollNanos);
+    }
+
+    if (now - resetNanos >= DEBOUNCE_TIME_NANOS) {
+      TimingWheel.getDefault().cancel(TIMEOUT);
+      if (DEBOUNCE_TYPE == Debouncer.DebounceType.BOTH) {
+        baseline = input;
+        changing = false;
+        resetNanos = now;
+      }
+      return input;
+    }
+
+    if (!TIMEOUT.isPending()) {
+      TimingWheel.getDefault().scheduleAt(TIMEOUT, resetNanos + DEBOUNCE_TIME_NANOS);
+    }
+    return baseline;
+  }
+
+  /** Drops any pending timeout. */
+  void cancel() {
+    TimingWheel.getDefault().cancel(TIMEOUT);
+  }
+}
@@ -0,0 +1,316 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.event;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import sallet.math.universal.MathSharedStore;
+
+/**
+ * A hierarchical timing wheel that time-based primitives (debounced events, wait commands,
+ * timeouts) register their expirations with, instead of each one comparing timestamps every cycle.
+ *
+ * <p>Time is divided into ticks. Pending timeouts are kept in intrusive linked lists hanging off
+ * {@value #LEVELS} levels of {@value #SLOTS} slots each, so scheduling and canceling are O(1), and
+ * advancing the wheel only visits the slots that actually hold timeouts - the cost per tick does
+ * not depend on how many timeouts are pending. A timeout fires on the first {@link #advanceTo} that
+ * reaches the tick containing its deadline, which can be up to one tick before the deadline itself;
+ * owners that need the exact time compare against it when the timeout fires and reschedule, which
+ * always lands on a later tick.
+ *
+ * <p>The {@link #getDefault() default wheel} has a 1 ms tick, runs on the {@link MathSharedStore}
+ * clock and is advanced by the {@link sallet.command.CommandScheduler} every cycle and by every
+ * {@link EventLoop} poll that has events registered. Like the rest of the library it is meant to be
+ * used from the loop thread only.
+ */
+public final class TimingWheel {
+  /**
+   * A reusable timeout handle. A handle is pending in at most one wheel at a time; scheduling it
+   * again moves its deadline.
+   */
+  public static final class Timeout {
+    private final Runnable ACTION;
+
+    private TimingWheel wheel;
+    private long expiryTick;
+    private int level;
+    private int slot;
+    private Timeout prev;
+    private Timeout next;
+
+    /**
+     * Creates a new timeout handle.
+     *
+     * @param action The action to run, on the thread advancing the wheel, when the timeout expires
+     */
+    public Timeout(Runnable action) {
+      ACTION = requireNonNullParam(action, "action", "Timeout");
+    }
+
+    /**
+     * @return Whether this timeout is scheduled and has not yet expired or been canceled
+     */
+    public boolean isPending() {
+      return wheel != null;
+    }
+  }
+
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+  private static final int LEVELS = 4;
+  // Level the overflow list is cascaded with, holding timeouts beyond the range of every level
+  private static final int OVERFLOW = LEVELS;
+
+  private static final long DEFAULT_TICK_NANOS = 1_000_000L;
+
+  private static TimingWheel defaultWheel;
+
+  /**
+   * @return The shared 1 ms wheel running on the {@link MathSharedStore} clock
+   */
+  public static TimingWheel getDefault() {
+    if (defaultWheel == null) {
+      defaultWheel = new TimingWheel(DEFAULT_TICK_NANOS, MathSharedStore.getTimestampNanos());
+    }
+    return defaultWheel;
+  }
+
+  private final long TICK_NANOS;
+
+  // Slot list heads per level, plus one list for timeouts past the last level
+  private final Timeout[][] SLOT_HEADS = new Timeout[LEVELS + 1][SLOTS];
+  // Which slots hold timeouts, one word per level
+  private final long[] OCCUPIED = new long[LEVELS + 1];
+
+  private long tick;
+  private long nowNanos;
+  private int pendingCount;
+
+  /**
+   * Creates a new timing wheel.
+   *
+   * @param tickNanos The resolution of the wheel in nanoseconds
+   * @param startNanos The current time of the clock the wheel will be advanced with
+   */
+  public TimingWheel(long tickNanos, long startNanos) {
+    if (tickNanos <= 0) {
+      throw new IllegalArgumentException("Tick length must be positive, got " + tickNanos);
+    }
+    TICK_NANOS = tickNanos;
+    tick = Math.floorDiv(startNanos, tickNanos);
+    nowNanos = startNanos;
+  }
+
+  /**
+   * @return The time the wheel was last advanced to, in nanoseconds
+   */
+  public long getNowNanos() {
+    return nowNanos;
+  }
+
+  /**
+   * @return The number of timeouts currently pending
+   */
+  public int getPendingCount() {
+    return pendingCount;
+  }
+
+  /**
+   * Schedules a timeout relative to the time the wheel was last advanced to.
+   *
+   * @param timeout The timeout to schedule, rescheduled if it is already pending
+   * @param delayNanos How long from now the timeout should expire, in nanoseconds
+   */
+  public void schedule(Timeout timeout, long delayNanos) {
+    scheduleAt(timeout, nowNanos + Math.max(delayNanos, 0));
+  }
+
+  /**
+   * Schedules a timeout at an absolute time.
+   *
+   * @param timeout The timeout to schedule, rescheduled if it is already pending
+   * @param deadlineNanos When the timeout should expire, on the clock the wheel is advanced with
+   */
+  public void scheduleAt(Timeout timeout, long deadlineNanos) {
+    requireNonNullParam(timeout, "timeout", "scheduleAt");
+    if (timeout.wheel != null) {
+      timeout.wheel.cancel(timeout);
+    }
+
+    // Never into the slot of the current tick, that slot has already been processed
+    timeout.expiryTick = Math.max(Math.floorDiv(deadlineNanos, TICK_NANOS), tick + 1);
+    timeout.wheel = this;
+    pendingCount++;
+    place(timeout);
+  }
+
+  /**
+   * Cancels a timeout. Does nothing if it is not pending in this wheel.
+   *
+   * @param timeout The timeout to cancel
+   */
+  public void cancel(Timeout timeout) {
+    if (timeout.wheel != this) {
+      return;
+    }
+    unlink(timeout);
+    timeout.wheel = null;
+    pendingCount--;
+  }
+
+  /**
+   * Advances the wheel, running the action of every timeout whose deadline has passed.
+   *
+   * @param timeNanos The current time of the clock
+   */
+  public void advanceTo(long timeNanos) {
+    long target = Math.floorDiv(timeNanos, TICK_NANOS);
+    if (target < tick) {
+      // The clock was swapped for one that is behind, keep the remaining delays
+      rebase(target);
+      nowNanos = timeNanos;
+      return;
+    }
+    nowNanos = timeNanos;
+
+    while (tick < target) {
+      if (pendingCount == 0) {
+        tick = target;
+        return;
+      }
+
+      // Jump straight to the next occupied slot of the lowest level, or the next point where the
+      // upper levels have to be cascaded down, whichever comes first
+      int index = (int) (tick & SLOT_MASK);
+      long next = (tick | SLOT_MASK) + 1;
+      if (index < SLOT_MASK) {
+        long ahead = OCCUPIED[0] & (-1L << (index + 1));
+        if (ahead != 0) {
+          next = (tick & ~(long) SLOT_MASK) + Long.numberOfTrailingZeros(ahead);
+        }
+      }
+      if (next > target) {
+        tick = target;
+        return;
+      }
+
+      tick = next;
+      if ((tick & SLOT_MASK) == 0) {
+        cascade(1);
+      }
+      expire((int) (tick & SLOT_MASK));
+    }
+  }
+
+  /** Runs every timeout in a slot of the lowest level. */
+  private void expire(int slot) {
+    // Pop one at a time, an action may cancel or reschedule other timeouts of the same slot.
+    // Nothing can be placed back into this slot, it belongs to the current tick
+    Timeout timeout;
+    while ((timeout = SLOT_HEADS[0][slot]) != null) {
+      unlink(timeout);
+      timeout.wheel = null;
+      pendingCount--;
+      timeout.ACTION.run();
+    }
+  }
+
+  /** Re-places every timeout of the current slot of a level, cascading the level above it first. */
+  private void cascade(int level) {
+    int slot;
+    if (level == OVERFLOW) {
+      slot = 0;
+    } else {
+      slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+      if (slot == 0) {
+        cascade(level + 1);
+      }
+    }
+
+    Timeout timeout = takeSlot(level, slot);
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      timeout.prev = null;
+      timeout.next = null;
+      place(timeout);
+      timeout = next;
+    }
+  }
+
+  /** Moves every pending timeout onto a new current tick, keeping each one's remaining delay. */
+  private void rebase(long newTick) {
+    Timeout all = null;
+    for (int level = 0; level <= LEVELS; level++) {
+      for (int slot = 0; slot < SLOTS; slot++) {
+        Timeout timeout = takeSlot(level, slot);
+        while (timeout != null) {
+          Timeout next = timeout.next;
+          timeout.expiryTick = newTick + Math.max(timeout.expiryTick - tick, 1);
+          timeout.prev = null;
+          timeout.next = all;
+          all = timeout;
+          timeout = next;
+        }
+      }
+    }
+
+    tick = newTick;
+    while (all != null) {
+      Timeout next = all.next;
+      all.next = null;
+      place(all);
+      all = next;
+    }
+  }
+
+  /** Links a timeout into the slot matching its distance from the current tick. */
+  private void place(Timeout timeout) {
+    long delta = timeout.expiryTick - tick;
+    int level = 0;
+    while (level < LEVELS && delta >= 1L << (SLOT_BITS * (level + 1))) {
+      level++;
+    }
+
+    int slot =
+        level == OVERFLOW
+            ? 0
+            : (int) ((timeout.expiryTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    timeout.level = level;
+    timeout.slot = slot;
+
+    Timeout head = SLOT_HEADS[level][slot];
+    timeout.prev = null;
+    timeout.next = head;
+    if (head != null) {
+      head.prev = timeout;
+    }
+    SLOT_HEADS[level][slot] = timeout;
+    OCCUPIED[level] |= 1L << slot;
+  }
+
+  private void unlink(Timeout timeout) {
+    if (timeout.prev != null) {
+      timeout.prev.next = timeout.next;
+    } else {
+      SLOT_HEADS[timeout.level][timeout.slot] = timeout.next;
+      if (timeout.next == null) {
+        OCCUPIED[timeout.level] &= ~(1L << timeout.slot);
+      }
+    }
+    if (timeout.next != null) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.prev = null;
+    timeout.next = null;
+  }
+
+  /** Detaches and returns the whole list of a slot. */
+  private Timeout takeSlot(int level, int slot) {
+    Timeout head = SLOT_HEADS[level][slot];
+    SLOT_HEADS[level][slot] = null;
+    OCCUPIED[level] &= ~(1L << slot);
+    return head;
+  }
+}
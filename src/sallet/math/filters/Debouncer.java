@@ -23,11 +23,11 @@ public class Debouncer {
     BOTH
   }
 
-  private final double DEBOUNCE_TIME_SEC;
+  private final long DEBOUNCE_TIME_NANOS;
   private final DebounceType DEBOUNCE_TYPE;
   private boolean BASELINE;
 
-  private double PREV_TIME_SEC;
+  private long PREV_TIME_NANOS;
 
   /**
    * Creates a new Debouncer.
@@ -37,7 +37,7 @@ public class Debouncer {
    * @param type Which type of state change the debouncing will be performed on.
    */
   public Debouncer(double debounceTime, DebounceType type) {
-    DEBOUNCE_TIME_SEC = debounceTime;
+    DEBOUNCE_TIME_NANOS = (long) (debounceTime * 1e9);
     DEBOUNCE_TYPE = type;
 
     resetTimer();
@@ -60,11 +60,11 @@ public class Debouncer {
   }
 
   private void resetTimer() {
-    PREV_TIME_SEC = MathSharedStore.getTimestampSec();
+    PREV_TIME_NANOS = MathSharedStore.getTimestampNanos();
   }
 
   private boolean hasElapsed() {
-    return MathSharedStore.getTimestampSec() - PREV_TIME_SEC >= DEBOUNCE_TIME_SEC;
+    return MathSharedStore.getTimestampNanos() - PREV_TIME_NANOS >= DEBOUNCE_TIME_NANOS;
   }
 
   /**
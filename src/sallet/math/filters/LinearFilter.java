@@ -0,0 +1,193 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/filter/LinearFilter.java
+
+package sallet.math.filters;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.util.Arrays;
+
+/**
+ * A linear, digital filter for double streams. Covers finite impulse response (FIR) filters such as
+ * a moving average and infinite impulse response (IIR) filters such as a single-pole low-pass,
+ * described by their feedforward and feedback gains:
+ *
+ * <p>y[n] = ffGains[0] x[n] + ... + ffGains[P] x[n - P] - fbGains[0] y[n - 1] - ... -
+ * fbGains[Q - 1] y[n - Q]
+ *
+ * <p>Past inputs and outputs are kept in preallocated circular buffers, so filtering a sample never
+ * allocates. A filter whose feedforward gains are all equal and that has no feedback, such as
+ * {@link #movingAverage(int)}, keeps a running sum instead and costs O(1) per sample regardless of
+ * the number of taps.
+ *
+ * <p>The filters assume they are sampled at a fixed period, which the factories take as a
+ * parameter.
+ */
+public class LinearFilter {
+  private final double[] FF_GAINS;
+  private final double[] FB_GAINS;
+  // Whether this is a plain average over equal gains, filtered with a running sum
+  private final boolean UNIFORM;
+
+  // Circular buffers of past inputs and outputs, the newest at the head index
+  private final double[] INPUTS;
+  private final double[] OUTPUTS;
+  private int inputHead;
+  private int outputHead;
+
+  private double runningSum;
+  private int samplesUntilResum;
+  private double lastOutput;
+
+  /**
+   * Creates a linear filter.
+   *
+   * @param ffGains The "feedforward" or FIR gains.
+   * @param fbGains The "feedback" or IIR gains.
+   */
+  public LinearFilter(double[] ffGains, double[] fbGains) {
+    requireNonNullParam(ffGains, "ffGains", "LinearFilter");
+    requireNonNullParam(fbGains, "fbGains", "LinearFilter");
+    if (ffGains.length == 0) {
+      throw new IllegalArgumentException("A linear filter needs at least one feedforward gain");
+    }
+
+    FF_GAINS = ffGains.clone();
+    FB_GAINS = fbGains.clone();
+    INPUTS = new double[ffGains.length];
+    OUTPUTS = new double[Math.max(fbGains.length, 1)];
+
+    boolean uniform = fbGains.length == 0;
+    for (int i = 1; uniform && i < ffGains.length; i++) {
+      uniform = ffGains[i] == ffGains[0];
+    }
+    UNIFORM = uniform;
+    samplesUntilResum = INPUTS.length;
+  }
+
+  /**
+   * Creates a one-pole IIR low-pass filter of the form: y[n] = (1 - gain) x[n] + gain y[n - 1]
+   * where gain = e<sup>-dt / T</sup>, T is the time constant in seconds.
+   *
+   * <p>Note: T = 1 / (2 pi f) where f is the cutoff frequency in Hz, the frequency above which the
+   * input starts to attenuate.
+   *
+   * @param timeConstant The discrete-time time constant in seconds.
+   * @param period The period in seconds between samples taken by the user.
+   * @return Linear filter.
+   */
+  public static LinearFilter singlePoleIIR(double timeConstant, double period) {
+    double gain = Math.exp(-period / timeConstant);
+    return new LinearFilter(new double[] {1.0 - gain}, new double[] {-gain});
+  }
+
+  /**
+   * Creates a first-order high-pass filter of the form: y[n] = gain x[n] + (-gain) x[n - 1] + gain
+   * y[n - 1] where gain = e<sup>-dt / T</sup>, T is the time constant in seconds.
+   *
+   * <p>Note: T = 1 / (2 pi f) where f is the cutoff frequency in Hz, the frequency below which the
+   * input starts to attenuate.
+   *
+   * @param timeConstant The discrete-time time constant in seconds.
+   * @param period The period in seconds between samples taken by the user.
+   * @return Linear filter.
+   */
+  public static LinearFilter highPass(double timeConstant, double period) {
+    double gain = Math.exp(-period / timeConstant);
+    return new LinearFilter(new double[] {gain, -gain}, new double[] {-gain});
+  }
+
+  /**
+   * Creates a K-tap FIR moving average filter of the form: y[n] = 1/k (x[k] + x[k - 1] + ... +
+   * x[0]).
+   *
+   * @param taps The number of samples to average over. Higher = smoother but slower.
+   * @return Linear filter.
+   * @throws IllegalArgumentException if number of taps is less than 1.
+   */
+  public static LinearFilter movingAverage(int taps) {
+    if (taps <= 0) {
+      throw new IllegalArgumentException("Number of taps was not at least 1");
+    }
+    double[] ffGains = new double[taps];
+    Arrays.fill(ffGains, 1.0 / taps);
+    return new LinearFilter(ffGains, new double[0]);
+  }
+
+  /** Resets the filter state, as if no samples had been seen. */
+  public void reset() {
+    Arrays.fill(INPUTS, 0.0);
+    Arrays.fill(OUTPUTS, 0.0);
+    inputHead = 0;
+    outputHead = 0;
+    runningSum = 0.0;
+    samplesUntilResum = INPUTS.length;
+    lastOutput = 0.0;
+  }
+
+  /**
+   * Calculates the next value of the filter.
+   *
+   * @param input Current input value.
+   * @return The filtered value at this step
+   */
+  public double calculate(double input) {
+    int length = INPUTS.length;
+    inputHead = (inputHead == 0 ? length : inputHead) - 1;
+    double oldest = INPUTS[inputHead];
+    INPUTS[inputHead] = input;
+
+    double output;
+    if (UNIFORM) {
+      // Re-add every sample once per lap of the buffer so rounding errors cannot accumulate
+      if (--samplesUntilResum == 0) {
+        samplesUntilResum = length;
+        runningSum = 0.0;
+        for (int i = 0; i < length; i++) {
+          runningSum += INPUTS[i];
+        }
+      } else {
+        runningSum += input - oldest;
+      }
+      output = FF_GAINS[0] * runningSum;
+    } else {
+      output = 0.0;
+      // Walk the circular buffers from the newest sample, in two runs on either side of the wrap
+      int tail = length - inputHead;
+      for (int i = 0; i < tail; i++) {
+        output += FF_GAINS[i] * INPUTS[inputHead + i];
+      }
+      for (int i = tail; i < length; i++) {
+        output += FF_GAINS[i] * INPUTS[i - tail];
+      }
+
+      int fbLength = FB_GAINS.length;
+      if (fbLength > 0) {
+        tail = OUTPUTS.length - outputHead;
+        for (int i = 0; i < Math.min(tail, fbLength); i++) {
+          output -= FB_GAINS[i] * OUTPUTS[outputHead + i];
+        }
+        for (int i = tail; i < fbLength; i++) {
+          output -= FB_GAINS[i] * OUTPUTS[i - tail];
+        }
+        outputHead = (outputHead == 0 ? OUTPUTS.length : outputHead) - 1;
+        OUTPUTS[outputHead] = output;
+      }
+    }
+
+    lastOutput = output;
+    return output;
+  }
+
+  /**
+   * Returns the last value calculated by the LinearFilter.
+   *
+   * @return The last value.
+   */
+  public double lastValue() {
+    return lastOutput;
+  }
+}
@@ -0,0 +1,208 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.filters;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.util.Arrays;
+
+/**
+ * Applies the same {@link LinearFilter} to N independent channels, such as every current sensor
+ * of a drivetrain, in one call.
+ *
+ * <p>The history of all channels is kept in one flat array laid out tap by tap, so each gain is
+ * applied to every channel in a single contiguous pass the JIT can vectorize, and every channel
+ * shares one circular buffer index. Like {@link LinearFilter}, a bank of moving averages keeps
+ * running sums and costs O(1) per channel regardless of the number of taps.
+ */
+public class LinearFilterBank {
+  private final int CHANNELS;
+  private final double[] FF_GAINS;
+  private final double[] FB_GAINS;
+  // Whether this is a plain average over equal gains, filtered with running sums
+  private final boolean UNIFORM;
+
+  // Circular buffers of past inputs and outputs, one row of CHANNELS values per tap
+  private final double[] INPUTS;
+  private final double[] OUTPUTS;
+  private int inputHead;
+  private int outputHead;
+
+  private final double[] RUNNING_SUMS;
+  private int samplesUntilResum;
+  private final double[] LAST_OUTPUTS;
+
+  /**
+   * Creates a bank of linear filters.
+   *
+   * @param channels The number of channels.
+   * @param ffGains The "feedforward" or FIR gains.
+   * @param fbGains The "feedback" or IIR gains.
+   */
+  public LinearFilterBank(int channels, double[] ffGains, double[] fbGains) {
+    requireNonNullParam(ffGains, "ffGains", "LinearFilterBank");
+    requireNonNullParam(fbGains, "fbGains", "LinearFilterBank");
+    if (channels < 1) {
+      throw new IllegalArgumentException("A filter bank needs at least one channel");
+    }
+    if (ffGains.length == 0) {
+      throw new IllegalArgumentException("A linear filter needs at least one feedforward gain");
+    }
+
+    CHANNELS = channels;
+    FF_GAINS = ffGains.clone();
+    FB_GAINS = fbGains.clone();
+    INPUTS = new double[ffGains.length * channels];
+    OUTPUTS = new double[fbGains.length * channels];
+    LAST_OUTPUTS = new double[channels];
+
+    boolean uniform = fbGains.length == 0;
+    for (int i = 1; uniform && i < ffGains.length; i++) {
+      uniform = ffGains[i] == ffGains[0];
+    }
+    UNIFORM = uniform;
+    RUNNING_SUMS = new double[uniform ? channels : 0];
+    samplesUntilResum = ffGains.length;
+  }
+
+  /**
+   * Creates a bank of one-pole IIR low-pass filters, see {@link LinearFilter#singlePoleIIR}.
+   *
+   * @param channels The number of channels.
+   * @param timeConstant The discrete-time time constant in seconds.
+   * @param period The period in seconds between samples taken by the user.
+   * @return Linear filter bank.
+   */
+  public static LinearFilterBank singlePoleIIR(int channels, double timeConstant, double period) {
+    double gain = Math.exp(-period / timeConstant);
+    return new LinearFilterBank(channels, new double[] {1.0 - gain}, new double[] {-gain});
+  }
+
+  /**
+   * Creates a bank of first-order high-pass filters, see {@link LinearFilter#highPass}.
+   *
+   * @param channels The number of channels.
+   * @param timeConstant The discrete-time time constant in seconds.
+   * @param period The period in seconds between samples taken by the user.
+   * @return Linear filter bank.
+   */
+  public static LinearFilterBank highPass(int channels, double timeConstant, double period) {
+    double gain = Math.exp(-period / timeConstant);
+    return new LinearFilterBank(channels, new double[] {gain, -gain}, new double[] {-gain});
+  }
+
+  /**
+   * Creates a bank of K-tap FIR moving average filters, see {@link LinearFilter#movingAverage}.
+   *
+   * @param channels The number of channels.
+   * @param taps The number of samples to average over.
+   * @return Linear filter bank.
+   * @throws IllegalArgumentException if number of taps is less than 1.
+   */
+  public static LinearFilterBank movingAverage(int channels, int taps) {
+    if (taps <= 0) {
+      throw new IllegalArgumentException("Number of taps was not at least 1");
+    }
+    double[] ffGains = new double[taps];
+    Arrays.fill(ffGains, 1.0 / taps);
+    return new LinearFilterBank(channels, ffGains, new double[0]);
+  }
+
+  /**
+   * @return The number of channels.
+   */
+  public int getChannelCount() {
+    return CHANNELS;
+  }
+
+  /** Resets the state of every channel, as if no samples had been seen. */
+  public void reset() {
+    Arrays.fill(INPUTS, 0.0);
+    Arrays.fill(OUTPUTS, 0.0);
+    Arrays.fill(LAST_OUTPUTS, 0.0);
+    Arrays.fill(RUNNING_SUMS, 0.0);
+    inputHead = 0;
+    outputHead = 0;
+    samplesUntilResum = FF_GAINS.length;
+  }
+
+  /**
+   * Calculates the next value of every channel.
+   *
+   * @param inputs The current input of each channel.
+   * @param outputs Receives the filtered value of each channel, may be the inputs array.
+   */
+  public void calculate(double[] inputs, double[] outputs) {
+    if (inputs.length < CHANNELS || outputs.length < CHANNELS) {
+      throw new IllegalArgumentException(
+          "Filter bank has " + CHANNELS + " channels, got arrays of " + inputs.length + " and "
+              + outputs.length);
+    }
+    int taps = FF_GAINS.length;
+    inputHead = (inputHead == 0 ? taps : inputHead) - 1;
+    int head = inputHead * CHANNELS;
+    double[] result = LAST_OUTPUTS;
+
+    if (UNIFORM) {
+      double[] sums = RUNNING_SUMS;
+      if (--samplesUntilResum == 0) {
+        // Re-add every sample once per lap of the buffer so rounding errors cannot accumulate
+        samplesUntilResum = taps;
+        System.arraycopy(inputs, 0, INPUTS, head, CHANNELS);
+        Arrays.fill(sums, 0.0);
+        for (int row = 0; row < INPUTS.length; row += CHANNELS) {
+          for (int c = 0; c < CHANNELS; c++) {
+            sums[c] += INPUTS[row + c];
+          }
+        }
+      } else {
+        for (int c = 0; c < CHANNELS; c++) {
+          sums[c] += inputs[c] - INPUTS[head + c];
+        }
+        System.arraycopy(inputs, 0, INPUTS, head, CHANNELS);
+      }
+      double gain = FF_GAINS[0];
+      for (int c = 0; c < CHANNELS; c++) {
+        result[c] = gain * sums[c];
+      }
+      System.arraycopy(result, 0, outputs, 0, CHANNELS);
+      return;
+    }
+
+    System.arraycopy(inputs, 0, INPUTS, head, CHANNELS);
+    Arrays.fill(result, 0.0);
+    for (int i = 0; i < taps; i++) {
+      double gain = FF_GAINS[i];
+      int row = ((inputHead + i) % taps) * CHANNELS;
+      for (int c = 0; c < CHANNELS; c++) {
+        result[c] += gain * INPUTS[row + c];
+      }
+    }
+
+    int fbTaps = FB_GAINS.length;
+    if (fbTaps > 0) {
+      for (int i = 0; i < fbTaps; i++) {
+        double gain = FB_GAINS[i];
+        int row = ((outputHead + i) % fbTaps) * CHANNELS;
+        for (int c = 0; c < CHANNELS; c++) {
+          result[c] -= gain * OUTPUTS[row + c];
+        }
+      }
+      outputHead = (outputHead == 0 ? fbTaps : outputHead) - 1;
+      System.arraycopy(result, 0, OUTPUTS, outputHead * CHANNELS, CHANNELS);
+    }
+
+    System.arraycopy(result, 0, outputs, 0, CHANNELS);
+  }
+
+  /**
+   * Returns the last value calculated for a channel.
+   *
+   * @param channel The channel.
+   * @return The last value.
+   */
+  public double lastValue(int channel) {
+    return LAST_OUTPUTS[channel];
+  }
+}
@@ -0,0 +1,89 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/filter/MedianFilter.java
+
+package sallet.math.filters;
+
+import java.util.Arrays;
+
+/**
+ * A class that implements a moving-window median filter. Useful for reducing measurement noise,
+ * especially with processes that generate occasional, extreme outliers (such as values from vision
+ * processing, LIDAR, or ultrasonic sensors).
+ *
+ * <p>The window is kept twice in preallocated arrays: in arrival order, to know which sample leaves
+ * the window next, and sorted, to read the median. Each sample is located in the sorted window with
+ * a binary search, so a new sample costs O(log n) comparisons plus one short array shift.
+ */
+public class MedianFilter {
+  // Samples in arrival order, the oldest at the head index once the window is full
+  private final double[] WINDOW;
+  private final double[] SORTED;
+  private int head;
+  private int size;
+
+  /**
+   * Creates a new MedianFilter.
+   *
+   * @param size The number of samples in the moving window.
+   */
+  public MedianFilter(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Window size was not at least 1");
+    }
+    WINDOW = new double[size];
+    SORTED = new double[size];
+  }
+
+  /**
+   * Calculates the moving-window median for the next value of the input stream.
+   *
+   * @param next The next input value.
+   * @return The median of the moving window, updated to include the next value.
+   */
+  public double calculate(double next) {
+    int capacity = WINDOW.length;
+    if (size == capacity) {
+      // Drop the oldest sample from the sorted window. Arrays.binarySearch orders doubles like
+      // Double.compare, so NaN and -0.0 are found again too
+      int index = Arrays.binarySearch(SORTED, 0, size, WINDOW[head]);
+      System.arraycopy(SORTED, index + 1, SORTED, index, size - index - 1);
+      size--;
+    }
+    WINDOW[head] = next;
+    head = head + 1 == capacity ? 0 : head + 1;
+
+    int index = Arrays.binarySearch(SORTED, 0, size, next);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    System.arraycopy(SORTED, index, SORTED, index + 1, size - index);
+    SORTED[index] = next;
+    size++;
+
+    // If size is even, average the two middle elements
+    if (size % 2 != 0) {
+      return SORTED[size / 2];
+    } else {
+      return (SORTED[size / 2 - 1] + SORTED[size / 2]) / 2.0;
+    }
+  }
+
+  /**
+   * Returns the last value calculated by the MedianFilter.
+   *
+   * @return The last value.
+   */
+  public double lastValue() {
+    int newest = (head == 0 ? WINDOW.length : head) - 1;
+    return size == 0 ? 0.0 : WINDOW[newest];
+  }
+
+  /** Resets the filter, clearing the window of all elements. */
+  public void reset() {
+    head = 0;
+    size = 0;
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/filter/SlewRateLimiter.java
+
+package sallet.math.filters;
+
+import sallet.math.universal.MathSharedStore;
+
+/**
+ * A class that limits the rate of change of an input value. Useful for implementing voltage,
+ * setpoint, and/or output ramps. A slew-rate limit is most appropriate when the quantity being
+ * controlled is a velocity or a voltage; when controlling a position, consider using a trapezoid
+ * profile instead.
+ *
+ * <p>Elapsed time is read from the {@link MathSharedStore} clock.
+ */
+public class SlewRateLimiter {
+  private final double POSITIVE_RATE_LIMIT;
+  private final double NEGATIVE_RATE_LIMIT;
+  private double prevVal;
+  private long prevTimeNanos;
+
+  /**
+   * Creates a new SlewRateLimiter with the given positive and negative rate limits and initial
+   * value.
+   *
+   * @param positiveRateLimit The rate-of-change limit in the positive direction, in units per
+   *     second. This is expected to be positive.
+   * @param negativeRateLimit The rate-of-change limit in the negative direction, in units per
+   *     second. This is expected to be negative.
+   * @param initialValue The initial value of the input.
+   */
+  public SlewRateLimiter(double positiveRateLimit, double negativeRateLimit, double initialValue) {
+    POSITIVE_RATE_LIMIT = positiveRateLimit;
+    NEGATIVE_RATE_LIMIT = negativeRateLimit;
+    prevVal = initialValue;
+    prevTimeNanos = MathSharedStore.getTimestampNanos();
+  }
+
+  /**
+   * Creates a new SlewRateLimiter with the given positive rate limit and negative rate limit of
+   * -rateLimit.
+   *
+   * @param rateLimit The rate-of-change limit, in units per second.
+   */
+  public SlewRateLimiter(double rateLimit) {
+    this(rateLimit, -rateLimit, 0);
+  }
+
+  /**
+   * Filters the input to limit its slew rate.
+   *
+   * @param input The input value whose slew rate is to be limited.
+   * @return The filtered value, which will not change faster than the slew rate.
+   */
+  public double calculate(double input) {
+    long currentTimeNanos = MathSharedStore.getTimestampNanos();
+    double elapsedTime = (currentTimeNanos - prevTimeNanos) / 1e9;
+    prevVal +=
+        Math.max(
+            NEGATIVE_RATE_LIMIT * elapsedTime,
+            Math.min(input - prevVal, POSITIVE_RATE_LIMIT * elapsedTime));
+    prevTimeNanos = currentTimeNanos;
+    return prevVal;
+  }
+
+  /**
+   * Returns the value last calculated by the SlewRateLimiter.
+   *
+   * @return The last value.
+   */
+  public double lastValue() {
+    return prevVal;
+  }
+
+  /**
+   * Resets the slew rate limiter to the specified value; ignores the rate limit when doing so.
+   *
+   * @param value The value to reset to.
+   */
+  public void reset(double value) {
+    prevVal = value;
+    prevTimeNanos = MathSharedStore.getTimestampNanos();
+  }
+}
@@ -0,0 +1,101 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.geometry;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+/**
+ * A {@link Pose2d} that can be changed in place, used as the output of the {@code Into} operations
+ * so a pose can be reused every cycle instead of allocated. Its translation and rotation are a
+ * {@link MutableTranslation2d} and a {@link MutableRotation2d} owned by the pose, which change
+ * along with it.
+ */
+public final class MutablePose2d extends Pose2d {
+  private final MutableTranslation2d MUTABLE_TRANSLATION;
+  private final MutableRotation2d MUTABLE_ROTATION;
+
+  /** Creates a pose at the origin, facing along the x axis. */
+  public MutablePose2d() {
+    this(new MutableTranslation2d(), new MutableRotation2d());
+  }
+
+  /**
+   * Creates a pose equal to another.
+   *
+   * @param other The pose to copy
+   */
+  public MutablePose2d(Pose2d other) {
+    this();
+    set(other);
+  }
+
+  private MutablePose2d(MutableTranslation2d translation, MutableRotation2d rotation) {
+    super(translation, rotation);
+    MUTABLE_TRANSLATION = translation;
+    MUTABLE_ROTATION = rotation;
+  }
+
+  @Override
+  public MutableTranslation2d getTranslation() {
+    return MUTABLE_TRANSLATION;
+  }
+
+  @Override
+  public MutableRotation2d getRotation() {
+    return MUTABLE_ROTATION;
+  }
+
+  /**
+   * Copies another pose.
+   *
+   * @param other The pose to copy
+   * @return This pose
+   */
+  public MutablePose2d set(Pose2d other) {
+    requireNonNullParam(other, "other", "set");
+    MUTABLE_TRANSLATION.set(other.TRANSLATION);
+    MUTABLE_ROTATION.set(other.ROTATION);
+    return this;
+  }
+
+  /**
+   * Sets the position and heading.
+   *
+   * @param x The x component of the position in meters
+   * @param y The y component of the position in meters
+   * @param rotation The heading
+   * @return This pose
+   */
+  public MutablePose2d set(double x, double y, Rotation2d rotation) {
+    MUTABLE_TRANSLATION.set(x, y);
+    MUTABLE_ROTATION.set(rotation);
+    return this;
+  }
+
+  /**
+   * Sets the position, keeping the heading.
+   *
+   * @param x The x component of the position in meters
+   * @param y The y component of the position in meters
+   * @return This pose
+   */
+  public MutablePose2d setTranslation(double x, double y) {
+    MUTABLE_TRANSLATION.set(x, y);
+    return this;
+  }
+
+  /**
+   * Sets the position and the cosine and sine of the heading, which must be normalized.
+   */
+  MutablePose2d set(double x, double y, double cos, double sin) {
+    MUTABLE_TRANSLATION.set(x, y);
+    MUTABLE_ROTATION.setCosSin(cos, sin);
+    return this;
+  }
+
+  @Override
+  public Pose2d toImmutable() {
+    return new Pose2d(MUTABLE_TRANSLATION.toImmutable(), MUTABLE_ROTATION.toImmutable());
+  }
+}
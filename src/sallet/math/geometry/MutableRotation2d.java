@@ -0,0 +1,71 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.geometry;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+/**
+ * A {@link Rotation2d} that can be changed in place, used as the output of the {@code Into}
+ * operations so a rotation can be reused every cycle instead of allocated. Setting the angle
+ * computes its sine and cosine once, like creating a rotation does.
+ */
+public final class MutableRotation2d extends Rotation2d {
+  /** Creates a rotation of 0 radians. */
+  public MutableRotation2d() {}
+
+  /**
+   * Creates a rotation from an angle.
+   *
+   * @param radians The angle in radians
+   */
+  public MutableRotation2d(double radians) {
+    super(radians);
+  }
+
+  /**
+   * Sets the angle.
+   *
+   * @param radians The angle in radians
+   * @return This rotation
+   */
+  public MutableRotation2d set(double radians) {
+    setRadians(radians);
+    return this;
+  }
+
+  /**
+   * Sets the rotation to the point (x, y), which does not need to be normalized.
+   *
+   * @param x The x coordinate
+   * @param y The y coordinate
+   * @return This rotation
+   */
+  public MutableRotation2d set(double x, double y) {
+    setPoint(x, y);
+    return this;
+  }
+
+  /**
+   * Copies another rotation, including its cached sine and cosine.
+   *
+   * @param other The rotation to copy
+   * @return This rotation
+   */
+  public MutableRotation2d set(Rotation2d other) {
+    requireNonNullParam(other, "other", "set");
+    radians = other.radians;
+    cos = other.cos;
+    sin = other.sin;
+    return this;
+  }
+
+  @Override
+  public Rotation2d toImmutable() {
+    Rotation2d copy = new Rotation2d();
+    copy.radians = radians;
+    copy.cos = cos;
+    copy.sin = sin;
+    return copy;
+  }
+}
@@ -0,0 +1,54 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.geometry;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+/**
+ * A {@link Translation2d} that can be changed in place, used as the output of the {@code Into}
+ * operations so a translation can be reused every cycle instead of allocated.
+ */
+public final class MutableTranslation2d extends Translation2d {
+  /** Creates the translation (0, 0). */
+  public MutableTranslation2d() {}
+
+  /**
+   * Creates a translation from its components.
+   *
+   * @param x The x component in meters
+   * @param y The y component in meters
+   */
+  public MutableTranslation2d(double x, double y) {
+    super(x, y);
+  }
+
+  /**
+   * Sets the components.
+   *
+   * @param x The x component in meters
+   * @param y The y component in meters
+   * @return This translation
+   */
+  public MutableTranslation2d set(double x, double y) {
+    this.x = x;
+    this.y = y;
+    return this;
+  }
+
+  /**
+   * Copies another translation.
+   *
+   * @param other The translation to copy
+   * @return This translation
+   */
+  public MutableTranslation2d set(Translation2d other) {
+    requireNonNullParam(other, "other", "set");
+    return set(other.x, other.y);
+  }
+
+  @Override
+  public Translation2d toImmutable() {
+    return new Translation2d(x, y);
+  }
+}
@@ -0,0 +1,281 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/geometry/Pose2d.java
+
+package sallet.math.geometry;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+/**
+ * A position and heading in a 2D coordinate frame, such as the pose of a robot on the field.
+ *
+ * <p>A {@code Pose2d} is immutable: every operation returns a new pose. Operations ending in
+ * {@code Into} instead write their result into a {@link MutablePose2d}, which can be reused every
+ * cycle so odometry and other hot paths do not allocate. Since a mutable pose is also a {@code
+ * Pose2d}, it can be passed anywhere a pose is read, but a reference to one may change under its
+ * holder.
+ */
+public class Pose2d {
+  /** The pose at the origin, facing along the x axis */
+  public static final Pose2d kZero = new Pose2d();
+
+  final Translation2d TRANSLATION;
+  final Rotation2d ROTATION;
+
+  /** Creates a pose at the origin, facing along the x axis. */
+  public Pose2d() {
+    this(Translation2d.kZero, Rotation2d.kZero);
+  }
+
+  /**
+   * Creates a pose from a position and heading.
+   *
+   * @param translation The position in meters
+   * @param rotation The heading
+   */
+  public Pose2d(Translation2d translation, Rotation2d rotation) {
+    TRANSLATION = requireNonNullParam(translation, "translation", "Pose2d").toImmutable();
+    ROTATION = requireNonNullParam(rotation, "rotation", "Pose2d").toImmutable();
+  }
+
+  /**
+   * Creates a pose from the components of its position and a heading.
+   *
+   * @param x The x component of the position in meters
+   * @param y The y component of the position in meters
+   * @param rotation The heading
+   */
+  public Pose2d(double x, double y, Rotation2d rotation) {
+    this(new Translation2d(x, y), rotation);
+  }
+
+  /** Wraps a mutable translation and rotation without copying, only for {@link MutablePose2d}. */
+  Pose2d(MutableTranslation2d translation, MutableRotation2d rotation) {
+    TRANSLATION = translation;
+    ROTATION = rotation;
+  }
+
+  /**
+   * @return The position in meters
+   */
+  public Translation2d getTranslation() {
+    return TRANSLATION;
+  }
+
+  /**
+   * @return The x component of the position in meters
+   */
+  public double getX() {
+    return TRANSLATION.x;
+  }
+
+  /**
+   * @return The y component of the position in meters
+   */
+  public double getY() {
+    return TRANSLATION.y;
+  }
+
+  /**
+   * @return The heading
+   */
+  public Rotation2d getRotation() {
+    return ROTATION;
+  }
+
+  /**
+   * Transforms this pose, see {@link #transformBy}.
+   *
+   * @param other The transform to apply
+   * @return The transformed pose
+   */
+  public Pose2d plus(Transform2d other) {
+    return transformBy(other);
+  }
+
+  /**
+   * @param other The starting pose
+   * @return The transform that maps the other pose to this one
+   */
+  public Transform2d minus(Pose2d other) {
+    return new Transform2d(other, this);
+  }
+
+  /**
+   * Moves this pose by a transform expressed in its own frame: the translation is rotated by this
+   * pose's heading before it is added, and the headings are added.
+   *
+   * @param other The transform to apply
+   * @return The transformed pose
+   */
+  public Pose2d transformBy(Transform2d other) {
+    requireNonNullParam(other, "other", "transformBy");
+    return transformByInto(other, new MutablePose2d()).toImmutable();
+  }
+
+  /**
+   * Like {@link #transformBy}, writing the result into a reusable pose, which may be this one.
+   *
+   * @param other The transform to apply
+   * @param out Receives the transformed pose
+   * @return out
+   */
+  public MutablePose2d transformByInto(Transform2d other, MutablePose2d out) {
+    Rotation2d rotation = ROTATION;
+    Translation2d offset = other.getTranslation();
+    Rotation2d turn = other.getRotation();
+    return out.set(
+        TRANSLATION.x + offset.x * rotation.cos - offset.y * rotation.sin,
+        TRANSLATION.y + offset.x * rotation.sin + offset.y * rotation.cos,
+        rotation.cos * turn.cos - rotation.sin * turn.sin,
+        rotation.cos * turn.sin + rotation.sin * turn.cos);
+  }
+
+  /**
+   * Expresses this pose in the frame of another pose.
+   *
+   * @param other The pose whose frame to use
+   * @return This pose relative to the other
+   */
+  public Pose2d relativeTo(Pose2d other) {
+    requireNonNullParam(other, "other", "relativeTo");
+    return relativeToInto(other, new MutablePose2d()).toImmutable();
+  }
+
+  /**
+   * Like {@link #relativeTo}, writing the result into a reusable pose, which may be this one.
+   *
+   * @param other The pose whose frame to use
+   * @param out Receives this pose relative to the other
+   * @return out
+   */
+  public MutablePose2d relativeToInto(Pose2d other, MutablePose2d out) {
+    Rotation2d frame = other.ROTATION;
+    double dx = TRANSLATION.x - other.TRANSLATION.x;
+    double dy = TRANSLATION.y - other.TRANSLATION.y;
+    return out.set(
+        dx * frame.cos + dy * frame.sin,
+        -dx * frame.sin + dy * frame.cos,
+        ROTATION.cos * frame.cos + ROTATION.sin * frame.sin,
+        ROTATION.sin * frame.cos - ROTATION.cos * frame.sin);
+  }
+
+  /**
+   * Finds the pose reached by driving along a constant-curvature arc from this pose, as described
+   * by a twist in this pose's frame. See Controls Engineering in FRC, section 10.2 "Pose
+   * exponential".
+   *
+   * @param twist The change in pose along the arc
+   * @return The pose at the end of the arc
+   */
+  public Pose2d exp(Twist2d twist) {
+    requireNonNullParam(twist, "twist", "exp");
+    return expInto(twist, new MutablePose2d()).toImmutable();
+  }
+
+  /**
+   * Like {@link #exp}, writing the result into a reusable pose, which may be this one.
+   *
+   * @param twist The change in pose along the arc
+   * @param out Receives the pose at the end of the arc
+   * @return out
+   */
+  public MutablePose2d expInto(Twist2d twist, MutablePose2d out) {
+    return expInto(twist.getDx(), twist.getDy(), twist.getDtheta(), out);
+  }
+
+  /**
+   * Like {@link #exp}, with the twist given as its components, writing the result into a reusable
+   * pose, which may be this one.
+   *
+   * @param dx The change in x along the arc, forward, in meters
+   * @param dy The change in y along the arc, to the left, in meters
+   * @param dtheta The change in heading in radians
+   * @param out Receives the pose at the end of the arc
+   * @return out
+   */
+  public MutablePose2d expInto(double dx, double dy, double dtheta, MutablePose2d out) {
+    double sinTheta = Math.sin(dtheta);
+    double cosTheta = Math.cos(dtheta);
+    double s;
+    double c;
+    if (Math.abs(dtheta) < 1e-9) {
+      s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+      c = 0.5 * dtheta;
+    } else {
+      s = sinTheta / dtheta;
+      c = (1.0 - cosTheta) / dtheta;
+    }
+    // The chord of the arc in this pose's frame, then rotated into the field frame
+    double chordX = dx * s - dy * c;
+    double chordY = dx * c + dy * s;
+    Rotation2d rotation = ROTATION;
+    return out.set(
+        TRANSLATION.x + chordX * rotation.cos - chordY * rotation.sin,
+        TRANSLATION.y + chordX * rotation.sin + chordY * rotation.cos,
+        rotation.cos * cosTheta - rotation.sin * sinTheta,
+        rotation.cos * sinTheta + rotation.sin * cosTheta);
+  }
+
+  /**
+   * Finds the twist that drives from this pose to another along a constant-curvature arc, the
+   * inverse of {@link #exp}.
+   *
+   * @param end The pose to drive to
+   * @return The twist between the poses
+   */
+  public Twist2d log(Pose2d end) {
+    requireNonNullParam(end, "end", "log");
+    MutablePose2d transform = end.relativeToInto(this, new MutablePose2d());
+    Rotation2d rotation = transform.ROTATION;
+    double dtheta = rotation.getRadians();
+    double halfDtheta = dtheta / 2.0;
+    double cosMinusOne = rotation.cos - 1.0;
+
+    double halfThetaByTanOfHalfDtheta;
+    if (Math.abs(cosMinusOne) < 1e-9) {
+      halfThetaByTanOfHalfDtheta = 1.0 - 1.0 / 12.0 * dtheta * dtheta;
+    } else {
+      halfThetaByTanOfHalfDtheta = -(halfDtheta * rotation.sin) / cosMinusOne;
+    }
+
+    // Rotate the chord back onto the tangent of the arc and scale it to the arc length
+    Translation2d translationPart =
+        transform.TRANSLATION
+            .rotateBy(new Rotation2d(halfThetaByTanOfHalfDtheta, -halfDtheta))
+            .times(Math.hypot(halfThetaByTanOfHalfDtheta, halfDtheta));
+    return new Twist2d(translationPart.x, translationPart.y, dtheta);
+  }
+
+  /**
+   * @return An immutable pose equal to this one, which is this pose unless it is mutable
+   */
+  public Pose2d toImmutable() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Pose2d(%s, %s)", TRANSLATION, ROTATION);
+  }
+
+  /**
+   * Checks equality between this pose and another object.
+   *
+   * @param obj The other object
+   * @return Whether the two objects are equal
+   */
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof Pose2d other
+        && other.TRANSLATION.equals(TRANSLATION)
+        && other.ROTATION.equals(ROTATION);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * TRANSLATION.hashCode() + ROTATION.hashCode();
+  }
+}
@@ -0,0 +1,273 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/geometry/Rotation2d.java
+
+package sallet.math.geometry;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+/**
+ * A rotation in a 2D coordinate frame, represented by a point on the unit circle. The cosine and
+ * sine of the angle are computed once when the rotation is made and cached, so rotating points and
+ * composing rotations costs a few multiplications and no trigonometry. The angle of a composed
+ * rotation is only computed, and then cached, when it is asked for.
+ *
+ * <p>A {@code Rotation2d} is immutable: every operation returns a new rotation. Operations ending
+ * in {@code Into} instead write their result into a {@link MutableRotation2d}, which can be reused
+ * every cycle so hot paths do not allocate. Since a mutable rotation is also a {@code Rotation2d},
+ * it can be passed anywhere a rotation is read, but a reference to one may change under its
+ * holder.
+ */
+public class Rotation2d {
+  /** The rotation of 0 radians */
+  public static final Rotation2d kZero = new Rotation2d();
+
+  /** The rotation of pi radians */
+  public static final Rotation2d kPi = new Rotation2d(Math.PI);
+
+  // Only changed by MutableRotation2d. NaN until computed for rotations made from a cosine and sine
+  double radians;
+  double cos;
+  double sin;
+
+  /** Creates a rotation of 0 radians. */
+  public Rotation2d() {
+    radians = 0.0;
+    cos = 1.0;
+    sin = 0.0;
+  }
+
+  /**
+   * Creates a rotation from an angle.
+   *
+   * @param radians The angle in radians
+   */
+  public Rotation2d(double radians) {
+    setRadians(radians);
+  }
+
+  /**
+   * Creates a rotation from the point (x, y), which does not need to be normalized. The origin is
+   * taken as a rotation of 0 radians.
+   *
+   * @param x The x coordinate
+   * @param y The y coordinate
+   */
+  public Rotation2d(double x, double y) {
+    setPoint(x, y);
+  }
+
+  /**
+   * @param degrees The angle in degrees
+   * @return The rotation
+   */
+  public static Rotation2d fromDegrees(double degrees) {
+    return new Rotation2d(Math.toRadians(degrees));
+  }
+
+  /**
+   * @param radians The angle in radians
+   * @return The rotation
+   */
+  public static Rotation2d fromRadians(double radians) {
+    return new Rotation2d(radians);
+  }
+
+  /**
+   * @param rotations The angle in rotations
+   * @return The rotation
+   */
+  public static Rotation2d fromRotations(double rotations) {
+    return new Rotation2d(rotations * 2.0 * Math.PI);
+  }
+
+  /**
+   * @return The angle in radians, as given when the rotation was made or in [-pi, pi] if it was
+   *     computed
+   */
+  public double getRadians() {
+    if (Double.isNaN(radians)) {
+      // Racing threads compute the same value, so the cache needs no synchronization
+      radians = Math.atan2(sin, cos);
+    }
+    return radians;
+  }
+
+  /**
+   * @return The angle in degrees
+   */
+  public double getDegrees() {
+    return Math.toDegrees(getRadians());
+  }
+
+  /**
+   * @return The angle in rotations
+   */
+  public double getRotations() {
+    return getRadians() / (2.0 * Math.PI);
+  }
+
+  /**
+   * @return The cosine of the angle
+   */
+  public double getCos() {
+    return cos;
+  }
+
+  /**
+   * @return The sine of the angle
+   */
+  public double getSin() {
+    return sin;
+  }
+
+  /**
+   * @return The tangent of the angle
+   */
+  public double getTan() {
+    return sin / cos;
+  }
+
+  /**
+   * Adds two rotations, see {@link #rotateBy}.
+   *
+   * @param other The rotation to add
+   * @return The sum of the rotations
+   */
+  public Rotation2d plus(Rotation2d other) {
+    return rotateBy(other);
+  }
+
+  /**
+   * Subtracts a rotation from this one.
+   *
+   * @param other The rotation to subtract
+   * @return The difference of the rotations
+   */
+  public Rotation2d minus(Rotation2d other) {
+    requireNonNullParam(other, "other", "minus");
+    Rotation2d result = new Rotation2d();
+    result.setCosSin(cos * other.cos + sin * other.sin, sin * other.cos - cos * other.sin);
+    return result;
+  }
+
+  /**
+   * @return The inverse of this rotation
+   */
+  public Rotation2d unaryMinus() {
+    Rotation2d result = new Rotation2d();
+    result.radians = -radians;
+    result.cos = cos;
+    result.sin = -sin;
+    return result;
+  }
+
+  /**
+   * @param scalar The factor to scale the angle by
+   * @return The rotation with its angle scaled
+   */
+  public Rotation2d times(double scalar) {
+    return new Rotation2d(getRadians() * scalar);
+  }
+
+  /**
+   * @param scalar The divisor of the angle
+   * @return The rotation with its angle divided
+   */
+  public Rotation2d div(double scalar) {
+    return times(1.0 / scalar);
+  }
+
+  /**
+   * Rotates this rotation by another, adding their angles.
+   *
+   * @param other The rotation to rotate by
+   * @return The rotated rotation
+   */
+  public Rotation2d rotateBy(Rotation2d other) {
+    requireNonNullParam(other, "other", "rotateBy");
+    Rotation2d result = new Rotation2d();
+    result.setCosSin(cos * other.cos - sin * other.sin, cos * other.sin + sin * other.cos);
+    return result;
+  }
+
+  /**
+   * Like {@link #rotateBy}, writing the result into a reusable rotation, which may be this one.
+   *
+   * @param other The rotation to rotate by
+   * @param out Receives the rotated rotation
+   * @return out
+   */
+  public MutableRotation2d rotateByInto(Rotation2d other, MutableRotation2d out) {
+    out.setCosSin(cos * other.cos - sin * other.sin, cos * other.sin + sin * other.cos);
+    return out;
+  }
+
+  /**
+   * Like {@link #minus}, writing the result into a reusable rotation, which may be this one.
+   *
+   * @param other The rotation to subtract
+   * @param out Receives the difference of the rotations
+   * @return out
+   */
+  public MutableRotation2d minusInto(Rotation2d other, MutableRotation2d out) {
+    out.setCosSin(cos * other.cos + sin * other.sin, sin * other.cos - cos * other.sin);
+    return out;
+  }
+
+  /**
+   * @return An immutable rotation equal to this one, which is this rotation unless it is mutable
+   */
+  public Rotation2d toImmutable() {
+    return this;
+  }
+
+  final void setRadians(double radians) {
+    this.radians = radians;
+    cos = Math.cos(radians);
+    sin = Math.sin(radians);
+  }
+
+  final void setPoint(double x, double y) {
+    double magnitude = Math.hypot(x, y);
+    if (magnitude > 1e-6) {
+      setCosSin(x / magnitude, y / magnitude);
+    } else {
+      radians = 0.0;
+      cos = 1.0;
+      sin = 0.0;
+    }
+  }
+
+  /** Sets the rotation from the cosine and sine of its angle, which must be normalized. */
+  final void setCosSin(double cos, double sin) {
+    this.cos = cos;
+    this.sin = sin;
+    radians = Double.NaN;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Rotation2d(Rads: %.2f, Deg: %.2f)", getRadians(), getDegrees());
+  }
+
+  /**
+   * Checks equality between this rotation and another object, comparing the points on the unit
+   * circle so angles a full turn apart are equal.
+   *
+   * @param obj The other object
+   * @return Whether the two objects are equal
+   */
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof Rotation2d other
+        && Math.hypot(cos - other.cos, sin - other.sin) < 1e-9;
+  }
+
+  @Override
+  public int hashCode() {
+    return Double.hashCode(getRadians());
+  }
+}
@@ -0,0 +1,142 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/geometry/Transform2d.java
+
+package sallet.math.geometry;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+/**
+ * A transformation from one pose to another in a 2D coordinate frame: a translation in the frame
+ * of the starting pose followed by a rotation. Immutable.
+ */
+public class Transform2d {
+  private final Translation2d TRANSLATION;
+  private final Rotation2d ROTATION;
+
+  /** Creates the identity transform. */
+  public Transform2d() {
+    this(Translation2d.kZero, Rotation2d.kZero);
+  }
+
+  /**
+   * Creates the transform that maps one pose to another.
+   *
+   * @param initial The starting pose
+   * @param last The ending pose
+   */
+  public Transform2d(Pose2d initial, Pose2d last) {
+    requireNonNullParam(initial, "initial", "Transform2d");
+    requireNonNullParam(last, "last", "Transform2d");
+    // Undo the rotation of the initial pose to express the offset in its frame
+    Rotation2d rotation = initial.ROTATION;
+    double dx = last.TRANSLATION.x - initial.TRANSLATION.x;
+    double dy = last.TRANSLATION.y - initial.TRANSLATION.y;
+    TRANSLATION =
+        new Translation2d(
+            dx * rotation.cos + dy * rotation.sin, -dx * rotation.sin + dy * rotation.cos);
+    ROTATION = last.ROTATION.minus(rotation);
+  }
+
+  /**
+   * Creates a transform from a translation and a rotation.
+   *
+   * @param translation The translation, in the frame of the starting pose
+   * @param rotation The rotation
+   */
+  public Transform2d(Translation2d translation, Rotation2d rotation) {
+    TRANSLATION = requireNonNullParam(translation, "translation", "Transform2d").toImmutable();
+    ROTATION = requireNonNullParam(rotation, "rotation", "Transform2d").toImmutable();
+  }
+
+  /**
+   * Creates a transform from the components of its translation and a rotation.
+   *
+   * @param x The x component of the translation in meters
+   * @param y The y component of the translation in meters
+   * @param rotation The rotation
+   */
+  public Transform2d(double x, double y, Rotation2d rotation) {
+    this(new Translation2d(x, y), rotation);
+  }
+
+  /**
+   * @return The translation, in the frame of the starting pose
+   */
+  public Translation2d getTranslation() {
+    return TRANSLATION;
+  }
+
+  /**
+   * @return The x component of the translation in meters
+   */
+  public double getX() {
+    return TRANSLATION.x;
+  }
+
+  /**
+   * @return The y component of the translation in meters
+   */
+  public double getY() {
+    return TRANSLATION.y;
+  }
+
+  /**
+   * @return The rotation
+   */
+  public Rotation2d getRotation() {
+    return ROTATION;
+  }
+
+  /**
+   * @param scalar The factor to scale by
+   * @return The transform with its translation and rotation scaled
+   */
+  public Transform2d times(double scalar) {
+    return new Transform2d(TRANSLATION.times(scalar), ROTATION.times(scalar));
+  }
+
+  /**
+   * Composes two transforms, this one applied first.
+   *
+   * @param other The transform to apply second
+   * @return The composed transform
+   */
+  public Transform2d plus(Transform2d other) {
+    return new Transform2d(Pose2d.kZero, Pose2d.kZero.transformBy(this).transformBy(other));
+  }
+
+  /**
+   * @return The transform that undoes this one
+   */
+  public Transform2d inverse() {
+    // Rotate the negated translation back into the frame of the starting pose
+    return new Transform2d(
+        TRANSLATION.unaryMinus().rotateBy(ROTATION.unaryMinus()), ROTATION.unaryMinus());
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Transform2d(%s, %s)", TRANSLATION, ROTATION);
+  }
+
+  /**
+   * Checks equality between this transform and another object.
+   *
+   * @param obj The other object
+   * @return Whether the two objects are equal
+   */
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof Transform2d other
+        && other.TRANSLATION.equals(TRANSLATION)
+        && other.ROTATION.equals(ROTATION);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * TRANSLATION.hashCode() + ROTATION.hashCode();
+  }
+}
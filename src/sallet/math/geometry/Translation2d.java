@@ -0,0 +1,201 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/geometry/Translation2d.java
+
+package sallet.math.geometry;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+/**
+ * A translation in a 2D coordinate frame, a vector (x, y) in meters.
+ *
+ * <p>A {@code Translation2d} is immutable: every operation returns a new translation. Operations
+ * ending in {@code Into} instead write their result into a {@link MutableTranslation2d}, which can
+ * be reused every cycle so hot paths do not allocate.
+ */
+public class Translation2d {
+  /** The translation (0, 0) */
+  public static final Translation2d kZero = new Translation2d();
+
+  // Only changed by MutableTranslation2d
+  double x;
+  double y;
+
+  /** Creates the translation (0, 0). */
+  public Translation2d() {}
+
+  /**
+   * Creates a translation from its components.
+   *
+   * @param x The x component in meters
+   * @param y The y component in meters
+   */
+  public Translation2d(double x, double y) {
+    this.x = x;
+    this.y = y;
+  }
+
+  /**
+   * Creates a translation from its length and direction.
+   *
+   * @param distance The length in meters
+   * @param angle The direction
+   */
+  public Translation2d(double distance, Rotation2d angle) {
+    requireNonNullParam(angle, "angle", "Translation2d");
+    x = distance * angle.cos;
+    y = distance * angle.sin;
+  }
+
+  /**
+   * @return The x component in meters
+   */
+  public double getX() {
+    return x;
+  }
+
+  /**
+   * @return The y component in meters
+   */
+  public double getY() {
+    return y;
+  }
+
+  /**
+   * @return The length of the translation in meters
+   */
+  public double getNorm() {
+    return Math.hypot(x, y);
+  }
+
+  /**
+   * @return The direction of the translation
+   */
+  public Rotation2d getAngle() {
+    return new Rotation2d(x, y);
+  }
+
+  /**
+   * @param other Another translation
+   * @return The distance between the two translations in meters
+   */
+  public double getDistance(Translation2d other) {
+    return Math.hypot(other.x - x, other.y - y);
+  }
+
+  /**
+   * @param other The translation to add
+   * @return The sum of the translations
+   */
+  public Translation2d plus(Translation2d other) {
+    return new Translation2d(x + other.x, y + other.y);
+  }
+
+  /**
+   * @param other The translation to subtract
+   * @return The difference of the translations
+   */
+  public Translation2d minus(Translation2d other) {
+    return new Translation2d(x - other.x, y - other.y);
+  }
+
+  /**
+   * @return The translation pointing the opposite way
+   */
+  public Translation2d unaryMinus() {
+    return new Translation2d(-x, -y);
+  }
+
+  /**
+   * @param scalar The factor to scale by
+   * @return The scaled translation
+   */
+  public Translation2d times(double scalar) {
+    return new Translation2d(x * scalar, y * scalar);
+  }
+
+  /**
+   * @param scalar The divisor
+   * @return The divided translation
+   */
+  public Translation2d div(double scalar) {
+    return new Translation2d(x / scalar, y / scalar);
+  }
+
+  /**
+   * Rotates this translation counterclockwise about the origin.
+   *
+   * @param other The rotation to rotate by
+   * @return The rotated translation
+   */
+  public Translation2d rotateBy(Rotation2d other) {
+    requireNonNullParam(other, "other", "rotateBy");
+    return new Translation2d(x * other.cos - y * other.sin, x * other.sin + y * other.cos);
+  }
+
+  /**
+   * Like {@link #plus}, writing the result into a reusable translation, which may be this one.
+   *
+   * @param other The translation to add
+   * @param out Receives the sum of the translations
+   * @return out
+   */
+  public MutableTranslation2d plusInto(Translation2d other, MutableTranslation2d out) {
+    return out.set(x + other.x, y + other.y);
+  }
+
+  /**
+   * Like {@link #minus}, writing the result into a reusable translation, which may be this one.
+   *
+   * @param other The translation to subtract
+   * @param out Receives the difference of the translations
+   * @return out
+   */
+  public MutableTranslation2d minusInto(Translation2d other, MutableTranslation2d out) {
+    return out.set(x - other.x, y - other.y);
+  }
+
+  /**
+   * Like {@link #rotateBy}, writing the result into a reusable translation, which may be this one.
+   *
+   * @param other The rotation to rotate by
+   * @param out Receives the rotated translation
+   * @return out
+   */
+  public MutableTranslation2d rotateByInto(Rotation2d other, MutableTranslation2d out) {
+    return out.set(x * other.cos - y * other.sin, x * other.sin + y * other.cos);
+  }
+
+  /**
+   * @return An immutable translation equal to this one, which is this translation unless it is
+   *     mutable
+   */
+  public Translation2d toImmutable() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Translation2d(X: %.2f, Y: %.2f)", x, y);
+  }
+
+  /**
+   * Checks equality between this translation and another object, within 1e-9 meters.
+   *
+   * @param obj The other object
+   * @return Whether the two objects are equal
+   */
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof Translation2d other
+        && Math.abs(other.x - x) < 1e-9
+        && Math.abs(other.y - y) < 1e-9;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Double.hashCode(x) + Double.hashCode(y);
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/geometry/Twist2d.java
+
+package sallet.math.geometry;
+
+/**
+ * A change in distance along a 2D arc since the last pose update, used with {@link Pose2d#exp} to
+ * find the pose a robot drove to along a circular arc rather than a straight line.
+ */
+public class Twist2d {
+  private final double DX;
+  private final double DY;
+  private final double DTHETA;
+
+  /** Creates a twist of no motion. */
+  public Twist2d() {
+    this(0.0, 0.0, 0.0);
+  }
+
+  /**
+   * Creates a twist.
+   *
+   * @param dx The change in x, forward, in meters
+   * @param dy The change in y, to the left, in meters
+   * @param dtheta The change in heading in radians
+   */
+  public Twist2d(double dx, double dy, double dtheta) {
+    DX = dx;
+    DY = dy;
+    DTHETA = dtheta;
+  }
+
+  /**
+   * @return The change in x in meters
+   */
+  public double getDx() {
+    return DX;
+  }
+
+  /**
+   * @return The change in y in meters
+   */
+  public double getDy() {
+    return DY;
+  }
+
+  /**
+   * @return The change in heading in radians
+   */
+  public double getDtheta() {
+    return DTHETA;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Twist2d(dX: %.2f, dY: %.2f, dTheta: %.2f)", DX, DY, DTHETA);
+  }
+
+  /**
+   * Checks equality between this twist and another object, within 1e-9.
+   *
+   * @param obj The other object
+   * @return Whether the two objects are equal
+   */
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof Twist2d other
+        && Math.abs(other.DX - DX) < 1e-9
+        && Math.abs(other.DY - DY) < 1e-9
+        && Math.abs(other.DTHETA - DTHETA) < 1e-9;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * Double.hashCode(DX) + Double.hashCode(DY)) + Double.hashCode(DTHETA);
+  }
+}
@@ -0,0 +1,250 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.interpolation;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import sallet.math.universal.MathSharedStore;
+
+/**
+ * A history of several values recorded together, such as the x, y and heading of a pose, over a
+ * fixed window of time. Like {@link TimeInterpolatableDoubleBuffer}, it can be sampled at any time
+ * in the window by linear interpolation, with an O(log n) binary search over a circular array of
+ * timestamps and no allocation once the window has filled up.
+ *
+ * <p>The values of each sample are stored next to each other in one flat {@code double[]}, so
+ * reading every channel at a time costs a single search. Channels marked as angles, in radians,
+ * are interpolated the short way around the circle, so a heading sampled between 179 and -179
+ * degrees is -180 degrees rather than 0.
+ */
+public class TimeInterpolatableChannelBuffer extends TimeRing {
+  private static final double TWO_PI = 2.0 * Math.PI;
+
+  private final int CHANNELS;
+  private final boolean[] ANGULAR;
+  private double[] values;
+
+  /**
+   * Creates a buffer.
+   *
+   * @param channels The number of values in each sample
+   * @param historySeconds How long samples are kept, measured from the newest sample
+   */
+  public TimeInterpolatableChannelBuffer(int channels, double historySeconds) {
+    this(channels, historySeconds, 0.0);
+  }
+
+  /**
+   * Creates a buffer sized for a sample rate, so it never has to grow.
+   *
+   * @param channels The number of values in each sample
+   * @param historySeconds How long samples are kept, measured from the newest sample
+   * @param sampleRateHz How often samples will be added
+   */
+  public TimeInterpolatableChannelBuffer(int channels, double historySeconds, double sampleRateHz) {
+    super(historySeconds, sampleRateHz);
+    if (channels < 1) {
+      throw new IllegalArgumentException("A channel buffer needs at least one channel");
+    }
+    CHANNELS = channels;
+    ANGULAR = new boolean[channels];
+    values = new double[capacity() * channels];
+  }
+
+  /**
+   * Creates a buffer of poses, with the channels x, y and heading in radians.
+   *
+   * @param historySeconds How long samples are kept, measured from the newest sample
+   * @param sampleRateHz How often samples will be added
+   * @return The buffer
+   */
+  public static TimeInterpolatableChannelBuffer pose(double historySeconds, double sampleRateHz) {
+    TimeInterpolatableChannelBuffer buffer =
+        new TimeInterpolatableChannelBuffer(3, historySeconds, sampleRateHz);
+    buffer.setAngular(2, true);
+    return buffer;
+  }
+
+  /**
+   * @return The number of values in each sample
+   */
+  public int getChannelCount() {
+    return CHANNELS;
+  }
+
+  /**
+   * Sets whether a channel is an angle in radians, interpolated the short way around the circle.
+   * Interpolated angles are wrapped to [-pi, pi).
+   *
+   * @param channel The channel
+   * @param angular Whether the channel is an angle
+   */
+  public void setAngular(int channel, boolean angular) {
+    checkChannel(channel);
+    ANGULAR[channel] = angular;
+  }
+
+  /**
+   * Adds a sample at the current time of {@link MathSharedStore}.
+   *
+   * @param sample The value of each channel
+   */
+  public void addSample(double[] sample) {
+    addSampleNanos(MathSharedStore.getTimestampNanos(), sample);
+  }
+
+  /**
+   * Adds a sample. Samples older than the window behind the newest sample are ignored.
+   *
+   * @param timeSeconds The time of the sample in seconds
+   * @param sample The value of each channel
+   */
+  public void addSample(double timeSeconds, double[] sample) {
+    addSampleNanos(toNanos(timeSeconds), sample);
+  }
+
+  /**
+   * Adds a sample. Samples older than the window behind the newest sample are ignored.
+   *
+   * @param timeNanos The time of the sample in nanoseconds
+   * @param sample The value of each channel
+   */
+  public void addSampleNanos(long timeNanos, double[] sample) {
+    checkLength(sample, "addSampleNanos");
+    int slot = slotFor(timeNanos);
+    if (slot >= 0) {
+      System.arraycopy(sample, 0, values, slot * CHANNELS, CHANNELS);
+    }
+  }
+
+  /**
+   * Adds a sample of a three channel buffer, such as a pose, without filling an array.
+   *
+   * @param timeNanos The time of the sample in nanoseconds
+   * @param first The value of channel 0
+   * @param second The value of channel 1
+   * @param third The value of channel 2
+   */
+  public void addSampleNanos(long timeNanos, double first, double second, double third) {
+    if (CHANNELS != 3) {
+      throw new IllegalStateException("Buffer has " + CHANNELS + " channels, not 3");
+    }
+    int slot = slotFor(timeNanos);
+    if (slot >= 0) {
+      int offset = slot * 3;
+      values[offset] = first;
+      values[offset + 1] = second;
+      values[offset + 2] = third;
+    }
+  }
+
+  /**
+   * Samples every channel at a time. Times before the oldest or after the newest sample get the
+   * values of that sample.
+   *
+   * @param timeSeconds The time in seconds
+   * @param out Receives the interpolated value of each channel
+   * @return Whether there was a sample to interpolate, false if the buffer is empty and out was
+   *     left unchanged
+   */
+  public boolean getSample(double timeSeconds, double[] out) {
+    return getSampleNanos(toNanos(timeSeconds), out);
+  }
+
+  /**
+   * Samples every channel at a time. Times before the oldest or after the newest sample get the
+   * values of that sample.
+   *
+   * @param timeNanos The time in nanoseconds
+   * @param out Receives the interpolated value of each channel
+   * @return Whether there was a sample to interpolate, false if the buffer is empty and out was
+   *     left unchanged
+   */
+  public boolean getSampleNanos(long timeNanos, double[] out) {
+    checkLength(out, "getSampleNanos");
+    if (size == 0) {
+      return false;
+    }
+    int index = floorIndex(timeNanos);
+    if (index < 0 || index == size - 1 || timeAt(slot(index)) == timeNanos) {
+      System.arraycopy(values, slot(Math.max(index, 0)) * CHANNELS, out, 0, CHANNELS);
+      return true;
+    }
+    int before = slot(index);
+    int after = slot(index + 1);
+    double t =
+        (double) (timeNanos - timeAt(before)) / (double) (timeAt(after) - timeAt(before));
+    for (int c = 0; c < CHANNELS; c++) {
+      out[c] = interpolate(c, before, after, t);
+    }
+    return true;
+  }
+
+  /**
+   * Samples one channel at a time. Times before the oldest or after the newest sample get the value
+   * of that sample.
+   *
+   * @param timeNanos The time in nanoseconds
+   * @param channel The channel
+   * @return The interpolated value, or NaN if the buffer is empty
+   */
+  public double getSampleNanos(long timeNanos, int channel) {
+    checkChannel(channel);
+    if (size == 0) {
+      return Double.NaN;
+    }
+    int index = floorIndex(timeNanos);
+    if (index < 0 || index == size - 1 || timeAt(slot(index)) == timeNanos) {
+      return values[slot(Math.max(index, 0)) * CHANNELS + channel];
+    }
+    int before = slot(index);
+    int after = slot(index + 1);
+    double t =
+        (double) (timeNanos - timeAt(before)) / (double) (timeAt(after) - timeAt(before));
+    return interpolate(channel, before, after, t);
+  }
+
+  private double interpolate(int channel, int before, int after, double t) {
+    double start = values[before * CHANNELS + channel];
+    double end = values[after * CHANNELS + channel];
+    if (!ANGULAR[channel]) {
+      return start + (end - start) * t;
+    }
+    return wrap(start + wrap(end - start) * t);
+  }
+
+  /** Wraps an angle to [-pi, pi), with floor rather than the much slower IEEEremainder. */
+  private static double wrap(double radians) {
+    return radians - TWO_PI * Math.floor((radians + Math.PI) / TWO_PI);
+  }
+
+  @Override
+  void moveValues(int from, int to) {
+    System.arraycopy(values, from * CHANNELS, values, to * CHANNELS, CHANNELS);
+  }
+
+  @Override
+  void resizeValues(int capacity) {
+    double[] grown = new double[capacity * CHANNELS];
+    for (int i = 0; i < size; i++) {
+      System.arraycopy(values, slot(i) * CHANNELS, grown, i * CHANNELS, CHANNELS);
+    }
+    values = grown;
+  }
+
+  private void checkLength(double[] array, String method) {
+    requireNonNullParam(array, "array", method);
+    if (array.length < CHANNELS) {
+      throw new IllegalArgumentException(
+          "Buffer has " + CHANNELS + " channels, got an array of " + array.length);
+    }
+  }
+
+  private void checkChannel(int channel) {
+    if (channel < 0 || channel >= CHANNELS) {
+      throw new IndexOutOfBoundsException(
+          "Channel " + channel + " is out of range for a buffer of " + CHANNELS);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.interpolation;
+
+import sallet.math.universal.MathSharedStore;
+
+/**
+ * A history of a double over a fixed window of time, which can be sampled at any time in the
+ * window by linear interpolation between the two recorded samples around it. Used to look up what
+ * a measurement was when a late reading, such as a vision frame, was captured.
+ *
+ * <p>Samples are kept in parallel {@code long[]} and {@code double[]} circular arrays sorted by
+ * time, so recording a sample is O(1) and looking one up is an O(log n) binary search, neither of
+ * which allocates once the window has filled up. Times are in the timebase of {@link
+ * MathSharedStore}.
+ *
+ * <p>See {@link TimeInterpolatableChannelBuffer} for several values recorded together.
+ */
+public class TimeInterpolatableDoubleBuffer extends TimeRing {
+  private double[] values;
+
+  /**
+   * Creates a buffer.
+   *
+   * @param historySeconds How long samples are kept, measured from the newest sample
+   */
+  public TimeInterpolatableDoubleBuffer(double historySeconds) {
+    this(historySeconds, 0);
+  }
+
+  /**
+   * Creates a buffer sized for a sample rate, so it never has to grow.
+   *
+   * @param historySeconds How long samples are kept, measured from the newest sample
+   * @param sampleRateHz How often samples will be added
+   */
+  public TimeInterpolatableDoubleBuffer(double historySeconds, double sampleRateHz) {
+    super(historySeconds, sampleRateHz);
+    values = new double[capacity()];
+  }
+
+  /**
+   * Adds a sample at the current time of {@link MathSharedStore}.
+   *
+   * @param value The value of the sample
+   */
+  public void addSample(double value) {
+    addSampleNanos(MathSharedStore.getTimestampNanos(), value);
+  }
+
+  /**
+   * Adds a sample. Samples older than the window behind the newest sample are ignored.
+   *
+   * @param timeSeconds The time of the sample in seconds
+   * @param value The value of the sample
+   */
+  public void addSample(double timeSeconds, double value) {
+    addSampleNanos(toNanos(timeSeconds), value);
+  }
+
+  /**
+   * Adds a sample. Samples older than the window behind the newest sample are ignored.
+   *
+   * @param timeNanos The time of the sample in nanoseconds
+   * @param value The value of the sample
+   */
+  public void addSampleNanos(long timeNanos, double value) {
+    int slot = slotFor(timeNanos);
+    if (slot >= 0) {
+      values[slot] = value;
+    }
+  }
+
+  /**
+   * Samples the buffer at a time. Times before the oldest or after the newest sample get the value
+   * of that sample.
+   *
+   * @param timeSeconds The time in seconds
+   * @return The interpolated value, or NaN if the buffer is empty
+   */
+  public double getSample(double timeSeconds) {
+    return getSampleNanos(toNanos(timeSeconds));
+  }
+
+  /**
+   * Samples the buffer at a time. Times before the oldest or after the newest sample get the value
+   * of that sample.
+   *
+   * @param timeNanos The time in nanoseconds
+   * @return The interpolated value, or NaN if the buffer is empty
+   */
+  public double getSampleNanos(long timeNanos) {
+    if (size == 0) {
+      return Double.NaN;
+    }
+    int index = floorIndex(timeNanos);
+    if (index < 0) {
+      return values[slot(0)];
+    }
+    int before = slot(index);
+    if (index == size - 1 || timeAt(before) == timeNanos) {
+      return values[before];
+    }
+    int after = slot(index + 1);
+    double t =
+        (double) (timeNanos - timeAt(before)) / (double) (timeAt(after) - timeAt(before));
+    return values[before] + (values[after] - values[before]) * t;
+  }
+
+  @Override
+  void moveValues(int from, int to) {
+    values[to] = values[from];
+  }
+
+  @Override
+  void resizeValues(int capacity) {
+    double[] grown = new double[capacity];
+    for (int i = 0; i < size; i++) {
+      grown[i] = values[slot(i)];
+    }
+    values = grown;
+  }
+}
@@ -0,0 +1,200 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.interpolation;
+
+/**
+ * The timestamps of a time-interpolatable buffer: a circular array of sample times in nanoseconds,
+ * kept sorted from the oldest sample at the head to the newest, and trimmed to a fixed window
+ * behind the newest sample. Subclasses keep their values in parallel arrays indexed by the same
+ * slots.
+ */
+abstract class TimeRing {
+  private static final int MIN_CAPACITY = 8;
+
+  private final long HISTORY_NANOS;
+
+  private long[] times;
+  // Slot of the oldest sample
+  private int head;
+  int size;
+
+  /**
+   * @param historySeconds How long samples are kept, measured from the newest sample
+   * @param sampleRateHz The expected sample rate, used to size the arrays so they never have to
+   *     grow, or 0 if unknown
+   */
+  TimeRing(double historySeconds, double sampleRateHz) {
+    if (!(historySeconds > 0.0)) {
+      throw new IllegalArgumentException("History window must be positive, got " + historySeconds);
+    }
+    if (!(sampleRateHz >= 0.0)) {
+      throw new IllegalArgumentException("Sample rate cannot be negative, got " + sampleRateHz);
+    }
+    HISTORY_NANOS = Math.round(historySeconds * 1e9);
+    // The window holds one more sample than it spans periods, plus slack for jitter
+    int expected = (int) Math.min(Math.ceil(historySeconds * sampleRateHz) + 2, 1 << 20);
+    times = new long[Math.max(expected, MIN_CAPACITY)];
+  }
+
+  /**
+   * Reserves the slot of a new sample, dropping the samples that fall out of the window. Samples
+   * are expected in time order, but an older sample is inserted in place, and a sample at the
+   * time of an existing one replaces it.
+   *
+   * @param timeNanos The time of the sample
+   * @return The slot to write the values of the sample to, or -1 if the sample is older than the
+   *     window and was ignored
+   */
+  final int slotFor(long timeNanos) {
+    if (size == 0 || timeNanos > times[slot(size - 1)]) {
+      long oldest = timeNanos - HISTORY_NANOS;
+      while (size > 0 && times[head] < oldest) {
+        head = next(head);
+        size--;
+      }
+      if (size == times.length) {
+        grow();
+      }
+      int slot = slot(size++);
+      times[slot] = timeNanos;
+      return slot;
+    }
+
+    if (timeNanos < times[slot(size - 1)] - HISTORY_NANOS) {
+      return -1;
+    }
+    int index = floorIndex(timeNanos);
+    if (index >= 0 && times[slot(index)] == timeNanos) {
+      return slot(index);
+    }
+    // Shift the newer samples up one slot to make room
+    if (size == times.length) {
+      grow();
+    }
+    int insert = index + 1;
+    for (int i = size; i > insert; i--) {
+      int to = slot(i);
+      int from = slot(i - 1);
+      times[to] = times[from];
+      moveValues(from, to);
+    }
+    size++;
+    int slot = slot(insert);
+    times[slot] = timeNanos;
+    return slot;
+  }
+
+  /**
+   * Finds the newest sample at or before a time by binary search.
+   *
+   * @param timeNanos The time
+   * @return The index of the sample counted from the oldest, or -1 if every sample is newer
+   */
+  final int floorIndex(long timeNanos) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (times[slot(middle)] <= timeNanos) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return high;
+  }
+
+  /**
+   * @param index The index of a sample counted from the oldest
+   * @return The slot the sample is stored in
+   */
+  final int slot(int index) {
+    int slot = head + index;
+    return slot >= times.length ? slot - times.length : slot;
+  }
+
+  /**
+   * @param slot A slot
+   * @return The time of the sample in the slot
+   */
+  final long timeAt(int slot) {
+    return times[slot];
+  }
+
+  /**
+   * @return The number of slots, which subclasses size their value arrays by
+   */
+  final int capacity() {
+    return times.length;
+  }
+
+  /**
+   * @return The number of samples in the buffer
+   */
+  public final int size() {
+    return size;
+  }
+
+  /**
+   * @return The time of the oldest sample in nanoseconds, or {@link Long#MIN_VALUE} if the buffer
+   *     is empty
+   */
+  public final long getOldestTimeNanos() {
+    return size == 0 ? Long.MIN_VALUE : times[head];
+  }
+
+  /**
+   * @return The time of the newest sample in nanoseconds, or {@link Long#MIN_VALUE} if the buffer
+   *     is empty
+   */
+  public final long getNewestTimeNanos() {
+    return size == 0 ? Long.MIN_VALUE : times[slot(size - 1)];
+  }
+
+  /** Removes every sample. */
+  public final void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  /**
+   * Converts a time in seconds, as given by {@link
+   * sallet.math.universal.MathSharedStore#getTimestampSec()}, to nanoseconds.
+   */
+  static long toNanos(double timeSeconds) {
+    return Math.round(timeSeconds * 1e9);
+  }
+
+  /**
+   * Copies the values of one slot to another while samples are shifted.
+   *
+   * @param from The slot to copy from
+   * @param to The slot to copy to
+   */
+  abstract void moveValues(int from, int to);
+
+  /**
+   * Moves the values to arrays of a new capacity, the oldest sample first. Called before the
+   * timestamps are moved, while {@link #slot(int)} still maps to the old arrays.
+   *
+   * @param capacity The new number of slots
+   */
+  abstract void resizeValues(int capacity);
+
+  private int next(int slot) {
+    return slot + 1 == times.length ? 0 : slot + 1;
+  }
+
+  /** Doubles the number of slots, which only happens until the window has filled up once. */
+  private void grow() {
+    int capacity = times.length * 2;
+    resizeValues(capacity);
+    long[] grown = new long[capacity];
+    for (int i = 0; i < size; i++) {
+      grown[i] = times[slot(i)];
+    }
+    times = grown;
+    head = 0;
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/kinematics/ChassisSpeeds.java
+
+package sallet.math.kinematics;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import sallet.math.geometry.Rotation2d;
+
+/**
+ * The velocity of a robot chassis in its own frame: forward, to the left, and counterclockwise.
+ *
+ * <p>A {@code ChassisSpeeds} is immutable. Operations ending in {@code Into} write their result
+ * into a {@link MutableChassisSpeeds}, which can be reused every cycle so hot paths do not
+ * allocate.
+ */
+public class ChassisSpeeds {
+  // Only changed by MutableChassisSpeeds
+  double vx;
+  double vy;
+  double omega;
+
+  /** Creates speeds of zero. */
+  public ChassisSpeeds() {}
+
+  /**
+   * Creates chassis speeds.
+   *
+   * @param vx Forward velocity in meters per second
+   * @param vy Sideways velocity, to the left, in meters per second
+   * @param omega Angular velocity, counterclockwise, in radians per second
+   */
+  public ChassisSpeeds(double vx, double vy, double omega) {
+    this.vx = vx;
+    this.vy = vy;
+    this.omega = omega;
+  }
+
+  /**
+   * Converts field-relative speeds, such as driver joystick input, into robot-relative speeds.
+   *
+   * @param vx Velocity along the field x axis in meters per second
+   * @param vy Velocity along the field y axis in meters per second
+   * @param omega Angular velocity, counterclockwise, in radians per second
+   * @param robotAngle The heading of the robot on the field
+   * @return The speeds in the frame of the robot
+   */
+  public static ChassisSpeeds fromFieldRelativeSpeeds(
+      double vx, double vy, double omega, Rotation2d robotAngle) {
+    return fromFieldRelativeSpeedsInto(vx, vy, omega, robotAngle, new MutableChassisSpeeds())
+        .toImmutable();
+  }
+
+  /**
+   * Like {@link #fromFieldRelativeSpeeds}, writing the result into reusable speeds.
+   *
+   * @param vx Velocity along the field x axis in meters per second
+   * @param vy Velocity along the field y axis in meters per second
+   * @param omega Angular velocity, counterclockwise, in radians per second
+   * @param robotAngle The heading of the robot on the field
+   * @param out Receives the speeds in the frame of the robot
+   * @return out
+   */
+  public static MutableChassisSpeeds fromFieldRelativeSpeedsInto(
+      double vx, double vy, double omega, Rotation2d robotAngle, MutableChassisSpeeds out) {
+    requireNonNullParam(robotAngle, "robotAngle", "fromFieldRelativeSpeeds");
+    // Rotate by the inverse of the heading
+    double cos = robotAngle.getCos();
+    double sin = robotAngle.getSin();
+    return out.set(vx * cos + vy * sin, -vx * sin + vy * cos, omega);
+  }
+
+  /**
+   * @return Forward velocity in meters per second
+   */
+  public double getVx() {
+    return vx;
+  }
+
+  /**
+   * @return Sideways velocity, to the left, in meters per second
+   */
+  public double getVy() {
+    return vy;
+  }
+
+  /**
+   * @return Angular velocity, counterclockwise, in radians per second
+   */
+  public double getOmega() {
+    return omega;
+  }
+
+  /**
+   * @return Immutable speeds equal to these, which are these speeds unless they are mutable
+   */
+  public ChassisSpeeds toImmutable() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "ChassisSpeeds(Vx: %.2f m/s, Vy: %.2f m/s, Omega: %.2f rad/s)", vx, vy, omega);
+  }
+}
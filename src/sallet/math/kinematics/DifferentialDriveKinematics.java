@@ -0,0 +1,91 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/kinematics/DifferentialDriveKinematics.java
+
+package sallet.math.kinematics;
+
+import sallet.math.geometry.Twist2d;
+
+/**
+ * Converts between the velocity of a differential drive chassis and the speeds of its two sides.
+ */
+public class DifferentialDriveKinematics {
+  private final double TRACK_WIDTH;
+
+  /**
+   * Creates differential drive kinematics.
+   *
+   * @param trackWidth The distance between the left and right wheels in meters. Since wheels
+   *     scrub, measuring it by turning the robot in place can beat a tape measure.
+   */
+  public DifferentialDriveKinematics(double trackWidth) {
+    if (!(trackWidth > 0.0)) {
+      throw new IllegalArgumentException("Track width must be positive, got " + trackWidth);
+    }
+    TRACK_WIDTH = trackWidth;
+  }
+
+  /**
+   * @return The track width in meters
+   */
+  public double getTrackWidth() {
+    return TRACK_WIDTH;
+  }
+
+  /**
+   * @param wheelSpeeds The speeds of the two sides
+   * @return The velocity of the chassis
+   */
+  public ChassisSpeeds toChassisSpeeds(DifferentialDriveWheelSpeeds wheelSpeeds) {
+    return toChassisSpeedsInto(wheelSpeeds, new MutableChassisSpeeds()).toImmutable();
+  }
+
+  /**
+   * Like {@link #toChassisSpeeds}, writing the result into reusable speeds.
+   *
+   * @param wheelSpeeds The speeds of the two sides
+   * @param out Receives the velocity of the chassis
+   * @return out
+   */
+  public MutableChassisSpeeds toChassisSpeedsInto(
+      DifferentialDriveWheelSpeeds wheelSpeeds, MutableChassisSpeeds out) {
+    return out.set(
+        (wheelSpeeds.left + wheelSpeeds.right) / 2.0,
+        0.0,
+        (wheelSpeeds.right - wheelSpeeds.left) / TRACK_WIDTH);
+  }
+
+  /**
+   * @param chassisSpeeds The velocity of the chassis, whose sideways velocity is ignored
+   * @return The speeds of the two sides
+   */
+  public DifferentialDriveWheelSpeeds toWheelSpeeds(ChassisSpeeds chassisSpeeds) {
+    return toWheelSpeedsInto(chassisSpeeds, new MutableDifferentialDriveWheelSpeeds())
+        .toImmutable();
+  }
+
+  /**
+   * Like {@link #toWheelSpeeds}, writing the result into reusable speeds.
+   *
+   * @param chassisSpeeds The velocity of the chassis, whose sideways velocity is ignored
+   * @param out Receives the speeds of the two sides
+   * @return out
+   */
+  public MutableDifferentialDriveWheelSpeeds toWheelSpeedsInto(
+      ChassisSpeeds chassisSpeeds, MutableDifferentialDriveWheelSpeeds out) {
+    double turn = TRACK_WIDTH / 2.0 * chassisSpeeds.omega;
+    return out.set(chassisSpeeds.vx - turn, chassisSpeeds.vx + turn);
+  }
+
+  /**
+   * @param leftDistance The distance driven by the left side in meters
+   * @param rightDistance The distance driven by the right side in meters
+   * @return The change in pose of the chassis
+   */
+  public Twist2d toTwist2d(double leftDistance, double rightDistance) {
+    return new Twist2d(
+        (leftDistance + rightDistance) / 2.0, 0.0, (rightDistance - leftDistance) / TRACK_WIDTH);
+  }
+}
@@ -0,0 +1,77 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/kinematics/DifferentialDriveOdometry.java
+
+package sallet.math.kinematics;
+
+import sallet.math.geometry.Pose2d;
+import sallet.math.geometry.Rotation2d;
+
+/**
+ * Tracks the pose of a differential drive on the field from its encoders and gyro. Call {@link
+ * #update} every cycle, usually from the drive subsystem's periodic method; it updates the pose in
+ * place and does not allocate.
+ */
+public class DifferentialDriveOdometry extends Odometry {
+  private double previousLeftDistance;
+  private double previousRightDistance;
+
+  /**
+   * Creates odometry starting at the origin.
+   *
+   * @param gyroAngle The angle reported by the gyro
+   * @param leftDistance The distance driven by the left side in meters
+   * @param rightDistance The distance driven by the right side in meters
+   */
+  public DifferentialDriveOdometry(
+      Rotation2d gyroAngle, double leftDistance, double rightDistance) {
+    this(gyroAngle, leftDistance, rightDistance, Pose2d.kZero);
+  }
+
+  /**
+   * Creates odometry.
+   *
+   * @param gyroAngle The angle reported by the gyro
+   * @param leftDistance The distance driven by the left side in meters
+   * @param rightDistance The distance driven by the right side in meters
+   * @param initialPose The starting pose of the robot on the field
+   */
+  public DifferentialDriveOdometry(
+      Rotation2d gyroAngle, double leftDistance, double rightDistance, Pose2d initialPose) {
+    resetPosition(gyroAngle, leftDistance, rightDistance, initialPose);
+  }
+
+  /**
+   * Resets the pose. The gyro and encoders do not need to be reset, their current readings are
+   * taken to mean the given pose.
+   *
+   * @param gyroAngle The angle reported by the gyro
+   * @param leftDistance The distance driven by the left side in meters
+   * @param rightDistance The distance driven by the right side in meters
+   * @param pose The pose of the robot on the field
+   */
+  public void resetPosition(
+      Rotation2d gyroAngle, double leftDistance, double rightDistance, Pose2d pose) {
+    resetPose(gyroAngle, pose);
+    previousLeftDistance = leftDistance;
+    previousRightDistance = rightDistance;
+  }
+
+  /**
+   * Updates the pose from the current readings.
+   *
+   * @param gyroAngle The angle reported by the gyro
+   * @param leftDistance The distance driven by the left side in meters
+   * @param rightDistance The distance driven by the right side in meters
+   * @return The updated pose, see {@link #getPose()}
+   */
+  public Pose2d update(Rotation2d gyroAngle, double leftDistance, double rightDistance) {
+    double deltaLeft = leftDistance - previousLeftDistance;
+    double deltaRight = rightDistance - previousRightDistance;
+    previousLeftDistance = leftDistance;
+    previousRightDistance = rightDistance;
+    return integrate(gyroAngle, (deltaLeft + deltaRight) / 2.0, 0.0);
+  }
+}
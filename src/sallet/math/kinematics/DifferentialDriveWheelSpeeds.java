@@ -0,0 +1,58 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/kinematics/DifferentialDriveWheelSpeeds.java
+
+package sallet.math.kinematics;
+
+/**
+ * The wheel speeds of a differential drive. Immutable, see {@link
+ * MutableDifferentialDriveWheelSpeeds} for reusable speeds.
+ */
+public class DifferentialDriveWheelSpeeds {
+  // Only changed by MutableDifferentialDriveWheelSpeeds
+  double left;
+  double right;
+
+  /** Creates wheel speeds of zero. */
+  public DifferentialDriveWheelSpeeds() {}
+
+  /**
+   * Creates wheel speeds.
+   *
+   * @param left The speed of the left side in meters per second
+   * @param right The speed of the right side in meters per second
+   */
+  public DifferentialDriveWheelSpeeds(double left, double right) {
+    this.left = left;
+    this.right = right;
+  }
+
+  /**
+   * @return The speed of the left side in meters per second
+   */
+  public double getLeft() {
+    return left;
+  }
+
+  /**
+   * @return The speed of the right side in meters per second
+   */
+  public double getRight() {
+    return right;
+  }
+
+  /**
+   * @return Immutable speeds equal to these, which are these speeds unless they are mutable
+   */
+  public DifferentialDriveWheelSpeeds toImmutable() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "DifferentialDriveWheelSpeeds(Left: %.2f m/s, Right: %.2f m/s)", left, right);
+  }
+}
@@ -0,0 +1,210 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/kinematics/MecanumDriveKinematics.java
+
+package sallet.math.kinematics;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import sallet.math.geometry.Translation2d;
+import sallet.math.geometry.Twist2d;
+
+/**
+ * Converts between the velocity of a mecanum drive chassis and the speeds of its four wheels.
+ *
+ * <p>Each wheel's speed is a row of the inverse kinematics, [1, +-1, lever arm] times (vx, vy,
+ * omega). Both directions are written out as plain arithmetic over a handful of cached doubles
+ * instead of matrix objects: the forward kinematics, the least-squares solution of the four
+ * wheel speeds, is a 3x4 pseudo-inverse computed once in the constructor.
+ */
+public class MecanumDriveKinematics {
+  private static final int WHEELS = 4;
+  // Sign of vy in each wheel's row of the inverse kinematics
+  private static final double[] STRAFE_SIGNS = {-1.0, 1.0, 1.0, -1.0};
+
+  // Wheel positions relative to the center of the robot, front left, front right, rear left and
+  // rear right
+  private final double[] WHEEL_X = new double[WHEELS];
+  private final double[] WHEEL_Y = new double[WHEELS];
+
+  // Forward kinematics, a 3x4 matrix in row-major order mapping wheel speeds to vx, vy and omega
+  private final double[] FORWARD = new double[3 * WHEELS];
+
+  /**
+   * Creates mecanum drive kinematics.
+   *
+   * @param frontLeftWheel The position of the front left wheel relative to the robot center
+   * @param frontRightWheel The position of the front right wheel relative to the robot center
+   * @param rearLeftWheel The position of the rear left wheel relative to the robot center
+   * @param rearRightWheel The position of the rear right wheel relative to the robot center
+   */
+  public MecanumDriveKinematics(
+      Translation2d frontLeftWheel,
+      Translation2d frontRightWheel,
+      Translation2d rearLeftWheel,
+      Translation2d rearRightWheel) {
+    Translation2d[] wheels = {frontLeftWheel, frontRightWheel, rearLeftWheel, rearRightWheel};
+    for (int i = 0; i < WHEELS; i++) {
+      requireNonNullParam(wheels[i], "wheel", "MecanumDriveKinematics");
+      WHEEL_X[i] = wheels[i].getX();
+      WHEEL_Y[i] = wheels[i].getY();
+    }
+
+    // Inverse kinematics rows about the robot center
+    double[] inverse = new double[WHEELS * 3];
+    for (int i = 0; i < WHEELS; i++) {
+      inverse[i * 3] = 1.0;
+      inverse[i * 3 + 1] = STRAFE_SIGNS[i];
+      inverse[i * 3 + 2] = leverArm(i, 0.0, 0.0);
+    }
+
+    // Pseudo-inverse (A^T A)^-1 A^T, with the 3x3 inverse by cofactors
+    double[] normal = new double[9];
+    for (int r = 0; r < 3; r++) {
+      for (int c = 0; c < 3; c++) {
+        for (int i = 0; i < WHEELS; i++) {
+          normal[r * 3 + c] += inverse[i * 3 + r] * inverse[i * 3 + c];
+        }
+      }
+    }
+    double[] normalInverse = invert3x3(normal);
+    for (int r = 0; r < 3; r++) {
+      for (int i = 0; i < WHEELS; i++) {
+        double sum = 0.0;
+        for (int k = 0; k < 3; k++) {
+          sum += normalInverse[r * 3 + k] * inverse[i * 3 + k];
+        }
+        FORWARD[r * WHEELS + i] = sum;
+      }
+    }
+  }
+
+  /**
+   * @param chassisSpeeds The velocity of the chassis
+   * @return The speeds of the wheels, turning about the center of the robot
+   */
+  public MecanumDriveWheelSpeeds toWheelSpeeds(ChassisSpeeds chassisSpeeds) {
+    return toWheelSpeeds(chassisSpeeds, Translation2d.kZero);
+  }
+
+  /**
+   * @param chassisSpeeds The velocity of the chassis
+   * @param centerOfRotation The point the chassis turns about, relative to the robot center
+   * @return The speeds of the wheels
+   */
+  public MecanumDriveWheelSpeeds toWheelSpeeds(
+      ChassisSpeeds chassisSpeeds, Translation2d centerOfRotation) {
+    return toWheelSpeedsInto(
+            chassisSpeeds, centerOfRotation, new MutableMecanumDriveWheelSpeeds())
+        .toImmutable();
+  }
+
+  /**
+   * Like {@link #toWheelSpeeds(ChassisSpeeds, Translation2d)}, writing the result into reusable
+   * speeds.
+   *
+   * @param chassisSpeeds The velocity of the chassis
+   * @param centerOfRotation The point the chassis turns about, relative to the robot center
+   * @param out Receives the speeds of the wheels
+   * @return out
+   */
+  public MutableMecanumDriveWheelSpeeds toWheelSpeedsInto(
+      ChassisSpeeds chassisSpeeds,
+      Translation2d centerOfRotation,
+      MutableMecanumDriveWheelSpeeds out) {
+    double vx = chassisSpeeds.vx;
+    double vy = chassisSpeeds.vy;
+    double omega = chassisSpeeds.omega;
+    double cx = centerOfRotation.getX();
+    double cy = centerOfRotation.getY();
+    return out.set(
+        vx + STRAFE_SIGNS[0] * vy + leverArm(0, cx, cy) * omega,
+        vx + STRAFE_SIGNS[1] * vy + leverArm(1, cx, cy) * omega,
+        vx + STRAFE_SIGNS[2] * vy + leverArm(2, cx, cy) * omega,
+        vx + STRAFE_SIGNS[3] * vy + leverArm(3, cx, cy) * omega);
+  }
+
+  /**
+   * @param wheelSpeeds The speeds of the wheels
+   * @return The velocity of the chassis that best fits the wheel speeds
+   */
+  public ChassisSpeeds toChassisSpeeds(MecanumDriveWheelSpeeds wheelSpeeds) {
+    return toChassisSpeedsInto(wheelSpeeds, new MutableChassisSpeeds()).toImmutable();
+  }
+
+  /**
+   * Like {@link #toChassisSpeeds}, writing the result into reusable speeds.
+   *
+   * @param wheelSpeeds The speeds of the wheels
+   * @param out Receives the velocity of the chassis
+   * @return out
+   */
+  public MutableChassisSpeeds toChassisSpeedsInto(
+      MecanumDriveWheelSpeeds wheelSpeeds, MutableChassisSpeeds out) {
+    double fl = wheelSpeeds.frontLeft;
+    double fr = wheelSpeeds.frontRight;
+    double rl = wheelSpeeds.rearLeft;
+    double rr = wheelSpeeds.rearRight;
+    return out.set(
+        forward(0, fl, fr, rl, rr), forward(1, fl, fr, rl, rr), forward(2, fl, fr, rl, rr));
+  }
+
+  /**
+   * @param wheelDeltas The distance each wheel drove since the last update
+   * @return The change in pose of the chassis
+   */
+  public Twist2d toTwist2d(MecanumDriveWheelPositions wheelDeltas) {
+    double fl = wheelDeltas.getFrontLeft();
+    double fr = wheelDeltas.getFrontRight();
+    double rl = wheelDeltas.getRearLeft();
+    double rr = wheelDeltas.getRearRight();
+    return new Twist2d(
+        forward(0, fl, fr, rl, rr), forward(1, fl, fr, rl, rr), forward(2, fl, fr, rl, rr));
+  }
+
+  /**
+   * Applies one row of the forward kinematics.
+   *
+   * @param row 0 for x, 1 for y, 2 for the heading
+   * @return The row times the wheel values
+   */
+  double forward(int row, double fl, double fr, double rl, double rr) {
+    int base = row * WHEELS;
+    return FORWARD[base] * fl
+        + FORWARD[base + 1] * fr
+        + FORWARD[base + 2] * rl
+        + FORWARD[base + 3] * rr;
+  }
+
+  /** The omega coefficient of a wheel's row of the inverse kinematics about a center. */
+  private double leverArm(int wheel, double cx, double cy) {
+    double x = WHEEL_X[wheel] - cx;
+    double y = WHEEL_Y[wheel] - cy;
+    return STRAFE_SIGNS[wheel] < 0 ? -(x + y) : x - y;
+  }
+
+  /** Inverts a 3x3 matrix in row-major order as its adjugate over its determinant. */
+  private static double[] invert3x3(double[] m) {
+    double[] adjugate = {
+      m[4] * m[8] - m[5] * m[7],
+      m[2] * m[7] - m[1] * m[8],
+      m[1] * m[5] - m[2] * m[4],
+      m[5] * m[6] - m[3] * m[8],
+      m[0] * m[8] - m[2] * m[6],
+      m[2] * m[3] - m[0] * m[5],
+      m[3] * m[7] - m[4] * m[6],
+      m[1] * m[6] - m[0] * m[7],
+      m[0] * m[4] - m[1] * m[3]
+    };
+    double determinant = m[0] * adjugate[0] + m[1] * adjugate[3] + m[2] * adjugate[6];
+    if (Math.abs(determinant) < 1e-12) {
+      throw new IllegalArgumentException("Mecanum wheel positions do not span the chassis motion");
+    }
+    for (int i = 0; i < adjugate.length; i++) {
+      adjugate[i] /= determinant;
+    }
+    return adjugate;
+  }
+}
@@ -0,0 +1,120 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/kinematics/MecanumDriveOdometry.java
+
+package sallet.math.kinematics;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import sallet.math.geometry.Pose2d;
+import sallet.math.geometry.Rotation2d;
+
+/**
+ * Tracks the pose of a mecanum drive on the field from its encoders and gyro. Call {@link
+ * #update} every cycle, usually from the drive subsystem's periodic method; it updates the pose in
+ * place and does not allocate. The wheel distances can be passed directly rather than wrapped in
+ * {@link MecanumDriveWheelPositions}.
+ */
+public class MecanumDriveOdometry extends Odometry {
+  private final MecanumDriveKinematics KINEMATICS;
+  private double previousFrontLeft;
+  private double previousFrontRight;
+  private double previousRearLeft;
+  private double previousRearRight;
+
+  /**
+   * Creates odometry starting at the origin.
+   *
+   * @param kinematics The kinematics of the drive
+   * @param gyroAngle The angle reported by the gyro
+   * @param wheelPositions The distance driven by each wheel
+   */
+  public MecanumDriveOdometry(
+      MecanumDriveKinematics kinematics,
+      Rotation2d gyroAngle,
+      MecanumDriveWheelPositions wheelPositions) {
+    this(kinematics, gyroAngle, wheelPositions, Pose2d.kZero);
+  }
+
+  /**
+   * Creates odometry.
+   *
+   * @param kinematics The kinematics of the drive
+   * @param gyroAngle The angle reported by the gyro
+   * @param wheelPositions The distance driven by each wheel
+   * @param initialPose The starting pose of the robot on the field
+   */
+  public MecanumDriveOdometry(
+      MecanumDriveKinematics kinematics,
+      Rotation2d gyroAngle,
+      MecanumDriveWheelPositions wheelPositions,
+      Pose2d initialPose) {
+    KINEMATICS = requireNonNullParam(kinematics, "kinematics", "MecanumDriveOdometry");
+    resetPosition(gyroAngle, wheelPositions, initialPose);
+  }
+
+  /**
+   * Resets the pose. The gyro and encoders do not need to be reset, their current readings are
+   * taken to mean the given pose.
+   *
+   * @param gyroAngle The angle reported by the gyro
+   * @param wheelPositions The distance driven by each wheel
+   * @param pose The pose of the robot on the field
+   */
+  public void resetPosition(
+      Rotation2d gyroAngle, MecanumDriveWheelPositions wheelPositions, Pose2d pose) {
+    requireNonNullParam(wheelPositions, "wheelPositions", "resetPosition");
+    resetPose(gyroAngle, pose);
+    previousFrontLeft = wheelPositions.getFrontLeft();
+    previousFrontRight = wheelPositions.getFrontRight();
+    previousRearLeft = wheelPositions.getRearLeft();
+    previousRearRight = wheelPositions.getRearRight();
+  }
+
+  /**
+   * Updates the pose from the current readings.
+   *
+   * @param gyroAngle The angle reported by the gyro
+   * @param wheelPositions The distance driven by each wheel
+   * @return The updated pose, see {@link #getPose()}
+   */
+  public Pose2d update(Rotation2d gyroAngle, MecanumDriveWheelPositions wheelPositions) {
+    requireNonNullParam(wheelPositions, "wheelPositions", "update");
+    return update(
+        gyroAngle,
+        wheelPositions.getFrontLeft(),
+        wheelPositions.getFrontRight(),
+        wheelPositions.getRearLeft(),
+        wheelPositions.getRearRight());
+  }
+
+  /**
+   * Updates the pose from the current readings.
+   *
+   * @param gyroAngle The angle reported by the gyro
+   * @param frontLeft The distance driven by the front left wheel in meters
+   * @param frontRight The distance driven by the front right wheel in meters
+   * @param rearLeft The distance driven by the rear left wheel in meters
+   * @param rearRight The distance driven by the rear right wheel in meters
+   * @return The updated pose, see {@link #getPose()}
+   */
+  public Pose2d update(
+      Rotation2d gyroAngle,
+      double frontLeft,
+      double frontRight,
+      double rearLeft,
+      double rearRight) {
+    double fl = frontLeft - previousFrontLeft;
+    double fr = frontRight - previousFrontRight;
+    double rl = rearLeft - previousRearLeft;
+    double rr = rearRight - previousRearRight;
+    previousFrontLeft = frontLeft;
+    previousFrontRight = frontRight;
+    previousRearLeft = rearLeft;
+    previousRearRight = rearRight;
+    return integrate(
+        gyroAngle, KINEMATICS.forward(0, fl, fr, rl, rr), KINEMATICS.forward(1, fl, fr, rl, rr));
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/kinematics/MecanumDriveWheelPositions.java
+
+package sallet.math.kinematics;
+
+/**
+ * The distances driven by each wheel of a mecanum drive, as read from its encoders. Immutable; the
+ * odometry also takes the distances directly so they need not be wrapped every cycle.
+ */
+public class MecanumDriveWheelPositions {
+  private final double FRONT_LEFT;
+  private final double FRONT_RIGHT;
+  private final double REAR_LEFT;
+  private final double REAR_RIGHT;
+
+  /** Creates wheel positions of zero. */
+  public MecanumDriveWheelPositions() {
+    this(0.0, 0.0, 0.0, 0.0);
+  }
+
+  /**
+   * Creates wheel positions.
+   *
+   * @param frontLeft The distance driven by the front left wheel in meters
+   * @param frontRight The distance driven by the front right wheel in meters
+   * @param rearLeft The distance driven by the rear left wheel in meters
+   * @param rearRight The distance driven by the rear right wheel in meters
+   */
+  public MecanumDriveWheelPositions(
+      double frontLeft, double frontRight, double rearLeft, double rearRight) {
+    FRONT_LEFT = frontLeft;
+    FRONT_RIGHT = frontRight;
+    REAR_LEFT = rearLeft;
+    REAR_RIGHT = rearRight;
+  }
+
+  /**
+   * @return The distance driven by the front left wheel in meters
+   */
+  public double getFrontLeft() {
+    return FRONT_LEFT;
+  }
+
+  /**
+   * @return The distance driven by the front right wheel in meters
+   */
+  public double getFrontRight() {
+    return FRONT_RIGHT;
+  }
+
+  /**
+   * @return The distance driven by the rear left wheel in meters
+   */
+  public double getRearLeft() {
+    return REAR_LEFT;
+  }
+
+  /**
+   * @return The distance driven by the rear right wheel in meters
+   */
+  public double getRearRight() {
+    return REAR_RIGHT;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "MecanumDriveWheelPositions(Front Left: %.2f m, Front Right: %.2f m, "
+            + "Rear Left: %.2f m, Rear Right: %.2f m)",
+        FRONT_LEFT, FRONT_RIGHT, REAR_LEFT, REAR_RIGHT);
+  }
+}
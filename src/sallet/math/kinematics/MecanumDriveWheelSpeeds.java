@@ -0,0 +1,81 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/kinematics/MecanumDriveWheelSpeeds.java
+
+package sallet.math.kinematics;
+
+/**
+ * The wheel speeds of a mecanum drive. Immutable, see {@link MutableMecanumDriveWheelSpeeds} for
+ * reusable speeds.
+ */
+public class MecanumDriveWheelSpeeds {
+  // Only changed by MutableMecanumDriveWheelSpeeds
+  double frontLeft;
+  double frontRight;
+  double rearLeft;
+  double rearRight;
+
+  /** Creates wheel speeds of zero. */
+  public MecanumDriveWheelSpeeds() {}
+
+  /**
+   * Creates wheel speeds.
+   *
+   * @param frontLeft The speed of the front left wheel in meters per second
+   * @param frontRight The speed of the front right wheel in meters per second
+   * @param rearLeft The speed of the rear left wheel in meters per second
+   * @param rearRight The speed of the rear right wheel in meters per second
+   */
+  public MecanumDriveWheelSpeeds(
+      double frontLeft, double frontRight, double rearLeft, double rearRight) {
+    this.frontLeft = frontLeft;
+    this.frontRight = frontRight;
+    this.rearLeft = rearLeft;
+    this.rearRight = rearRight;
+  }
+
+  /**
+   * @return The speed of the front left wheel in meters per second
+   */
+  public double getFrontLeft() {
+    return frontLeft;
+  }
+
+  /**
+   * @return The speed of the front right wheel in meters per second
+   */
+  public double getFrontRight() {
+    return frontRight;
+  }
+
+  /**
+   * @return The speed of the rear left wheel in meters per second
+   */
+  public double getRearLeft() {
+    return rearLeft;
+  }
+
+  /**
+   * @return The speed of the rear right wheel in meters per second
+   */
+  public double getRearRight() {
+    return rearRight;
+  }
+
+  /**
+   * @return Immutable speeds equal to these, which are these speeds unless they are mutable
+   */
+  public MecanumDriveWheelSpeeds toImmutable() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "MecanumDriveWheelSpeeds(Front Left: %.2f m/s, Front Right: %.2f m/s, "
+            + "Rear Left: %.2f m/s, Rear Right: %.2f m/s)",
+        frontLeft, frontRight, rearLeft, rearRight);
+  }
+}
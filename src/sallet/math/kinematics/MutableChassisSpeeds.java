@@ -0,0 +1,33 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.kinematics;
+
+/**
+ * {@link ChassisSpeeds} that can be changed in place, used as the output of the {@code Into}
+ * operations so speeds can be reused every cycle instead of allocated.
+ */
+public final class MutableChassisSpeeds extends ChassisSpeeds {
+  /** Creates speeds of zero. */
+  public MutableChassisSpeeds() {}
+
+  /**
+   * Sets the speeds.
+   *
+   * @param vx Forward velocity in meters per second
+   * @param vy Sideways velocity, to the left, in meters per second
+   * @param omega Angular velocity, counterclockwise, in radians per second
+   * @return These speeds
+   */
+  public MutableChassisSpeeds set(double vx, double vy, double omega) {
+    this.vx = vx;
+    this.vy = vy;
+    this.omega = omega;
+    return this;
+  }
+
+  @Override
+  public ChassisSpeeds toImmutable() {
+    return new ChassisSpeeds(vx, vy, omega);
+  }
+}
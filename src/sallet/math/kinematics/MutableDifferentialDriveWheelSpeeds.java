@@ -0,0 +1,31 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.kinematics;
+
+/**
+ * {@link DifferentialDriveWheelSpeeds} that can be changed in place, used as the output of the
+ * {@code Into} operations so speeds can be reused every cycle instead of allocated.
+ */
+public final class MutableDifferentialDriveWheelSpeeds extends DifferentialDriveWheelSpeeds {
+  /** Creates wheel speeds of zero. */
+  public MutableDifferentialDriveWheelSpeeds() {}
+
+  /**
+   * Sets the speeds.
+   *
+   * @param left The speed of the left side in meters per second
+   * @param right The speed of the right side in meters per second
+   * @return These speeds
+   */
+  public MutableDifferentialDriveWheelSpeeds set(double left, double right) {
+    this.left = left;
+    this.right = right;
+    return this;
+  }
+
+  @Override
+  public DifferentialDriveWheelSpeeds toImmutable() {
+    return new DifferentialDriveWheelSpeeds(left, right);
+  }
+}
@@ -0,0 +1,36 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.kinematics;
+
+/**
+ * {@link MecanumDriveWheelSpeeds} that can be changed in place, used as the output of the {@code
+ * Into} operations so speeds can be reused every cycle instead of allocated.
+ */
+public final class MutableMecanumDriveWheelSpeeds extends MecanumDriveWheelSpeeds {
+  /** Creates wheel speeds of zero. */
+  public MutableMecanumDriveWheelSpeeds() {}
+
+  /**
+   * Sets the speeds.
+   *
+   * @param frontLeft The speed of the front left wheel in meters per second
+   * @param frontRight The speed of the front right wheel in meters per second
+   * @param rearLeft The speed of the rear left wheel in meters per second
+   * @param rearRight The speed of the rear right wheel in meters per second
+   * @return These speeds
+   */
+  public MutableMecanumDriveWheelSpeeds set(
+      double frontLeft, double frontRight, double rearLeft, double rearRight) {
+    this.frontLeft = frontLeft;
+    this.frontRight = frontRight;
+    this.rearLeft = rearLeft;
+    this.rearRight = rearRight;
+    return this;
+  }
+
+  @Override
+  public MecanumDriveWheelSpeeds toImmutable() {
+    return new MecanumDriveWheelSpeeds(frontLeft, frontRight, rearLeft, rearRight);
+  }
+}
@@ -0,0 +1,93 @@
+// Copyright (c) barbute
+// Open Source Software
+// ---
+// Taken from:
+// https://github.com/wpilibsuite/allwpilib/blob/main/wpimath/src/main/java/edu/wpi/first/math/kinematics/Odometry.java
+
+package sallet.math.kinematics;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import sallet.math.geometry.MutablePose2d;
+import sallet.math.geometry.MutableRotation2d;
+import sallet.math.geometry.Pose2d;
+import sallet.math.geometry.Rotation2d;
+
+/**
+ * The pose tracking shared by the drive odometries: integrates the motion measured by the wheels
+ * along an arc, taking the heading from the gyro, which drifts far less than the wheels do.
+ *
+ * <p>The pose and the rotations used along the way are kept in mutable objects owned by the
+ * odometry and updated in place, so an update does not allocate.
+ */
+abstract class Odometry {
+  private final MutablePose2d POSE = new MutablePose2d();
+  // Added to the gyro angle to get the heading on the field
+  private final MutableRotation2d GYRO_OFFSET = new MutableRotation2d();
+  private final MutableRotation2d PREVIOUS_ANGLE = new MutableRotation2d();
+  private final MutableRotation2d ANGLE = new MutableRotation2d();
+
+  /**
+   * Resets the pose, taking the current gyro angle to mean the heading of the given pose.
+   *
+   * @param gyroAngle The angle reported by the gyro
+   * @param pose The pose of the robot on the field
+   */
+  final void resetPose(Rotation2d gyroAngle, Pose2d pose) {
+    requireNonNullParam(gyroAngle, "gyroAngle", "resetPosition");
+    requireNonNullParam(pose, "pose", "resetPosition");
+    POSE.set(pose);
+    pose.getRotation().minusInto(gyroAngle, GYRO_OFFSET);
+    PREVIOUS_ANGLE.set(pose.getRotation());
+  }
+
+  /**
+   * Moves the pose along an arc.
+   *
+   * @param gyroAngle The angle reported by the gyro
+   * @param dx The distance driven forward since the last update, in meters
+   * @param dy The distance driven to the left since the last update, in meters
+   * @return The updated pose
+   */
+  final Pose2d integrate(Rotation2d gyroAngle, double dx, double dy) {
+    requireNonNullParam(gyroAngle, "gyroAngle", "update");
+    gyroAngle.rotateByInto(GYRO_OFFSET, ANGLE);
+    double dtheta = ANGLE.minusInto(PREVIOUS_ANGLE, PREVIOUS_ANGLE).getRadians();
+    POSE.expInto(dx, dy, dtheta, POSE);
+    // Take the heading from the gyro rather than accumulating the rounding of every update
+    POSE.getRotation().set(ANGLE);
+    PREVIOUS_ANGLE.set(ANGLE);
+    return POSE;
+  }
+
+  /**
+   * Returns the pose of the robot on the field. This is the odometry's own pose, updated in place
+   * by every update; use {@link Pose2d#toImmutable()} or {@link #getPoseInto} to keep a copy.
+   *
+   * @return The pose
+   */
+  public final Pose2d getPose() {
+    return POSE;
+  }
+
+  /**
+   * Copies the pose of the robot on the field.
+   *
+   * @param out Receives the pose
+   * @return out
+   */
+  public final MutablePose2d getPoseInto(MutablePose2d out) {
+    return out.set(POSE);
+  }
+
+  /**
+   * Moves the pose to a new position, keeping its heading, for example after a vision
+   * measurement.
+   *
+   * @param x The x component of the position in meters
+   * @param y The y component of the position in meters
+   */
+  public final void resetTranslation(double x, double y) {
+    POSE.setTranslation(x, y);
+  }
+}
@@ -4,29 +4,111 @@
 package sallet.math.universal;
 
 import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
 
 /**
  * Class that stores useful data needed for mathematic calculations
+ *
+ * <p>Time is kept as an integer number of nanoseconds from a monotonic clock so it does not lose
+ * precision over long runs. The {@link sallet.command.CommandScheduler} latches the clock once at
+ * the start of every cycle with {@link #latchTimestamp()} and releases it at the end with {@link
+ * #releaseTimestamp()}, and every consumer in that cycle is served the same latched timestamp
+ * instead of reading the clock again. Outside of a cycle, such as during init or from another
+ * thread between cycles, timestamps are read straight from the clock.
+ *
+ * <p>Until a clock is bound, timestamps are 0.
  */
 public class MathSharedStore {
-  private static DoubleSupplier timestampSupplier = null;
+  /** Clock for {@link #readClockNanos()} while none is bound: System.nanoTime() from class load */
+  private static final LongSupplier SYSTEM_CLOCK =
+      new LongSupplier() {
+        private final long START_NANOS = System.nanoTime();
+
+        @Override
+        public long getAsLong() {
+          return System.nanoTime() - START_NANOS;
+        }
+      };
+
+  // The bound clock, or null if none is
+  private static volatile LongSupplier clock;
+
+  private static volatile long latchedNanos;
+  private static volatile boolean latched;
+  // Number of cycles in progress, only touched by the loop thread. A robot cycle that runs the
+  // scheduler nests the scheduler's cycle inside its own, and both share the outer timestamp
+  private static int latchDepth;
+
+  /**
+   * Binds the clock that timestamps are read from. Passing null unbinds it, and timestamps are 0
+   * again. Bind a {@link SimulatedClock} to control time manually.
+   *
+   * @param nanosecondClock A monotonic clock returning nanoseconds
+   */
+  public static void bindClock(LongSupplier nanosecondClock) {
+    clock = nanosecondClock;
+    if (latched) {
+      // Re-latch from the new clock, so the rest of the cycle does not see a time from the old one
+      latchedNanos = boundClockNanos();
+    }
+  }
 
   /**
    * Binds the time supplier to the internal timstamp supplier
-   * @param timeSupplier The time supplier object from the internal timer
+   * @param timeSupplier The time supplier object from the internal timer, in seconds
    */
   public static void bindTimestampSupplier(DoubleSupplier timeSupplier) {
-    timestampSupplier = timeSupplier;
+    bindClock(timeSupplier != null ? () -> (long) (timeSupplier.getAsDouble() * 1e9) : null);
   }
 
   /**
-   * @return The internal controller's timstamp in seconds
+   * Starts a cycle: reads the clock once and serves that value from {@link #getTimestampNanos()}
+   * and {@link #getTimestampSec()} until the matching {@link #releaseTimestamp()}. Called by the
+   * scheduler at the start of every cycle. A latch inside a cycle that is already in progress
+   * keeps the timestamp of the outer cycle.
    */
-  public static double getTimestampSec() {
-    if (timestampSupplier != null) {
-      return timestampSupplier.getAsDouble();
-    } else {
-      return 0.0;
+  public static void latchTimestamp() {
+    if (latchDepth++ == 0) {
+      latchedNanos = boundClockNanos();
+      latched = true;
     }
   }
+
+  /**
+   * Ends the cycle started by the matching {@link #latchTimestamp()}. Once the outermost cycle has
+   * ended, timestamps are read from the clock again.
+   */
+  public static void releaseTimestamp() {
+    if (latchDepth > 0 && --latchDepth == 0) {
+      latched = false;
+    }
+  }
+
+  /**
+   * @return The current value of the clock in nanoseconds, bypassing the latched timestamp. While
+   *     no clock is bound this reads the monotonic system clock, so loop deadlines keep real time
+   */
+  public static long readClockNanos() {
+    LongSupplier bound = clock;
+    return bound != null ? bound.getAsLong() : SYSTEM_CLOCK.getAsLong();
+  }
+
+  /**
+   * @return The internal controller's timestamp in nanoseconds, latched for the cycle in progress
+   */
+  public static long getTimestampNanos() {
+    return latched ? latchedNanos : boundClockNanos();
+  }
+
+  /**
+   * @return The internal controller's timstamp in seconds, latched for the cycle in progress
+   */
+  public static double getTimestampSec() {
+    return getTimestampNanos() / 1e9;
+  }
+
+  private static long boundClockNanos() {
+    LongSupplier bound = clock;
+    return bound != null ? bound.getAsLong() : 0;
+  }
 }
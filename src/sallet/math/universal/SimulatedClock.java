@@ -0,0 +1,65 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.math.universal;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A manually advanced clock. Bind it with {@link MathSharedStore#bindClock(LongSupplier)} so that
+ * time-based logic can be stepped deterministically, and as fast as the CPU allows, in tests and
+ * simulation.
+ */
+public final class SimulatedClock implements LongSupplier {
+  private volatile long nanos;
+
+  /** Creates a simulated clock starting at zero. */
+  public SimulatedClock() {}
+
+  /**
+   * Creates a simulated clock starting at the given time.
+   *
+   * @param startNanos The starting time in nanoseconds
+   */
+  public SimulatedClock(long startNanos) {
+    nanos = startNanos;
+  }
+
+  /**
+   * Moves the clock forward.
+   *
+   * @param deltaNanos How far to advance, in nanoseconds
+   */
+  public void advanceNanos(long deltaNanos) {
+    if (deltaNanos < 0) {
+      throw new IllegalArgumentException("A monotonic clock cannot move backwards");
+    }
+    nanos += deltaNanos;
+  }
+
+  /**
+   * Moves the clock forward.
+   *
+   * @param deltaSeconds How far to advance, in seconds
+   */
+  public void advanceSeconds(double deltaSeconds) {
+    advanceNanos(Math.round(deltaSeconds * 1e9));
+  }
+
+  /**
+   * Sets the clock to an absolute time no earlier than its current time.
+   *
+   * @param timeNanos The new time in nanoseconds
+   */
+  public void setNanos(long timeNanos) {
+    advanceNanos(timeNanos - nanos);
+  }
+
+  /**
+   * @return The current time of this clock in nanoseconds
+   */
+  @Override
+  public long getAsLong() {
+    return nanos;
+  }
+}
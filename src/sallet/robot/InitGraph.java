@@ -0,0 +1,409 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.robot;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A set of init tasks with dependencies between them, such as constructing subsystems, loading
+ * calibration files, warming up vision and precomputing autonomous paths. {@link #run()} starts
+ * every task as soon as the tasks it depends on have finished, running independent tasks at the
+ * same time on a pool of threads, and returns once all of them are done.
+ *
+ * <p>A task can only depend on tasks added before it, so the graph can never have a cycle and the
+ * order tasks were added in is always a valid order to run them in. Tasks that must run on the
+ * thread calling {@link #run()}, for example because they use hardware that is not thread-safe, can
+ * be added with {@link #addOnCallerThread}; the calling thread runs them as they become ready
+ * between handing tasks to the pool. Constructing subsystems, setting default commands and binding
+ * events all touch state of the {@link sallet.command.CommandScheduler} and event loops that is not
+ * thread-safe, so they must be done from such tasks, or after the run. Pool tasks should only do
+ * self-contained work such as reading files or computing paths, handing the result to a caller
+ * thread task that depends on them.
+ *
+ * <p>After a run, every task reports when it started and how long it took, and {@link
+ * #getCriticalPath()} gives the chain of dependent tasks that bounded the total init time, which is
+ * where speeding up init has to start.
+ */
+public final class InitGraph {
+  /** The work of an init task */
+  @FunctionalInterface
+  public interface Action {
+    /**
+     * Runs the task.
+     *
+     * @throws Exception If the task fails, which fails the whole run
+     */
+    void run() throws Exception;
+  }
+
+  /** An init task, returned by {@link #add} to be passed as a dependency of later tasks */
+  public static final class Task {
+    private final InitGraph GRAPH;
+    private final String NAME;
+    private final Action ACTION;
+    private final Task[] DEPENDENCIES;
+    private final boolean ON_CALLER_THREAD;
+    private final int INDEX;
+
+    // Tasks that depend on this one
+    private final List<Task> DEPENDENTS = new ArrayList<>();
+    // Dependencies that have not finished yet, only touched by the calling thread
+    private int waitingOn;
+
+    private long startNanos = -1;
+    private long durationNanos = -1;
+    private String threadName;
+    private Throwable failure;
+
+    private Task(
+        InitGraph graph,
+        String name,
+        Action action,
+        Task[] dependencies,
+        boolean onCallerThread,
+        int index) {
+      GRAPH = graph;
+      NAME = name;
+      ACTION = action;
+      DEPENDENCIES = dependencies;
+      ON_CALLER_THREAD = onCallerThread;
+      INDEX = index;
+    }
+
+    /**
+     * @return The name of the task
+     */
+    public String getName() {
+      return NAME;
+    }
+
+    /**
+     * @return When the task started, in nanoseconds after the start of the run, or -1 if it has not
+     *     run
+     */
+    public long getStartNanos() {
+      return startNanos;
+    }
+
+    /**
+     * @return How long the task took in nanoseconds, or -1 if it has not run
+     */
+    public long getDurationNanos() {
+      return durationNanos;
+    }
+
+    /**
+     * @return The name of the thread the task ran on, or null if it has not run
+     */
+    public String getThreadName() {
+      return threadName;
+    }
+
+    /** Runs the action and records its timing, called on whichever thread runs the task. */
+    private void execute(long runStartNanos) {
+      long start = System.nanoTime();
+      startNanos = start - runStartNanos;
+      threadName = Thread.currentThread().getName();
+      try {
+        ACTION.run();
+      } catch (Throwable t) {
+        failure = t;
+      } finally {
+        durationNanos = System.nanoTime() - start;
+      }
+    }
+  }
+
+  private final List<Task> TASKS = new ArrayList<>();
+  private boolean ran;
+  private long wallNanos = -1;
+
+  /**
+   * Adds a task that runs on the pool once its dependencies have finished. The task must not
+   * construct subsystems or otherwise touch the command scheduler, use {@link #addOnCallerThread}
+   * for that.
+   *
+   * @param name The name of the task, used in the report
+   * @param action The work of the task
+   * @param dependencies Tasks of this graph that must finish first
+   * @return The task
+   */
+  public Task add(String name, Action action, Task... dependencies) {
+    return add(name, action, dependencies, false);
+  }
+
+  /**
+   * Adds a task that runs on the thread calling {@link #run()} once its dependencies have finished.
+   * Subsystems must be constructed from tasks added this way.
+   *
+   * @param name The name of the task, used in the report
+   * @param action The work of the task
+   * @param dependencies Tasks of this graph that must finish first
+   * @return The task
+   */
+  public Task addOnCallerThread(String name, Action action, Task... dependencies) {
+    return add(name, action, dependencies, true);
+  }
+
+  private Task add(String name, Action action, Task[] dependencies, boolean onCallerThread) {
+    requireNonNullParam(name, "name", "add");
+    requireNonNullParam(action, "action", "add");
+    requireNonNullParam(dependencies, "dependencies", "add");
+    if (ran) {
+      throw new IllegalStateException("Tasks cannot be added to an init graph that has run");
+    }
+    for (Task dependency : dependencies) {
+      requireNonNullParam(dependency, "dependency", "add");
+      if (dependency.GRAPH != this) {
+        throw new IllegalArgumentException(
+            "Task " + name + " depends on " + dependency.NAME + " of another init graph");
+      }
+    }
+
+    Task task = new Task(this, name, action, dependencies.clone(), onCallerThread, TASKS.size());
+    for (Task dependency : task.DEPENDENCIES) {
+      if (!dependency.DEPENDENTS.contains(task)) {
+        dependency.DEPENDENTS.add(task);
+        task.waitingOn++;
+      }
+    }
+    TASKS.add(task);
+    return task;
+  }
+
+  /**
+   * @return The tasks in the order they were added
+   */
+  public List<Task> getTasks() {
+    return Collections.unmodifiableList(TASKS);
+  }
+
+  /**
+   * Runs every task on a pool with one thread per processor. See {@link #run(int)}.
+   */
+  public void run() {
+    run(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Runs every task, each as soon as its dependencies have finished, and returns once all are done.
+   * If a task throws, no further tasks are started, the tasks already running are waited for, and
+   * the failure is rethrown naming every task that failed. A graph can only be run once.
+   *
+   * @param threads The number of pool threads, not counting the calling thread
+   */
+  public void run(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Init needs at least one thread, got " + threads);
+    }
+    if (ran) {
+      throw new IllegalStateException("An init graph can only be run once");
+    }
+    ran = true;
+    if (TASKS.isEmpty()) {
+      wallNanos = 0;
+      return;
+    }
+
+    // Every event is a task that finished, scheduling decisions are all made on this thread
+    LinkedBlockingQueue<Task> finished = new LinkedBlockingQueue<>();
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService pool =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              Thread thread = new Thread(runnable, "sallet-init-" + threadCount.getAndIncrement());
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    long runStart = System.nanoTime();
+    List<Task> callerReady = new ArrayList<>();
+    int running = 0;
+    int remaining = TASKS.size();
+    boolean failed = false;
+    try {
+      for (Task task : TASKS) {
+        if (task.waitingOn == 0) {
+          running += start(task, pool, finished, callerReady, runStart);
+        }
+      }
+
+      while (remaining > 0 && (running > 0 || !callerReady.isEmpty())) {
+        Task done;
+        if (!callerReady.isEmpty()) {
+          done = callerReady.remove(0);
+          done.execute(runStart);
+        } else {
+          try {
+            done = finished.take();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for init tasks", e);
+          }
+          running--;
+        }
+        remaining--;
+
+        if (done.failure != null) {
+          failed = true;
+        }
+        if (failed) {
+          // Let the running tasks finish, but start nothing new
+          callerReady.clear();
+          continue;
+        }
+        for (Task dependent : done.DEPENDENTS) {
+          if (--dependent.waitingOn == 0) {
+            running += start(dependent, pool, finished, callerReady, runStart);
+          }
+        }
+      }
+    } finally {
+      pool.shutdown();
+      wallNanos = System.nanoTime() - runStart;
+    }
+
+    RuntimeException failure = null;
+    for (Task task : TASKS) {
+      if (task.failure != null) {
+        RuntimeException reported =
+            new RuntimeException("Init task " + task.NAME + " failed", task.failure);
+        if (failure == null) {
+          failure = reported;
+        } else {
+          failure.addSuppressed(reported);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Starts a task whose dependencies have finished.
+   *
+   * @return 1 if the task was handed to the pool, 0 if it was queued for the calling thread
+   */
+  private static int start(
+      Task task,
+      ExecutorService pool,
+      LinkedBlockingQueue<Task> finished,
+      List<Task> callerReady,
+      long runStart) {
+    if (task.ON_CALLER_THREAD) {
+      callerReady.add(task);
+      return 0;
+    }
+    pool.execute(
+        () -> {
+          task.execute(runStart);
+          finished.add(task);
+        });
+    return 1;
+  }
+
+  /**
+   * @return How long the last run took from start to finish in nanoseconds, or -1 before it ran
+   */
+  public long getWallNanos() {
+    return wallNanos;
+  }
+
+  /**
+   * @return The sum of the durations of every task that ran, which is how long a run on a single
+   *     thread would have taken
+   */
+  public long getTotalTaskNanos() {
+    long total = 0;
+    for (Task task : TASKS) {
+      total += Math.max(task.durationNanos, 0);
+    }
+    return total;
+  }
+
+  /**
+   * Finds the chain of dependent tasks with the longest total duration, which bounds how short the
+   * run could have been with any number of threads.
+   *
+   * @return The tasks of the critical path, first to last, or an empty list before the run
+   */
+  public List<Task> getCriticalPath() {
+    int count = TASKS.size();
+    // Longest path ending at each task and the task before it on that path. The tasks were added
+    // in a topological order, so every dependency is settled before its dependents
+    long[] lengths = new long[count];
+    int[] previous = new int[count];
+    int last = -1;
+    for (int i = 0; i < count; i++) {
+      Task task = TASKS.get(i);
+      previous[i] = -1;
+      long longest = 0;
+      for (Task dependency : task.DEPENDENCIES) {
+        if (lengths[dependency.INDEX] > longest) {
+          longest = lengths[dependency.INDEX];
+          previous[i] = dependency.INDEX;
+        }
+      }
+      lengths[i] = longest + Math.max(task.durationNanos, 0);
+      if (last < 0 || lengths[i] > lengths[last]) {
+        last = i;
+      }
+    }
+
+    List<Task> path = new ArrayList<>();
+    if (last < 0 || lengths[last] == 0) {
+      return path;
+    }
+    for (int i = last; i >= 0; i = previous[i]) {
+      path.add(TASKS.get(i));
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  /**
+   * @return A table of every task's start, duration and thread, followed by the wall time, the
+   *     total task time and the critical path
+   */
+  public String formatReport() {
+    StringBuilder report = new StringBuilder();
+    report.append(String.format("%-32s %10s %10s  %s%n", "task", "start ms", "took ms", "thread"));
+    for (Task task : TASKS) {
+      if (task.durationNanos < 0) {
+        report.append(String.format("%-32s %10s %10s  %s%n", task.NAME, "-", "-", "not run"));
+      } else {
+        report.append(
+            String.format(
+                "%-32s %10.1f %10.1f  %s%n",
+                task.NAME, task.startNanos / 1e6, task.durationNanos / 1e6, task.threadName));
+      }
+    }
+    report.append(
+        String.format(
+            "wall %.1f ms, tasks %.1f ms in total%n", wallNanos / 1e6, getTotalTaskNanos() / 1e6));
+
+    List<Task> path = getCriticalPath();
+    long pathNanos = 0;
+    StringBuilder names = new StringBuilder();
+    for (Task task : path) {
+      pathNanos += task.durationNanos;
+      if (names.length() > 0) {
+        names.append(" -> ");
+      }
+      names.append(task.NAME);
+    }
+    report.append(String.format("critical path %.1f ms: %s%n", pathNanos / 1e6, names));
+    return report.toString();
+  }
+}
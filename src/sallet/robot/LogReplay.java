@@ -0,0 +1,294 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.robot;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import sallet.math.universal.MathSharedStore;
+import sallet.math.universal.SimulatedClock;
+import sallet.telemetry.TelemetryLog;
+import sallet.telemetry.TelemetryLogReader;
+
+/**
+ * Replays the signals recorded in a {@link TelemetryLog} through a {@link RobotBase}, as fast as
+ * the CPU allows.
+ *
+ * <p>The log is split into frames, one per recorded {@link TelemetryLog.RecordType#CYCLE cycle},
+ * each holding the cycle's timestamp and the value of every signal sampled at the end of it. A log
+ * without cycle records, whose signals were sampled by calling {@link TelemetryLog#sample()}
+ * directly, gets one frame per sampling instead. The signal handles returned by this class return
+ * the value of the frame being replayed, so a robot built on them - for example with {@link
+ * sallet.event.BooleanEvent}s over {@link #getBooleanSignal(String)} instead of the hardware -
+ * sees exactly the inputs it saw during the recording. Running the replay binds a
+ * {@link SimulatedClock} to the {@link MathSharedStore} and steps it to each frame's timestamp, so
+ * timing-based logic such as debouncing and wait commands also behaves as recorded, without ever
+ * waiting for real time to pass.
+ *
+ * <p>A signal that is missing from some frames, such as one registered partway through the
+ * recording, holds its last value (or zero before its first sample).
+ */
+public final class LogReplay {
+  private final long[] FRAME_NANOS;
+  private final Map<String, Integer> SIGNAL_INDICES;
+  private final TelemetryLog.SourceKind[] SIGNAL_KINDS;
+  // Raw values of every signal, indexed by signal and then frame
+  private final long[][] VALUES;
+
+  private int frame;
+
+  private LogReplay(
+      long[] frameNanos,
+      Map<String, Integer> signalIndices,
+      TelemetryLog.SourceKind[] signalKinds,
+      long[][] values) {
+    FRAME_NANOS = frameNanos;
+    SIGNAL_INDICES = signalIndices;
+    SIGNAL_KINDS = signalKinds;
+    VALUES = values;
+  }
+
+  /**
+   * Reads the cycles and signal samples of a telemetry log into memory.
+   *
+   * @param file The log file
+   * @return The replay
+   * @throws IOException If the log cannot be read
+   */
+  public static LogReplay load(Path file) throws IOException {
+    requireNonNullParam(file, "file", "load");
+
+    // Signal index by log ID, and by name. A name logged twice refers to the latest signal
+    Map<Integer, Integer> indexById = new HashMap<>();
+    Map<String, Integer> indexByName = new HashMap<>();
+    List<TelemetryLog.SourceKind> kinds = new ArrayList<>();
+    // Samples as parallel growable arrays of signal index, timestamp, value, and the index of the
+    // last cycle recorded before the sample, or -1
+    long[][] samples = {new long[1024], new long[1024], new long[1024], new long[1024]};
+    int[] sampleCount = {0};
+    // Timestamps of the recorded cycles
+    long[][] cycles = {new long[1024]};
+    int[] cycleCount = {0};
+
+    TelemetryLogReader.read(
+        file,
+        new TelemetryLogReader.Visitor() {
+          @Override
+          public void onDefinition(int id, TelemetryLog.SourceKind kind, String name) {
+            if (kind == TelemetryLog.SourceKind.BOOLEAN_SIGNAL
+                || kind == TelemetryLog.SourceKind.LONG_SIGNAL
+                || kind == TelemetryLog.SourceKind.DOUBLE_SIGNAL) {
+              indexById.put(id, kinds.size());
+              indexByName.put(name, kinds.size());
+              kinds.add(kind);
+            }
+          }
+
+          @Override
+          public void onRecord(
+              TelemetryLog.RecordType type, int aux, int id, long timestampNanos, long value) {
+            if (type == TelemetryLog.RecordType.CYCLE) {
+              int count = cycleCount[0];
+              if (count == cycles[0].length) {
+                cycles[0] = Arrays.copyOf(cycles[0], count * 2);
+              }
+              cycles[0][count] = timestampNanos;
+              cycleCount[0] = count + 1;
+              return;
+            }
+            Integer index = indexById.get(id);
+            if (index == null) {
+              return;
+            }
+            int count = sampleCount[0];
+            if (count == samples[0].length) {
+              for (int i = 0; i < samples.length; i++) {
+                samples[i] = Arrays.copyOf(samples[i], count * 2);
+              }
+            }
+            samples[0][count] = index;
+            samples[1][count] = timestampNanos;
+            samples[2][count] = value;
+            samples[3][count] = cycleCount[0] - 1;
+            sampleCount[0] = count + 1;
+          }
+        });
+
+    int signalCount = kinds.size();
+    int count = sampleCount[0];
+    long[] frameNanos;
+    int frameCount;
+    int[] frameOfSample = new int[count];
+    if (cycleCount[0] > 0) {
+      // Signals are sampled at the end of a cycle, after its cycle record, so each sample belongs
+      // to the last cycle recorded before it. Samples from before the first cycle seed the first
+      // frame
+      frameNanos = cycles[0];
+      frameCount = cycleCount[0];
+      for (int i = 0; i < count; i++) {
+        frameOfSample[i] = (int) Math.max(samples[3][i], 0);
+      }
+    } else {
+      // Signals sampled together share the latched timestamp. A new frame starts when the timestamp
+      // changes or a signal repeats within a frame
+      frameNanos = new long[Math.max(count, 1)];
+      frameCount = 0;
+      boolean[] inFrame = new boolean[signalCount];
+      for (int i = 0; i < count; i++) {
+        int index = (int) samples[0][i];
+        if (frameCount == 0 || samples[1][i] != frameNanos[frameCount - 1] || inFrame[index]) {
+          frameNanos[frameCount++] = samples[1][i];
+          Arrays.fill(inFrame, false);
+        }
+        inFrame[index] = true;
+        frameOfSample[i] = frameCount - 1;
+      }
+    }
+
+    long[][] values = new long[signalCount][frameCount];
+    long[] held = new long[signalCount];
+    int sample = 0;
+    for (int f = 0; f < frameCount; f++) {
+      while (sample < count && frameOfSample[sample] == f) {
+        held[(int) samples[0][sample]] = samples[2][sample];
+        sample++;
+      }
+      for (int s = 0; s < signalCount; s++) {
+        values[s][f] = held[s];
+      }
+    }
+
+    return new LogReplay(
+        Arrays.copyOf(frameNanos, frameCount),
+        indexByName,
+        kinds.toArray(new TelemetryLog.SourceKind[0]),
+        values);
+  }
+
+  /**
+   * @return The number of recorded cycles
+   */
+  public int getFrameCount() {
+    return FRAME_NANOS.length;
+  }
+
+  /**
+   * @return The index of the frame being replayed
+   */
+  public int getFrame() {
+    return frame;
+  }
+
+  /**
+   * @param frame The index of a frame
+   * @return The recorded timestamp of the frame, in nanoseconds
+   */
+  public long getFrameNanos(int frame) {
+    return FRAME_NANOS[frame];
+  }
+
+  /**
+   * @param name The name the signal was recorded with
+   * @return A signal returning the recorded value in the frame being replayed
+   */
+  public BooleanSupplier getBooleanSignal(String name) {
+    long[] values = valuesOf(name, TelemetryLog.SourceKind.BOOLEAN_SIGNAL, "getBooleanSignal");
+    return () -> values[frame] != 0;
+  }
+
+  /**
+   * @param name The name the signal was recorded with
+   * @return A signal returning the recorded value in the frame being replayed
+   */
+  public LongSupplier getLongSignal(String name) {
+    long[] values = valuesOf(name, TelemetryLog.SourceKind.LONG_SIGNAL, "getLongSignal");
+    return () -> values[frame];
+  }
+
+  /**
+   * @param name The name the signal was recorded with
+   * @return A signal returning the recorded value in the frame being replayed
+   */
+  public DoubleSupplier getDoubleSignal(String name) {
+    long[] values = valuesOf(name, TelemetryLog.SourceKind.DOUBLE_SIGNAL, "getDoubleSignal");
+    return () -> Double.longBitsToDouble(values[frame]);
+  }
+
+  /**
+   * Replays the whole log through a robot: {@link RobotBase#generalInit()} and the init method of
+   * the mode at the first frame's timestamp, then one cycle of the scheduler and periodic methods
+   * per frame. The {@link MathSharedStore} runs on a simulated clock for the duration of the
+   * replay and is returned to the system clock afterwards.
+   *
+   * <p>Timing state created before the replay, such as the debouncers of events the robot built in
+   * its constructor, starts out on the system clock; use {@link #run(Supplier, RobotMode)} to
+   * build the robot on the replay clock instead.
+   *
+   * @param robot The robot to drive
+   * @param mode The mode to run the robot in
+   */
+  public void run(RobotBase robot, RobotMode mode) {
+    requireNonNullParam(robot, "robot", "run");
+    run(() -> robot, mode);
+  }
+
+  /**
+   * Replays the whole log through a robot built at the first frame's timestamp, so everything it
+   * creates runs on the replay clock from the start. See {@link #run(RobotBase, RobotMode)}.
+   *
+   * @param <T> The type of the robot
+   * @param robotFactory Builds the robot, reading the replay's signal handles instead of hardware
+   * @param mode The mode to run the robot in
+   * @return The robot, after the replay
+   */
+  public <T extends RobotBase> T run(Supplier<T> robotFactory, RobotMode mode) {
+    requireNonNullParam(robotFactory, "robotFactory", "run");
+    requireNonNullParam(mode, "mode", "run");
+
+    SimulatedClock clock = new SimulatedClock(FRAME_NANOS.length > 0 ? FRAME_NANOS[0] : 0);
+    MathSharedStore.bindClock(clock);
+    try {
+      frame = 0;
+      T robot = robotFactory.get();
+      if (FRAME_NANOS.length == 0) {
+        return robot;
+      }
+      robot.runInit(mode);
+
+      for (int f = 0; f < FRAME_NANOS.length; f++) {
+        frame = f;
+        // Never backwards, in case the recording clock was swapped mid-log
+        clock.setNanos(Math.max(FRAME_NANOS[f], clock.getAsLong()));
+        robot.runCycle(mode);
+      }
+      return robot;
+    } finally {
+      MathSharedStore.bindClock(null);
+    }
+  }
+
+  private long[] valuesOf(String name, TelemetryLog.SourceKind kind, String methodName) {
+    requireNonNullParam(name, "name", methodName);
+    Integer index = SIGNAL_INDICES.get(name);
+    if (index == null) {
+      throw new IllegalArgumentException("No signal named " + name + " was recorded");
+    }
+    if (SIGNAL_KINDS[index] != kind) {
+      throw new IllegalArgumentException(
+          "Signal " + name + " was recorded as a " + SIGNAL_KINDS[index] + ", not a " + kind);
+    }
+    return VALUES[index];
+  }
+}
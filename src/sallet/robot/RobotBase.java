@@ -1,7 +1,10 @@
 // Copyright (c) barbute
 // Open Source Software
 
-package sallet.robot; 
+package sallet.robot;
+
+import sallet.command.CommandScheduler;
+import sallet.math.universal.MathSharedStore;
 
 // -------------------------------------------------------------------------------------------------
 
@@ -12,6 +15,28 @@ package sallet.robot;
  * and reduce code rewrite.
  */
 public abstract class RobotBase {
+  private InitGraph lastInit;
+
+  /**
+   * Declares init tasks, such as constructing subsystems, loading calibration files or precomputing
+   * paths. The tasks run in parallel as their dependencies allow and have all finished before
+   * {@link #generalInit()} is called. Subsystems, default commands and bindings are not thread-safe
+   * and must be set up from tasks added with {@link InitGraph#addOnCallerThread}, which run on the
+   * thread that runs the robot.
+   *
+   * @param init The graph to add tasks to
+   * @param mode The mode being started
+   */
+  protected void declareInit(InitGraph init, RobotMode mode) {}
+
+  /**
+   * @return The init graph of the last init, with the duration of every task and the critical
+   *     path, or null before the first init
+   */
+  public final InitGraph getLastInit() {
+    return lastInit;
+  }
+
   /** Ran once when ANY OpMode is initialized */
   public void generalInit() {}
 
@@ -29,4 +54,44 @@ public abstract class RobotBase {
 
   /** Ran when an Autonomous OpMode periodic call is made */
   public void autonomousPeriodic() {}
-}
\ No newline at end of file
+
+  /**
+   * Runs the tasks declared by {@link #declareInit(InitGraph, RobotMode)}, then {@link
+   * #generalInit()} and then the init method of the mode.
+   *
+   * @param mode The mode being started
+   */
+  final void runInit(RobotMode mode) {
+    InitGraph init = new InitGraph();
+    declareInit(init, mode);
+    lastInit = init;
+    init.run();
+    generalInit();
+    switch (mode) {
+      case TELEOP -> teleopInit();
+      case AUTONOMOUS -> autonomousInit();
+    }
+  }
+
+  /**
+   * Runs one cycle of the mode: the {@link CommandScheduler}, so cached signals are refreshed
+   * first, then {@link #generalPeriodic()}, then the periodic method of the mode. The timestamp is
+   * latched for the whole cycle.
+   *
+   * @param mode The mode being run
+   */
+  final void runCycle(RobotMode mode) {
+    // The periodic methods are part of the cycle, so they see the scheduler's timestamp too
+    MathSharedStore.latchTimestamp();
+    try {
+      CommandScheduler.getInstance().run();
+      generalPeriodic();
+      switch (mode) {
+        case TELEOP -> teleopPeriodic();
+        case AUTONOMOUS -> autonomousPeriodic();
+      }
+    } finally {
+      MathSharedStore.releaseTimestamp();
+    }
+  }
+}
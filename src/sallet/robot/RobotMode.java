@@ -0,0 +1,12 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.robot;
+
+/** The kind of OpMode a {@link RobotBase} is being run in */
+public enum RobotMode {
+  /** A Teleoperated OpMode */
+  TELEOP,
+  /** An Autonomous OpMode */
+  AUTONOMOUS
+}
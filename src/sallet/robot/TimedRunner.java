@@ -0,0 +1,265 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.robot;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import sallet.command.CommandScheduler;
+import sallet.math.universal.MathSharedStore;
+import sallet.math.universal.SimulatedClock;
+
+/**
+ * Runs a {@link RobotBase} at a fixed period: {@link RobotBase#generalInit()} and the init method
+ * of the mode once, then every period the {@link CommandScheduler}, {@link
+ * RobotBase#generalPeriodic()} and the periodic method of the mode.
+ *
+ * <p>Cycles start on absolute deadlines - the nth cycle is due at the start time plus n periods -
+ * so time spent in the cycles never accumulates into drift. The runner parks until shortly before
+ * each deadline and spins the rest of the way, which keeps wakeups accurate to a few microseconds
+ * without burning a core. A cycle that takes longer than the period is counted as an overrun, and
+ * once the runner falls behind the {@link OverrunPolicy} decides whether the missed cycles are run
+ * back to back or skipped.
+ *
+ * <p>Time is read from the {@link MathSharedStore} clock. With {@link
+ * #useSimulatedClock(SimulatedClock)} the runner advances a simulated clock to each deadline
+ * instead of waiting, so it can be run headlessly and as fast as the CPU allows.
+ */
+public final class TimedRunner {
+  /** What to do when the runner falls behind the deadline of the next cycle */
+  public enum OverrunPolicy {
+    /** Run the missed cycles back to back until the runner is back on schedule */
+    CATCH_UP,
+    /** Drop the missed cycles and continue at the next deadline that is still ahead */
+    SKIP
+  }
+
+  /** Remaining wait below which the runner spins instead of parking */
+  private static final long SPIN_THRESHOLD_NANOS = 200_000L;
+
+  private final RobotBase ROBOT;
+  private final RobotMode MODE;
+  private final long PERIOD_NANOS;
+
+  private OverrunPolicy overrunPolicy = OverrunPolicy.SKIP;
+  private SimulatedClock simulatedClock;
+
+  private boolean initialized;
+  private long deadlineNanos;
+
+  private long cycleCount;
+  private long overrunCount;
+  private long skippedCount;
+  // Lateness of each cycle start past its deadline
+  private long lastJitterNanos;
+  private long maxJitterNanos;
+  private double jitterSum;
+  private double jitterSquareSum;
+
+  /**
+   * Creates a new runner.
+   *
+   * @param robot The robot to run
+   * @param mode The mode to run the robot in
+   * @param periodSeconds The loop period in seconds
+   */
+  public TimedRunner(RobotBase robot, RobotMode mode, double periodSeconds) {
+    ROBOT = requireNonNullParam(robot, "robot", "TimedRunner");
+    MODE = requireNonNullParam(mode, "mode", "TimedRunner");
+    if (!(periodSeconds > 0.0)) {
+      throw new IllegalArgumentException("Loop period must be positive, got " + periodSeconds);
+    }
+    PERIOD_NANOS = Math.round(periodSeconds * 1e9);
+  }
+
+  /**
+   * Sets what to do when the runner falls behind. Defaults to {@link OverrunPolicy#SKIP}.
+   *
+   * @param policy The overrun policy
+   */
+  public void setOverrunPolicy(OverrunPolicy policy) {
+    overrunPolicy = requireNonNullParam(policy, "policy", "setOverrunPolicy");
+  }
+
+  /**
+   * @return The overrun policy
+   */
+  public OverrunPolicy getOverrunPolicy() {
+    return overrunPolicy;
+  }
+
+  /**
+   * Binds a simulated clock to the {@link MathSharedStore} and waits for each deadline by advancing
+   * it there, rather than waiting for real time to pass. Anything that advances the clock during a
+   * cycle counts towards that cycle's duration.
+   *
+   * @param clock The simulated clock
+   */
+  public void useSimulatedClock(SimulatedClock clock) {
+    simulatedClock = requireNonNullParam(clock, "clock", "useSimulatedClock");
+    MathSharedStore.bindClock(clock);
+  }
+
+  /**
+   * @return The loop period in seconds
+   */
+  public double getPeriod() {
+    return PERIOD_NANOS / 1e9;
+  }
+
+  /**
+   * Runs the init methods of the robot and schedules the first cycle one period later. Called by
+   * {@link #step()} if it has not been called yet. Also sets the scheduler's watchdog budget to the
+   * loop period.
+   */
+  public void init() {
+    CommandScheduler.getInstance().setPeriod(getPeriod());
+    ROBOT.runInit(MODE);
+    deadlineNanos = MathSharedStore.readClockNanos() + PERIOD_NANOS;
+    initialized = true;
+  }
+
+  /**
+   * Waits for the next deadline and runs one cycle.
+   *
+   * @return False if the thread was interrupted while waiting, in which case no cycle was run and
+   *     the interrupt status is left set
+   */
+  public boolean step() {
+    if (!initialized) {
+      init();
+    }
+    if (!waitUntil(deadlineNanos)) {
+      return false;
+    }
+
+    long startNanos = MathSharedStore.readClockNanos();
+    long jitter = startNanos - deadlineNanos;
+    lastJitterNanos = jitter;
+    maxJitterNanos = Math.max(maxJitterNanos, jitter);
+    jitterSum += jitter;
+    jitterSquareSum += (double) jitter * jitter;
+    cycleCount++;
+
+    ROBOT.runCycle(MODE);
+
+    long next = deadlineNanos + PERIOD_NANOS;
+    long now = MathSharedStore.readClockNanos();
+    if (now - startNanos > PERIOD_NANOS) {
+      overrunCount++;
+    }
+    if (now > next) {
+      // Behind schedule, either from an overrun or from starting late
+      if (overrunPolicy == OverrunPolicy.SKIP) {
+        long missed = (now - next + PERIOD_NANOS - 1) / PERIOD_NANOS;
+        skippedCount += missed;
+        next += missed * PERIOD_NANOS;
+      }
+    }
+    deadlineNanos = next;
+    return true;
+  }
+
+  /**
+   * Runs cycles until the condition is false or the thread is interrupted, such as when an OpMode
+   * is stopped.
+   *
+   * @param keepRunning Checked before every cycle, for example {@code opModeIsActive}
+   */
+  public void run(BooleanSupplier keepRunning) {
+    requireNonNullParam(keepRunning, "keepRunning", "run");
+    while (keepRunning.getAsBoolean() && step()) {}
+  }
+
+  /**
+   * @return The number of cycles run since the last {@link #resetStatistics()}
+   */
+  public long getCycleCount() {
+    return cycleCount;
+  }
+
+  /**
+   * @return The number of cycles that took longer than the period
+   */
+  public long getOverrunCount() {
+    return overrunCount;
+  }
+
+  /**
+   * @return The number of cycles dropped by the {@link OverrunPolicy#SKIP} policy
+   */
+  public long getSkippedCount() {
+    return skippedCount;
+  }
+
+  /**
+   * @return How late the last cycle started after its deadline, in nanoseconds
+   */
+  public long getLastJitterNanos() {
+    return lastJitterNanos;
+  }
+
+  /**
+   * @return The latest any cycle started after its deadline, in nanoseconds
+   */
+  public long getMaxJitterNanos() {
+    return maxJitterNanos;
+  }
+
+  /**
+   * @return The mean lateness of cycle starts after their deadlines, in nanoseconds
+   */
+  public double getMeanJitterNanos() {
+    return cycleCount == 0 ? 0.0 : jitterSum / cycleCount;
+  }
+
+  /**
+   * @return The standard deviation of the lateness of cycle starts, in nanoseconds
+   */
+  public double getJitterStdDevNanos() {
+    if (cycleCount == 0) {
+      return 0.0;
+    }
+    double mean = jitterSum / cycleCount;
+    return Math.sqrt(Math.max(jitterSquareSum / cycleCount - mean * mean, 0.0));
+  }
+
+  /** Resets the cycle, overrun, skip and jitter statistics. */
+  public void resetStatistics() {
+    cycleCount = 0;
+    overrunCount = 0;
+    skippedCount = 0;
+    lastJitterNanos = 0;
+    maxJitterNanos = 0;
+    jitterSum = 0.0;
+    jitterSquareSum = 0.0;
+  }
+
+  /**
+   * Blocks until the clock reaches a deadline.
+   *
+   * @return False if the thread was interrupted first
+   */
+  private boolean waitUntil(long deadline) {
+    if (simulatedClock != null) {
+      simulatedClock.setNanos(Math.max(deadline, simulatedClock.getAsLong()));
+      return true;
+    }
+
+    long remaining;
+    while ((remaining = deadline - MathSharedStore.readClockNanos()) > 0) {
+      if (Thread.currentThread().isInterrupted()) {
+        return false;
+      }
+      if (remaining > SPIN_THRESHOLD_NANOS) {
+        LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD_NANOS);
+      } else {
+        Thread.onSpinWait();
+      }
+    }
+    return true;
+  }
+}
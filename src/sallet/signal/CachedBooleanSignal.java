@@ -0,0 +1,30 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.signal;
+
+import java.util.function.BooleanSupplier;
+
+/** A boolean hardware read that goes to its source at most once per {@link SignalCache} cycle. */
+public final class CachedBooleanSignal extends CachedSignal implements BooleanSupplier {
+  private final BooleanSupplier SOURCE;
+
+  private boolean value;
+
+  CachedBooleanSignal(SignalCache cache, SignalCache.BulkRead bulkRead, BooleanSupplier source) {
+    super(cache, bulkRead);
+    SOURCE = source;
+  }
+
+  /**
+   * @return The value of the source for the current cycle
+   */
+  @Override
+  public boolean getAsBoolean() {
+    if (isStale()) {
+      value = SOURCE.getAsBoolean();
+      markRead();
+    }
+    return value;
+  }
+}
@@ -0,0 +1,30 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.signal;
+
+import java.util.function.DoubleSupplier;
+
+/** A double hardware read that goes to its source at most once per {@link SignalCache} cycle. */
+public final class CachedDoubleSignal extends CachedSignal implements DoubleSupplier {
+  private final DoubleSupplier SOURCE;
+
+  private double value;
+
+  CachedDoubleSignal(SignalCache cache, SignalCache.BulkRead bulkRead, DoubleSupplier source) {
+    super(cache, bulkRead);
+    SOURCE = source;
+  }
+
+  /**
+   * @return The value of the source for the current cycle
+   */
+  @Override
+  public double getAsDouble() {
+    if (isStale()) {
+      value = SOURCE.getAsDouble();
+      markRead();
+    }
+    return value;
+  }
+}
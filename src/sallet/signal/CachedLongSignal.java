@@ -0,0 +1,30 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.signal;
+
+import java.util.function.LongSupplier;
+
+/** A long hardware read that goes to its source at most once per {@link SignalCache} cycle. */
+public final class CachedLongSignal extends CachedSignal implements LongSupplier {
+  private final LongSupplier SOURCE;
+
+  private long value;
+
+  CachedLongSignal(SignalCache cache, SignalCache.BulkRead bulkRead, LongSupplier source) {
+    super(cache, bulkRead);
+    SOURCE = source;
+  }
+
+  /**
+   * @return The value of the source for the current cycle
+   */
+  @Override
+  public long getAsLong() {
+    if (isStale()) {
+      value = SOURCE.getAsLong();
+      markRead();
+    }
+    return value;
+  }
+}
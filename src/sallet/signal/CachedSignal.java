@@ -0,0 +1,65 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.signal;
+
+/** The bookkeeping shared by the cached signal types. */
+abstract class CachedSignal {
+  private final SignalCache CACHE;
+  private final SignalCache.BulkRead BULK_READ;
+
+  // Generation of the cache the stored value was read in
+  private long generation = -1;
+  // Run of the bulk read the stored value was read after
+  private long bulkReadCount = -1;
+  private long readCount;
+
+  CachedSignal(SignalCache cache, SignalCache.BulkRead bulkRead) {
+    CACHE = cache;
+    BULK_READ = bulkRead;
+  }
+
+  /**
+   * Checks whether the stored value is from an earlier cycle or an earlier run of the bulk read,
+   * running the bulk read first if it has not run this cycle.
+   *
+   * @return Whether the source has to be read, after which {@link #markRead()} must be called
+   */
+  final boolean isStale() {
+    if (BULK_READ == null) {
+      return generation != CACHE.generation;
+    }
+    BULK_READ.ensureRead();
+    // A bulk read forced to run again makes every signal of the group stale, not only the one
+    // that forced it, so the group never mixes values from two reads
+    return generation != CACHE.generation || bulkReadCount != BULK_READ.getReadCount();
+  }
+
+  /** Marks the stored value as read this cycle. Skipped by a read that throws, so it is retried. */
+  final void markRead() {
+    generation = CACHE.generation;
+    if (BULK_READ != null) {
+      bulkReadCount = BULK_READ.getReadCount();
+    }
+    readCount++;
+  }
+
+  /**
+   * Forces the next read to go to the source, such as after writing to the device. If the signal
+   * shares a bulk read, the bulk read runs again as well, and every signal sharing it reads its
+   * source again.
+   */
+  public final void invalidate() {
+    generation = -1;
+    if (BULK_READ != null) {
+      BULK_READ.invalidate();
+    }
+  }
+
+  /**
+   * @return How many times the source has been read
+   */
+  public final long getReadCount() {
+    return readCount;
+  }
+}
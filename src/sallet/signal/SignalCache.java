@@ -0,0 +1,179 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.signal;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * A per-cycle cache for hardware reads. Signals created from a cache read their source at most once
+ * per cycle: the first read after the cache is {@link #invalidate() invalidated} goes to the
+ * source, and every other read in the same cycle returns the stored value. Signals can also share
+ * a {@link BulkRead}, so a device that can return all of its values in one bus transaction is read
+ * once for all of them.
+ *
+ * <p>Invalidation bumps a single generation counter that every signal compares against, so it is
+ * O(1) no matter how many signals exist and nothing is read for signals that go unused in a cycle.
+ * The {@link #getDefault() default cache} is invalidated by the {@link
+ * sallet.command.CommandScheduler} at the start of every cycle; caches that are not driven by the
+ * scheduler must call {@link #invalidate()} themselves.
+ *
+ * <p>Like the rest of the library, caches are meant to be used from the loop thread. Signals read
+ * from the periodic method of a {@link sallet.command.Subsystem#setThreadSafe(boolean) thread-safe}
+ * subsystem must only be read by that subsystem.
+ */
+public final class SignalCache {
+  /**
+   * A batched read shared by several signals. The read runs once per cycle, before the first
+   * signal of the group fetches its value, and is expected to leave the latest values somewhere the
+   * signals' sources can return them from.
+   */
+  public static final class BulkRead {
+    private final SignalCache CACHE;
+    private final Runnable READ;
+
+    private long generation = -1;
+    private long readCount;
+
+    private BulkRead(SignalCache cache, Runnable read) {
+      CACHE = cache;
+      READ = read;
+    }
+
+    /** Runs the read if it has not run yet this cycle. */
+    public void ensureRead() {
+      long current = CACHE.generation;
+      if (generation != current) {
+        readCount++;
+        READ.run();
+        // Only marked once the read succeeded, a failed read is retried by the next signal
+        generation = current;
+      }
+    }
+
+    /**
+     * Forces the read to run again before the next read of any of its signals, which then all read
+     * their sources again.
+     */
+    public void invalidate() {
+      generation = -1;
+    }
+
+    /**
+     * @return How many times the read has run
+     */
+    public long getReadCount() {
+      return readCount;
+    }
+  }
+
+  private static SignalCache defaultCache;
+
+  /**
+   * @return The cache invalidated by the {@link sallet.command.CommandScheduler} every cycle
+   */
+  public static synchronized SignalCache getDefault() {
+    if (defaultCache == null) {
+      defaultCache = new SignalCache();
+    }
+    return defaultCache;
+  }
+
+  // Bumped on every invalidation, signals holding an older generation are stale
+  long generation;
+
+  /** Marks every signal of this cache as stale, so each reads its source again on its next read. */
+  public void invalidate() {
+    generation++;
+  }
+
+  /**
+   * @return How many times this cache has been invalidated
+   */
+  public long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Creates a batched read for signals to share.
+   *
+   * @param read Reads every value of the device in one transaction
+   * @return The batched read
+   */
+  public BulkRead bulkRead(Runnable read) {
+    return new BulkRead(this, requireNonNullParam(read, "read", "bulkRead"));
+  }
+
+  /**
+   * @param source The hardware read
+   * @return A signal that reads the source at most once per cycle
+   */
+  public CachedBooleanSignal cacheBoolean(BooleanSupplier source) {
+    return new CachedBooleanSignal(
+        this, null, requireNonNullParam(source, "source", "cacheBoolean"));
+  }
+
+  /**
+   * @param bulkRead The batched read to run before the source is read
+   * @param source Returns the value left by the batched read
+   * @return A signal that reads the source at most once per cycle
+   */
+  public CachedBooleanSignal cacheBoolean(BulkRead bulkRead, BooleanSupplier source) {
+    return new CachedBooleanSignal(
+        this,
+        requireGroup(bulkRead, "cacheBoolean"),
+        requireNonNullParam(source, "source", "cacheBoolean"));
+  }
+
+  /**
+   * @param source The hardware read
+   * @return A signal that reads the source at most once per cycle
+   */
+  public CachedDoubleSignal cacheDouble(DoubleSupplier source) {
+    return new CachedDoubleSignal(this, null, requireNonNullParam(source, "source", "cacheDouble"));
+  }
+
+  /**
+   * @param bulkRead The batched read to run before the source is read
+   * @param source Returns the value left by the batched read
+   * @return A signal that reads the source at most once per cycle
+   */
+  public CachedDoubleSignal cacheDouble(BulkRead bulkRead, DoubleSupplier source) {
+    return new CachedDoubleSignal(
+        this,
+        requireGroup(bulkRead, "cacheDouble"),
+        requireNonNullParam(source, "source", "cacheDouble"));
+  }
+
+  /**
+   * @param source The hardware read
+   * @return A signal that reads the source at most once per cycle
+   */
+  public CachedLongSignal cacheLong(LongSupplier source) {
+    return new CachedLongSignal(this, null, requireNonNullParam(source, "source", "cacheLong"));
+  }
+
+  /**
+   * @param bulkRead The batched read to run before the source is read
+   * @param source Returns the value left by the batched read
+   * @return A signal that reads the source at most once per cycle
+   */
+  public CachedLongSignal cacheLong(BulkRead bulkRead, LongSupplier source) {
+    return new CachedLongSignal(
+        this,
+        requireGroup(bulkRead, "cacheLong"),
+        requireNonNullParam(source, "source", "cacheLong"));
+  }
+
+  private BulkRead requireGroup(BulkRead bulkRead, String methodName) {
+    requireNonNullParam(bulkRead, "bulkRead", methodName);
+    if (bulkRead.CACHE != this) {
+      throw new IllegalArgumentException("Bulk read belongs to a different SignalCache");
+    }
+    return bulkRead;
+  }
+}
@@ -0,0 +1,225 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.telemetry;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Measures how long a hot path takes and how many bytes it allocates, for example around {@link
+ * sallet.event.EventLoop#poll()}, a {@link sallet.command.CommandScheduler#run()} cycle or {@link
+ * sallet.math.filters.Debouncer#calculate(boolean)}:
+ *
+ * <pre>{@code
+ * probe.begin();
+ * scheduler.run();
+ * probe.end();
+ * }</pre>
+ *
+ * <p>Allocation is read from the per-thread allocation counter of {@code
+ * com.sun.management.ThreadMXBean}, which HotSpot-based JVMs provide. Where it is missing, only
+ * time is measured and every sample reports 0 bytes; see {@link #isAllocationMeasured()}. A probe
+ * measures the thread that calls {@link #begin()} and {@link #end()}, which must be the same
+ * thread.
+ *
+ * <p>The last samples are kept in preallocated arrays for percentiles, and taking a sample does
+ * not allocate, so a probe can stay around a hot path without showing up in its own measurements.
+ */
+public final class HotPathProbe {
+  /** Holds the allocation counter, so JVMs without com.sun.management only fail to load this */
+  private static final class AllocationCounter {
+    private static final com.sun.management.ThreadMXBean THREADS = find();
+
+    private static com.sun.management.ThreadMXBean find() {
+      if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+          && threads.isThreadAllocatedMemorySupported()) {
+        try {
+          threads.setThreadAllocatedMemoryEnabled(true);
+          return threads;
+        } catch (UnsupportedOperationException | SecurityException e) {
+          return null;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static final boolean ALLOCATION_MEASURED = detectAllocationCounter();
+
+  private final String NAME;
+  // The last samples, oldest overwritten first
+  private final long[] NANOS;
+  private final long[] BYTES;
+  // Scratch for sorting the samples when a percentile is asked for
+  private final long[] SORTED;
+  private int nextSample;
+
+  private long count;
+  private long totalBytes;
+  private long maxBytes;
+  private long maxNanos;
+
+  private long startNanos;
+  private long startBytes;
+
+  /**
+   * Creates a probe.
+   *
+   * @param name The name of the hot path, used in the report
+   * @param window The number of most recent samples percentiles are computed over
+   */
+  public HotPathProbe(String name, int window) {
+    NAME = requireNonNullParam(name, "name", "HotPathProbe");
+    if (window < 1) {
+      throw new IllegalArgumentException("A probe needs a window of at least one sample");
+    }
+    NANOS = new long[window];
+    BYTES = new long[window];
+    SORTED = new long[window];
+  }
+
+  private static boolean detectAllocationCounter() {
+    try {
+      return AllocationCounter.THREADS != null;
+    } catch (LinkageError e) {
+      // No com.sun.management or java.management in this runtime
+      return false;
+    }
+  }
+
+  private static long allocatedBytes() {
+    return ALLOCATION_MEASURED ? AllocationCounter.THREADS.getCurrentThreadAllocatedBytes() : 0L;
+  }
+
+  /**
+   * @return Whether this JVM reports per-thread allocation, without which every sample reports 0
+   *     bytes
+   */
+  public static boolean isAllocationMeasured() {
+    return ALLOCATION_MEASURED;
+  }
+
+  /**
+   * @return The name of the hot path
+   */
+  public String getName() {
+    return NAME;
+  }
+
+  /** Starts a sample. */
+  public void begin() {
+    startBytes = allocatedBytes();
+    startNanos = System.nanoTime();
+  }
+
+  /** Ends the sample started by the last {@link #begin()} and records it. */
+  public void end() {
+    long nanos = System.nanoTime() - startNanos;
+    long bytes = allocatedBytes() - startBytes;
+
+    NANOS[nextSample] = nanos;
+    BYTES[nextSample] = bytes;
+    nextSample = nextSample + 1 == NANOS.length ? 0 : nextSample + 1;
+    count++;
+    totalBytes += bytes;
+    maxBytes = Math.max(maxBytes, bytes);
+    maxNanos = Math.max(maxNanos, nanos);
+  }
+
+  /**
+   * Takes one sample of a piece of work.
+   *
+   * @param work The work to measure
+   */
+  public void measure(Runnable work) {
+    begin();
+    work.run();
+    end();
+  }
+
+  /**
+   * @return The number of samples since the last reset
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return The mean number of bytes allocated per sample since the last reset
+   */
+  public double getMeanBytes() {
+    return count == 0 ? 0.0 : (double) totalBytes / count;
+  }
+
+  /**
+   * @return The most bytes allocated by one sample since the last reset
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * @return The longest sample since the last reset, in nanoseconds
+   */
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * @param percentile The percentile, between 0 and 100
+   * @return The duration of the samples in the window at that percentile, in nanoseconds
+   */
+  public long getPercentileNanos(double percentile) {
+    return percentile(NANOS, percentile);
+  }
+
+  /**
+   * @param percentile The percentile, between 0 and 100
+   * @return The bytes allocated by the samples in the window at that percentile
+   */
+  public long getPercentileBytes(double percentile) {
+    return percentile(BYTES, percentile);
+  }
+
+  /** Forgets every sample. */
+  public void reset() {
+    nextSample = 0;
+    count = 0;
+    totalBytes = 0;
+    maxBytes = 0;
+    maxNanos = 0;
+  }
+
+  /**
+   * @return One line with the sample count, mean and max bytes, and the p50, p99 and max durations
+   */
+  public String formatReport() {
+    return String.format(
+        "%s: %d samples, %.1f B mean, %d B max, p50 %.1f us, p99 %.1f us, max %.1f us",
+        NAME,
+        count,
+        getMeanBytes(),
+        maxBytes,
+        getPercentileNanos(50) / 1e3,
+        getPercentileNanos(99) / 1e3,
+        maxNanos / 1e3);
+  }
+
+  /** Nearest-rank percentile over the samples in the window. */
+  private long percentile(long[] samples, double percentile) {
+    if (!(percentile >= 0.0 && percentile <= 100.0)) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100, got " + percentile);
+    }
+    int size = (int) Math.min(count, samples.length);
+    if (size == 0) {
+      return 0L;
+    }
+    System.arraycopy(samples, 0, SORTED, 0, size);
+    Arrays.sort(SORTED, 0, size);
+    int rank = (int) Math.ceil(percentile / 100.0 * size);
+    return SORTED[Math.max(rank, 1) - 1];
+  }
+}
@@ -0,0 +1,81 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.telemetry;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sallet.command.Command;
+import sallet.command.Subsystem;
+import sallet.event.EventLoop;
+
+/**
+ * Hands out the IDs telemetry logs name their sources by, unique across every log.
+ *
+ * <p>Commands, subsystems and event loops each keep their ID in a private field that only this
+ * class reads or writes, so looking one up while recording is a field read and the ID is not part
+ * of their API. Other sources are rare enough to be looked up in a weak map.
+ */
+final class TelemetryIds {
+  private static final AtomicInteger NEXT_ID = new AtomicInteger();
+  private static final Map<Object, Integer> OTHER_IDS = new WeakHashMap<>();
+
+  private static final VarHandle COMMAND_ID = idField(Command.class);
+  private static final VarHandle SUBSYSTEM_ID = idField(Subsystem.class);
+  private static final VarHandle EVENT_LOOP_ID = idField(EventLoop.class);
+
+  private TelemetryIds() {}
+
+  /**
+   * @return A new ID, for a source that is only ever registered once such as a signal
+   */
+  static int next() {
+    return NEXT_ID.getAndIncrement();
+  }
+
+  /**
+   * @param source A command, subsystem or other source
+   * @return The ID of the source, given to it the first time any log asks for it
+   */
+  static int of(Object source) {
+    if (source instanceof Command) {
+      return of(COMMAND_ID, source);
+    } else if (source instanceof Subsystem) {
+      return of(SUBSYSTEM_ID, source);
+    } else if (source instanceof EventLoop) {
+      return of(EVENT_LOOP_ID, source);
+    }
+    synchronized (OTHER_IDS) {
+      Integer id = OTHER_IDS.get(source);
+      if (id == null) {
+        id = next();
+        OTHER_IDS.put(source, id);
+      }
+      return id;
+    }
+  }
+
+  private static int of(VarHandle field, Object source) {
+    int id = (int) field.getAcquire(source);
+    if (id >= 0) {
+      return id;
+    }
+    // Two logs recording the same source for the first time at once agree on whichever ID lands
+    int assigned = next();
+    id = (int) field.compareAndExchange(source, -1, assigned);
+    return id < 0 ? assigned : id;
+  }
+
+  private static VarHandle idField(Class<?> owner) {
+    try {
+      return MethodHandles.privateLookupIn(owner, MethodHandles.lookup())
+          .findVarHandle(owner, "telemetryId", int.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+}
@@ -0,0 +1,473 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.telemetry;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import sallet.command.Command;
+import sallet.command.CommandScheduler;
+import sallet.command.LoopWatchdog;
+import sallet.command.Subsystem;
+import sallet.math.universal.MathSharedStore;
+
+/**
+ * A binary telemetry log of command lifecycle events, cycle and epoch timings, and user-registered
+ * signals.
+ *
+ * <p>The loop thread only ever writes three longs into a preallocated lock-free ring per record; a
+ * background thread drains the ring into memory-mapped segments of the log file. Nothing is
+ * formatted, allocated or written to disk on the loop thread, except that the first record naming a
+ * command, subsystem or signal also queues its name. If the writer falls behind and the ring fills
+ * up, records are dropped rather than stalling the loop, and the number dropped is written to the
+ * log.
+ *
+ * <p>The file starts with the magic number {@code SLOG} and a two byte version, all big-endian,
+ * followed by records that each start with a {@link RecordType} tag byte:
+ *
+ * <ul>
+ *   <li>{@link RecordType#DEFINITION}: an int ID, a {@link SourceKind} byte, and the name as a
+ *       two byte length followed by UTF-8 bytes. Every ID is defined before it is first used.
+ *   <li>Every other type: an aux byte, an int ID, a long timestamp in nanoseconds on the {@link
+ *       MathSharedStore} clock and a long value, whose meanings are listed on each type.
+ * </ul>
+ *
+ * A zero tag byte marks the end of the records. Use {@link TelemetryLogReader} to read a log back.
+ *
+ * <p>Signals are sampled and records are added from the loop thread only.
+ */
+public final class TelemetryLog implements AutoCloseable {
+  /** What a record describes */
+  public enum RecordType {
+    /** Names an ID. Has no timestamp or value */
+    DEFINITION(1),
+    /** A command was initialized */
+    COMMAND_INITIALIZE(2),
+    /** A command was executed */
+    COMMAND_EXECUTE(3),
+    /** A command was interrupted. The value is the ID of the interrupting command, or -1 */
+    COMMAND_INTERRUPT(4),
+    /** A command finished */
+    COMMAND_FINISH(5),
+    /**
+     * An epoch of a cycle. The aux byte is the ordinal of its {@link LoopWatchdog.Phase} and the
+     * value is its duration in nanoseconds
+     */
+    EPOCH(6),
+    /**
+     * A whole cycle, with ID -1. The aux byte is 1 if it overran and the value is its duration in
+     * nanoseconds
+     */
+    CYCLE(7),
+    /** A sample of a boolean signal. The value is 1 for true and 0 for false */
+    BOOLEAN_SIGNAL(8),
+    /** A sample of a long signal */
+    LONG_SIGNAL(9),
+    /** A sample of a double signal. The value holds the raw bits of the double */
+    DOUBLE_SIGNAL(10),
+    /** Records were dropped, with ID -1. The value is the total number dropped so far */
+    DROPPED(11);
+
+    private static final RecordType[] BY_CODE = new RecordType[12];
+
+    static {
+      for (RecordType type : values()) {
+        BY_CODE[type.CODE] = type;
+      }
+    }
+
+    final int CODE;
+
+    RecordType(int code) {
+      CODE = code;
+    }
+
+    /**
+     * @param code A tag byte
+     * @return The record type with that tag, or null if there is none
+     */
+    static RecordType fromCode(int code) {
+      return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+  }
+
+  /** What an ID refers to */
+  public enum SourceKind {
+    /** A {@link Command} */
+    COMMAND,
+    /** A {@link Subsystem} */
+    SUBSYSTEM,
+    /** Anything else that owns an epoch, such as an event loop */
+    OTHER,
+    /** A signal registered with {@link #addBooleanSignal} */
+    BOOLEAN_SIGNAL,
+    /** A signal registered with {@link #addLongSignal} */
+    LONG_SIGNAL,
+    /** A signal registered with {@link #addDoubleSignal} */
+    DOUBLE_SIGNAL
+  }
+
+  /** A name waiting to be written, queued before any record using its ID is published */
+  private record Definition(int id, SourceKind kind, String name) {}
+
+  /** Default ring capacity in records */
+  public static final int DEFAULT_CAPACITY = 1 << 14;
+
+  static final int MAGIC = 0x534C4F47;
+  static final short VERSION = 1;
+
+  private static final int SEGMENT_BYTES = 1 << 22;
+  private static final int RECORD_BYTES = 22;
+  private static final long IDLE_PARK_NANOS = 1_000_000L;
+  private static final long NO_ID = 0xFFFFFFFFL;
+
+  private final TelemetryRing RING;
+  private final Queue<Definition> DEFINITIONS = new ConcurrentLinkedQueue<>();
+  private final FileChannel CHANNEL;
+  private final Thread WRITER;
+
+  // Loop thread side
+  // Bitset of the IDs this log has queued a definition for
+  private long[] definedIds = new long[1];
+  private Object[] signals = new Object[8];
+  private int[] signalIds = new int[8];
+  private RecordType[] signalTypes = new RecordType[8];
+  private int signalCount;
+
+  // Writer thread side
+  private MappedByteBuffer segment;
+  private long segmentStart;
+  private long lastDropped;
+  private volatile long writtenCount;
+
+  private volatile boolean closed;
+  private volatile Throwable writerFailure;
+
+  /**
+   * Creates a log with the default ring capacity, replacing the file if it exists.
+   *
+   * @param file The log file
+   * @throws IOException If the file cannot be opened
+   */
+  public TelemetryLog(Path file) throws IOException {
+    this(file, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a log, replacing the file if it exists.
+   *
+   * @param file The log file
+   * @param capacity The number of records the loop thread can get ahead of the writer by before
+   *     records are dropped, rounded up to a power of two
+   * @throws IOException If the file cannot be opened
+   */
+  public TelemetryLog(Path file, int capacity) throws IOException {
+    requireNonNullParam(file, "file", "TelemetryLog");
+    RING = new TelemetryRing(capacity);
+    CHANNEL =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    segment = map(0);
+    segment.putInt(MAGIC).putShort(VERSION);
+
+    WRITER = new Thread(this::writerLoop, "sallet-telemetry");
+    WRITER.setDaemon(true);
+    WRITER.start();
+  }
+
+  /**
+   * Records the command lifecycle events of a scheduler, the timings reported by its {@link
+   * LoopWatchdog}, and a sample of every registered signal at the end of each cycle. Replaces the
+   * watchdog's {@link LoopWatchdog#setCycleListener cycle listener}.
+   *
+   * @param scheduler The scheduler to record
+   */
+  public void attach(CommandScheduler scheduler) {
+    requireNonNullParam(scheduler, "scheduler", "attach");
+    scheduler.onCommandInitialize(command -> record(RecordType.COMMAND_INITIALIZE, command, 0));
+    scheduler.onCommandExecute(command -> record(RecordType.COMMAND_EXECUTE, command, 0));
+    scheduler.onCommandInterrupt(
+        (command, interruptor) ->
+            record(
+                RecordType.COMMAND_INTERRUPT,
+                command,
+                interruptor == null ? -1 : idOf(interruptor)));
+    scheduler.onCommandFinish(command -> record(RecordType.COMMAND_FINISH, command, 0));
+    scheduler.onCycleEnd(this::sample);
+    scheduler
+        .getWatchdog()
+        .setCycleListener(
+            new LoopWatchdog.CycleListener() {
+              @Override
+              public void onEpoch(Object owner, LoopWatchdog.Phase phase, long nanos) {
+                if (!closed) {
+                  offer(RecordType.EPOCH, phase.ordinal(), idOf(owner), nanos);
+                }
+              }
+
+              @Override
+              public void onCycle(long cycleNanos, boolean overrun) {
+                if (!closed) {
+                  offer(RecordType.CYCLE, overrun ? 1 : 0, NO_ID, cycleNanos);
+                }
+              }
+            });
+  }
+
+  /**
+   * Registers a boolean signal to sample every cycle.
+   *
+   * @param name The name of the signal
+   * @param signal The signal
+   */
+  public void addBooleanSignal(String name, BooleanSupplier signal) {
+    addSignal(name, signal, SourceKind.BOOLEAN_SIGNAL, RecordType.BOOLEAN_SIGNAL);
+  }
+
+  /**
+   * Registers a long signal to sample every cycle.
+   *
+   * @param name The name of the signal
+   * @param signal The signal
+   */
+  public void addLongSignal(String name, LongSupplier signal) {
+    addSignal(name, signal, SourceKind.LONG_SIGNAL, RecordType.LONG_SIGNAL);
+  }
+
+  /**
+   * Registers a double signal to sample every cycle.
+   *
+   * @param name The name of the signal
+   * @param signal The signal
+   */
+  public void addDoubleSignal(String name, DoubleSupplier signal) {
+    addSignal(name, signal, SourceKind.DOUBLE_SIGNAL, RecordType.DOUBLE_SIGNAL);
+  }
+
+  /** Records a sample of every registered signal. Done at the end of every attached cycle. */
+  public void sample() {
+    if (closed) {
+      return;
+    }
+    long timestampNanos = MathSharedStore.getTimestampNanos();
+    for (int i = 0; i < signalCount; i++) {
+      long value =
+          switch (signalTypes[i]) {
+            case BOOLEAN_SIGNAL -> ((BooleanSupplier) signals[i]).getAsBoolean() ? 1 : 0;
+            case LONG_SIGNAL -> ((LongSupplier) signals[i]).getAsLong();
+            default -> Double.doubleToRawLongBits(((DoubleSupplier) signals[i]).getAsDouble());
+          };
+      offer(signalTypes[i], 0, signalIds[i], timestampNanos, value);
+    }
+  }
+
+  /**
+   * @return The number of records dropped because the writer fell behind
+   */
+  public long getDroppedCount() {
+    return RING.getDroppedCount();
+  }
+
+  /**
+   * @return The number of records written to the file so far, not counting definitions
+   */
+  public long getWrittenCount() {
+    return writtenCount;
+  }
+
+  /**
+   * Stops recording, writes every remaining record and closes the file.
+   *
+   * @throws IOException If the writer failed at any point
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    LockSupport.unpark(WRITER);
+    boolean interrupted = false;
+    while (WRITER.isAlive()) {
+      try {
+        WRITER.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    Throwable failure = writerFailure;
+    try {
+      segment.force();
+      CHANNEL.truncate(segmentStart + segment.position());
+    } finally {
+      CHANNEL.close();
+    }
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure != null) {
+      throw new IOException("Telemetry writer failed", failure);
+    }
+  }
+
+  private void addSignal(String name, Object signal, SourceKind kind, RecordType type) {
+    requireNonNullParam(name, "name", "addSignal");
+    requireNonNullParam(signal, "signal", "addSignal");
+    if (signalCount == signals.length) {
+      signals = Arrays.copyOf(signals, signalCount * 2);
+      signalIds = Arrays.copyOf(signalIds, signalCount * 2);
+      signalTypes = Arrays.copyOf(signalTypes, signalCount * 2);
+    }
+    int id = TelemetryIds.next();
+    define(id, kind, name);
+    signals[signalCount] = signal;
+    signalIds[signalCount] = id;
+    signalTypes[signalCount] = type;
+    signalCount++;
+  }
+
+  private void record(RecordType type, Command command, long value) {
+    if (!closed) {
+      offer(type, 0, idOf(command), value);
+    }
+  }
+
+  private void offer(RecordType type, int aux, long id, long value) {
+    offer(type, aux, id, MathSharedStore.getTimestampNanos(), value);
+  }
+
+  private void offer(RecordType type, int aux, long id, long timestampNanos, long value) {
+    long header = ((long) type.CODE << 56) | ((long) (aux & 0xFF) << 48) | (id & 0xFFFFFFFFL);
+    RING.offer(header, timestampNanos, value);
+  }
+
+  /**
+   * Returns the ID of a command, subsystem or other owner, queuing its definition the first time
+   * this log records it.
+   */
+  private int idOf(Object source) {
+    int id = TelemetryIds.of(source);
+    int word = id >>> 6;
+    if (word >= definedIds.length || (definedIds[word] & (1L << id)) == 0) {
+      if (source instanceof Command command) {
+        define(id, SourceKind.COMMAND, command.getName());
+      } else if (source instanceof Subsystem subsystem) {
+        define(id, SourceKind.SUBSYSTEM, subsystem.getName());
+      } else {
+        define(id, SourceKind.OTHER, source.getClass().getName());
+      }
+    }
+    return id;
+  }
+
+  /** Queues the definition of an ID, before any record using it is published. */
+  private void define(int id, SourceKind kind, String name) {
+    int word = id >>> 6;
+    if (word >= definedIds.length) {
+      definedIds = Arrays.copyOf(definedIds, Math.max(word + 1, definedIds.length * 2));
+    }
+    definedIds[word] |= 1L << id;
+    DEFINITIONS.add(new Definition(id, kind, name));
+  }
+
+  private void writerLoop() {
+    try {
+      while (true) {
+        // Read before draining, so everything published before close() is still written
+        boolean stopping = closed;
+
+        // Definitions are queued before the records using them are published, so every
+        // definition a record in this batch needs has been queued by now
+        long end = RING.published();
+        Definition definition;
+        while ((definition = DEFINITIONS.poll()) != null) {
+          writeDefinition(definition);
+        }
+
+        long start = RING.consumed();
+        for (long position = start; position < end; position++) {
+          writeRecord(RING.header(position), RING.timestamp(position), RING.value(position));
+        }
+        RING.release(end);
+        writtenCount += end - start;
+
+        long dropped = RING.getDroppedCount();
+        if (dropped != lastDropped) {
+          lastDropped = dropped;
+          writeRecord(
+              ((long) RecordType.DROPPED.CODE << 56) | NO_ID,
+              MathSharedStore.getTimestampNanos(),
+              dropped);
+        }
+
+        if (stopping) {
+          return;
+        }
+        if (end == start) {
+          LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      writerFailure = e;
+    }
+  }
+
+  private void writeDefinition(Definition definition) throws IOException {
+    byte[] name = definition.name().getBytes(StandardCharsets.UTF_8);
+    int length = Math.min(name.length, 0xFFFF);
+    ensureCapacity(8 + length);
+    segment
+        .put((byte) RecordType.DEFINITION.CODE)
+        .putInt(definition.id())
+        .put((byte) definition.kind().ordinal())
+        .putShort((short) length)
+        .put(name, 0, length);
+  }
+
+  private void writeRecord(long header, long timestampNanos, long value) throws IOException {
+    ensureCapacity(RECORD_BYTES);
+    segment
+        .put((byte) (header >>> 56))
+        .put((byte) (header >>> 48))
+        .putInt((int) header)
+        .putLong(timestampNanos)
+        .putLong(value);
+  }
+
+  /** Maps the next segment if the current one cannot fit a record of the given size. */
+  private void ensureCapacity(int bytes) throws IOException {
+    if (segment.remaining() >= bytes) {
+      return;
+    }
+    segmentStart += segment.position();
+    segment = map(segmentStart);
+  }
+
+  private MappedByteBuffer map(long position) throws IOException {
+    MappedByteBuffer buffer = CHANNEL.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_BYTES);
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    return buffer;
+  }
+}
@@ -0,0 +1,105 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.telemetry;
+
+import static sallet.util.error.ErrorMessages.requireNonNullParam;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads back a log written by {@link TelemetryLog}. A log cut short by a crash is read up to its
+ * last complete record.
+ */
+public final class TelemetryLogReader {
+  /** Receives the contents of a log, in the order they were written */
+  public interface Visitor {
+    /**
+     * Called when an ID is named, before any record uses it.
+     *
+     * @param id The ID
+     * @param kind What the ID refers to
+     * @param name The name
+     */
+    void onDefinition(int id, TelemetryLog.SourceKind kind, String name);
+
+    /**
+     * Called for every record other than a definition.
+     *
+     * @param type The type of the record
+     * @param aux The aux byte, see {@link TelemetryLog.RecordType}
+     * @param id The ID the record is about, or -1
+     * @param timestampNanos When the record was added, in nanoseconds
+     * @param value The value, see {@link TelemetryLog.RecordType}
+     */
+    void onRecord(TelemetryLog.RecordType type, int aux, int id, long timestampNanos, long value);
+  }
+
+  private static final TelemetryLog.SourceKind[] KINDS = TelemetryLog.SourceKind.values();
+
+  private TelemetryLogReader() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+
+  /**
+   * Reads a log.
+   *
+   * @param file The log file
+   * @param visitor Receives every definition and record
+   * @throws IOException If the file cannot be read or is not a telemetry log
+   */
+  public static void read(Path file, Visitor visitor) throws IOException {
+    requireNonNullParam(file, "file", "read");
+    requireNonNullParam(visitor, "visitor", "read");
+
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+      if (in.readInt() != TelemetryLog.MAGIC) {
+        throw new IOException(file + " is not a telemetry log");
+      }
+      short version = in.readShort();
+      if (version != TelemetryLog.VERSION) {
+        throw new IOException("Unsupported telemetry log version " + version);
+      }
+
+      try {
+        while (true) {
+          int tag = in.read();
+          if (tag <= 0) {
+            // End of the file, or the unwritten tail of a log that was never closed
+            return;
+          }
+          TelemetryLog.RecordType type = TelemetryLog.RecordType.fromCode(tag);
+          if (type == null) {
+            throw new IOException("Corrupt telemetry log, unknown record tag " + tag);
+          }
+
+          if (type == TelemetryLog.RecordType.DEFINITION) {
+            int id = in.readInt();
+            int kind = in.readUnsignedByte();
+            byte[] name = new byte[in.readUnsignedShort()];
+            in.readFully(name);
+            if (kind >= KINDS.length) {
+              throw new IOException("Corrupt telemetry log, unknown source kind " + kind);
+            }
+            visitor.onDefinition(id, KINDS[kind], new String(name, StandardCharsets.UTF_8));
+          } else {
+            int aux = in.readUnsignedByte();
+            int id = in.readInt();
+            long timestampNanos = in.readLong();
+            long value = in.readLong();
+            visitor.onRecord(type, aux, id, timestampNanos, value);
+          }
+        }
+      } catch (EOFException e) {
+        // Cut short mid-record, everything complete has been read
+      }
+    }
+  }
+}
@@ -0,0 +1,133 @@
+// Copyright (c) barbute
+// Open Source Software
+
+package sallet.telemetry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A preallocated single-producer single-consumer ring of fixed-size records, each a header word, a
+ * timestamp and a value.
+ *
+ * <p>The producer and the consumer each own one position counter and only publish it with a
+ * release store, so neither side ever takes a lock or retries a compare-and-set. The producer keeps
+ * a cached copy of the consumer's position and only re-reads the real one when the ring looks full.
+ * When the ring really is full the record is dropped and counted rather than blocking the producer.
+ */
+final class TelemetryRing {
+  private static final int RECORD_WORDS = 3;
+
+  private final long[] SLOTS;
+  private final int MASK;
+
+  // Count of records published by the producer, written only by the producer
+  private final AtomicLong PUBLISHED = new AtomicLong();
+  // Count of records consumed, written only by the consumer
+  private final AtomicLong CONSUMED = new AtomicLong();
+
+  // Producer side
+  private long producerPosition;
+  private long cachedConsumed;
+  private volatile long droppedCount;
+
+  /**
+   * Creates a new ring.
+   *
+   * @param capacity The number of records the ring holds, rounded up to a power of two
+   */
+  TelemetryRing(int capacity) {
+    if (capacity < 1 || capacity > 1 << 24) {
+      throw new IllegalArgumentException(
+          "Ring capacity must be between 1 and " + (1 << 24) + ", got " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    SLOTS = new long[size * RECORD_WORDS];
+    MASK = size - 1;
+  }
+
+  /**
+   * Appends a record. Called from the producer thread only.
+   *
+   * @param header The record header
+   * @param timestampNanos The record timestamp
+   * @param value The record value
+   * @return Whether the record was added, false if the ring was full and it was dropped
+   */
+  boolean offer(long header, long timestampNanos, long value) {
+    long position = producerPosition;
+    if (position - cachedConsumed > MASK) {
+      cachedConsumed = CONSUMED.get();
+      if (position - cachedConsumed > MASK) {
+        droppedCount++;
+        return false;
+      }
+    }
+
+    int slot = (int) (position & MASK) * RECORD_WORDS;
+    SLOTS[slot] = header;
+    SLOTS[slot + 1] = timestampNanos;
+    SLOTS[slot + 2] = value;
+
+    producerPosition = position + 1;
+    // Release store, makes the slot writes above visible before the new position
+    PUBLISHED.lazySet(position + 1);
+    return true;
+  }
+
+  /**
+   * @return The number of records dropped because the ring was full
+   */
+  long getDroppedCount() {
+    return droppedCount;
+  }
+
+  /**
+   * @return The position one past the last record published, read by the consumer
+   */
+  long published() {
+    return PUBLISHED.get();
+  }
+
+  /**
+   * @return The position of the next record to consume
+   */
+  long consumed() {
+    return CONSUMED.get();
+  }
+
+  /**
+   * @param position The position of a published, unconsumed record
+   * @return The header of the record
+   */
+  long header(long position) {
+    return SLOTS[(int) (position & MASK) * RECORD_WORDS];
+  }
+
+  /**
+   * @param position The position of a published, unconsumed record
+   * @return The timestamp of the record
+   */
+  long timestamp(long position) {
+    return SLOTS[(int) (position & MASK) * RECORD_WORDS + 1];
+  }
+
+  /**
+   * @param position The position of a published, unconsumed record
+   * @return The value of the record
+   */
+  long value(long position) {
+    return SLOTS[(int) (position & MASK) * RECORD_WORDS + 2];
+  }
+
+  /**
+   * Hands every record before a position back to the producer. Called from the consumer thread.
+   *
+   * @param position The position one past the last record consumed
+   */
+  void release(long position) {
+    CONSUMED.lazySet(position);
+  }
+}
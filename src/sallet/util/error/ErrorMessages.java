@@ -6,8 +6,6 @@
 
 package sallet.util.error;
 
-import static java.util.Objects.requireNonNull;
-
 /** Utility class for common error messages. */
 public final class ErrorMessages {
   /** Utility class, so constructor is private. */
@@ -26,18 +24,24 @@ public final class ErrorMessages {
    * @return The object parameter confirmed not to be null.
    */
   public static <T> T requireNonNullParam(T obj, String paramName, String methodName) {
-    return requireNonNull(
-        obj,
-        "Parameter "
-            + paramName
-            + " in method "
-            + methodName
-            + " was null when it"
-            + " should not have been!  Check the stacktrace to find the responsible line of code - "
-            + "usually, it is the first line of user-written code indicated in the stacktrace.  "
-            + "Make sure all objects passed to the method in question were properly initialized -"
-            + " note that this may not be obvious if it is being called under "
-            + "dynamically-changing conditions!  Please do not seek additional technical assistance"
-            + " without doing this first!");
+    // The message is only built on failure, this is called on paths that must not allocate
+    if (obj == null) {
+      throw new NullPointerException(nullParamMessage(paramName, methodName));
+    }
+    return obj;
+  }
+
+  private static String nullParamMessage(String paramName, String methodName) {
+    return "Parameter "
+        + paramName
+        + " in method "
+        + methodName
+        + " was null when it"
+        + " should not have been!  Check the stacktrace to find the responsible line of code - "
+        + "usually, it is the first line of user-written code indicated in the stacktrace.  "
+        + "Make sure all objects passed to the method in question were properly initialized -"
+        + " note that this may not be obvious if it is being called under "
+        + "dynamically-changing conditions!  Please do not seek additional technical assistance"
+        + " without doing this first!";
   }
 }